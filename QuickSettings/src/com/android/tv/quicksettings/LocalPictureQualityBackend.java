@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.android.tv.quicksettings;
+
+import android.util.ArrayMap;
+import android.util.Log;
+
+import java.util.Map;
+
+/**
+ * Stand-in for devices without a picture quality service, and for tests. Keeps the last value
+ * applied to each setting.
+ */
+public class LocalPictureQualityBackend implements PictureQualityBackend {
+
+    private static final String TAG = "LocalPictureQuality";
+    private static final boolean DEBUG = false;
+
+    private final Map<String, Integer> mValues = new ArrayMap<>();
+    private int mApplyCount;
+
+    @Override
+    public void applyValue(String key, int value) {
+        if (DEBUG) {
+            Log.d(TAG, "applyValue " + key + "=" + value);
+        }
+        mValues.put(key, value);
+        mApplyCount++;
+    }
+
+    /**
+     * @return The last value applied to the setting, or -1 if none was
+     */
+    public int getValue(String key) {
+        final Integer value = mValues.get(key);
+        return value != null ? value : -1;
+    }
+
+    /**
+     * @return How many values were applied in total
+     */
+    public int getApplyCount() {
+        return mApplyCount;
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.android.tv.quicksettings;
+
+/**
+ * Receives picture settings as they change, so that the panel can preview them while the user is
+ * still adjusting a slider.
+ */
+public interface PictureQualityBackend {
+    /**
+     * Applies a setting to the picture. Called on the main thread, at most once per frame while a
+     * slider moves, so implementations must not block.
+     * @param key Key of the setting, one of the {@code setting_keys}
+     * @param value New value of the setting
+     */
+    void applyValue(String key, int value);
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.android.tv.quicksettings;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory model of the picture settings, shared by the quick settings screens. Changes are
+ * visible to listeners right away and written to shared preferences in a single transaction once
+ * they settle, so holding down a D-pad key or switching presets doesn't write to disk on every
+ * step. Must be used on the main thread.
+ */
+public class PictureSettings {
+
+    static final String KEY_PRESET = "preset";
+
+    private static final String PRESET_STANDARD = "standard";
+    private static final String PRESET_CINEMA = "cinema";
+    private static final String PRESET_VIVID = "vivid";
+    private static final String PRESET_GAME = "game";
+    private static final String PRESET_CUSTOM = "custom";
+
+    /** How long changes must settle before they're written to disk */
+    private static final long FLUSH_DELAY_MS = 500;
+
+    /**
+     * Listener for changes to the picture settings.
+     */
+    public interface Listener {
+        /**
+         * Called once per change, however many values it touched.
+         */
+        void onPictureSettingsChanged();
+    }
+
+    private static PictureSettings sInstance;
+
+    private final Resources mResources;
+    private final SharedPreferences mSharedPreferences;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mFlushRunnable = this::flush;
+    private final List<Listener> mListeners = new ArrayList<>();
+
+    private final String[] mKeys;
+    private final int[] mValues;
+    private String mPreset;
+    private boolean mDirty;
+
+    public static PictureSettings getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PictureSettings(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PictureSettings(Context context) {
+        mResources = context.getResources();
+        mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        mKeys = mResources.getStringArray(R.array.setting_keys);
+        final int[] defaults = mResources.getIntArray(R.array.standard_setting_values);
+        mValues = new int[mKeys.length];
+        for (int i = 0; i < mKeys.length; i++) {
+            mValues[i] = mSharedPreferences.getInt(mKeys[i], defaults[i]);
+        }
+        mPreset = mSharedPreferences.getString(KEY_PRESET, PRESET_STANDARD);
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @return Number of integer settings
+     */
+    public int getCount() {
+        return mValues.length;
+    }
+
+    /**
+     * @return Index of the integer setting with the key, or -1 if there is none
+     */
+    public int indexOf(String key) {
+        return Arrays.asList(mKeys).indexOf(key);
+    }
+
+    public int getValue(int index) {
+        return mValues[index];
+    }
+
+    public String getPreset() {
+        return mPreset;
+    }
+
+    /**
+     * Changes a setting by hand, which switches to the custom preset.
+     */
+    public void setValue(int index, int value) {
+        if (mValues[index] == value && TextUtils.equals(mPreset, PRESET_CUSTOM)) {
+            return;
+        }
+        mValues[index] = value;
+        mPreset = PRESET_CUSTOM;
+        onChanged();
+    }
+
+    /**
+     * Switches to a preset, and to its values unless it's the custom preset.
+     */
+    public void setPreset(String preset) {
+        final int[] presetValues = getPresetValues(preset);
+        if (TextUtils.equals(mPreset, preset)
+                && (presetValues == null || Arrays.equals(mValues, presetValues))) {
+            return;
+        }
+        mPreset = preset;
+        if (presetValues != null) {
+            System.arraycopy(presetValues, 0, mValues, 0, mValues.length);
+        }
+        onChanged();
+    }
+
+    /**
+     * Pushes every integer setting to the backend, e.g. after a preset switch or a reset changed
+     * them all at once.
+     */
+    public void applyTo(PictureQualityBackend backend) {
+        for (int i = 0; i < mKeys.length; i++) {
+            backend.applyValue(mKeys[i], mValues[i]);
+        }
+    }
+
+    /**
+     * Writes pending changes to disk now, e.g. when the UI goes away.
+     */
+    public void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        if (!mDirty) {
+            return;
+        }
+        mDirty = false;
+        final SharedPreferences.Editor editor = mSharedPreferences.edit();
+        editor.putString(KEY_PRESET, mPreset);
+        for (int i = 0; i < mKeys.length; i++) {
+            editor.putInt(mKeys[i], mValues[i]);
+        }
+        editor.apply();
+    }
+
+    private int[] getPresetValues(String preset) {
+        switch (preset) {
+            case PRESET_STANDARD:
+                return mResources.getIntArray(R.array.standard_setting_values);
+            case PRESET_CINEMA:
+                return mResources.getIntArray(R.array.cinema_setting_values);
+            case PRESET_VIVID:
+                return mResources.getIntArray(R.array.vivid_setting_values);
+            case PRESET_GAME:
+                return mResources.getIntArray(R.array.game_setting_values);
+            default:
+                return null;
+        }
+    }
+
+    private void onChanged() {
+        mDirty = true;
+        mHandler.removeCallbacks(mFlushRunnable);
+        mHandler.postDelayed(mFlushRunnable, FLUSH_DELAY_MS);
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            mListeners.get(i).onPictureSettingsChanged();
+        }
+    }
+}
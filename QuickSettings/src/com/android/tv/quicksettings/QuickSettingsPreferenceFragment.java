@@ -19,8 +19,6 @@ package com.android.tv.quicksettings;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.content.res.Resources;
 import android.os.Bundle;
 
 import androidx.leanback.preference.LeanbackPreferenceFragment;
@@ -31,7 +29,7 @@ import java.util.Arrays;
 import java.util.List;
 
 public class QuickSettingsPreferenceFragment extends LeanbackPreferenceFragment implements
-        SharedPreferences.OnSharedPreferenceChangeListener, Preference.OnPreferenceClickListener {
+        PictureSettings.Listener, Preference.OnPreferenceClickListener {
 
     private ListPreference mPresetPref;
     private Preference mBacklightPref;
@@ -41,13 +39,15 @@ public class QuickSettingsPreferenceFragment extends LeanbackPreferenceFragment
     private Preference mColorPref;
     private Preference mTintPref;
 
-    private PresetSettingsListener mPresetSettingsListener;
+    private PictureSettings mPictureSettings;
+    private PictureQualityBackend mPictureQualityBackend;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mPresetSettingsListener = new PresetSettingsListener(getActivity());
+        mPictureSettings = PictureSettings.getInstance(getActivity());
+        mPictureQualityBackend = new LocalPictureQualityBackend();
     }
 
     @Override
@@ -83,11 +83,8 @@ public class QuickSettingsPreferenceFragment extends LeanbackPreferenceFragment
     public void onResume() {
         super.onResume();
 
-        final SharedPreferences sharedPreferences = getPreferenceManager().getSharedPreferences();
-        sharedPreferences.registerOnSharedPreferenceChangeListener(this);
-        sharedPreferences.registerOnSharedPreferenceChangeListener(mPresetSettingsListener);
-
-        updateDescriptions(sharedPreferences);
+        mPictureSettings.addListener(this);
+        updateDescriptions();
     }
 
 
@@ -95,40 +92,30 @@ public class QuickSettingsPreferenceFragment extends LeanbackPreferenceFragment
     public void onPause() {
         super.onPause();
 
-        final SharedPreferences sharedPreferences = getPreferenceManager().getSharedPreferences();
-        sharedPreferences.unregisterOnSharedPreferenceChangeListener(this);
-        sharedPreferences.unregisterOnSharedPreferenceChangeListener(mPresetSettingsListener);
+        mPictureSettings.removeListener(this);
+        mPictureSettings.flush();
+    }
+
+    private void updateDescriptions() {
+        // The model is ahead of the preference's persisted value until it's flushed
+        final int presetIndex = mPresetPref.findIndexOfValue(mPictureSettings.getPreset());
+        mPresetPref.setSummary(presetIndex >= 0 ? mPresetPref.getEntries()[presetIndex] : null);
+        updateDescription(mBacklightPref);
+        updateDescription(mContrastPref);
+        updateDescription(mBrightnessPref);
+        updateDescription(mSharpnessPref);
+        updateDescription(mColorPref);
+        updateDescription(mTintPref);
     }
 
-    private void updateDescriptions(SharedPreferences sharedPreferences) {
-        final Resources res = getResources();
-        mPresetPref.setSummary(mPresetPref.getEntry());
-        mBacklightPref.setSummary(String.format("%d", sharedPreferences.getInt("backlight",
-                res.getInteger(R.integer.standard_setting_backlight))));
-        mContrastPref.setSummary(String.format("%d", sharedPreferences.getInt("contrast",
-                res.getInteger(R.integer.standard_setting_contrast))));
-        mBrightnessPref.setSummary(String.format("%d", sharedPreferences.getInt("brightness",
-                res.getInteger(R.integer.standard_setting_brightness))));
-        mSharpnessPref.setSummary(String.format("%d", sharedPreferences.getInt("sharpness",
-                res.getInteger(R.integer.standard_setting_sharpness))));
-        mColorPref.setSummary(String.format("%d", sharedPreferences.getInt("color",
-                res.getInteger(R.integer.standard_setting_color))));
-        mTintPref.setSummary(String.format("%d", sharedPreferences.getInt("tint",
-                res.getInteger(R.integer.standard_setting_tint))));
+    private void updateDescription(Preference preference) {
+        final int index = mPictureSettings.indexOf(preference.getKey());
+        preference.setSummary(String.format("%d", mPictureSettings.getValue(index)));
     }
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-        switch (key) {
-            case "preset":
-            case "backlight":
-            case "contrast":
-            case "brightness":
-            case "sharpness":
-            case "color":
-            case "tint":
-                updateDescriptions(sharedPreferences);
-        }
+    public void onPictureSettingsChanged() {
+        updateDescriptions();
     }
 
     private void launchSettingsDialog(int initialPos) {
@@ -159,9 +146,8 @@ public class QuickSettingsPreferenceFragment extends LeanbackPreferenceFragment
                             @Override
                             public void onClick(DialogInterface dialog, int id) {
                                 // User clicked OK button
-                                getPreferenceManager().getSharedPreferences().edit()
-                                        .putString("preset", "standard")
-                                        .commit();
+                                mPictureSettings.setPreset("standard");
+                                mPictureSettings.applyTo(mPictureQualityBackend);
                             }
                         }).setNegativeButton(android.R.string.cancel,
                         new DialogInterface.OnClickListener() {
@@ -13,8 +13,6 @@
  */
 package com.android.tv.quicksettings;
 
-import android.content.SharedPreferences;
-
 public class Setting {
 
     static final int TYPE_UNKNOWN = 0;
@@ -27,26 +25,31 @@ public class Setting {
 
     private int mMaxValue;
 
-    private final SharedPreferences mSharedPreferences;
+    private final PictureSettings mPictureSettings;
+    /** Index of the integer setting in {@link PictureSettings} */
+    private final int mIndex;
 
     public Setting(String title) {
         mTitle = title;
         mSettingType = TYPE_UNKNOWN;
-        mSharedPreferences = null;
+        mPictureSettings = null;
+        mIndex = -1;
     }
 
-    public Setting(SharedPreferences sharedPreferences, String key, String title, int max) {
-        mSharedPreferences = sharedPreferences;
+    public Setting(PictureSettings pictureSettings, String key, String title, int max) {
+        mPictureSettings = pictureSettings;
         mTitle = title;
         mKey = key;
+        mIndex = pictureSettings.indexOf(key);
         mMaxValue = max;
         mSettingType = TYPE_INT;
     }
 
-    public Setting(SharedPreferences sharedPreferences, String key, String title) {
-        mSharedPreferences = sharedPreferences;
+    public Setting(PictureSettings pictureSettings, String key, String title) {
+        mPictureSettings = pictureSettings;
         mTitle = title;
         mKey = key;
+        mIndex = -1;
         mSettingType = TYPE_STRING;
     }
 
@@ -71,20 +74,18 @@ public class Setting {
     }
 
     public int getIntValue() {
-        return mSharedPreferences.getInt(mKey, -1);
+        return mPictureSettings.getValue(mIndex);
     }
 
     public String getStringValue() {
-        return mSharedPreferences.getString(mKey, "");
+        return mPictureSettings.getPreset();
     }
 
     public void setValue(int value) {
-        mSharedPreferences.edit().putInt(mKey, value).apply();
-        mSettingType = TYPE_INT;
+        mPictureSettings.setValue(mIndex, value);
     }
 
     public void setValue(String value) {
-        mSharedPreferences.edit().putString(mKey, value).apply();
-        mSettingType = TYPE_STRING;
+        mPictureSettings.setPreset(value);
     }
 }
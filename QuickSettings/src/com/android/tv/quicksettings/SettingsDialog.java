@@ -17,10 +17,10 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
+import android.os.Handler;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.KeyEvent;
 import android.view.View;
@@ -39,14 +39,12 @@ import java.util.Arrays;
 public class SettingsDialog extends Activity {
 
     private static final int PRESET_SETTING_INDEX = 0;
-    private static final int INTEGER_SETTING_START_INDEX = 1;
 
     private static final String TAG = "SettingsDialog";
     private static final boolean DEBUG = true;
 
     static final String EXTRA_START_POS = "com.android.tv.quicksettings.START_POS";
     private static final int SETTING_INT_VALUE_MIN = 0;
-    private static final int SETTING_INT_VALUE_STEP = 10;
 
     private VerticalGridView mPanelList;
     private SeekBar mSeekBar;
@@ -55,16 +53,18 @@ public class SettingsDialog extends Activity {
     private final SettingSelectedListener mSettingSelectedListener = new SettingSelectedListener();
     private Setting mFocusedSetting;
     private ArrayList<Setting> mSettings;
-    private SharedPreferences mSharedPreferences;
-
-    private PresetSettingsListener mPresetSettingsListener;
+    private PictureSettings mPictureSettings;
+    private PictureQualityBackend mPictureQualityBackend;
+    private SliderController mSliderController;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-        mPresetSettingsListener = new PresetSettingsListener(this);
+        mPictureSettings = PictureSettings.getInstance(this);
+        mPictureQualityBackend = new LocalPictureQualityBackend();
+        mSliderController = new SliderController(Choreographer.getInstance(), new Handler(),
+                mPictureQualityBackend, new SliderCallback());
 
         WindowManager.LayoutParams lp = getWindow().getAttributes();
         lp.height = WindowManager.LayoutParams.MATCH_PARENT;
@@ -110,6 +110,7 @@ public class SettingsDialog extends Activity {
                                     mSettings.get(PRESET_SETTING_INDEX).setValue(
                                             presetSettingValues[getResources().getInteger(
                                                     R.integer.standard_setting_index)]);
+                                    mPictureSettings.applyTo(mPictureQualityBackend);
                                 }
                             }).setNegativeButton(android.R.string.cancel,
                             new DialogInterface.OnClickListener() {
@@ -131,24 +132,18 @@ public class SettingsDialog extends Activity {
         mSettingValue = (TextView) findViewById(R.id.setting_value);
     }
 
-    @Override
-    protected void onResume() {
-        super.onResume();
-
-        mSharedPreferences.registerOnSharedPreferenceChangeListener(mPresetSettingsListener);
-    }
-
     @Override
     protected void onPause() {
         super.onPause();
 
-        mSharedPreferences.unregisterOnSharedPreferenceChangeListener(mPresetSettingsListener);
+        mSliderController.commit();
+        mPictureSettings.flush();
     }
 
     private ArrayList<Setting> getSettings() {
         ArrayList<Setting> settings = new ArrayList<>();
 
-        settings.add(new Setting(mSharedPreferences, "preset",
+        settings.add(new Setting(mPictureSettings, PictureSettings.KEY_PRESET,
                 getString(R.string.setting_preset_name)));
 
         String[] settingNames = getResources().getStringArray(R.array.setting_names);
@@ -156,7 +151,7 @@ public class SettingsDialog extends Activity {
         int[] maxSettingValues = getResources().getIntArray(R.array.setting_max_values);
         for (int i = 0; i < settingNames.length; i++) {
             settings.add(
-                    new Setting(mSharedPreferences, settingKeys[i], settingNames[i],
+                    new Setting(mPictureSettings, settingKeys[i], settingNames[i],
                             maxSettingValues[i]));
         }
         settings.add(new Setting(getString(R.string.setting_reset_defaults_name)));
@@ -173,8 +168,13 @@ public class SettingsDialog extends Activity {
                     mSettingValue.setVisibility(View.VISIBLE);
                     mSettingValue.setText(mFocusedSetting.getStringValue());
                     mSeekBar.setVisibility(View.GONE);
+                    mSliderController.unbind();
                     break;
                 case Setting.TYPE_INT:
+                    // Commits the previous slider before its value is read back
+                    mSliderController.bind(mFocusedSetting.getKey(),
+                            mFocusedSetting.getIntValue(), SETTING_INT_VALUE_MIN,
+                            mFocusedSetting.getMaxValue());
                     mSettingValue.setVisibility(View.VISIBLE);
                     mSettingValue.setText(Integer.toString(mFocusedSetting.getIntValue()));
                     mSeekBar.setMax(mFocusedSetting.getMaxValue());
@@ -182,6 +182,7 @@ public class SettingsDialog extends Activity {
                     mSeekBar.setVisibility(View.VISIBLE);
                     break;
                 default:
+                    mSliderController.unbind();
                     mSettingValue.setVisibility(View.GONE);
                     mSeekBar.setVisibility(View.GONE);
                     break;
@@ -189,6 +190,29 @@ public class SettingsDialog extends Activity {
         }
     }
 
+    private class SliderCallback implements SliderController.Callback {
+        @Override
+        public void onSliderValueChanged(int value) {
+            mSeekBar.setProgress(value);
+            mSettingValue.setText(Integer.toString(value));
+        }
+
+        @Override
+        public void onSliderValueSettled(String key, int value) {
+            // Also switches to the custom preset
+            mPictureSettings.setValue(mPictureSettings.indexOf(key), value);
+        }
+    }
+
+    @Override
+    public boolean onKeyDown(int keyCode, @NonNull KeyEvent event) {
+        if (mFocusedSetting != null && mFocusedSetting.getType() == Setting.TYPE_INT
+                && mSliderController.onKeyDown(keyCode, event)) {
+            return true;
+        }
+        return super.onKeyDown(keyCode, event);
+    }
+
     @Override
     public boolean onKeyUp(int keyCode, @NonNull KeyEvent event) {
         if (mFocusedSetting == null) {
@@ -196,7 +220,8 @@ public class SettingsDialog extends Activity {
         }
         switch (mFocusedSetting.getType()) {
             case Setting.TYPE_INT:
-                return integerSettingHandleKeyCode(keyCode, event);
+                return mSliderController.onKeyUp(keyCode, event)
+                        || super.onKeyUp(keyCode, event);
             case Setting.TYPE_STRING:
                 return stringSettingHandleKeyCode(keyCode, event);
             default:
@@ -204,33 +229,6 @@ public class SettingsDialog extends Activity {
         }
     }
 
-    private boolean integerSettingHandleKeyCode(int keyCode, KeyEvent event) {
-        switch (keyCode) {
-            case KeyEvent.KEYCODE_DPAD_RIGHT:
-                setFocusedSettingToValue(Math.min(
-                        mFocusedSetting.getIntValue() + SETTING_INT_VALUE_STEP,
-                        mFocusedSetting.getMaxValue()));
-                return true;
-            case KeyEvent.KEYCODE_DPAD_LEFT:
-                setFocusedSettingToValue(Math.max(
-                        mFocusedSetting.getIntValue() - SETTING_INT_VALUE_STEP,
-                        SETTING_INT_VALUE_MIN));
-                return true;
-            default:
-                return super.onKeyUp(keyCode, event);
-        }
-    }
-
-    private void setFocusedSettingToValue(int value) {
-        mFocusedSetting.setValue(value);
-        mSeekBar.setProgress(mFocusedSetting.getIntValue());
-        mSettingValue.setText(Integer.toString(mFocusedSetting.getIntValue()));
-        String[] presetSettingChoices = getResources().getStringArray(
-                R.array.setting_preset_values);
-        mSettings.get(PRESET_SETTING_INDEX).setValue(
-                presetSettingChoices[getResources().getInteger(R.integer.custom_setting_index)]);
-    }
-
     private boolean stringSettingHandleKeyCode(int keyCode, KeyEvent event) {
         if (!mFocusedSetting.getTitle().equals(getString(R.string.setting_preset_name))) {
             return super.onKeyUp(keyCode, event);
@@ -253,24 +251,10 @@ public class SettingsDialog extends Activity {
                 return super.onKeyUp(keyCode, event);
         }
         int newIndex = (currentIndex + presetSettingValues.length) % presetSettingValues.length;
+        // Applies the preset's values as a single change
         mFocusedSetting.setValue(presetSettingValues[newIndex]);
         mSettingValue.setText(presetSettingChoices[newIndex]);
-        int[] newSettingValues = null;
-        if (newIndex == getResources().getInteger(R.integer.standard_setting_index)) {
-            newSettingValues = getResources().getIntArray(R.array.standard_setting_values);
-        } else if (newIndex == getResources().getInteger(R.integer.cinema_setting_index)) {
-            newSettingValues = getResources().getIntArray(R.array.cinema_setting_values);
-        } else if (newIndex == getResources().getInteger(R.integer.vivid_setting_index)) {
-            newSettingValues = getResources().getIntArray(R.array.vivid_setting_values);
-        } else if (newIndex == getResources().getInteger(R.integer.game_setting_index)) {
-            newSettingValues = getResources().getIntArray(R.array.game_setting_values);
-        }
-        if (newSettingValues != null) {
-            for (int i = 0; i < newSettingValues.length; i++) {
-                mSettings.get(i + INTEGER_SETTING_START_INDEX).setValue(
-                        newSettingValues[i]);
-            }
-        }
+        mPictureSettings.applyTo(mPictureQualityBackend);
         return true;
     }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.android.tv.quicksettings;
+
+import android.os.Handler;
+import android.view.Choreographer;
+import android.view.KeyEvent;
+
+/**
+ * Drives an integer setting from the D-pad. Holding left or right repeats and speeds up the
+ * steps. Key events only move a target value; the visible value and the picture quality backend
+ * are updated at most once per display frame, and the setting is only committed once the user
+ * lets go and stops adjusting for {@link #SETTLE_DELAY_MS}.
+ */
+class SliderController implements Choreographer.FrameCallback {
+
+    /** How long the value has to stay put after the key is released before it's committed */
+    private static final long SETTLE_DELAY_MS = 300;
+
+    /**
+     * Step sizes, and how long the key has to be held for each, in order. A single press moves by
+     * 1, where the dialog used to move by 10; holding the key gets to 10 after 2.4 seconds.
+     */
+    private static final int[] STEPS = {1, 2, 5, 10};
+    private static final long[] STEP_HOLD_MILLIS = {0, 400, 1200, 2400};
+
+    /**
+     * Receives slider updates.
+     */
+    interface Callback {
+        /**
+         * Called at most once per frame while the value moves, to update the UI.
+         */
+        void onSliderValueChanged(int value);
+
+        /**
+         * Called once the user settled on a value.
+         * @param key Key of the setting, which may no longer be bound
+         */
+        void onSliderValueSettled(String key, int value);
+    }
+
+    private final Choreographer mChoreographer;
+    private final Handler mHandler;
+    private final PictureQualityBackend mBackend;
+    private final Callback mCallback;
+    private final Runnable mSettleRunnable = this::commit;
+
+    private String mKey;
+    private int mMin;
+    private int mMax;
+    /** Value shown and applied to the backend */
+    private int mValue;
+    /** Value the key presses moved to, shown on the next frame */
+    private int mTargetValue;
+    /** Last value handed to {@link Callback#onSliderValueSettled(String, int)} */
+    private int mCommittedValue;
+    private boolean mFrameScheduled;
+
+    SliderController(Choreographer choreographer, Handler handler, PictureQualityBackend backend,
+            Callback callback) {
+        mChoreographer = choreographer;
+        mHandler = handler;
+        mBackend = backend;
+        mCallback = callback;
+    }
+
+    /**
+     * Starts driving a setting, committing the previous one first.
+     */
+    void bind(String key, int value, int min, int max) {
+        commit();
+        mKey = key;
+        mMin = min;
+        mMax = max;
+        mValue = value;
+        mTargetValue = value;
+        mCommittedValue = value;
+    }
+
+    /**
+     * Stops driving the current setting, committing it.
+     */
+    void unbind() {
+        commit();
+        mKey = null;
+    }
+
+    /**
+     * @return Whether the key was handled
+     */
+    boolean onKeyDown(int keyCode, KeyEvent event) {
+        if (mKey == null) {
+            return false;
+        }
+        final int direction;
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+                direction = 1;
+                break;
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+                direction = -1;
+                break;
+            default:
+                return false;
+        }
+        mHandler.removeCallbacks(mSettleRunnable);
+        final int step = getStep(event.getEventTime() - event.getDownTime());
+        final int target = Math.max(mMin, Math.min(mMax, mTargetValue + direction * step));
+        if (target != mTargetValue) {
+            mTargetValue = target;
+            scheduleFrame();
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the key was handled
+     */
+    boolean onKeyUp(int keyCode, KeyEvent event) {
+        if (mKey == null) {
+            return false;
+        }
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+                mHandler.removeCallbacks(mSettleRunnable);
+                mHandler.postDelayed(mSettleRunnable, SETTLE_DELAY_MS);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Settles on the latest value right away, e.g. when the dialog goes away.
+     */
+    void commit() {
+        mHandler.removeCallbacks(mSettleRunnable);
+        if (mKey == null) {
+            return;
+        }
+        if (mFrameScheduled) {
+            mChoreographer.removeFrameCallback(this);
+            mFrameScheduled = false;
+            updateValue();
+        }
+        if (mCommittedValue != mValue) {
+            mCommittedValue = mValue;
+            mCallback.onSliderValueSettled(mKey, mValue);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+        if (mKey != null) {
+            updateValue();
+        }
+    }
+
+    /**
+     * @return How much a key press moves the value after the key was held for the given time
+     */
+    private static int getStep(long heldMillis) {
+        int step = STEPS[0];
+        for (int i = 0; i < STEPS.length && heldMillis >= STEP_HOLD_MILLIS[i]; i++) {
+            step = STEPS[i];
+        }
+        return step;
+    }
+
+    private void scheduleFrame() {
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            mChoreographer.postFrameCallback(this);
+        }
+    }
+
+    private void updateValue() {
+        if (mValue == mTargetValue) {
+            return;
+        }
+        mValue = mTargetValue;
+        mBackend.applyValue(mKey, mValue);
+        mCallback.onSliderValueChanged(mValue);
+    }
+}
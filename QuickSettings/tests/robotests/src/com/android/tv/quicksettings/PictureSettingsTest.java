@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.quicksettings;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class PictureSettingsTest {
+
+    @Test
+    public void applyTo_pushesResetValues() {
+        final PictureSettings pictureSettings =
+                PictureSettings.getInstance(RuntimeEnvironment.application);
+        final String[] keys = RuntimeEnvironment.application.getResources()
+                .getStringArray(R.array.setting_keys);
+        final int[] standardValues = RuntimeEnvironment.application.getResources()
+                .getIntArray(R.array.standard_setting_values);
+        final LocalPictureQualityBackend backend = new LocalPictureQualityBackend();
+        pictureSettings.setValue(0, standardValues[0] + 1);
+
+        pictureSettings.setPreset("standard");
+        pictureSettings.applyTo(backend);
+
+        assertThat(backend.getApplyCount()).isEqualTo(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            assertThat(backend.getValue(keys[i])).isEqualTo(standardValues[i]);
+        }
+    }
+}
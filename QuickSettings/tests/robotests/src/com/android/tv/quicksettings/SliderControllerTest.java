@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.quicksettings;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.view.KeyEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class SliderControllerTest {
+
+    private static final String KEY = "brightness";
+    /** Long enough for any pending frame callback to run */
+    private static final long FRAME_MS = 17;
+    private static final long SETTLE_MS = 300;
+
+    private LocalPictureQualityBackend mBackend;
+    private RecordingCallback mCallback;
+    private SliderController mController;
+
+    @Before
+    public void setUp() {
+        // Keeps frame callbacks and delayed commits queued until the test runs them
+        ShadowLooper.pauseMainLooper();
+        mBackend = new LocalPictureQualityBackend();
+        mCallback = new RecordingCallback();
+        mController = new SliderController(Choreographer.getInstance(),
+                new Handler(Looper.getMainLooper()), mBackend, mCallback);
+        mController.bind(KEY, 50, 0, 100);
+    }
+
+    @Test
+    public void singlePress_movesOneStep() {
+        pressRight(0);
+        runFrame();
+
+        assertThat(mCallback.mValues).containsExactly(51);
+        assertThat(mBackend.getValue(KEY)).isEqualTo(51);
+    }
+
+    @Test
+    public void heldKey_accelerates() {
+        mController.bind(KEY, 0, 0, 100);
+
+        for (long heldMillis : new long[] {0, 400, 1200, 2400}) {
+            pressRight(heldMillis);
+            runFrame();
+        }
+
+        assertThat(mCallback.mValues).containsExactly(1, 3, 8, 18).inOrder();
+    }
+
+    @Test
+    public void repeatsWithinFrame_updateOncePerFrame() {
+        pressRight(0);
+        pressRight(0);
+        pressRight(0);
+
+        assertThat(mBackend.getApplyCount()).isEqualTo(0);
+        assertThat(mCallback.mValues).isEmpty();
+
+        runFrame();
+
+        assertThat(mBackend.getApplyCount()).isEqualTo(1);
+        assertThat(mBackend.getValue(KEY)).isEqualTo(53);
+        assertThat(mCallback.mValues).containsExactly(53);
+    }
+
+    @Test
+    public void heldKey_staysInRange() {
+        pressRight(2400);
+        runFrame();
+        for (int i = 0; i < 10; i++) {
+            pressRight(2400);
+        }
+        runFrame();
+
+        assertThat(mCallback.mValues).containsExactly(60, 100).inOrder();
+    }
+
+    @Test
+    public void keyUp_commitsOnceSettled() {
+        pressRight(0);
+        runFrame();
+        mController.onKeyUp(KeyEvent.KEYCODE_DPAD_RIGHT,
+                new KeyEvent(KeyEvent.ACTION_UP, KeyEvent.KEYCODE_DPAD_RIGHT));
+
+        ShadowLooper.idleMainLooper(SETTLE_MS - 1, TimeUnit.MILLISECONDS);
+        assertThat(mCallback.mSettledKey).isNull();
+
+        ShadowLooper.idleMainLooper(1, TimeUnit.MILLISECONDS);
+        assertThat(mCallback.mSettledKey).isEqualTo(KEY);
+        assertThat(mCallback.mSettledValue).isEqualTo(51);
+    }
+
+    @Test
+    public void commit_appliesPendingFrame() {
+        pressRight(0);
+
+        mController.commit();
+
+        assertThat(mBackend.getValue(KEY)).isEqualTo(51);
+        assertThat(mCallback.mSettledValue).isEqualTo(51);
+    }
+
+    private void pressRight(long heldMillis) {
+        mController.onKeyDown(KeyEvent.KEYCODE_DPAD_RIGHT, new KeyEvent(0, heldMillis,
+                KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_DPAD_RIGHT, heldMillis > 0 ? 1 : 0));
+    }
+
+    private static void runFrame() {
+        ShadowLooper.idleMainLooper(FRAME_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static class RecordingCallback implements SliderController.Callback {
+        final List<Integer> mValues = new ArrayList<>();
+        String mSettledKey;
+        int mSettledValue;
+
+        @Override
+        public void onSliderValueChanged(int value) {
+            mValues.add(value);
+        }
+
+        @Override
+        public void onSliderValueSettled(String key, int value) {
+            mSettledKey = key;
+            mSettledValue = value;
+        }
+    }
+}
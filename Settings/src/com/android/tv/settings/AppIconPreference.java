@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tv.settings;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+
+import androidx.annotation.Nullable;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceViewHolder;
+
+import com.android.tv.settings.util.AppIconLoader;
+
+/**
+ * Preference showing the icon of an app. The icon is only loaded, through {@link AppIconLoader},
+ * once the preference is bound to a view, i.e. when the row becomes visible.
+ */
+public class AppIconPreference extends Preference {
+
+    private ApplicationInfo mAppInfo;
+    private boolean mIconRequested;
+
+    public AppIconPreference(Context context, AttributeSet attrs,
+            int defStyleAttr, int defStyleRes) {
+        super(context, attrs, defStyleAttr, defStyleRes);
+    }
+
+    public AppIconPreference(Context context, AttributeSet attrs,
+            int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    public AppIconPreference(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public AppIconPreference(Context context) {
+        super(context);
+    }
+
+    /**
+     * Sets the app whose icon should be shown. Uses the cached icon if there is one, otherwise a
+     * placeholder is shown until the row is bound and the icon has loaded.
+     * @param info App to show the icon of, or null for no icon
+     */
+    public void setAppIcon(@Nullable ApplicationInfo info) {
+        if (isSameApp(mAppInfo, info)) {
+            mAppInfo = info;
+            return;
+        }
+        mAppInfo = info;
+        if (info == null) {
+            mIconRequested = true;
+            setIcon(null);
+            return;
+        }
+        final AppIconLoader loader = AppIconLoader.getInstance(getContext());
+        final Drawable cached = loader.getCachedIcon(info);
+        mIconRequested = cached != null;
+        setIcon(cached != null ? cached : loader.createPlaceholder());
+    }
+
+    @Override
+    public void onBindViewHolder(PreferenceViewHolder holder) {
+        super.onBindViewHolder(holder);
+        if (mIconRequested || mAppInfo == null) {
+            return;
+        }
+        mIconRequested = true;
+        final ApplicationInfo info = mAppInfo;
+        AppIconLoader.getInstance(getContext()).loadIcon(info, icon -> {
+            if (isSameApp(mAppInfo, info)) {
+                setIcon(icon);
+            }
+        });
+    }
+
+    private static boolean isSameApp(ApplicationInfo lhs, ApplicationInfo rhs) {
+        if (lhs == rhs) {
+            return true;
+        }
+        return lhs != null && rhs != null
+                && TextUtils.equals(lhs.packageName, rhs.packageName)
+                && lhs.uid == rhs.uid
+                && TextUtils.equals(lhs.sourceDir, rhs.sourceDir);
+    }
+}
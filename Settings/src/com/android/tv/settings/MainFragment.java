@@ -281,7 +281,7 @@ public class MainFragment extends PreferenceControllerFragment implements
             networkPref.setSummary(R.string.connectivity_summary_ethernet_connected);
         } else if (mConnectivityListener.isWifiEnabledOrEnabling()) {
             if (mConnectivityListener.isWifiConnected()) {
-                final int signal = mConnectivityListener.getWifiSignalStrength(5);
+                final int signal = mConnectivityListener.getWifiSignalStrength();
                 switch (signal) {
                     case 4:
                         networkPref.setIcon(R.drawable.ic_wifi_signal_4_white);
@@ -17,7 +17,6 @@
 package com.android.tv.settings.accessories;
 
 import android.bluetooth.BluetoothClass;
-import android.util.Log;
 
 import com.android.tv.settings.util.bluetooth.BluetoothDeviceCriteria;
 
@@ -25,6 +24,14 @@ public class A2dpDeviceCriteria extends BluetoothDeviceCriteria {
 
     public static final String TAG = "aah.A2dpDeviceCriteria";
 
+    private static final long ACCEPTABLE_DEVICES_MASK = createMinorClassMask(
+            BluetoothClass.Device.AUDIO_VIDEO_UNCATEGORIZED,
+            BluetoothClass.Device.AUDIO_VIDEO_WEARABLE_HEADSET,
+            BluetoothClass.Device.AUDIO_VIDEO_HEADPHONES,
+            BluetoothClass.Device.AUDIO_VIDEO_LOUDSPEAKER,
+            BluetoothClass.Device.AUDIO_VIDEO_PORTABLE_AUDIO,
+            BluetoothClass.Device.AUDIO_VIDEO_HIFI_AUDIO);
+
     @Override
     public boolean isMatchingMajorDeviceClass(int majorDeviceClass) {
         return majorDeviceClass == BluetoothClass.Device.Major.AUDIO_VIDEO;
@@ -32,13 +39,7 @@ public class A2dpDeviceCriteria extends BluetoothDeviceCriteria {
 
     @Override
     public boolean isMatchingDeviceClass(int majorMinorClass) {
-        Log.d(TAG, "isMatchingDeviceClass : " + majorMinorClass);
-        return (majorMinorClass == BluetoothClass.Device.AUDIO_VIDEO_UNCATEGORIZED ||
-                majorMinorClass == BluetoothClass.Device.AUDIO_VIDEO_WEARABLE_HEADSET ||
-                majorMinorClass == BluetoothClass.Device.AUDIO_VIDEO_HEADPHONES ||
-                majorMinorClass == BluetoothClass.Device.AUDIO_VIDEO_LOUDSPEAKER ||
-                majorMinorClass == BluetoothClass.Device.AUDIO_VIDEO_PORTABLE_AUDIO ||
-                majorMinorClass == BluetoothClass.Device.AUDIO_VIDEO_HIFI_AUDIO
-               );
+        // Only called once the major class is known to be audio/video
+        return isMinorClassInMask(ACCEPTABLE_DEVICES_MASK, majorMinorClass);
     }
 }
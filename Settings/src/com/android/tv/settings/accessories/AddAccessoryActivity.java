@@ -35,6 +35,7 @@ import android.view.WindowManager;
 import androidx.annotation.NonNull;
 
 import com.android.tv.settings.R;
+import com.android.tv.settings.util.bluetooth.AdaptiveScanPolicy;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
@@ -251,6 +252,10 @@ public class AddAccessoryActivity extends Activity implements BluetoothDevicePai
     @Override
     public void onResume() {
         super.onResume();
+        if (mBluetoothPairer != null) {
+            // The user is looking at the list of devices, find new ones quickly
+            mBluetoothPairer.setScanPolicy(AdaptiveScanPolicy.createAggressive());
+        }
         if (mNoInputMode) {
             // Start timer count down for exiting activity.
             if (DEBUG) Log.d(TAG, "starting auto-exit timer");
@@ -261,6 +266,9 @@ public class AddAccessoryActivity extends Activity implements BluetoothDevicePai
     @Override
     public void onPause() {
         super.onPause();
+        if (mBluetoothPairer != null) {
+            mBluetoothPairer.setScanPolicy(AdaptiveScanPolicy.createPassive());
+        }
         if (DEBUG) Log.d(TAG, "stopping auto-exit timer");
         mAutoExitHandler.removeCallbacks(mAutoExitRunnable);
     }
@@ -33,8 +33,10 @@ import android.os.SystemClock;
 import android.util.Log;
 import android.view.InputDevice;
 
+import com.android.tv.settings.util.bluetooth.AdaptiveScanPolicy;
 import com.android.tv.settings.util.bluetooth.BluetoothDeviceCriteria;
 import com.android.tv.settings.util.bluetooth.BluetoothScanner;
+import com.android.tv.settings.util.bluetooth.ScanPolicy;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -270,6 +272,7 @@ public class BluetoothDevicePairer {
     private boolean mLinkReceiverRegistered = false;
     private final ArrayList<BluetoothDeviceCriteria> mBluetoothDeviceCriteria = new ArrayList<>();
     private InputDeviceCriteria mInputDeviceCriteria;
+    private ScanPolicy mScanPolicy = AdaptiveScanPolicy.createAggressive();
 
     /**
      * Should be instantiated on a thread with a Looper, perhaps the main thread!
@@ -354,9 +357,21 @@ public class BluetoothDevicePairer {
         // which might seem odd from a client perspective
         setStatus(STATUS_SCANNING);
 
+        BluetoothScanner.setScanPolicy(mContext, mScanPolicy);
         BluetoothScanner.startListening(mContext, mBtListener, mBluetoothDeviceCriteria);
     }
 
+    /**
+     * Sets how often to look for devices, e.g. {@link AdaptiveScanPolicy#createPassive()} while
+     * the list of devices isn't visible. Takes effect immediately if already scanning.
+     */
+    public void setScanPolicy(ScanPolicy policy) {
+        mScanPolicy = policy;
+        if (mStatus == STATUS_SCANNING) {
+            BluetoothScanner.setScanPolicy(mContext, policy);
+        }
+    }
+
     public void clearDeviceList() {
         doCancel();
         mVisibleDevices.clear();
@@ -516,7 +531,8 @@ public class BluetoothDevicePairer {
     private BluetoothDevice getAutoPairDevice() {
         List<BluetoothDevice> inputDevices = new ArrayList<>();
         for (BluetoothDevice device : mVisibleDevices) {
-            if (mInputDeviceCriteria.isInputDevice(device.getBluetoothClass())) {
+            // Verdicts are remembered by the criteria for the current scan
+            if (mInputDeviceCriteria.isMatchingDevice(device)) {
                 inputDevices.add(device);
             }
         }
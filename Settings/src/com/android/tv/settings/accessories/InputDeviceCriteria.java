@@ -33,6 +33,10 @@ public class InputDeviceCriteria extends BluetoothDeviceCriteria {
     public static final int MINOR_DEVICE_CLASS_REMOTE =
             Integer.parseInt("0000000001100", 2);
 
+    private static final int ACCEPTABLE_DEVICES_MASK = MINOR_DEVICE_CLASS_POINTING
+            | MINOR_DEVICE_CLASS_JOYSTICK | MINOR_DEVICE_CLASS_GAMEPAD
+            | MINOR_DEVICE_CLASS_KEYBOARD | MINOR_DEVICE_CLASS_REMOTE;
+
     @Override
     public boolean isMatchingMajorDeviceClass(int majorDeviceClass) {
         return majorDeviceClass == BluetoothClass.Device.Major.PERIPHERAL;
@@ -40,11 +44,7 @@ public class InputDeviceCriteria extends BluetoothDeviceCriteria {
 
     @Override
     public boolean isMatchingDeviceClass(int majorMinorClass) {
-        int acceptableDevicesMask = MINOR_DEVICE_CLASS_POINTING | MINOR_DEVICE_CLASS_JOYSTICK |
-                MINOR_DEVICE_CLASS_GAMEPAD | MINOR_DEVICE_CLASS_KEYBOARD |
-                MINOR_DEVICE_CLASS_REMOTE;
-
-        return (acceptableDevicesMask & majorMinorClass) != 0;
+        return (ACCEPTABLE_DEVICES_MASK & majorMinorClass) != 0;
     }
 
     public boolean isInputDevice(BluetoothClass bluetoothClass) {
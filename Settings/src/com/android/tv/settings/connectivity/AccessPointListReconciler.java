@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.connectivity;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceGroup;
+
+import com.android.settingslib.wifi.AccessPoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the Wi-Fi network preferences in sync with scan results, touching only the rows whose
+ * access point changed in a way that matters for the row: identity, security, level bucket and
+ * whether it's the active network.
+ *
+ * Reordering is rate limited so that the focused row doesn't jump around on every scan, unless
+ * the active network changed. New networks are appended at the end in the meantime.
+ */
+class AccessPointListReconciler {
+
+    @VisibleForTesting
+    static final long MIN_REORDER_INTERVAL_MS = 5 * 1000;
+
+    /**
+     * Creates and refreshes the preferences of the rows.
+     */
+    interface Binder {
+        /**
+         * @return A new preference for the access point, tagged on the access point
+         */
+        @NonNull
+        Preference createPreference(@NonNull AccessPoint accessPoint);
+
+        /**
+         * Refreshes the title, summary and icon of a row whose access point changed.
+         */
+        void refreshPreference(@NonNull Preference preference);
+    }
+
+    /**
+     * Mutations made by a call to {@link #reconcile(Collection)}.
+     */
+    static final class UpdateStats {
+        int added;
+        int removed;
+        int rebound;
+        int moved;
+        /** Whether reordering was skipped because of the rate limit */
+        boolean reorderDeferred;
+
+        int getMutationCount() {
+            return added + removed + rebound + moved;
+        }
+
+        @Override
+        public String toString() {
+            return "UpdateStats(added=" + added + " removed=" + removed + " rebound=" + rebound
+                    + " moved=" + moved + " reorderDeferred=" + reorderDeferred + ")";
+        }
+    }
+
+    private static final class Row {
+        Preference mPreference;
+        AccessPoint mAccessPoint;
+        boolean mActive;
+        int mSecurity;
+        int mLevel;
+        String mSsid;
+        /** Intent to connect to the network, kept as long as the SSID and security don't change */
+        Intent mConnectIntent;
+    }
+
+    private final Context mContext;
+    private final PreferenceGroup mGroup;
+    private final Binder mBinder;
+    /** Rows keyed by {@link AccessPoint#getKey()} */
+    private final Map<String, Row> mRows = new ArrayMap<>();
+    private String mActiveKey;
+    private long mLastReorderTime = -MIN_REORDER_INTERVAL_MS;
+    private int mNextOrder;
+
+    AccessPointListReconciler(Context context, PreferenceGroup group, Binder binder) {
+        mContext = context;
+        mGroup = group;
+        mBinder = binder;
+    }
+
+    /**
+     * Updates the rows to show the given access points, in order.
+     * @param accessPoints Access points from the latest scan
+     * @return What was changed
+     */
+    @NonNull
+    UpdateStats reconcile(@NonNull Collection<AccessPoint> accessPoints) {
+        final UpdateStats stats = new UpdateStats();
+        final Map<String, Row> staleRows = new ArrayMap<>(mRows.size());
+        staleRows.putAll(mRows);
+        final List<Row> orderedRows = new ArrayList<>(accessPoints.size());
+        String activeKey = null;
+
+        for (final AccessPoint accessPoint : accessPoints) {
+            final String key = accessPoint.getKey();
+            if (accessPoint.isActive()) {
+                activeKey = key;
+            }
+            Row row = staleRows.remove(key);
+            if (row != null && row.mAccessPoint != accessPoint) {
+                // The tracker replaced the access point, the preference is bound to the old one
+                mGroup.removePreference(row.mPreference);
+                stats.removed++;
+                row = null;
+            }
+            if (row == null) {
+                row = new Row();
+                row.mAccessPoint = accessPoint;
+                row.mPreference = mBinder.createPreference(accessPoint);
+                mRows.put(key, row);
+                bindRow(row);
+                row.mPreference.setOrder(mNextOrder++);
+                mGroup.addPreference(row.mPreference);
+                stats.added++;
+            } else if (isStale(row)) {
+                bindRow(row);
+                mBinder.refreshPreference(row.mPreference);
+                stats.rebound++;
+            } else if (row.mActive) {
+                // The details screen gets a snapshot of the network state, keep it current
+                WifiDetailsFragment.prepareArgs(row.mPreference.getExtras(), accessPoint);
+            }
+            orderedRows.add(row);
+        }
+
+        for (final Map.Entry<String, Row> entry : staleRows.entrySet()) {
+            mRows.remove(entry.getKey());
+            mGroup.removePreference(entry.getValue().mPreference);
+            stats.removed++;
+        }
+
+        final long now = SystemClock.elapsedRealtime();
+        final boolean activeChanged = !TextUtils.equals(activeKey, mActiveKey);
+        mActiveKey = activeKey;
+        if (!isInOrder(orderedRows)) {
+            if (activeChanged || now - mLastReorderTime >= MIN_REORDER_INTERVAL_MS) {
+                mLastReorderTime = now;
+                int order = 0;
+                for (final Row row : orderedRows) {
+                    if (row.mPreference.getOrder() != order) {
+                        row.mPreference.setOrder(order);
+                        stats.moved++;
+                    }
+                    order++;
+                }
+                mNextOrder = order;
+            } else {
+                stats.reorderDeferred = true;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return How long until the rate limit allows reordering again
+     */
+    long getReorderDelay() {
+        final long elapsed = SystemClock.elapsedRealtime() - mLastReorderTime;
+        return Math.max(0, MIN_REORDER_INTERVAL_MS - elapsed);
+    }
+
+    /**
+     * Removes all rows, e.g. when Wi-Fi is turned off.
+     */
+    void clear() {
+        for (final Row row : mRows.values()) {
+            mGroup.removePreference(row.mPreference);
+        }
+        mRows.clear();
+        mActiveKey = null;
+        mNextOrder = 0;
+    }
+
+    private static boolean isInOrder(List<Row> rows) {
+        int lastOrder = Integer.MIN_VALUE;
+        for (final Row row : rows) {
+            final int order = row.mPreference.getOrder();
+            if (order < lastOrder) {
+                return false;
+            }
+            lastOrder = order;
+        }
+        return true;
+    }
+
+    private static boolean isStale(Row row) {
+        final AccessPoint accessPoint = row.mAccessPoint;
+        return row.mActive != accessPoint.isActive()
+                || row.mSecurity != accessPoint.getSecurity()
+                || row.mLevel != accessPoint.getLevel()
+                || !TextUtils.equals(row.mSsid, accessPoint.getSsidStr());
+    }
+
+    private void bindRow(Row row) {
+        final AccessPoint accessPoint = row.mAccessPoint;
+        final Preference preference = row.mPreference;
+        final boolean active = accessPoint.isActive();
+        final int security = accessPoint.getSecurity();
+        final String ssid = accessPoint.getSsidStr();
+        if (row.mConnectIntent != null
+                && (row.mSecurity != security || !TextUtils.equals(row.mSsid, ssid))) {
+            row.mConnectIntent = null;
+        }
+        row.mActive = active;
+        row.mSecurity = security;
+        row.mLevel = accessPoint.getLevel();
+        row.mSsid = ssid;
+        if (active) {
+            preference.setFragment(WifiDetailsFragment.class.getName());
+            WifiDetailsFragment.prepareArgs(preference.getExtras(), accessPoint);
+            preference.setIntent(null);
+        } else {
+            if (row.mConnectIntent == null) {
+                row.mConnectIntent =
+                        WifiConnectionActivity.createIntent(mContext, accessPoint, security);
+            }
+            preference.setFragment(null);
+            preference.setIntent(row.mConnectIntent);
+        }
+    }
+}
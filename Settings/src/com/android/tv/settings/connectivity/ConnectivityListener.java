@@ -23,18 +23,19 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.EthernetManager;
-import android.net.LinkAddress;
-import android.net.LinkProperties;
-import android.net.Network;
 import android.net.NetworkInfo;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.telephony.PhoneStateListener;
 import android.telephony.SignalStrength;
 import android.telephony.TelephonyManager;
-import android.text.TextUtils;
 
 import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 
 import com.android.settingslib.core.lifecycle.Lifecycle;
 import com.android.settingslib.core.lifecycle.LifecycleObserver;
@@ -42,20 +43,32 @@ import com.android.settingslib.core.lifecycle.events.OnStart;
 import com.android.settingslib.core.lifecycle.events.OnStop;
 import com.android.settingslib.wifi.AccessPoint;
 import com.android.settingslib.wifi.WifiTracker;
+import com.android.tv.settings.R;
 
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executor;
 
 /**
  * Listens for changes to the current connectivity status.
+ * <p>
+ * The status is read off the main thread into a {@link ConnectivitySnapshot}, and the
+ * {@link Listener} is only called when the snapshot differs from the previous one. Wifi RSSI
+ * changes in particular are broadcast every few seconds, but rarely move the signal level.
  */
 public class ConnectivityListener implements WifiTracker.WifiListener, LifecycleObserver, OnStart,
         OnStop {
 
     private static final String TAG = "ConnectivityListener";
 
+    /** Number of levels the wifi signal strength is kept in, as shown on the main screen */
+    @VisibleForTesting
+    static final int WIFI_SIGNAL_LEVELS = 5;
+
     private final Context mContext;
     private final Listener mListener;
+    /** Number of levels the wifi details screen shows the signal strength in */
+    private final int mWifiDetailsSignalLevels;
     private boolean mStarted;
 
     private WifiTracker mWifiTracker;
@@ -67,29 +80,36 @@ public class ConnectivityListener implements WifiTracker.WifiListener, Lifecycle
     private final BroadcastReceiver mNetworkReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            if (mListener != null) {
-                mListener.onConnectivityChange();
-            }
+            requestSnapshotUpdate();
         }
     };
     private final EthernetManager.Listener mEthernetListener = new EthernetManager.Listener() {
         @Override
         public void onAvailabilityChanged(String iface, boolean isAvailable) {
-            mListener.onConnectivityChange();
+            requestSnapshotUpdate();
         }
     };
     private final PhoneStateListener mPhoneStateListener = new PhoneStateListener() {
         @Override
         public void onSignalStrengthsChanged(SignalStrength signalStrength) {
             mCellSignalStrength = signalStrength;
-            mListener.onConnectivityChange();
+            requestSnapshotUpdate();
         }
     };
 
     private SignalStrength mCellSignalStrength;
-    private int mNetworkType;
-    private String mWifiSsid;
-    private int mWifiSignalStrength;
+    private final EthernetLinkPropertiesCache mEthernetCache =
+            new EthernetLinkPropertiesCache(this::requestSnapshotUpdate);
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Executor mSnapshotExecutor;
+    private ConnectivitySnapshot mSnapshot = ConnectivitySnapshot.EMPTY;
+    /** Whether a snapshot is being built */
+    private boolean mSnapshotTaskRunning;
+    /** Whether the status changed after the snapshot being built was started */
+    private boolean mSnapshotUpdatePending;
+    /** Whether the next snapshot is handed to the listener even if it didn't change */
+    private boolean mForceNextSnapshot;
 
     /**
      * @deprecated use the constructor that provides a {@link Lifecycle} instead
@@ -106,11 +126,27 @@ public class ConnectivityListener implements WifiTracker.WifiListener, Lifecycle
         mWifiManager = mContext.getSystemService(WifiManager.class);
         mEthernetManager = mContext.getSystemService(EthernetManager.class);
         mListener = listener;
+        mWifiDetailsSignalLevels = getWifiDetailsSignalLevels(context);
         if (lifecycle != null) {
             mWifiTracker = new WifiTracker(context, this, lifecycle, true, true);
         } else {
             mWifiTracker = new WifiTracker(context, this, true, true);
         }
+        mSnapshotExecutor = AsyncTask.THREAD_POOL_EXECUTOR;
+    }
+
+    @VisibleForTesting
+    ConnectivityListener(Context context, Listener listener,
+            ConnectivityManager connectivityManager, WifiManager wifiManager,
+            EthernetManager ethernetManager, WifiTracker wifiTracker, Executor snapshotExecutor) {
+        mContext = context;
+        mConnectivityManager = connectivityManager;
+        mWifiManager = wifiManager;
+        mEthernetManager = ethernetManager;
+        mListener = listener;
+        mWifiDetailsSignalLevels = getWifiDetailsSignalLevels(context);
+        mWifiTracker = wifiTracker;
+        mSnapshotExecutor = snapshotExecutor;
     }
 
     /**
@@ -131,7 +167,11 @@ public class ConnectivityListener implements WifiTracker.WifiListener, Lifecycle
     public void onStart() {
         if (!mStarted) {
             mStarted = true;
-            updateConnectivityStatus();
+            // Registered first so that snapshots read the ethernet address from the cache
+            mEthernetCache.register(mConnectivityManager, mHandler);
+            // Fragments bind before the first snapshot is built, so always give it to them
+            mForceNextSnapshot = true;
+            requestSnapshotUpdate();
             IntentFilter networkIntentFilter = new IntentFilter();
             networkIntentFilter.addAction(WifiManager.NETWORK_STATE_CHANGED_ACTION);
             networkIntentFilter.addAction(WifiManager.RSSI_CHANGED_ACTION);
@@ -169,6 +209,7 @@ public class ConnectivityListener implements WifiTracker.WifiListener, Lifecycle
             mContext.unregisterReceiver(mNetworkReceiver);
             mWifiListener = null;
             mEthernetManager.removeListener(mEthernetListener);
+            mEthernetCache.unregister(mConnectivityManager);
             final TelephonyManager telephonyManager = mContext
                     .getSystemService(TelephonyManager.class);
             if (telephonyManager != null) {
@@ -191,39 +232,36 @@ public class ConnectivityListener implements WifiTracker.WifiListener, Lifecycle
     }
 
     public String getWifiIpAddress() {
-        if (isWifiConnected()) {
-            WifiInfo wifiInfo = mWifiManager.getConnectionInfo();
-            int ip = wifiInfo.getIpAddress();
-            return String.format(Locale.US, "%d.%d.%d.%d", (ip & 0xff), (ip >> 8 & 0xff),
-                    (ip >> 16 & 0xff), (ip >> 24 & 0xff));
-        } else {
-            return "";
-        }
+        return isWifiConnected() && mSnapshot.wifiIpAddress != null
+                ? mSnapshot.wifiIpAddress : "";
     }
 
     /**
      * Return the MAC address of the currently connected Wifi AP.
      */
-    @SuppressLint("HardwareIds")
     public String getWifiMacAddress() {
-        if (isWifiConnected()) {
-            WifiInfo wifiInfo = mWifiManager.getConnectionInfo();
-            return wifiInfo.getMacAddress();
-        } else {
-            return "";
-        }
+        return isWifiConnected() && mSnapshot.wifiMacAddress != null
+                ? mSnapshot.wifiMacAddress : "";
+    }
+
+    /**
+     * @return The connectivity status as of the last change given to the {@link Listener}
+     */
+    @UiThread
+    ConnectivitySnapshot getSnapshot() {
+        return mSnapshot;
     }
 
     public boolean isEthernetConnected() {
-        return mNetworkType == ConnectivityManager.TYPE_ETHERNET;
+        return mSnapshot.networkType == ConnectivityManager.TYPE_ETHERNET;
     }
 
     public boolean isWifiConnected() {
-        return mNetworkType == ConnectivityManager.TYPE_WIFI;
+        return mSnapshot.networkType == ConnectivityManager.TYPE_WIFI;
     }
 
     public boolean isCellConnected() {
-        return mNetworkType == ConnectivityManager.TYPE_MOBILE;
+        return mSnapshot.networkType == ConnectivityManager.TYPE_MOBILE;
     }
 
     /**
@@ -234,50 +272,35 @@ public class ConnectivityListener implements WifiTracker.WifiListener, Lifecycle
                 && mEthernetManager.getAvailableInterfaces().length > 0;
     }
 
-    private Network getFirstEthernet() {
-        final Network[] networks = mConnectivityManager.getAllNetworks();
-        for (final Network network : networks) {
-            NetworkInfo networkInfo = mConnectivityManager.getNetworkInfo(network);
-            if (networkInfo != null && networkInfo.getType() == ConnectivityManager.TYPE_ETHERNET) {
-                return network;
-            }
+    /**
+     * Return the addresses of the first ethernet network, separated by newlines. While started
+     * this is read from memory, so it can be called from any thread.
+     */
+    public String getEthernetIpAddress() {
+        if (mEthernetCache.isRegistered()) {
+            return mEthernetCache.getIpAddress();
         }
-        return null;
+        return EthernetLinkPropertiesCache.scanIpAddress(mConnectivityManager);
     }
 
-    public String getEthernetIpAddress() {
-        final Network network = getFirstEthernet();
-        if (network == null) {
-            return null;
-        }
-        final StringBuilder sb = new StringBuilder();
-        boolean gotAddress = false;
-        final LinkProperties linkProperties = mConnectivityManager.getLinkProperties(network);
-        for (LinkAddress linkAddress : linkProperties.getLinkAddresses()) {
-            if (gotAddress) {
-                sb.append("\n");
-            }
-            sb.append(linkAddress.getAddress().getHostAddress());
-            gotAddress = true;
-        }
-        if (gotAddress) {
-            return sb.toString();
-        } else {
-            return null;
-        }
+    /**
+     * @return Signal level of the connected Wifi network, from 0 to {@link #WIFI_SIGNAL_LEVELS}
+     * exclusive, as of the last change given to the {@link Listener}
+     */
+    public int getWifiSignalStrength() {
+        return isWifiConnected() ? mSnapshot.signalLevel : 0;
     }
 
-    public int getWifiSignalStrength(int maxLevel) {
-        WifiInfo wifiInfo = mWifiManager.getConnectionInfo();
-        return WifiManager.calculateSignalLevel(wifiInfo.getRssi(), maxLevel);
+    /**
+     * @return Signal level of the connected Wifi network, as an index into
+     * {@code R.array.wifi_signal_strength}
+     */
+    public int getWifiDetailsSignalStrength() {
+        return isWifiConnected() ? mSnapshot.wifiDetailsSignalLevel : 0;
     }
 
     public int getCellSignalStrength() {
-        if (isCellConnected() && mCellSignalStrength != null) {
-            return mCellSignalStrength.getLevel();
-        } else {
-            return 0;
-        }
+        return isCellConnected() ? mSnapshot.signalLevel : 0;
     }
 
     /**
@@ -297,67 +320,99 @@ public class ConnectivityListener implements WifiTracker.WifiListener, Lifecycle
         mWifiManager.setWifiEnabled(enable);
     }
 
-    private void updateConnectivityStatus() {
-        NetworkInfo networkInfo = mConnectivityManager.getActiveNetworkInfo();
-        if (networkInfo == null) {
-            mNetworkType = ConnectivityManager.TYPE_NONE;
-        } else {
-            switch (networkInfo.getType()) {
-                case ConnectivityManager.TYPE_WIFI: {
-
-                    // Determine if this is
-                    // an open or secure wifi connection.
-                    mNetworkType = ConnectivityManager.TYPE_WIFI;
+    /**
+     * Reads the connectivity status again, unless a read is already running, in which case
+     * another one is made once it's done.
+     */
+    @UiThread
+    private void requestSnapshotUpdate() {
+        if (!mStarted) {
+            return;
+        }
+        if (mSnapshotTaskRunning) {
+            mSnapshotUpdatePending = true;
+            return;
+        }
+        mSnapshotTaskRunning = true;
+        mSnapshotUpdatePending = false;
+        final int cellSignalLevel =
+                mCellSignalStrength != null ? mCellSignalStrength.getLevel() : 0;
+        mSnapshotExecutor.execute(() -> {
+            final ConnectivitySnapshot snapshot = buildSnapshot(cellSignalLevel);
+            mHandler.post(() -> onSnapshotBuilt(snapshot));
+        });
+    }
 
-                    String ssid = getSsid();
-                    if (!TextUtils.equals(mWifiSsid, ssid)) {
-                        mWifiSsid = ssid;
-                    }
+    @UiThread
+    private void onSnapshotBuilt(ConnectivitySnapshot snapshot) {
+        mSnapshotTaskRunning = false;
+        if (!mStarted) {
+            mSnapshotUpdatePending = false;
+            return;
+        }
+        final boolean changed = mForceNextSnapshot || !snapshot.equals(mSnapshot);
+        mForceNextSnapshot = false;
+        mSnapshot = snapshot;
+        if (mSnapshotUpdatePending) {
+            requestSnapshotUpdate();
+        }
+        if (changed && mListener != null) {
+            mListener.onConnectivityChange();
+        }
+    }
 
-                    WifiInfo wifiInfo = mWifiManager.getConnectionInfo();
-                    // Calculate the signal strength.
-                    int signalStrength;
+    @SuppressLint("HardwareIds")
+    @WorkerThread
+    private ConnectivitySnapshot buildSnapshot(int cellSignalLevel) {
+        final ConnectivitySnapshot.Builder builder = new ConnectivitySnapshot.Builder();
+        final NetworkInfo networkInfo = mConnectivityManager.getActiveNetworkInfo();
+        if (networkInfo != null) {
+            builder.connected = networkInfo.isConnected();
+            switch (networkInfo.getType()) {
+                case ConnectivityManager.TYPE_WIFI: {
+                    builder.networkType = ConnectivityManager.TYPE_WIFI;
+                    final WifiInfo wifiInfo = mWifiManager.getConnectionInfo();
+                    builder.ssid = getSsid(wifiInfo);
                     if (wifiInfo != null) {
-                        // Calculate the signal strength between 0 and 3.
-                        signalStrength = WifiManager.calculateSignalLevel(wifiInfo.getRssi(), 4);
-                    } else {
-                        signalStrength = 0;
-                    }
-                    if (mWifiSignalStrength != signalStrength) {
-                        mWifiSignalStrength = signalStrength;
+                        builder.signalLevel = WifiManager.calculateSignalLevel(wifiInfo.getRssi(),
+                                WIFI_SIGNAL_LEVELS);
+                        builder.wifiDetailsSignalLevel = WifiManager.calculateSignalLevel(
+                                wifiInfo.getRssi(), mWifiDetailsSignalLevels);
+                        builder.wifiIpAddress = formatIpAddress(wifiInfo.getIpAddress());
+                        builder.wifiMacAddress = wifiInfo.getMacAddress();
                     }
                     break;
                 }
 
                 case ConnectivityManager.TYPE_ETHERNET:
-                    mNetworkType = ConnectivityManager.TYPE_ETHERNET;
+                    builder.networkType = ConnectivityManager.TYPE_ETHERNET;
                     break;
 
                 case ConnectivityManager.TYPE_MOBILE:
-                    mNetworkType = ConnectivityManager.TYPE_MOBILE;
+                    builder.networkType = ConnectivityManager.TYPE_MOBILE;
+                    builder.signalLevel = cellSignalLevel;
                     break;
 
                 default:
-                    mNetworkType = ConnectivityManager.TYPE_NONE;
                     break;
             }
         }
+        builder.wifiEnabled = isWifiEnabledOrEnabling();
+        builder.ethernetAvailable = isEthernetAvailable();
+        if (builder.ethernetAvailable) {
+            builder.ethernetIpAddress = getEthernetIpAddress();
+        }
+        return builder.build();
     }
 
     @Override
     public void onWifiStateChanged(int state) {
-        updateConnectivityStatus();
-        if (mListener != null) {
-            mListener.onConnectivityChange();
-        }
+        requestSnapshotUpdate();
     }
 
     @Override
     public void onConnectedChanged() {
-        updateConnectivityStatus();
-        if (mListener != null) {
-            mListener.onConnectivityChange();
-        }
+        requestSnapshotUpdate();
     }
 
     @Override
@@ -380,7 +435,19 @@ public class ConnectivityListener implements WifiTracker.WifiListener, Lifecycle
      * @return SSID
      */
     public String getSsid() {
-        WifiInfo wifiInfo = mWifiManager.getConnectionInfo();
+        return getSsid(mWifiManager.getConnectionInfo());
+    }
+
+    private static int getWifiDetailsSignalLevels(Context context) {
+        return context.getResources().getStringArray(R.array.wifi_signal_strength).length;
+    }
+
+    private static String formatIpAddress(int ip) {
+        return String.format(Locale.US, "%d.%d.%d.%d", (ip & 0xff), (ip >> 8 & 0xff),
+                (ip >> 16 & 0xff), (ip >> 24 & 0xff));
+    }
+
+    private static String getSsid(WifiInfo wifiInfo) {
         // Find the SSID of network.
         String ssid = null;
         if (wifiInfo != null) {
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.connectivity;
+
+import android.net.ConnectivityManager;
+import android.text.TextUtils;
+
+import java.util.Objects;
+
+/**
+ * Immutable copy of the connectivity state shown by the settings screens, built by
+ * {@link ConnectivityListener}. Only values that end up on screen are kept, and signal strength
+ * is kept as a level rather than a raw reading, so that two snapshots are equal whenever the
+ * screens would look the same.
+ */
+class ConnectivitySnapshot {
+
+    /** Snapshot used until the first one is built */
+    static final ConnectivitySnapshot EMPTY = new Builder().build();
+
+    /** Type of the active network, or {@link ConnectivityManager#TYPE_NONE} */
+    final int networkType;
+    /** Whether the active network is connected */
+    final boolean connected;
+    /** SSID of the active network, only set when it's a wifi network */
+    final String ssid;
+    /** Signal level of the active wifi or cell network, 0 for other networks */
+    final int signalLevel;
+    /**
+     * Signal level of the active wifi network in the levels of its details screen, 0 for other
+     * networks
+     */
+    final int wifiDetailsSignalLevel;
+    /** IPv4 address of the active network, only set when it's a wifi network */
+    final String wifiIpAddress;
+    /** MAC address used on the active network, only set when it's a wifi network */
+    final String wifiMacAddress;
+    final boolean wifiEnabled;
+    final boolean ethernetAvailable;
+    /** Addresses of the ethernet network separated by newlines, or null if it has none */
+    final String ethernetIpAddress;
+
+    private ConnectivitySnapshot(Builder builder) {
+        networkType = builder.networkType;
+        connected = builder.connected;
+        ssid = builder.ssid;
+        signalLevel = builder.signalLevel;
+        wifiDetailsSignalLevel = builder.wifiDetailsSignalLevel;
+        wifiIpAddress = builder.wifiIpAddress;
+        wifiMacAddress = builder.wifiMacAddress;
+        wifiEnabled = builder.wifiEnabled;
+        ethernetAvailable = builder.ethernetAvailable;
+        ethernetIpAddress = builder.ethernetIpAddress;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ConnectivitySnapshot)) {
+            return false;
+        }
+        final ConnectivitySnapshot that = (ConnectivitySnapshot) o;
+        return networkType == that.networkType
+                && connected == that.connected
+                && signalLevel == that.signalLevel
+                && wifiDetailsSignalLevel == that.wifiDetailsSignalLevel
+                && wifiEnabled == that.wifiEnabled
+                && ethernetAvailable == that.ethernetAvailable
+                && TextUtils.equals(ssid, that.ssid)
+                && TextUtils.equals(wifiIpAddress, that.wifiIpAddress)
+                && TextUtils.equals(wifiMacAddress, that.wifiMacAddress)
+                && TextUtils.equals(ethernetIpAddress, that.ethernetIpAddress);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(networkType, connected, ssid, signalLevel, wifiDetailsSignalLevel,
+                wifiIpAddress, wifiMacAddress, wifiEnabled, ethernetAvailable, ethernetIpAddress);
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectivitySnapshot{type=" + networkType + ", connected=" + connected
+                + ", ssid=" + ssid + ", signalLevel=" + signalLevel
+                + ", wifiDetailsSignalLevel=" + wifiDetailsSignalLevel
+                + ", wifiIpAddress=" + wifiIpAddress + ", wifiMacAddress=" + wifiMacAddress
+                + ", wifiEnabled=" + wifiEnabled + ", ethernetAvailable=" + ethernetAvailable
+                + ", ethernetIpAddress=" + ethernetIpAddress + "}";
+    }
+
+    /**
+     * Mutable counterpart of the snapshot.
+     */
+    static class Builder {
+        int networkType = ConnectivityManager.TYPE_NONE;
+        boolean connected;
+        String ssid;
+        int signalLevel;
+        int wifiDetailsSignalLevel;
+        String wifiIpAddress;
+        String wifiMacAddress;
+        boolean wifiEnabled;
+        boolean ethernetAvailable;
+        String ethernetIpAddress;
+
+        ConnectivitySnapshot build() {
+            return new ConnectivitySnapshot(this);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.connectivity;
+
+import android.net.ConnectivityManager;
+import android.net.LinkAddress;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Handler;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the link properties of the ethernet networks up to date from network callbacks, so that
+ * the ethernet address can be read without going through every network the device has. The
+ * callbacks are delivered on the handler given to {@link #register}, and the address may be read
+ * from any thread.
+ */
+class EthernetLinkPropertiesCache extends ConnectivityManager.NetworkCallback {
+
+    private final Runnable mOnIpAddressChanged;
+    /** Link properties of the ethernet networks, in the order they showed up */
+    private final Map<Network, LinkProperties> mLinkProperties = new LinkedHashMap<>();
+    private volatile String mIpAddress;
+    private volatile boolean mRegistered;
+
+    /**
+     * @param onIpAddressChanged Run on the callback handler whenever {@link #getIpAddress()}
+     *                           changes
+     */
+    EthernetLinkPropertiesCache(@NonNull Runnable onIpAddressChanged) {
+        mOnIpAddressChanged = onIpAddressChanged;
+    }
+
+    /**
+     * Starts following the ethernet networks. The callback reports the networks that are already
+     * up right away, so the cache fills in shortly after.
+     */
+    void register(@NonNull ConnectivityManager connectivityManager, @NonNull Handler handler) {
+        if (mRegistered) {
+            return;
+        }
+        mRegistered = true;
+        final NetworkRequest request = new NetworkRequest.Builder()
+                .addTransportType(NetworkCapabilities.TRANSPORT_ETHERNET)
+                .build();
+        connectivityManager.registerNetworkCallback(request, this, handler);
+    }
+
+    /**
+     * Stops following the ethernet networks and forgets them, since they can't be kept up to
+     * date anymore.
+     */
+    void unregister(@NonNull ConnectivityManager connectivityManager) {
+        if (!mRegistered) {
+            return;
+        }
+        mRegistered = false;
+        connectivityManager.unregisterNetworkCallback(this);
+        synchronized (mLinkProperties) {
+            mLinkProperties.clear();
+        }
+        mIpAddress = null;
+    }
+
+    boolean isRegistered() {
+        return mRegistered;
+    }
+
+    /**
+     * @return Addresses of the first ethernet network separated by newlines, or null if there's
+     *         no such network or it has no address
+     */
+    String getIpAddress() {
+        return mIpAddress;
+    }
+
+    @Override
+    public void onLinkPropertiesChanged(Network network, LinkProperties linkProperties) {
+        if (!mRegistered) {
+            return;
+        }
+        synchronized (mLinkProperties) {
+            mLinkProperties.put(network, linkProperties);
+        }
+        updateIpAddress();
+    }
+
+    @Override
+    public void onLost(Network network) {
+        if (!mRegistered) {
+            return;
+        }
+        synchronized (mLinkProperties) {
+            mLinkProperties.remove(network);
+        }
+        updateIpAddress();
+    }
+
+    private void updateIpAddress() {
+        final String ipAddress;
+        synchronized (mLinkProperties) {
+            ipAddress = mLinkProperties.isEmpty() ? null
+                    : formatIpAddresses(mLinkProperties.values().iterator().next());
+        }
+        if (!TextUtils.equals(ipAddress, mIpAddress)) {
+            mIpAddress = ipAddress;
+            mOnIpAddressChanged.run();
+        }
+    }
+
+    /**
+     * Finds the address of the first ethernet network by querying every network, for when the
+     * cache isn't registered.
+     */
+    @WorkerThread
+    @VisibleForTesting
+    static String scanIpAddress(@NonNull ConnectivityManager connectivityManager) {
+        for (final Network network : connectivityManager.getAllNetworks()) {
+            final NetworkInfo networkInfo = connectivityManager.getNetworkInfo(network);
+            if (networkInfo != null && networkInfo.getType() == ConnectivityManager.TYPE_ETHERNET) {
+                return formatIpAddresses(connectivityManager.getLinkProperties(network));
+            }
+        }
+        return null;
+    }
+
+    private static String formatIpAddresses(LinkProperties linkProperties) {
+        if (linkProperties == null) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder();
+        boolean gotAddress = false;
+        for (LinkAddress linkAddress : linkProperties.getLinkAddresses()) {
+            if (gotAddress) {
+                sb.append("\n");
+            }
+            sb.append(linkAddress.getAddress().getHostAddress());
+            gotAddress = true;
+        }
+        return gotAddress ? sb.toString() : null;
+    }
+}
@@ -16,12 +16,12 @@
 
 package com.android.tv.settings.connectivity;
 
-import android.content.Context;
 import android.net.wifi.WifiConfiguration;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.SystemClock;
 import android.provider.Settings;
+import android.util.Log;
 
 import androidx.annotation.Keep;
 import androidx.preference.Preference;
@@ -36,8 +36,6 @@ import com.android.tv.settings.R;
 import com.android.tv.settings.SettingsPreferenceFragment;
 
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * Fragment for controlling network connectivity
@@ -47,6 +45,9 @@ public class NetworkFragment extends SettingsPreferenceFragment implements
         ConnectivityListener.Listener, ConnectivityListener.WifiNetworkListener,
         AccessPoint.AccessPointListener {
 
+    private static final String TAG = "NetworkFragment";
+    private static final boolean DEBUG = false;
+
     private static final String KEY_WIFI_ENABLE = "wifi_enable";
     private static final String KEY_WIFI_LIST = "wifi_list";
     private static final String KEY_WIFI_COLLAPSE = "wifi_collapse";
@@ -59,6 +60,8 @@ public class NetworkFragment extends SettingsPreferenceFragment implements
     private static final String KEY_ETHERNET_DHCP = "ethernet_dhcp";
 
     private static final int INITIAL_UPDATE_DELAY = 500;
+    /** Scan results tend to arrive in bursts, coalesce the list updates they trigger */
+    private static final int UPDATE_DEBOUNCE_DELAY = 300;
 
     private ConnectivityListener mConnectivityListener;
     private AccessPointPreference.UserBadgeCache mUserBadgeCache;
@@ -72,9 +75,11 @@ public class NetworkFragment extends SettingsPreferenceFragment implements
     private Preference mEthernetStatusPref;
     private Preference mEthernetProxyPref;
     private Preference mEthernetDhcpPref;
+    private AccessPointListReconciler mWifiListReconciler;
 
     private final Handler mHandler = new Handler();
     private long mNoWifiUpdateBeforeMillis;
+    private boolean mWifiListUpdatePending;
     private Runnable mInitialUpdateWifiListRunnable = new Runnable() {
         @Override
         public void run() {
@@ -82,6 +87,22 @@ public class NetworkFragment extends SettingsPreferenceFragment implements
             updateWifiList();
         }
     };
+    private final Runnable mUpdateWifiListRunnable = new Runnable() {
+        @Override
+        public void run() {
+            updateWifiList();
+        }
+    };
+    /**
+     * Catches up on a reorder the reconciler deferred. Kept apart from the debounced update, so
+     * that scans in the meantime still update the rows they can without reordering.
+     */
+    private final Runnable mReorderWifiListRunnable = new Runnable() {
+        @Override
+        public void run() {
+            updateWifiList();
+        }
+    };
 
     public static NetworkFragment newInstance() {
         return new NetworkFragment();
@@ -122,6 +143,21 @@ public class NetworkFragment extends SettingsPreferenceFragment implements
         mCollapsePref = findPreference(KEY_WIFI_COLLAPSE);
         mAddPref = findPreference(KEY_WIFI_ADD);
         mAlwaysScan = (TwoStatePreference) findPreference(KEY_WIFI_ALWAYS_SCAN);
+        mWifiListReconciler = new AccessPointListReconciler(getContext(), mWifiNetworksCategory,
+                new AccessPointListReconciler.Binder() {
+                    @Override
+                    public Preference createPreference(AccessPoint accessPoint) {
+                        final AccessPointPreference pref = new AccessPointPreference(accessPoint,
+                                getPreferenceManager().getContext(), mUserBadgeCache, false);
+                        accessPoint.setTag(pref);
+                        return pref;
+                    }
+
+                    @Override
+                    public void refreshPreference(Preference preference) {
+                        ((AccessPointPreference) preference).refresh();
+                    }
+                });
 
         mEthernetCategory = (PreferenceCategory) findPreference(KEY_ETHERNET);
         mEthernetStatusPref = findPreference(KEY_ETHERNET_STATUS);
@@ -210,7 +246,8 @@ public class NetworkFragment extends SettingsPreferenceFragment implements
                     mConnectivityListener.isEthernetConnected();
             mEthernetStatusPref.setTitle(ethernetConnected
                     ? R.string.connected : R.string.not_connected);
-            mEthernetStatusPref.setSummary(mConnectivityListener.getEthernetIpAddress());
+            mEthernetStatusPref.setSummary(
+                    mConnectivityListener.getSnapshot().ethernetIpAddress);
         }
     }
 
@@ -219,7 +256,12 @@ public class NetworkFragment extends SettingsPreferenceFragment implements
             return;
         }
 
+        mHandler.removeCallbacks(mUpdateWifiListRunnable);
+        mHandler.removeCallbacks(mReorderWifiListRunnable);
+        mWifiListUpdatePending = false;
+
         if (!mConnectivityListener.isWifiEnabledOrEnabling()) {
+            mWifiListReconciler.clear();
             mWifiNetworksCategory.removeAll();
             mNoWifiUpdateBeforeMillis = 0;
             return;
@@ -233,40 +275,19 @@ public class NetworkFragment extends SettingsPreferenceFragment implements
             return;
         }
 
-        final int existingCount = mWifiNetworksCategory.getRealPreferenceCount();
-        final Set<Preference> toRemove = new HashSet<>(existingCount);
-        for (int i = 0; i < existingCount; i++) {
-            toRemove.add(mWifiNetworksCategory.getPreference(i));
-        }
-
-        final Context themedContext = getPreferenceManager().getContext();
         final Collection<AccessPoint> accessPoints = mConnectivityListener.getAvailableNetworks();
-        int index = 0;
         for (final AccessPoint accessPoint : accessPoints) {
             accessPoint.setListener(this);
-            AccessPointPreference pref = (AccessPointPreference) accessPoint.getTag();
-            if (pref == null) {
-                pref = new AccessPointPreference(accessPoint, themedContext, mUserBadgeCache,
-                        false);
-                accessPoint.setTag(pref);
-            } else {
-                toRemove.remove(pref);
-            }
-            if (accessPoint.isActive()) {
-                pref.setFragment(WifiDetailsFragment.class.getName());
-                WifiDetailsFragment.prepareArgs(pref.getExtras(), accessPoint);
-                pref.setIntent(null);
-            } else {
-                pref.setFragment(null);
-                pref.setIntent(WifiConnectionActivity.createIntent(getContext(), accessPoint));
-            }
-            pref.setOrder(index++);
-            // Double-adding is harmless
-            mWifiNetworksCategory.addPreference(pref);
         }
-
-        for (final Preference preference : toRemove) {
-            mWifiNetworksCategory.removePreference(preference);
+        final AccessPointListReconciler.UpdateStats stats =
+                mWifiListReconciler.reconcile(accessPoints);
+        if (DEBUG) {
+            Log.d(TAG, "updateWifiList: " + accessPoints.size() + " networks, "
+                    + stats.getMutationCount() + " mutations, " + stats);
+        }
+        if (stats.reorderDeferred) {
+            mHandler.postDelayed(mReorderWifiListRunnable,
+                    mWifiListReconciler.getReorderDelay());
         }
 
         mCollapsePref.setVisible(mWifiNetworksCategory.shouldShowCollapsePref());
@@ -279,7 +300,10 @@ public class NetworkFragment extends SettingsPreferenceFragment implements
 
     @Override
     public void onWifiListChanged() {
-        updateWifiList();
+        if (!mWifiListUpdatePending) {
+            mWifiListUpdatePending = true;
+            mHandler.postDelayed(mUpdateWifiListRunnable, UPDATE_DEBOUNCE_DELAY);
+        }
     }
 
     @Override
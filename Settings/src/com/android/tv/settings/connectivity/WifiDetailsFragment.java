@@ -178,7 +178,7 @@ public class WifiDetailsFragment extends SettingsPreferenceFragment
 
     private String getSignalStrength() {
         String[] signalLevels = getResources().getStringArray(R.array.wifi_signal_strength);
-        int strength = mConnectivityListener.getWifiSignalStrength(signalLevels.length);
+        int strength = mConnectivityListener.getWifiDetailsSignalStrength();
         return signalLevels[strength];
     }
 
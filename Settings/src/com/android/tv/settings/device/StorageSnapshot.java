@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device;
+
+import android.os.storage.DiskInfo;
+import android.os.storage.StorageManager;
+import android.os.storage.VolumeInfo;
+import android.os.storage.VolumeRecord;
+import android.text.TextUtils;
+import android.util.ArraySet;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable view of the storage volumes, missing volumes and unsupported disks shown on the
+ * storage summary screen. Gathering it takes several calls into the storage service and a
+ * filesystem query per mounted volume, so it's loaded on a worker thread.
+ */
+final class StorageSnapshot {
+    private static final String TAG = "StorageSnapshot";
+
+    /**
+     * A volume that is present, mounted or not.
+     */
+    static final class Volume {
+        final VolumeInfo info;
+        final String id;
+        final String description;
+        final boolean mountedReadable;
+        /** Total space of the volume in bytes, or -1 if it's not mounted */
+        final long totalSpace;
+
+        Volume(VolumeInfo info, String description) {
+            this.info = info;
+            id = info.getId();
+            this.description = description;
+            mountedReadable = info.isMountedReadable();
+            final File path = info.getPath();
+            totalSpace = mountedReadable && path != null ? path.getTotalSpace() : -1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Volume)) {
+                return false;
+            }
+            final Volume volume = (Volume) o;
+            return mountedReadable == volume.mountedReadable
+                    && totalSpace == volume.totalSpace
+                    && TextUtils.equals(id, volume.id)
+                    && TextUtils.equals(description, volume.description);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, description, mountedReadable, totalSpace);
+        }
+    }
+
+    /**
+     * A private volume that was adopted but isn't currently present.
+     */
+    static final class MissingVolume {
+        final String fsUuid;
+        final String nickname;
+
+        MissingVolume(VolumeRecord record) {
+            fsUuid = record.getFsUuid();
+            nickname = record.getNickname();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MissingVolume)) {
+                return false;
+            }
+            final MissingVolume volume = (MissingVolume) o;
+            return TextUtils.equals(fsUuid, volume.fsUuid)
+                    && TextUtils.equals(nickname, volume.nickname);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fsUuid, nickname);
+        }
+    }
+
+    /**
+     * A disk without any volume we can read.
+     */
+    static final class UnsupportedDisk {
+        final String id;
+        final String description;
+
+        UnsupportedDisk(DiskInfo disk) {
+            id = disk.getId();
+            description = disk.getDescription();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof UnsupportedDisk)) {
+                return false;
+            }
+            final UnsupportedDisk disk = (UnsupportedDisk) o;
+            return TextUtils.equals(id, disk.id)
+                    && TextUtils.equals(description, disk.description);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, description);
+        }
+    }
+
+    final List<Volume> privateVolumes;
+    final List<Volume> publicVolumes;
+    final List<MissingVolume> missingPrivateVolumes;
+    final List<UnsupportedDisk> unsupportedDisks;
+
+    private StorageSnapshot(List<Volume> privateVolumes, List<Volume> publicVolumes,
+            List<MissingVolume> missingPrivateVolumes, List<UnsupportedDisk> unsupportedDisks) {
+        this.privateVolumes = Collections.unmodifiableList(privateVolumes);
+        this.publicVolumes = Collections.unmodifiableList(publicVolumes);
+        this.missingPrivateVolumes = Collections.unmodifiableList(missingPrivateVolumes);
+        this.unsupportedDisks = Collections.unmodifiableList(unsupportedDisks);
+    }
+
+    /**
+     * Queries the storage service and the mounted filesystems.
+     */
+    @WorkerThread
+    @NonNull
+    static StorageSnapshot load(@NonNull StorageManager storageManager) {
+        final List<VolumeInfo> volumes = storageManager.getVolumes();
+        volumes.sort(VolumeInfo.getDescriptionComparator());
+
+        final List<Volume> privateVolumes = new ArrayList<>(volumes.size());
+        final List<Volume> publicVolumes = new ArrayList<>(volumes.size());
+        final Set<String> presentFsUuids = new ArraySet<>(volumes.size());
+
+        // Find mounted volumes
+        for (final VolumeInfo vol : volumes) {
+            presentFsUuids.add(vol.getFsUuid());
+            if (vol.getType() == VolumeInfo.TYPE_PRIVATE) {
+                privateVolumes.add(
+                        new Volume(vol, storageManager.getBestVolumeDescription(vol)));
+            } else if (vol.getType() == VolumeInfo.TYPE_PUBLIC) {
+                publicVolumes.add(
+                        new Volume(vol, storageManager.getBestVolumeDescription(vol)));
+            } else {
+                Log.d(TAG, "Skipping volume " + vol.toString());
+            }
+        }
+
+        // Find missing private filesystems, looking them up in the volumes we already have
+        // rather than asking the storage service about each record
+        final List<VolumeRecord> volumeRecords = storageManager.getVolumeRecords();
+        final List<MissingVolume> missingPrivateVolumes = new ArrayList<>(volumeRecords.size());
+        for (final VolumeRecord record : volumeRecords) {
+            if (record.getType() == VolumeInfo.TYPE_PRIVATE
+                    && !presentFsUuids.contains(record.getFsUuid())) {
+                missingPrivateVolumes.add(new MissingVolume(record));
+            }
+        }
+
+        // Find unreadable disks
+        final List<DiskInfo> disks = storageManager.getDisks();
+        final List<UnsupportedDisk> unsupportedDisks = new ArrayList<>(disks.size());
+        for (final DiskInfo disk : disks) {
+            if (disk.volumeCount == 0 && disk.size > 0) {
+                unsupportedDisks.add(new UnsupportedDisk(disk));
+            }
+        }
+
+        return new StorageSnapshot(privateVolumes, publicVolumes, missingPrivateVolumes,
+                unsupportedDisks);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StorageSnapshot)) {
+            return false;
+        }
+        final StorageSnapshot snapshot = (StorageSnapshot) o;
+        return privateVolumes.equals(snapshot.privateVolumes)
+                && publicVolumes.equals(snapshot.publicVolumes)
+                && missingPrivateVolumes.equals(snapshot.missingPrivateVolumes)
+                && unsupportedDisks.equals(snapshot.unsupportedDisks);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(privateVolumes, publicVolumes, missingPrivateVolumes,
+                unsupportedDisks);
+    }
+}
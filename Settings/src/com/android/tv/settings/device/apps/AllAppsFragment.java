@@ -17,26 +17,26 @@ package com.android.tv.settings.device.apps;
 
 import android.content.pm.PackageManager;
 import android.os.Bundle;
-import android.os.Handler;
 import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.ArrayMap;
-import android.util.ArraySet;
 import android.util.Log;
+import android.view.Choreographer;
 
 import androidx.annotation.Keep;
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceGroup;
 
 import com.android.internal.logging.nano.MetricsProto;
 import com.android.settingslib.applications.ApplicationsState;
+import com.android.tv.settings.AppIconPreference;
 import com.android.tv.settings.R;
 import com.android.tv.settings.SettingsPreferenceFragment;
 
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Fragment for listing and managing all apps on the device.
@@ -48,9 +48,24 @@ public class AllAppsFragment extends SettingsPreferenceFragment implements
     private static final String TAG = "AllAppsFragment";
     private static final String KEY_SHOW_OTHER_APPS = "ShowOtherApps";
 
+    /**
+     * Minimum time an app list update is deferred while coalescing, a handful of frames so that
+     * bursts of callbacks are batched even when updates are cheap.
+     */
+    @VisibleForTesting
+    static final long MIN_UPDATE_DELAY_MS = 100;
+    /** Upper bound on how long an app list update may be deferred while coalescing. */
+    @VisibleForTesting
+    static final long MAX_UPDATE_DELAY_MS = 1000;
+    /**
+     * While updates keep arriving, the next one is deferred further by this multiple of the time
+     * the previous one took, so that expensive updates back off.
+     */
+    @VisibleForTesting
+    static final int UPDATE_COST_MULTIPLIER = 4;
+
     private static final @ApplicationsState.SessionFlags int SESSION_FLAGS =
             ApplicationsState.FLAG_SESSION_REQUEST_HOME_APP
-            | ApplicationsState.FLAG_SESSION_REQUEST_ICONS
             | ApplicationsState.FLAG_SESSION_REQUEST_SIZES
             | ApplicationsState.FLAG_SESSION_REQUEST_LEANBACK_LAUNCHER;
 
@@ -67,19 +82,23 @@ public class AllAppsFragment extends SettingsPreferenceFragment implements
     private PreferenceGroup mOtherPreferenceGroup;
     private Preference mShowOtherApps;
 
-    private final Handler mHandler = new Handler();
     private final Map<PreferenceGroup,
             ArrayList<ApplicationsState.AppEntry>> mUpdateMap = new ArrayMap<>(3);
-    private long mRunAt = Long.MIN_VALUE;
-    private final Runnable mUpdateRunnable = new Runnable() {
+    private final Map<PreferenceGroup, AppListReconciler> mReconcilers = new ArrayMap<>(3);
+    private long mLastUpdateCostMs = -1;
+    private boolean mUpdateScheduled;
+    private final Choreographer.FrameCallback mUpdateFrameCallback =
+            new Choreographer.FrameCallback() {
         @Override
-        public void run() {
+        public void doFrame(long frameTimeNanos) {
+            mUpdateScheduled = false;
+            final long start = SystemClock.uptimeMillis();
             for (final PreferenceGroup group : mUpdateMap.keySet()) {
                 final ArrayList<ApplicationsState.AppEntry> entries = mUpdateMap.get(group);
                 updateAppListInternal(group, entries);
             }
             mUpdateMap.clear();
-            mRunAt = 0;
+            mLastUpdateCostMs = SystemClock.uptimeMillis() - start;
         }
     };
 
@@ -124,45 +143,46 @@ public class AllAppsFragment extends SettingsPreferenceFragment implements
             mFilterOther = FILTER_OTHER;
         }
 
-        mSessionInstalled = mApplicationsState.newSession(new RowUpdateCallbacks() {
-            @Override
-            protected void doRebuild() {
-                rebuildInstalled();
-            }
-
-            @Override
-            public void onRebuildComplete(ArrayList<ApplicationsState.AppEntry> apps) {
-                updateAppList(mInstalledPreferenceGroup, apps);
-            }
-        }, getLifecycle());
+        mSessionInstalled = mApplicationsState.newSession(
+                new AppsCallbackDispatcher(new RowUpdateTarget() {
+                    @Override
+                    public boolean rebuild() {
+                        return rebuildInstalled();
+                    }
+
+                    @Override
+                    protected PreferenceGroup getPreferenceGroup() {
+                        return mInstalledPreferenceGroup;
+                    }
+                }, getLifecycle()), getLifecycle());
         mSessionInstalled.setSessionFlags(SESSION_FLAGS);
 
-        mSessionDisabled = mApplicationsState.newSession(new RowUpdateCallbacks() {
-            @Override
-            protected void doRebuild() {
-                rebuildDisabled();
-            }
-
-            @Override
-            public void onRebuildComplete(ArrayList<ApplicationsState.AppEntry> apps) {
-                updateAppList(mDisabledPreferenceGroup, apps);
-            }
-        }, getLifecycle());
+        mSessionDisabled = mApplicationsState.newSession(
+                new AppsCallbackDispatcher(new RowUpdateTarget() {
+                    @Override
+                    public boolean rebuild() {
+                        return rebuildDisabled();
+                    }
+
+                    @Override
+                    protected PreferenceGroup getPreferenceGroup() {
+                        return mDisabledPreferenceGroup;
+                    }
+                }, getLifecycle()), getLifecycle());
         mSessionDisabled.setSessionFlags(SESSION_FLAGS);
 
-        mSessionOther = mApplicationsState.newSession(new RowUpdateCallbacks() {
-            @Override
-            protected void doRebuild() {
-                if (!mShowOtherApps.isVisible()) {
-                    rebuildOther();
-                }
-            }
-
-            @Override
-            public void onRebuildComplete(ArrayList<ApplicationsState.AppEntry> apps) {
-                updateAppList(mOtherPreferenceGroup, apps);
-            }
-        }, getLifecycle());
+        mSessionOther = mApplicationsState.newSession(
+                new AppsCallbackDispatcher(new RowUpdateTarget() {
+                    @Override
+                    public boolean rebuild() {
+                        return !mShowOtherApps.isVisible() && rebuildOther();
+                    }
+
+                    @Override
+                    protected PreferenceGroup getPreferenceGroup() {
+                        return mOtherPreferenceGroup;
+                    }
+                }, getLifecycle()), getLifecycle());
         mSessionOther.setSessionFlags(SESSION_FLAGS);
 
 
@@ -170,6 +190,14 @@ public class AllAppsFragment extends SettingsPreferenceFragment implements
         rebuildDisabled();
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        Choreographer.getInstance().removeFrameCallback(mUpdateFrameCallback);
+        mUpdateScheduled = false;
+        mUpdateMap.clear();
+    }
+
     @Override
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
         setPreferencesFromResource(R.xml.all_apps, null);
@@ -183,28 +211,34 @@ public class AllAppsFragment extends SettingsPreferenceFragment implements
         mShowOtherApps.setVisible(TextUtils.isEmpty(volumeUuid));
     }
 
-    private void rebuildInstalled() {
+    private boolean rebuildInstalled() {
         ArrayList<ApplicationsState.AppEntry> apps =
                 mSessionInstalled.rebuild(mFilterInstalled, ApplicationsState.ALPHA_COMPARATOR);
         if (apps != null) {
             updateAppList(mInstalledPreferenceGroup, apps);
+            return false;
         }
+        return true;
     }
 
-    private void rebuildDisabled() {
+    private boolean rebuildDisabled() {
         ArrayList<ApplicationsState.AppEntry> apps =
                 mSessionDisabled.rebuild(mFilterDisabled, ApplicationsState.ALPHA_COMPARATOR);
         if (apps != null) {
             updateAppList(mDisabledPreferenceGroup, apps);
+            return false;
         }
+        return true;
     }
 
-    private void rebuildOther() {
+    private boolean rebuildOther() {
         ArrayList<ApplicationsState.AppEntry> apps =
                 mSessionOther.rebuild(mFilterOther, ApplicationsState.ALPHA_COMPARATOR);
         if (apps != null) {
             updateAppList(mOtherPreferenceGroup, apps);
+            return false;
         }
+        return true;
     }
 
     private void updateAppList(PreferenceGroup group,
@@ -215,49 +249,61 @@ public class AllAppsFragment extends SettingsPreferenceFragment implements
         }
         mUpdateMap.put(group, entries);
 
-        // We can get spammed with updates, so coalesce them to reduce jank and flicker
-        if (mRunAt == Long.MIN_VALUE) {
-            // First run, no delay
-            mHandler.removeCallbacks(mUpdateRunnable);
-            mHandler.post(mUpdateRunnable);
-        } else {
-            if (mRunAt == 0) {
-                mRunAt = SystemClock.uptimeMillis() + 1000;
-            }
-            int delay = (int) (mRunAt - SystemClock.uptimeMillis());
-            delay = delay < 0 ? 0 : delay;
+        // We can get spammed with updates, so coalesce them into frame-aligned batches to reduce
+        // jank and flicker
+        if (mUpdateScheduled) {
+            return;
+        }
+        mUpdateScheduled = true;
+        Choreographer.getInstance().postFrameCallbackDelayed(mUpdateFrameCallback,
+                getUpdateDelayMs(mLastUpdateCostMs));
+    }
 
-            mHandler.removeCallbacks(mUpdateRunnable);
-            mHandler.postDelayed(mUpdateRunnable, delay);
+    /**
+     * @param lastUpdateCostMs How long the previous update took, or a negative value if there
+     *                         hasn't been one yet
+     * @return How long to defer the next update by
+     */
+    @VisibleForTesting
+    static long getUpdateDelayMs(long lastUpdateCostMs) {
+        if (lastUpdateCostMs < 0) {
+            // First run, no delay
+            return 0;
         }
+        return Math.min(MAX_UPDATE_DELAY_MS,
+                MIN_UPDATE_DELAY_MS + lastUpdateCostMs * UPDATE_COST_MULTIPLIER);
     }
 
     private void updateAppListInternal(PreferenceGroup group,
             ArrayList<ApplicationsState.AppEntry> entries) {
         if (entries != null) {
-            final Set<String> touched = new ArraySet<>(entries.size());
-            for (final ApplicationsState.AppEntry entry : entries) {
-                final String packageName = entry.info.packageName;
-                Preference recycle = group.findPreference(packageName);
-                if (recycle == null) {
-                    recycle = new Preference(getPreferenceManager().getContext());
-                }
-                final Preference newPref = bindPreference(recycle, entry);
-                group.addPreference(newPref);
-                touched.add(packageName);
-            }
-            for (int i = 0; i < group.getPreferenceCount();) {
-                final Preference pref = group.getPreference(i);
-                if (touched.contains(pref.getKey())) {
-                    i++;
-                } else {
-                    group.removePreference(pref);
-                }
+            AppListReconciler reconciler = mReconcilers.get(group);
+            if (reconciler == null) {
+                // The app rows load their own icons, so ApplicationsState icons are ignored
+                reconciler = new AppListReconciler(group, mAppListBinder, 0,
+                        false /* bindsIcons */);
+                mReconcilers.put(group, reconciler);
             }
+            reconciler.reconcile(entries);
         }
         mDisabledPreferenceGroup.setVisible(mDisabledPreferenceGroup.getPreferenceCount() > 0);
     }
 
+    private final AppListReconciler.Binder mAppListBinder = new AppListReconciler.Binder() {
+        @NonNull
+        @Override
+        public Preference createAppPreference() {
+            return new AppIconPreference(getPreferenceManager().getContext());
+        }
+
+        @NonNull
+        @Override
+        public Preference bindPreference(@NonNull Preference preference,
+                ApplicationsState.AppEntry entry) {
+            return AllAppsFragment.this.bindPreference(preference, entry);
+        }
+    };
+
     /**
      * Creates or updates a preference according to an {@link ApplicationsState.AppEntry} object
      * @param preference If non-null, updates this preference object, otherwise creates a new one
@@ -272,7 +318,8 @@ public class AllAppsFragment extends SettingsPreferenceFragment implements
         preference.setSummary(entry.sizeStr);
         preference.setFragment(AppManagementFragment.class.getName());
         AppManagementFragment.prepareArgs(preference.getExtras(), entry.info.packageName);
-        preference.setIcon(entry.icon);
+        // Icons are loaded lazily at the preference icon size rather than by ApplicationsState
+        ((AppIconPreference) preference).setAppIcon(entry.info);
         return preference;
     }
 
@@ -291,43 +338,30 @@ public class AllAppsFragment extends SettingsPreferenceFragment implements
         rebuildOther();
     }
 
-    private abstract class RowUpdateCallbacks implements ApplicationsState.Callbacks {
-
-        protected abstract void doRebuild();
-
-        @Override
-        public void onRunningStateChanged(boolean running) {
-            doRebuild();
-        }
+    private abstract class RowUpdateTarget implements AppsCallbackDispatcher.Target {
 
-        @Override
-        public void onPackageListChanged() {
-            doRebuild();
-        }
-
-        @Override
-        public void onPackageIconChanged() {
-            doRebuild();
-        }
+        protected abstract PreferenceGroup getPreferenceGroup();
 
         @Override
-        public void onPackageSizeChanged(String packageName) {
-            doRebuild();
+        public void onRebuildComplete(@NonNull ArrayList<ApplicationsState.AppEntry> apps) {
+            updateAppList(getPreferenceGroup(), apps);
         }
 
         @Override
-        public void onAllSizesComputed() {
-            doRebuild();
-        }
-
-        @Override
-        public void onLauncherInfoChanged() {
-            doRebuild();
+        public boolean updatePackage(@NonNull String packageName) {
+            // Sizes don't affect filtering or sort order, so there is nothing to do if the
+            // package isn't shown in this group
+            final AppListReconciler reconciler = mReconcilers.get(getPreferenceGroup());
+            if (reconciler != null) {
+                reconciler.refreshRow(packageName);
+            }
+            return true;
         }
 
         @Override
-        public void onLoadEntriesCompleted() {
-            doRebuild();
+        public boolean updateIcons() {
+            // App rows load their own icons, see bindPreference
+            return true;
         }
     }
 
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.apps;
+
+import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceGroup;
+
+import com.android.settingslib.applications.ApplicationsState;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the app preferences of a {@link PreferenceGroup} in sync with a sorted list of
+ * {@link ApplicationsState.AppEntry} objects. Rows are keyed by package name, so each update is
+ * linear in the size of the list: new packages are inserted, vanished packages are removed,
+ * rows that changed position get a new order, and only rows whose label, size, icon or extra
+ * info changed are rebound.
+ */
+public class AppListReconciler {
+
+    /**
+     * Callback used by the reconciler to create and populate app preferences.
+     */
+    public interface Binder {
+        /**
+         * @return New Preference object to be used for an app row
+         */
+        @NonNull Preference createAppPreference();
+
+        /**
+         * Configure the {@link Preference} object with the data in the
+         * {@link ApplicationsState.AppEntry}
+         * @param preference Preference to configure
+         * @param entry Entry containing data to bind
+         * @return Return the configured Preference object
+         */
+        @NonNull Preference bindPreference(@NonNull Preference preference,
+                ApplicationsState.AppEntry entry);
+    }
+
+    /** Distance between the orders of rows, leaving room to insert rows without renumbering. */
+    private static final int ORDER_SPACING = 1 << 8;
+    /** Orders are renumbered from scratch before they get anywhere near the default order. */
+    private static final int MAX_ORDER = Integer.MAX_VALUE / 2;
+
+    private final PreferenceGroup mGroup;
+    private final Binder mBinder;
+    private final int mMinOrder;
+    private final boolean mBindsIcons;
+    private Map<String, Row> mRows = new HashMap<>();
+
+    public AppListReconciler(@NonNull PreferenceGroup group, @NonNull Binder binder) {
+        this(group, binder, 0);
+    }
+
+    /**
+     * @param group Group to manage
+     * @param binder Binder for app preferences
+     * @param minOrder All rows will be given an order greater than this, so that preferences
+     *                 that aren't managed by the reconciler can be kept above the app rows
+     */
+    public AppListReconciler(@NonNull PreferenceGroup group, @NonNull Binder binder,
+            int minOrder) {
+        this(group, binder, minOrder, true);
+    }
+
+    /**
+     * @param group Group to manage
+     * @param binder Binder for app preferences
+     * @param minOrder All rows will be given an order greater than this, so that preferences
+     *                 that aren't managed by the reconciler can be kept above the app rows
+     * @param bindsIcons Whether the binder shows {@link ApplicationsState.AppEntry#icon}. If not,
+     *                   icon changes never cause a rebind.
+     */
+    public AppListReconciler(@NonNull PreferenceGroup group, @NonNull Binder binder,
+            int minOrder, boolean bindsIcons) {
+        mGroup = group;
+        mBinder = binder;
+        mMinOrder = minOrder;
+        mBindsIcons = bindsIcons;
+    }
+
+    /**
+     * Applies the minimal set of insertions, removals, moves and rebinds needed to make the
+     * group reflect {@code entries}. Rows that are already in the right relative order keep their
+     * order, so only the rows that actually moved are re-sorted by the group.
+     * @param entries App entries in display order
+     * @return Number of rows that were inserted, removed, moved or rebound
+     */
+    public int reconcile(@NonNull List<ApplicationsState.AppEntry> entries) {
+        final int count = entries.size();
+        final Map<String, Row> rows = new HashMap<>(Math.max(16, count * 2));
+        final Row[] ordered = new Row[count];
+        final boolean[] added = new boolean[count];
+        final boolean[] touched = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            final ApplicationsState.AppEntry entry = entries.get(i);
+            final String packageName = entry.info.packageName;
+            Row row = mRows.remove(packageName);
+            if (row == null) {
+                row = new Row(mBinder.createAppPreference());
+                row.bind(mBinder, entry);
+                added[i] = true;
+                touched[i] = true;
+            } else if (row.isStale(entry)) {
+                row.bind(mBinder, entry);
+                touched[i] = true;
+            } else {
+                row.mEntry = entry;
+            }
+            ordered[i] = row;
+            rows.put(packageName, row);
+        }
+        int touchedCount = mRows.size();
+        for (final Row row : mRows.values()) {
+            mGroup.removePreference(row.mPreference);
+        }
+        mRows = rows;
+
+        assignOrders(ordered, added, touched);
+        for (int i = 0; i < count; i++) {
+            if (added[i]) {
+                mGroup.addPreference(ordered[i].mPreference);
+            }
+            if (touched[i]) {
+                touchedCount++;
+            }
+        }
+        return touchedCount;
+    }
+
+    /**
+     * Gives every row an order consistent with its position. Existing rows that form the longest
+     * increasing run of orders keep them; the other rows are spread over the gaps in between, and
+     * everything is renumbered only if a gap is too small.
+     */
+    private void assignOrders(Row[] ordered, boolean[] added, boolean[] touched) {
+        final int count = ordered.length;
+        final boolean[] keep = findLongestIncreasingOrders(ordered, added);
+        long prev = mMinOrder;
+        int i = 0;
+        while (i < count) {
+            if (keep[i]) {
+                prev = ordered[i].mPreference.getOrder();
+                i++;
+                continue;
+            }
+            int end = i;
+            while (end < count && !keep[end]) {
+                end++;
+            }
+            final int gap = end - i;
+            final long next = end < count
+                    ? ordered[end].mPreference.getOrder()
+                    : prev + (long) (gap + 1) * ORDER_SPACING;
+            if (next - prev <= gap || next > MAX_ORDER) {
+                renumber(ordered, touched);
+                return;
+            }
+            final long step = (next - prev) / (gap + 1);
+            for (int k = 0; k < gap; k++) {
+                setOrder(ordered, touched, i + k, (int) (prev + (k + 1) * step));
+            }
+            prev = ordered[end - 1].mPreference.getOrder();
+            i = end;
+        }
+    }
+
+    private boolean[] findLongestIncreasingOrders(Row[] ordered, boolean[] added) {
+        final int count = ordered.length;
+        final int[] tails = new int[count];
+        final int[] predecessors = new int[count];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            final int order = ordered[i].mPreference.getOrder();
+            if (added[i] || order <= mMinOrder || order > MAX_ORDER) {
+                continue;
+            }
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (ordered[tails[mid]].mPreference.getOrder() < order) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            predecessors[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) {
+                length++;
+            }
+        }
+        final boolean[] keep = new boolean[count];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = predecessors[i]) {
+            keep[i] = true;
+        }
+        return keep;
+    }
+
+    private void renumber(Row[] ordered, boolean[] touched) {
+        for (int i = 0; i < ordered.length; i++) {
+            setOrder(ordered, touched, i, mMinOrder + (i + 1) * ORDER_SPACING);
+        }
+    }
+
+    private static void setOrder(Row[] ordered, boolean[] touched, int index, int order) {
+        final Preference preference = ordered[index].mPreference;
+        if (preference.getOrder() != order) {
+            preference.setOrder(order);
+            touched[index] = true;
+        }
+    }
+
+    /**
+     * Rebinds the row for a single package if any of the values it shows have changed.
+     * @param packageName Package whose row should be refreshed
+     * @return False if the package has no row in this group
+     */
+    public boolean refreshRow(@NonNull String packageName) {
+        final Row row = mRows.get(packageName);
+        if (row == null) {
+            return false;
+        }
+        if (row.isStale(row.mEntry)) {
+            row.bind(mBinder, row.mEntry);
+        }
+        return true;
+    }
+
+    /**
+     * Rebinds every row whose icon has changed since it was last bound.
+     */
+    public void refreshIcons() {
+        if (!mBindsIcons) {
+            return;
+        }
+        for (final Row row : mRows.values()) {
+            if (row.mIcon != row.mEntry.icon) {
+                row.bind(mBinder, row.mEntry);
+            }
+        }
+    }
+
+    /**
+     * Forgets all rows and removes them from the group.
+     */
+    public void clear() {
+        for (final Row row : mRows.values()) {
+            mGroup.removePreference(row.mPreference);
+        }
+        mRows.clear();
+    }
+
+    /**
+     * A preference along with the values it was last bound with.
+     */
+    private class Row {
+        private final Preference mPreference;
+        private ApplicationsState.AppEntry mEntry;
+        private CharSequence mLabel;
+        private String mSizeStr;
+        private Drawable mIcon;
+        private Object mExtraInfo;
+
+        private Row(Preference preference) {
+            mPreference = preference;
+        }
+
+        private boolean isStale(ApplicationsState.AppEntry entry) {
+            return !TextUtils.equals(mLabel, entry.label)
+                    || !TextUtils.equals(mSizeStr, entry.sizeStr)
+                    || (mBindsIcons && mIcon != entry.icon)
+                    || !Objects.equals(mExtraInfo, entry.extraInfo);
+        }
+
+        private void bind(Binder binder, ApplicationsState.AppEntry entry) {
+            binder.bindPreference(mPreference, entry);
+            mEntry = entry;
+            mLabel = entry.label;
+            mSizeStr = entry.sizeStr;
+            mIcon = entry.icon;
+            mExtraInfo = entry.extraInfo;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.apps;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleObserver;
+import androidx.lifecycle.OnLifecycleEvent;
+
+import com.android.settingslib.applications.ApplicationsState;
+
+import java.util.ArrayList;
+
+/**
+ * An {@link ApplicationsState.Callbacks} implementation that understands the type of each event.
+ * Per-package size changes and icon changes are turned into targeted row updates, and everything
+ * else is collapsed into rebuild requests, of which at most one is in flight and one is pending at
+ * any time. A rebuild stays in flight until {@link #onRebuildComplete(ArrayList)}, or until the
+ * session is paused, which drops it.
+ */
+public class AppsCallbackDispatcher implements ApplicationsState.Callbacks, LifecycleObserver {
+    private static final String TAG = "AppsCallbackDispatcher";
+    private static final boolean DEBUG = false;
+
+    /**
+     * Receiver of the dispatched events.
+     */
+    public interface Target {
+        /**
+         * Rebuild the list. Typically calls {@link ApplicationsState.Session#rebuild} and binds
+         * the result directly if it was available synchronously.
+         * @return True if the result will be delivered later through
+         *         {@link #onRebuildComplete(ArrayList)}, false if the rebuild is already done or
+         *         was skipped
+         */
+        boolean rebuild();
+
+        /**
+         * Called with the result of an asynchronous rebuild.
+         * @param apps Rebuilt list of apps
+         */
+        void onRebuildComplete(@NonNull ArrayList<ApplicationsState.AppEntry> apps);
+
+        /**
+         * Update the row for a single package whose size changed.
+         * @param packageName Package that changed
+         * @return True if handled, false to fall back to a full rebuild
+         */
+        boolean updatePackage(@NonNull String packageName);
+
+        /**
+         * Update the icons of the rows currently shown.
+         * @return True if handled, false to fall back to a full rebuild
+         */
+        boolean updateIcons();
+    }
+
+    private final Target mTarget;
+
+    private boolean mRebuildInFlight;
+    private boolean mRebuildPending;
+
+    private int mRebuildsRequested;
+    private int mRebuildsExecuted;
+    private int mRowUpdates;
+
+    public AppsCallbackDispatcher(@NonNull Target target) {
+        mTarget = target;
+    }
+
+    /**
+     * @param lifecycle Lifecycle the session is bound to, so that rebuilds dropped by pausing it
+     *                  are forgotten
+     */
+    public AppsCallbackDispatcher(@NonNull Target target, @NonNull Lifecycle lifecycle) {
+        this(target);
+        lifecycle.addObserver(this);
+    }
+
+    /**
+     * Requests a rebuild of the list. If a rebuild is already in flight, another one will be run
+     * once it completes; any further requests in the meantime are dropped.
+     */
+    public void requestRebuild() {
+        mRebuildsRequested++;
+        if (mRebuildInFlight) {
+            mRebuildPending = true;
+            return;
+        }
+        runRebuild();
+    }
+
+    private void runRebuild() {
+        mRebuildPending = false;
+        mRebuildsExecuted++;
+        // Set before calling out, since the target may complete synchronously
+        mRebuildInFlight = true;
+        if (!mTarget.rebuild()) {
+            mRebuildInFlight = false;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "Rebuilds requested: " + mRebuildsRequested
+                    + " executed: " + mRebuildsExecuted + " row updates: " + mRowUpdates);
+        }
+    }
+
+    /**
+     * Must be called when the session is paused. The session drops a rebuild running at that
+     * point without completing it, so the next request has to run rather than wait for it.
+     */
+    @OnLifecycleEvent(Lifecycle.Event.ON_PAUSE)
+    public void onSessionPaused() {
+        mRebuildInFlight = false;
+        mRebuildPending = false;
+    }
+
+    /**
+     * @return Number of rebuilds requested, either by callbacks or by {@link #requestRebuild()}
+     */
+    public int getRebuildsRequested() {
+        return mRebuildsRequested;
+    }
+
+    /**
+     * @return Number of rebuilds actually passed on to the {@link Target}
+     */
+    public int getRebuildsExecuted() {
+        return mRebuildsExecuted;
+    }
+
+    /**
+     * @return Number of events handled with targeted row updates instead of a rebuild
+     */
+    public int getRowUpdates() {
+        return mRowUpdates;
+    }
+
+    @Override
+    public void onRebuildComplete(ArrayList<ApplicationsState.AppEntry> apps) {
+        mRebuildInFlight = false;
+        mTarget.onRebuildComplete(apps);
+        if (mRebuildPending) {
+            runRebuild();
+        }
+    }
+
+    @Override
+    public void onPackageSizeChanged(String packageName) {
+        if (packageName != null && mTarget.updatePackage(packageName)) {
+            mRowUpdates++;
+        } else {
+            requestRebuild();
+        }
+    }
+
+    @Override
+    public void onPackageIconChanged() {
+        if (mTarget.updateIcons()) {
+            mRowUpdates++;
+        } else {
+            requestRebuild();
+        }
+    }
+
+    @Override
+    public void onRunningStateChanged(boolean running) {
+        requestRebuild();
+    }
+
+    @Override
+    public void onPackageListChanged() {
+        requestRebuild();
+    }
+
+    @Override
+    public void onAllSizesComputed() {
+        requestRebuild();
+    }
+
+    @Override
+    public void onLauncherInfoChanged() {
+        requestRebuild();
+    }
+
+    @Override
+    public void onLoadEntriesCompleted() {
+        requestRebuild();
+    }
+}
@@ -73,7 +73,7 @@ public class AppsFragment extends PreferenceControllerFragment {
         final Activity activity = getActivity();
         final Application app = activity != null ? activity.getApplication() : null;
         List<AbstractPreferenceController> controllers = new ArrayList<>();
-        controllers.add(new RecentAppsPreferenceController(getContext(), app));
+        controllers.add(new RecentAppsPreferenceController(getContext(), app, this));
         return controllers;
     }
 
@@ -17,16 +17,18 @@
 package com.android.tv.settings.device.apps;
 
 import android.app.Application;
+import android.app.Fragment;
 import android.app.usage.UsageStats;
 import android.app.usage.UsageStatsManager;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.ChangedPackages;
 import android.content.pm.PackageManager;
+import android.os.AsyncTask;
 import android.os.UserHandle;
 import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.ArraySet;
-import android.util.IconDrawableFactory;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
@@ -38,6 +40,7 @@ import com.android.settingslib.applications.AppUtils;
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.core.AbstractPreferenceController;
 import com.android.settingslib.utils.StringUtil;
+import com.android.tv.settings.AppIconPreference;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -46,6 +49,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 /**
@@ -59,18 +63,26 @@ public class RecentAppsPreferenceController extends AbstractPreferenceController
     @VisibleForTesting
     static final String KEY_SEE_ALL = "see_all_apps";
     private static final int SHOW_RECENT_APP_COUNT = 5;
+    /**
+     * Extra candidates loaded beyond {@link #SHOW_RECENT_APP_COUNT}, to stand in for the ones
+     * dropped on the UI thread because they are uninstalled or not user visible
+     */
+    @VisibleForTesting
+    static final int CANDIDATE_MARGIN = 5;
     private static final Set<String> SKIP_SYSTEM_PACKAGES = new ArraySet<>();
 
     private final PackageManager mPm;
     private final UsageStatsManager mUsageStatsManager;
     private final ApplicationsState mApplicationsState;
     private final int mUserId;
-    private final IconDrawableFactory mIconDrawableFactory;
+    private final Fragment mHost;
 
-    private Calendar mCal;
-    private List<UsageStats> mStats;
+    /** Whether each package has a leanback launcher activity, as of {@link #mPackageSequence} */
+    private final Map<String, Boolean> mLaunchablePackages = new ArrayMap<>();
+    private int mPackageSequence;
 
     private PreferenceCategory mCategory;
+    private RecentAppsLoader mRecentAppsLoader;
 
     static {
         SKIP_SYSTEM_PACKAGES.addAll(Arrays.asList(
@@ -83,18 +95,31 @@ public class RecentAppsPreferenceController extends AbstractPreferenceController
     }
 
     public RecentAppsPreferenceController(Context context, Application app) {
-        this(context, app == null ? null : ApplicationsState.getInstance(app));
+        this(context, app, null);
+    }
+
+    /**
+     * @param host Fragment showing the preferences, results loaded after it was detached are
+     *             dropped
+     */
+    public RecentAppsPreferenceController(Context context, Application app, Fragment host) {
+        this(context, app == null ? null : ApplicationsState.getInstance(app), host);
     }
 
     @VisibleForTesting(otherwise = VisibleForTesting.NONE)
     RecentAppsPreferenceController(Context context, ApplicationsState appState) {
+        this(context, appState, null);
+    }
+
+    @VisibleForTesting(otherwise = VisibleForTesting.NONE)
+    RecentAppsPreferenceController(Context context, ApplicationsState appState, Fragment host) {
         super(context);
-        mIconDrawableFactory = IconDrawableFactory.newInstance(context);
         mUserId = UserHandle.myUserId();
         mPm = context.getPackageManager();
         mUsageStatsManager =
                 (UsageStatsManager) context.getSystemService(Context.USAGE_STATS_SERVICE);
         mApplicationsState = appState;
+        mHost = host;
     }
 
     @Override
@@ -116,15 +141,71 @@ public class RecentAppsPreferenceController extends AbstractPreferenceController
 
     @VisibleForTesting
     void refreshUi(Context prefContext) {
-        reloadData();
-        final List<UsageStats> recentApps = getDisplayableRecentAppList();
-        if (recentApps != null && !recentApps.isEmpty()) {
-            displayRecentApps(prefContext, recentApps);
+        if (mRecentAppsLoader != null) {
+            mRecentAppsLoader.cancel(false);
+        }
+        mRecentAppsLoader = new RecentAppsLoader(prefContext);
+        mRecentAppsLoader.execute();
+    }
+
+    private void bindRecentApps(Context prefContext, RecentApps recentApps) {
+        if (mHost != null && !mHost.isAdded()) {
+            return;
+        }
+        final List<UsageStats> displayableApps = getDisplayableRecentApps(recentApps);
+        if (!displayableApps.isEmpty()) {
+            displayRecentApps(prefContext, displayableApps);
         } else {
             displayOnlyAllApps();
         }
     }
 
+    /**
+     * Immutable result of a usage stats query. The candidates still need to be checked against
+     * {@link ApplicationsState}, which must be done on the UI thread.
+     */
+    @VisibleForTesting
+    static final class RecentApps {
+        /** Apps used recently, most recent first */
+        private final List<UsageStats> mCandidates;
+        /** Candidates without a leanback launcher activity, shown only if they are instant apps */
+        private final Set<String> mNonLauncherPackages;
+
+        private RecentApps(List<UsageStats> candidates, Set<String> nonLauncherPackages) {
+            mCandidates = Collections.unmodifiableList(candidates);
+            mNonLauncherPackages = Collections.unmodifiableSet(nonLauncherPackages);
+        }
+
+        @VisibleForTesting
+        List<UsageStats> getCandidates() {
+            return mCandidates;
+        }
+    }
+
+    /**
+     * Task to query usage stats and pick the apps to display off the UI thread.
+     */
+    private class RecentAppsLoader extends AsyncTask<Void, Void, RecentApps> {
+        private final Context mPrefContext;
+
+        private RecentAppsLoader(Context prefContext) {
+            mPrefContext = prefContext;
+        }
+
+        @Override
+        protected RecentApps doInBackground(Void... voids) {
+            return reloadData();
+        }
+
+        @Override
+        protected void onPostExecute(RecentApps recentApps) {
+            if (mRecentAppsLoader == this) {
+                mRecentAppsLoader = null;
+            }
+            bindRecentApps(mPrefContext, recentApps);
+        }
+    }
+
     private void displayOnlyAllApps() {
         mCategory.setVisible(false);
         int prefCount = mCategory.getPreferenceCount();
@@ -162,14 +243,14 @@ public class RecentAppsPreferenceController extends AbstractPreferenceController
             }
 
             boolean rebindPref = true;
-            Preference pref = appPreferences.remove(pkgName);
+            AppIconPreference pref = (AppIconPreference) appPreferences.remove(pkgName);
             if (pref == null) {
-                pref = new Preference(prefContext);
+                pref = new AppIconPreference(prefContext);
                 rebindPref = false;
             }
             pref.setKey(pkgName);
             pref.setTitle(appEntry.label);
-            pref.setIcon(mIconDrawableFactory.getBadgedIcon(appEntry.info));
+            pref.setAppIcon(appEntry.info);
             pref.setSummary(StringUtil.formatRelativeTime(mContext,
                     System.currentTimeMillis() - stat.getLastTimeUsed(), false));
             pref.setOrder(i);
@@ -198,21 +279,21 @@ public class RecentAppsPreferenceController extends AbstractPreferenceController
     }
 
     @VisibleForTesting
-    void reloadData() {
-        mCal = Calendar.getInstance();
-        mCal.add(Calendar.DAY_OF_YEAR, -1);
-        mStats = mUsageStatsManager.queryUsageStats(
-                UsageStatsManager.INTERVAL_BEST, mCal.getTimeInMillis(),
-                System.currentTimeMillis());
-    }
-
-    private List<UsageStats> getDisplayableRecentAppList() {
-        final List<UsageStats> recentApps = new ArrayList<>();
+    RecentApps reloadData() {
+        final Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.DAY_OF_YEAR, -1);
+        final long startTime = cal.getTimeInMillis();
+        final List<UsageStats> stats = mUsageStatsManager.queryUsageStats(
+                UsageStatsManager.INTERVAL_BEST, startTime, System.currentTimeMillis());
+        if (stats == null) {
+            return new RecentApps(Collections.emptyList(), Collections.emptySet());
+        }
+        invalidateChangedPackages();
         final Map<String, UsageStats> map = new ArrayMap<>();
-        final int statCount = mStats.size();
+        final int statCount = stats.size();
         for (int i = 0; i < statCount; i++) {
-            final UsageStats pkgStats = mStats.get(i);
-            if (!shouldIncludePkgInRecents(pkgStats)) {
+            final UsageStats pkgStats = stats.get(i);
+            if (!shouldIncludePkgInRecents(pkgStats, startTime)) {
                 continue;
             }
             final String pkgName = pkgStats.getPackageName();
@@ -223,31 +304,89 @@ public class RecentAppsPreferenceController extends AbstractPreferenceController
                 existingStats.add(pkgStats);
             }
         }
-        final List<UsageStats> packageStats = new ArrayList<>();
-        packageStats.addAll(map.values());
-        Collections.sort(packageStats, this /* comparator */);
-        int count = 0;
-        for (UsageStats stat : packageStats) {
-            final ApplicationsState.AppEntry appEntry = mApplicationsState.getEntry(
-                    stat.getPackageName(), mUserId);
+        // Keep only the most recent apps in a bounded heap, whose head is the least recent of
+        // them, rather than sorting every package. The margin covers apps that the UI thread
+        // turns out not to show.
+        final int candidateCount = SHOW_RECENT_APP_COUNT + CANDIDATE_MARGIN;
+        final PriorityQueue<UsageStats> heap =
+                new PriorityQueue<>(candidateCount + 1, Collections.reverseOrder(this));
+        for (UsageStats stat : map.values()) {
+            heap.add(stat);
+            if (heap.size() > candidateCount) {
+                heap.poll();
+            }
+        }
+        final List<UsageStats> candidates = new ArrayList<>(heap);
+        Collections.sort(candidates, this /* comparator */);
+        final Set<String> nonLauncherPackages = new ArraySet<>();
+        for (UsageStats stat : candidates) {
+            if (!hasLeanbackLauncherActivity(stat.getPackageName())) {
+                nonLauncherPackages.add(stat.getPackageName());
+            }
+        }
+        return new RecentApps(candidates, nonLauncherPackages);
+    }
+
+    /**
+     * Picks the apps to display out of the loaded candidates. Must be called on the UI thread,
+     * since it looks up {@link ApplicationsState} entries.
+     */
+    private List<UsageStats> getDisplayableRecentApps(RecentApps recentApps) {
+        final List<UsageStats> displayableApps = new ArrayList<>(SHOW_RECENT_APP_COUNT);
+        for (UsageStats stat : recentApps.mCandidates) {
+            if (displayableApps.size() >= SHOW_RECENT_APP_COUNT) {
+                break;
+            }
+            final String pkgName = stat.getPackageName();
+            final ApplicationsState.AppEntry appEntry =
+                    mApplicationsState.getEntry(pkgName, mUserId);
             if (appEntry == null) {
                 continue;
             }
-            recentApps.add(stat);
-            count++;
-            if (count >= SHOW_RECENT_APP_COUNT) {
-                break;
+            if (recentApps.mNonLauncherPackages.contains(pkgName)
+                    && (appEntry.info == null || !AppUtils.isInstant(appEntry.info))) {
+                // Not visible on launcher -> likely not a user visible app, skip if non-instant.
+                Log.d(TAG, "Not a user visible or instant app, skipping " + pkgName);
+                continue;
             }
+            displayableApps.add(stat);
         }
-        return recentApps;
+        return displayableApps;
     }
 
     /**
-     * Whether or not the app should be included in recent list.
+     * Drops the launcher visibility of packages that changed since the last query.
      */
-    private boolean shouldIncludePkgInRecents(UsageStats stat) {
+    private void invalidateChangedPackages() {
+        final ChangedPackages changedPackages = mPm.getChangedPackages(mPackageSequence);
+        if (changedPackages == null) {
+            return;
+        }
+        mPackageSequence = changedPackages.getSequenceNumber();
+        for (String pkgName : changedPackages.getPackageNames()) {
+            mLaunchablePackages.remove(pkgName);
+        }
+    }
+
+    private boolean hasLeanbackLauncherActivity(String pkgName) {
+        Boolean launchable = mLaunchablePackages.get(pkgName);
+        if (launchable == null) {
+            final Intent launchIntent = new Intent()
+                    .addCategory(Intent.CATEGORY_LEANBACK_LAUNCHER)
+                    .setPackage(pkgName);
+            launchable = mPm.resolveActivity(launchIntent, 0) != null;
+            mLaunchablePackages.put(pkgName, launchable);
+        }
+        return launchable;
+    }
+
+    /**
+     * Whether or not the app may be included in recent list, as far as can be told without its
+     * {@link ApplicationsState} entry.
+     */
+    private boolean shouldIncludePkgInRecents(UsageStats stat, long startTime) {
         final String pkgName = stat.getPackageName();
-        if (stat.getLastTimeUsed() < mCal.getTimeInMillis()) {
+        if (stat.getLastTimeUsed() < startTime) {
             Log.d(TAG, "Invalid timestamp, skipping " + pkgName);
             return false;
         }
@@ -256,18 +395,6 @@ public class RecentAppsPreferenceController extends AbstractPreferenceController
             Log.d(TAG, "System package, skipping " + pkgName);
             return false;
         }
-        final Intent launchIntent = new Intent().addCategory(Intent.CATEGORY_LEANBACK_LAUNCHER)
-                .setPackage(pkgName);
-
-        if (mPm.resolveActivity(launchIntent, 0) == null) {
-            // Not visible on launcher -> likely not a user visible app, skip if non-instant.
-            final ApplicationsState.AppEntry appEntry =
-                    mApplicationsState.getEntry(pkgName, mUserId);
-            if (appEntry == null || appEntry.info == null || !AppUtils.isInstant(appEntry.info)) {
-                Log.d(TAG, "Not a user visible or instant app, skipping " + pkgName);
-                return false;
-            }
-        }
         return true;
     }
 }
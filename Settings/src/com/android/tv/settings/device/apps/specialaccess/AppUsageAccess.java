@@ -105,7 +105,7 @@ public class AppUsageAccess extends ManageAppOp
         mAppOpsManager.setMode(AppOpsManager.OP_GET_USAGE_STATS,
                 entry.info.uid, entry.info.packageName,
                 grant ? AppOpsManager.MODE_ALLOWED : AppOpsManager.MODE_IGNORED);
-        updateAppList();
+        updateAppList(entry);
     }
 
     @NonNull
@@ -129,7 +129,7 @@ public class ExternalSources extends ManageAppOp {
         mAppOpsManager.setMode(AppOpsManager.OP_REQUEST_INSTALL_PACKAGES,
                 entry.info.uid, entry.info.packageName,
                 newState ? AppOpsManager.MODE_ALLOWED : AppOpsManager.MODE_ERRORED);
-        updateAppList();
+        updateAppList(entry);
     }
 
     @NonNull
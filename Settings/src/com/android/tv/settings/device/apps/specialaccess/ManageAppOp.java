@@ -16,20 +16,13 @@
 
 package com.android.tv.settings.device.apps.specialaccess;
 
-import android.app.ActivityThread;
 import android.app.AppOpsManager;
 import android.content.Context;
-import android.content.pm.IPackageManager;
-import android.content.pm.PackageManager;
-import android.os.Bundle;
-import android.os.RemoteException;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.preference.Preference;
 
-import com.android.internal.util.ArrayUtils;
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.tv.settings.R;
 import com.android.tv.settings.SettingsPreferenceFragment;
@@ -41,25 +34,32 @@ import java.util.Comparator;
  */
 public abstract class ManageAppOp extends SettingsPreferenceFragment
         implements ManageApplicationsController.Callback {
-    private static final String TAG = "ManageAppOps";
-
-    private IPackageManager mIPackageManager;
-    private AppOpsManager mAppOpsManager;
 
+    private PermissionStateCache mPermissionStateCache;
     private ManageApplicationsController mManageApplicationsController;
 
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
+        mPermissionStateCache = new PermissionStateCache(context, getPermission(),
+                getAppOpsOpCode(), this::updateAppList);
         mManageApplicationsController = new ManageApplicationsController(context, this,
                 getLifecycle(), getAppFilter(), getAppComparator());
     }
 
     @Override
-    public void onCreate(Bundle savedInstanceState) {
-        mIPackageManager = ActivityThread.getPackageManager();
-        mAppOpsManager = getContext().getSystemService(AppOpsManager.class);
-        super.onCreate(savedInstanceState);
+    public void onResume() {
+        super.onResume();
+        // App ops may have been changed elsewhere while we weren't showing
+        mPermissionStateCache.invalidateAll();
+        mPermissionStateCache.prefetch();
+        mPermissionStateCache.register();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        mPermissionStateCache.unregister();
     }
 
     /**
@@ -76,7 +76,8 @@ public abstract class ManageAppOp extends SettingsPreferenceFragment
 
             @Override
             public boolean filterApp(ApplicationsState.AppEntry entry) {
-                entry.extraInfo = createPermissionStateFor(entry.info.packageName, entry.info.uid);
+                entry.extraInfo = mPermissionStateCache.getPermissionState(
+                        entry.info.packageName, entry.info.uid);
                 return !shouldIgnorePackage(getContext(), entry.info.packageName)
                         && ((PermissionState) entry.extraInfo).isPermissible();
             }
@@ -99,6 +100,15 @@ public abstract class ManageAppOp extends SettingsPreferenceFragment
         mManageApplicationsController.updateAppList();
     }
 
+    /**
+     * Call to trigger the app list to update after changing the app op mode of an entry
+     * @param entry Entry whose app op mode changed
+     */
+    public void updateAppList(@NonNull ApplicationsState.AppEntry entry) {
+        mPermissionStateCache.invalidate(entry.info.packageName);
+        updateAppList();
+    }
+
     /**
      * @return AppOps code
      */
@@ -109,37 +119,6 @@ public abstract class ManageAppOp extends SettingsPreferenceFragment
      */
     public abstract String getPermission();
 
-    private boolean hasRequestedAppOpPermission(String permission, String packageName) {
-        try {
-            String[] packages = mIPackageManager.getAppOpPermissionPackages(permission);
-            return ArrayUtils.contains(packages, packageName);
-        } catch (RemoteException exc) {
-            Log.e(TAG, "PackageManager dead. Cannot get permission info");
-            return false;
-        }
-    }
-
-    private boolean hasPermission(int uid) {
-        try {
-            int result = mIPackageManager.checkUidPermission(getPermission(), uid);
-            return result == PackageManager.PERMISSION_GRANTED;
-        } catch (RemoteException e) {
-            Log.e(TAG, "PackageManager dead. Cannot get permission info");
-            return false;
-        }
-    }
-
-    private int getAppOpMode(int uid, String packageName) {
-        return mAppOpsManager.checkOpNoThrow(getAppOpsOpCode(), uid, packageName);
-    }
-
-    private PermissionState createPermissionStateFor(String packageName, int uid) {
-        return new PermissionState(
-                hasRequestedAppOpPermission(getPermission(), packageName),
-                hasPermission(uid),
-                getAppOpMode(uid, packageName));
-    }
-
     /**
      * Checks for packages that should be ignored for further processing
      */
@@ -158,7 +137,7 @@ public abstract class ManageAppOp extends SettingsPreferenceFragment
         public final boolean permissionGranted;
         public final int appOpMode;
 
-        private PermissionState(boolean permissionRequested, boolean permissionGranted,
+        PermissionState(boolean permissionRequested, boolean permissionGranted,
                 int appOpMode) {
             this.permissionRequested = permissionRequested;
             this.permissionGranted = permissionGranted;
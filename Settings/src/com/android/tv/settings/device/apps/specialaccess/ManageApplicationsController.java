@@ -20,16 +20,18 @@ import android.app.Application;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleObserver;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceGroup;
 
 import com.android.settingslib.applications.ApplicationsState;
+import com.android.tv.settings.device.apps.AppListReconciler;
+import com.android.tv.settings.device.apps.AppsCallbackDispatcher;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.List;
 
 /**
  * A class to manage a list of apps in a {@link PreferenceGroup}. The list is configured by passing
@@ -50,55 +52,60 @@ public class ManageApplicationsController implements LifecycleObserver {
 
     private ApplicationsState.Session mAppSession;
     private ApplicationsState mApplicationsState;
-    private final ApplicationsState.Callbacks mAppSessionCallbacks =
-            new ApplicationsState.Callbacks() {
+    private AppListReconciler mReconciler;
+    private Preference mEmptyPreference;
+    private UpdateListener mUpdateListener;
+    private final AppListReconciler.Binder mReconcilerBinder = new AppListReconciler.Binder() {
+        @NonNull
+        @Override
+        public Preference createAppPreference() {
+            return mCallback.createAppPreference();
+        }
 
-                @Override
-                public void onRunningStateChanged(boolean running) {
-                    updateAppList();
-                }
+        @NonNull
+        @Override
+        public Preference bindPreference(@NonNull Preference preference,
+                ApplicationsState.AppEntry entry) {
+            return mCallback.bindPreference(preference, entry);
+        }
+    };
+    private final AppsCallbackDispatcher mAppSessionCallbacks =
+            new AppsCallbackDispatcher(new AppsCallbackDispatcher.Target() {
 
                 @Override
-                public void onPackageListChanged() {
-                    updateAppList();
+                public boolean rebuild() {
+                    return rebuildAppList();
                 }
 
                 @Override
-                public void onRebuildComplete(ArrayList<ApplicationsState.AppEntry> apps) {
+                public void onRebuildComplete(
+                        @NonNull ArrayList<ApplicationsState.AppEntry> apps) {
                     updateAppList(apps);
                 }
 
                 @Override
-                public void onPackageIconChanged() {
-                    updateAppList();
+                public boolean updatePackage(@NonNull String packageName) {
+                    if (mReconciler != null) {
+                        mReconciler.refreshRow(packageName);
+                    }
+                    return true;
                 }
 
                 @Override
-                public void onPackageSizeChanged(String packageName) {
-                    updateAppList();
+                public boolean updateIcons() {
+                    if (mReconciler != null) {
+                        mReconciler.refreshIcons();
+                    }
+                    return true;
                 }
-
-                @Override
-                public void onAllSizesComputed() {
-                    updateAppList();
-                }
-
-                @Override
-                public void onLauncherInfoChanged() {
-                    updateAppList();
-                }
-
-                @Override
-                public void onLoadEntriesCompleted() {
-                    updateAppList();
-                }
-            };
+            });
 
     public ManageApplicationsController(@NonNull Context context, @NonNull Callback callback,
             @NonNull Lifecycle lifecycle, ApplicationsState.AppFilter filter,
             Comparator<ApplicationsState.AppEntry> comparator) {
         mCallback = callback;
         lifecycle.addObserver(this);
+        lifecycle.addObserver(mAppSessionCallbacks);
         mLifecycle = lifecycle;
         mFilter = filter;
         mComparator = comparator;
@@ -112,42 +119,66 @@ public class ManageApplicationsController implements LifecycleObserver {
      * Call this method to trigger the app list to refresh.
      */
     public void updateAppList() {
+        mAppSessionCallbacks.requestRebuild();
+    }
+
+    private boolean rebuildAppList() {
         ApplicationsState.AppFilter filter = new ApplicationsState.CompoundFilter(
                 mFilter, ApplicationsState.FILTER_NOT_HIDE);
         ArrayList<ApplicationsState.AppEntry> apps = mAppSession.rebuild(filter, mComparator);
         if (apps != null) {
             updateAppList(apps);
+            return false;
         }
+        return true;
     }
 
     private void updateAppList(ArrayList<ApplicationsState.AppEntry> apps) {
-        PreferenceGroup group = mCallback.getAppPreferenceGroup();
-        final List<Preference> newList = new ArrayList<>(apps.size() + 1);
+        final PreferenceGroup group = mCallback.getAppPreferenceGroup();
+        if (mReconciler == null) {
+            final Preference header = group.findPreference(HEADER_KEY);
+            // Keep the app rows below the header, if there is one
+            mReconciler = new AppListReconciler(group, mReconcilerBinder,
+                    header != null ? header.getOrder() : 0);
+        }
         for (final ApplicationsState.AppEntry entry : apps) {
-            final String packageName = entry.info.packageName;
             mApplicationsState.ensureIcon(entry);
-            Preference recycle = group.findPreference(packageName);
-            if (recycle == null) {
-                recycle = mCallback.createAppPreference();
-            }
-            newList.add(mCallback.bindPreference(recycle, entry));
         }
-        final Preference header = group.findPreference(HEADER_KEY);
-        // Because we're sorting the app entries, we should remove-all to ensure that sort order
-        // is retained
-        group.removeAll();
-        if (header != null) {
-            group.addPreference(header);
-        }
-        if (newList.size() > 0) {
-            for (Preference prefToAdd : newList) {
-                group.addPreference(prefToAdd);
+        final int rowsTouched = mReconciler.reconcile(apps);
+        if (apps.isEmpty()) {
+            if (mEmptyPreference == null) {
+                mEmptyPreference = mCallback.getEmptyPreference();
+                group.addPreference(mEmptyPreference);
             }
-        } else {
-            group.addPreference(mCallback.getEmptyPreference());
+        } else if (mEmptyPreference != null) {
+            group.removePreference(mEmptyPreference);
+            mEmptyPreference = null;
+        }
+        if (mUpdateListener != null) {
+            mUpdateListener.onAppListUpdated(rowsTouched, apps.size());
         }
     }
 
+    /**
+     * Sets a listener to be told how many rows each update of the list touched.
+     * @param listener Listener, or null to clear
+     */
+    public void setUpdateListener(@Nullable UpdateListener listener) {
+        mUpdateListener = listener;
+    }
+
+    /**
+     * Listener for measuring the cost of list updates.
+     */
+    public interface UpdateListener {
+        /**
+         * Called after the app list was reconciled with a new set of entries.
+         * @param rowsTouched Number of rows inserted, removed, moved or rebound
+         * @param rowCount Number of app rows after the update
+         */
+        void onAppListUpdated(int rowsTouched, int rowCount);
+    }
+
     /**
      * Callback interface for this class to manipulate the list of app preferences.
      */
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.apps.specialaccess;
+
+import android.app.ActivityThread;
+import android.app.AppOpsManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.IPackageManager;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.RemoteException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * In-memory cache of the app op and permission state of every package, for the special app access
+ * screens. App filters run once per entry on every rebuild, so instead of making several Binder
+ * calls per entry each time, the package set requesting the permission is fetched once as a hash
+ * set, and per-package state is looked up once and kept until the package changes.
+ *
+ * <p>Every invalidation bumps a generation counter. A lookup only stores its result if no
+ * invalidation happened while it was running, so that a prefetch still in flight can't put back
+ * state from before e.g. an app op mode change.
+ */
+class PermissionStateCache {
+    private static final String TAG = "PermissionStateCache";
+
+    /**
+     * Listener for invalidations caused by package changes.
+     */
+    interface Listener {
+        /**
+         * Called on the main thread after cached state has been dropped because a package was
+         * added, removed or changed.
+         */
+        void onPermissionStateInvalidated();
+    }
+
+    private final Context mContext;
+    private final IPackageManager mIPackageManager;
+    private final AppOpsManager mAppOpsManager;
+    private final String mPermission;
+    private final int mAppOpsOpCode;
+    private final Listener mListener;
+    private final Executor mPrefetchExecutor;
+
+    private final Object mLock = new Object();
+    private final Map<String, ManageAppOp.PermissionState> mStates = new ConcurrentHashMap<>();
+    private final Map<String, Integer> mAppOpModes = new ConcurrentHashMap<>();
+    private volatile Set<String> mAppOpPermissionPackages;
+    /** Guarded by mLock. Bumped on every invalidation, so racing lookups are not cached */
+    private int mGeneration;
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final Uri data = intent.getData();
+            final String packageName = data != null ? data.getSchemeSpecificPart() : null;
+            if (packageName == null) {
+                invalidateAll();
+            } else {
+                invalidate(packageName);
+                // An added or updated package may have started requesting the permission
+                synchronized (mLock) {
+                    mAppOpPermissionPackages = null;
+                }
+            }
+            if (mListener != null) {
+                mListener.onPermissionStateInvalidated();
+            }
+        }
+    };
+
+    /**
+     * @param context Context
+     * @param permission Manifest permission backing the app op, or null if only app op modes are
+     *                   needed
+     * @param appOpsOpCode AppOps code
+     * @param listener Listener to notify of invalidations, may be null
+     */
+    PermissionStateCache(@NonNull Context context, @Nullable String permission, int appOpsOpCode,
+            @Nullable Listener listener) {
+        this(context, ActivityThread.getPackageManager(),
+                context.getSystemService(AppOpsManager.class), permission, appOpsOpCode, listener,
+                AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    @VisibleForTesting
+    PermissionStateCache(@NonNull Context context, @NonNull IPackageManager iPackageManager,
+            @NonNull AppOpsManager appOpsManager, @Nullable String permission, int appOpsOpCode,
+            @Nullable Listener listener, @NonNull Executor prefetchExecutor) {
+        mContext = context.getApplicationContext();
+        mIPackageManager = iPackageManager;
+        mAppOpsManager = appOpsManager;
+        mPermission = permission;
+        mAppOpsOpCode = appOpsOpCode;
+        mListener = listener;
+        mPrefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * Starts listening for package changes. Must be balanced with {@link #unregister()}.
+     */
+    void register() {
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        mContext.registerReceiver(mPackageReceiver, filter);
+    }
+
+    void unregister() {
+        mContext.unregisterReceiver(mPackageReceiver);
+    }
+
+    /**
+     * Fills the cache for all installed apps in one batch on a background thread, so that the
+     * first rebuild of the list finds most of the state already in memory.
+     */
+    void prefetch() {
+        mPrefetchExecutor.execute(() -> {
+            final List<ApplicationInfo> apps =
+                    mContext.getPackageManager().getInstalledApplications(0);
+            if (mPermission != null) {
+                getAppOpPermissionPackages();
+            }
+            for (final ApplicationInfo app : apps) {
+                if (mPermission != null) {
+                    getPermissionState(app.packageName, app.uid);
+                } else {
+                    getAppOpMode(app.packageName, app.uid);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the cached state of a single package, e.g. after changing its app op mode.
+     * @param packageName Package to forget
+     */
+    void invalidate(@NonNull String packageName) {
+        synchronized (mLock) {
+            mGeneration++;
+            mStates.remove(packageName);
+            mAppOpModes.remove(packageName);
+        }
+    }
+
+    /**
+     * Drops all cached state.
+     */
+    void invalidateAll() {
+        synchronized (mLock) {
+            mGeneration++;
+            mStates.clear();
+            mAppOpModes.clear();
+            mAppOpPermissionPackages = null;
+        }
+    }
+
+    /**
+     * @return Permission state of the package, from memory if available
+     */
+    @NonNull
+    ManageAppOp.PermissionState getPermissionState(@NonNull String packageName, int uid) {
+        ManageAppOp.PermissionState state = mStates.get(packageName);
+        if (state == null) {
+            final int generation = getGeneration();
+            state = new ManageAppOp.PermissionState(
+                    getAppOpPermissionPackages().contains(packageName),
+                    hasPermission(uid),
+                    getAppOpMode(packageName, uid));
+            synchronized (mLock) {
+                if (generation == mGeneration) {
+                    mStates.put(packageName, state);
+                }
+            }
+        }
+        return state;
+    }
+
+    /**
+     * @return App op mode of the package, from memory if available
+     */
+    int getAppOpMode(@NonNull String packageName, int uid) {
+        Integer mode = mAppOpModes.get(packageName);
+        if (mode == null) {
+            final int generation = getGeneration();
+            mode = mAppOpsManager.checkOpNoThrow(mAppOpsOpCode, uid, packageName);
+            synchronized (mLock) {
+                if (generation == mGeneration) {
+                    mAppOpModes.put(packageName, mode);
+                }
+            }
+        }
+        return mode;
+    }
+
+    private Set<String> getAppOpPermissionPackages() {
+        Set<String> packages = mAppOpPermissionPackages;
+        if (packages == null) {
+            final int generation = getGeneration();
+            try {
+                final String[] packageArray =
+                        mIPackageManager.getAppOpPermissionPackages(mPermission);
+                packages = packageArray == null
+                        ? Collections.emptySet()
+                        : new HashSet<>(Arrays.asList(packageArray));
+            } catch (RemoteException exc) {
+                Log.e(TAG, "PackageManager dead. Cannot get permission info");
+                // Don't cache the failure
+                return Collections.emptySet();
+            }
+            synchronized (mLock) {
+                if (generation == mGeneration) {
+                    mAppOpPermissionPackages = packages;
+                }
+            }
+        }
+        return packages;
+    }
+
+    private int getGeneration() {
+        synchronized (mLock) {
+            return mGeneration;
+        }
+    }
+
+    private boolean hasPermission(int uid) {
+        try {
+            int result = mIPackageManager.checkUidPermission(mPermission, uid);
+            return result == PackageManager.PERMISSION_GRANTED;
+        } catch (RemoteException e) {
+            Log.e(TAG, "PackageManager dead. Cannot get permission info");
+            return false;
+        }
+    }
+}
@@ -45,6 +45,7 @@ public class PictureInPicture extends SettingsPreferenceFragment
 
     private ManageApplicationsController mManageApplicationsController;
     private AppOpsManager mAppOpsManager;
+    private PermissionStateCache mPermissionStateCache;
 
     private final ApplicationsState.AppFilter mFilter =
             new ApplicationsState.CompoundFilter(
@@ -58,10 +59,9 @@ public class PictureInPicture extends SettingsPreferenceFragment
 
                         @Override
                         public boolean filterApp(ApplicationsState.AppEntry info) {
-                            info.extraInfo = mAppOpsManager.checkOpNoThrow(
-                                    AppOpsManager.OP_PICTURE_IN_PICTURE,
-                                    info.info.uid,
-                                    info.info.packageName) == AppOpsManager.MODE_ALLOWED;
+                            info.extraInfo = mPermissionStateCache.getAppOpMode(
+                                    info.info.packageName,
+                                    info.info.uid) == AppOpsManager.MODE_ALLOWED;
                             return !ManageAppOp.shouldIgnorePackage(
                                     getContext(), info.info.packageName)
                                     && checkPackageHasPipActivities(info.info.packageName);
@@ -72,6 +72,9 @@ public class PictureInPicture extends SettingsPreferenceFragment
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         mAppOpsManager = getContext().getSystemService(AppOpsManager.class);
+        mPermissionStateCache = new PermissionStateCache(getContext(), null,
+                AppOpsManager.OP_PICTURE_IN_PICTURE,
+                () -> mManageApplicationsController.updateAppList());
         mManageApplicationsController = new ManageApplicationsController(getContext(), this,
                 getLifecycle(), mFilter, ApplicationsState.ALPHA_COMPARATOR);
     }
@@ -84,9 +87,19 @@ public class PictureInPicture extends SettingsPreferenceFragment
     @Override
     public void onResume() {
         super.onResume();
+        // App ops may have been changed elsewhere while we weren't showing
+        mPermissionStateCache.invalidateAll();
+        mPermissionStateCache.prefetch();
+        mPermissionStateCache.register();
         mManageApplicationsController.updateAppList();
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        mPermissionStateCache.unregister();
+    }
+
     private boolean checkPackageHasPipActivities(String packageName) {
         try {
             final PackageInfo packageInfo = getContext().getPackageManager().getPackageInfo(
@@ -120,6 +133,7 @@ public class PictureInPicture extends SettingsPreferenceFragment
                     entry.info.uid,
                     entry.info.packageName,
                     (Boolean) newValue ? AppOpsManager.MODE_ALLOWED : AppOpsManager.MODE_ERRORED);
+            mPermissionStateCache.invalidate(entry.info.packageName);
             return true;
         });
         switchPref.setSummary((Boolean) entry.extraInfo
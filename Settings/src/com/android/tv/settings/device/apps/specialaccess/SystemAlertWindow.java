@@ -100,7 +100,7 @@ public class SystemAlertWindow extends ManageAppOp {
         mAppOpsManager.setMode(AppOpsManager.OP_SYSTEM_ALERT_WINDOW,
                 entry.info.uid, entry.info.packageName,
                 grant ? AppOpsManager.MODE_ALLOWED : AppOpsManager.MODE_ERRORED);
-        updateAppList();
+        updateAppList(entry);
     }
 
     private CharSequence getPreferenceSummary(ApplicationsState.AppEntry entry) {
@@ -19,12 +19,10 @@ package com.android.tv.settings.device.storage;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.storage.StorageManager;
 import android.os.storage.VolumeInfo;
 import android.text.TextUtils;
-import android.util.ArrayMap;
 
 import androidx.annotation.NonNull;
 import androidx.leanback.app.GuidedStepFragment;
@@ -33,14 +31,15 @@ import androidx.leanback.widget.GuidedAction;
 
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.tv.settings.R;
+import com.android.tv.settings.device.apps.AppsCallbackDispatcher;
 import com.android.tv.settings.device.apps.MoveAppActivity;
+import com.android.tv.settings.util.AppIconLoader;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 public class BackupAppsStepFragment extends GuidedStepFragment implements
-        ApplicationsState.Callbacks {
+        AppsCallbackDispatcher.Target {
 
     private static final int ACTION_NO_APPS = 0;
     private static final int ACTION_MIGRATE_DATA = 1;
@@ -48,6 +47,7 @@ public class BackupAppsStepFragment extends GuidedStepFragment implements
 
     private ApplicationsState mApplicationsState;
     private ApplicationsState.Session mSession;
+    private AppsCallbackDispatcher mSessionCallbacks;
 
     private PackageManager mPackageManager;
     private StorageManager mStorageManager;
@@ -55,8 +55,7 @@ public class BackupAppsStepFragment extends GuidedStepFragment implements
     private String mVolumeId;
     private ApplicationsState.AppFilter mAppFilter;
 
-    private IconLoaderTask mIconLoaderTask;
-    private final Map<String, Drawable> mIconMap = new ArrayMap<>();
+    private AppIconLoader mIconLoader;
 
     private final List<ApplicationsState.AppEntry> mEntries = new ArrayList<>();
 
@@ -73,6 +72,7 @@ public class BackupAppsStepFragment extends GuidedStepFragment implements
         // Need mPackageManager before onCreateActions, which is called from super.onCreate
         mPackageManager = getActivity().getPackageManager();
         mStorageManager = getActivity().getSystemService(StorageManager.class);
+        mIconLoader = AppIconLoader.getInstance(getActivity());
 
         mVolumeId = getArguments().getString(VolumeInfo.EXTRA_VOLUME_ID);
         final VolumeInfo info = mStorageManager.findVolumeById(mVolumeId);
@@ -94,7 +94,8 @@ public class BackupAppsStepFragment extends GuidedStepFragment implements
         }
 
         mApplicationsState = ApplicationsState.getInstance(getActivity().getApplication());
-        mSession = mApplicationsState.newSession(this);
+        mSessionCallbacks = new AppsCallbackDispatcher(this);
+        mSession = mApplicationsState.newSession(mSessionCallbacks);
 
         super.onCreate(savedInstanceState);
     }
@@ -110,6 +111,7 @@ public class BackupAppsStepFragment extends GuidedStepFragment implements
     public void onPause() {
         super.onPause();
         mSession.onPause();
+        mSessionCallbacks.onSessionPaused();
     }
 
     @Override
@@ -142,12 +144,11 @@ public class BackupAppsStepFragment extends GuidedStepFragment implements
         final List<ApplicationsState.AppEntry> entries = mSession.rebuild(mAppFilter,
                 ApplicationsState.ALPHA_COMPARATOR);
         if (entries != null) {
-            actions.addAll(getAppActions(true, entries));
+            actions.addAll(getAppActions(entries));
         }
     }
 
-    private List<GuidedAction> getAppActions(boolean refreshIcons,
-            List<ApplicationsState.AppEntry> entries) {
+    private List<GuidedAction> getAppActions(List<ApplicationsState.AppEntry> entries) {
 
         final List<GuidedAction> actions = new ArrayList<>(entries.size() + 1);
 
@@ -181,19 +182,19 @@ public class BackupAppsStepFragment extends GuidedStepFragment implements
             actions.add(new GuidedAction.Builder(getContext())
                     .title(entry.label)
                     .description(entry.sizeStr)
-                    .icon(mIconMap.get(info.packageName))
+                    .icon(mIconLoader.getCachedIcon(info))
                     .id(index++)
                     .build());
         }
         mEntries.clear();
         mEntries.addAll(entries);
 
-        if (refreshIcons) {
-            if (mIconLoaderTask != null) {
-                mIconLoaderTask.cancel(true);
+        // Icons that aren't cached yet are loaded in the background and set as they arrive
+        for (final ApplicationsState.AppEntry entry : entries) {
+            if (mIconLoader.getCachedIcon(entry.info) == null) {
+                final String packageName = entry.info.packageName;
+                mIconLoader.loadIcon(entry.info, icon -> updateActionIcon(packageName, icon));
             }
-            mIconLoaderTask = new IconLoaderTask(entries);
-            mIconLoaderTask.execute();
         }
 
         if (actions.size() == 0) {
@@ -209,9 +210,9 @@ public class BackupAppsStepFragment extends GuidedStepFragment implements
         final List<ApplicationsState.AppEntry> entries = mSession.rebuild(mAppFilter,
                 ApplicationsState.ALPHA_COMPARATOR);
         if (entries != null) {
-            setActions(getAppActions(true, entries));
+            setActions(getAppActions(entries));
         } else {
-            setActions(getAppActions(true, mEntries));
+            setActions(getAppActions(mEntries));
         }
     }
 
@@ -237,71 +238,61 @@ public class BackupAppsStepFragment extends GuidedStepFragment implements
     }
 
     @Override
-    public void onRunningStateChanged(boolean running) {
-        updateActions();
-    }
-
-    @Override
-    public void onPackageListChanged() {
-        updateActions();
-    }
-
-    @Override
-    public void onRebuildComplete(ArrayList<ApplicationsState.AppEntry> apps) {
-        setActions(getAppActions(true, apps));
-    }
-
-    @Override
-    public void onLauncherInfoChanged() {
-        updateActions();
-    }
-
-    @Override
-    public void onLoadEntriesCompleted() {
-        updateActions();
+    public boolean rebuild() {
+        final List<ApplicationsState.AppEntry> entries = mSession.rebuild(mAppFilter,
+                ApplicationsState.ALPHA_COMPARATOR);
+        if (entries != null) {
+            setActions(getAppActions(entries));
+            return false;
+        }
+        return true;
     }
 
     @Override
-    public void onPackageIconChanged() {
-        updateActions();
+    public void onRebuildComplete(@NonNull ArrayList<ApplicationsState.AppEntry> apps) {
+        setActions(getAppActions(apps));
     }
 
     @Override
-    public void onPackageSizeChanged(String packageName) {
-        updateActions();
+    public boolean updatePackage(@NonNull String packageName) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            final ApplicationsState.AppEntry entry = mEntries.get(i);
+            if (!TextUtils.equals(entry.info.packageName, packageName)) {
+                continue;
+            }
+            final int position = findActionPositionById(ACTION_BACKUP_APP_BASE + i);
+            if (position < 0) {
+                return false;
+            }
+            final GuidedAction action = getActions().get(position);
+            if (!TextUtils.equals(action.getDescription(), entry.sizeStr)) {
+                action.setDescription(entry.sizeStr);
+                notifyActionChanged(position);
+            }
+            return true;
+        }
+        return true;
     }
 
     @Override
-    public void onAllSizesComputed() {
-        updateActions();
+    public boolean updateIcons() {
+        // Icons are loaded separately by mIconLoader, see getAppActions
+        return true;
     }
 
-    private class IconLoaderTask extends AsyncTask<Void, Void, Map<String, Drawable>> {
-        private final List<ApplicationsState.AppEntry> mEntries;
-
-        public IconLoaderTask(List<ApplicationsState.AppEntry> entries) {
-            mEntries = entries;
-        }
-
-        @Override
-        protected Map<String, Drawable> doInBackground(Void... params) {
-            // NB: Java doesn't like parameterized generics in varargs
-            final Map<String, Drawable> result = new ArrayMap<>(mEntries.size());
-            for (final ApplicationsState.AppEntry entry : mEntries) {
-                result.put(entry.info.packageName, mPackageManager.getApplicationIcon(entry.info));
-            }
-            return result;
+    private void updateActionIcon(String packageName, Drawable icon) {
+        if (!isAdded()) {
+            return;
         }
-
-        @Override
-        protected void onPostExecute(Map<String, Drawable> stringDrawableMap) {
-            mIconLoaderTask = null;
-            if (!isAdded()) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            if (TextUtils.equals(mEntries.get(i).info.packageName, packageName)) {
+                final int position = findActionPositionById(ACTION_BACKUP_APP_BASE + i);
+                if (position >= 0) {
+                    getActions().get(position).setIcon(icon);
+                    notifyActionChanged(position);
+                }
                 return;
             }
-            mIconMap.putAll(stringDrawableMap);
-            setActions(getAppActions(false, mEntries));
         }
     }
-
 }
@@ -61,6 +61,7 @@ public class ConfirmClearCacheFragment extends GuidedStepFragment {
             for (PackageInfo info : infos) {
                 pm.deleteApplicationCacheFiles(info.packageName, null);
             }
+            StorageMeasurementCache.getInstance(getContext()).invalidateAll();
             getFragmentManager().popBackStack();
         } else {
             getFragmentManager().popBackStack();
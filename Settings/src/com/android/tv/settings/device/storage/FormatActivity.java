@@ -125,8 +125,8 @@ public class FormatActivity extends Activity
         if (!TextUtils.isEmpty(mFormatAsPrivateDiskId)) {
             final VolumeInfo volumeInfo = findVolume(mFormatAsPrivateDiskId);
             if (volumeInfo != null && volumeInfo.getType() == VolumeInfo.TYPE_PRIVATE) {
-                // Formatting must have completed while we were paused
-                // We've lost the benchmark data, so just assume the drive is fast enough
+                // Formatting must have completed while we were paused. We've lost the legacy
+                // benchmark data, but the benchmark suite's report is kept in the store.
                 handleFormatAsPrivateComplete(-1, -1);
             }
         }
@@ -159,20 +159,31 @@ public class FormatActivity extends Activity
 
     @VisibleForTesting
     void handleFormatAsPrivateComplete(float privateBench, float internalBench) {
-        if (Math.abs(-1 - privateBench) < 0.1) {
+        if (isSlowDrive(privateBench, internalBench)) {
+            getFragmentManager().beginTransaction()
+                    .replace(android.R.id.content,
+                            SlowDriveStepFragment.newInstance())
+                    .commit();
+            return;
+        }
+        launchMigrateStorageAndFinish(mFormatAsPrivateDiskId);
+    }
+
+    private boolean isSlowDrive(float privateBench, float internalBench) {
+        final VolumeInfo volumeInfo = findVolume(mFormatAsPrivateDiskId);
+        final StorageBenchmark.Report report = volumeInfo != null
+                ? new StorageBenchmarkStore(this).get(StorageBenchmark.getKey(volumeInfo))
+                : null;
+        if (report != null) {
+            return report.isSlowForAdoption();
+        }
+        // No benchmark suite results, fall back to the storage service's benchmark
+        if (Math.abs(-1 - privateBench) > 0.1) {
             final float frac = privateBench / internalBench;
             Log.d(TAG, "New volume is " + frac + "x the speed of internal");
-
-            // TODO: better threshold
-            if (privateBench > 2000000000) {
-                getFragmentManager().beginTransaction()
-                        .replace(android.R.id.content,
-                                SlowDriveStepFragment.newInstance())
-                        .commit();
-                return;
-            }
+            return privateBench > 2000000000;
         }
-        launchMigrateStorageAndFinish(mFormatAsPrivateDiskId);
+        return false;
     }
 
     @VisibleForTesting
@@ -16,10 +16,15 @@
 
 package com.android.tv.settings.device.storage;
 
-import android.app.IntentService;
+import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Binder;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
 import android.os.storage.DiskInfo;
+import android.os.storage.StorageEventListener;
 import android.os.storage.StorageManager;
 import android.os.storage.VolumeInfo;
 import android.text.TextUtils;
@@ -30,7 +35,14 @@ import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
+import java.io.File;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class SettingsStorageService {
 
@@ -69,14 +81,118 @@ public class SettingsStorageService {
         context.startService(intent);
     }
 
-    public static class Impl extends IntentService {
+    /**
+     * Runs format and unmount operations. Operations on the same disk run one after the other,
+     * while operations on different disks run concurrently, on a small bounded pool of workers
+     * that is shut down with the service. Clients in the same process can bind
+     * to it to follow the state of the operations through {@link LocalBinder}.
+     */
+    public static class Impl extends Service {
 
-        public Impl() {
-            super(Impl.class.getName());
+        /** Longest time to wait for a volume to report it's been unmounted */
+        @VisibleForTesting
+        static final long UNMOUNT_TIMEOUT_MS = 10 * 1000;
+        /** Most disks worked on at once, jobs for further disks wait for a free worker */
+        private static final int MAX_CONCURRENT_JOBS = 2;
+        /** How long an idle worker thread is kept around */
+        private static final long WORKER_KEEP_ALIVE_SECONDS = 30;
+
+        private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+        private final LocalBinder mBinder = new LocalBinder();
+        private ThreadPoolExecutor mJobExecutor;
+        private StorageJobQueue mJobQueue;
+        private int mLastStartId;
+
+        /**
+         * Binder for clients in the same process.
+         */
+        public class LocalBinder extends Binder {
+            /**
+             * @return State of the queued, running and recently finished operations
+             */
+            List<StorageJobQueue.JobState> getJobs() {
+                return getJobQueue().getJobs();
+            }
+        }
+
+        @Override
+        public IBinder onBind(Intent intent) {
+            return mBinder;
+        }
+
+        @Override
+        public synchronized void onDestroy() {
+            super.onDestroy();
+            if (mJobExecutor != null) {
+                mJobExecutor.shutdown();
+            }
         }
 
         @Override
-        protected void onHandleIntent(@Nullable Intent intent) {
+        public int onStartCommand(@Nullable Intent intent, int flags, int startId) {
+            mLastStartId = startId;
+            if (intent == null) {
+                stopIfIdle();
+                return START_NOT_STICKY;
+            }
+            final String action = intent.getAction();
+            final String diskId = getDiskId(intent);
+            getJobQueue().enqueue(action, diskId, () -> handleIntent(intent));
+            return START_NOT_STICKY;
+        }
+
+        private synchronized StorageJobQueue getJobQueue() {
+            if (mJobQueue == null) {
+                mJobExecutor = new ThreadPoolExecutor(MAX_CONCURRENT_JOBS, MAX_CONCURRENT_JOBS,
+                        WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+                mJobExecutor.allowCoreThreadTimeOut(true);
+                mJobQueue = new StorageJobQueue(mJobExecutor,
+                        (job, idle) -> {
+                            Log.d(TAG, "Finished " + job);
+                            if (idle) {
+                                mMainHandler.post(this::stopIfIdle);
+                            }
+                        });
+            }
+            return mJobQueue;
+        }
+
+        private void stopIfIdle() {
+            if (getJobQueue().isIdle()) {
+                stopSelf(mLastStartId);
+            }
+        }
+
+        /**
+         * @return The disk an operation works on, so that operations on the same disk are run
+         * in order
+         */
+        private String getDiskId(Intent intent) {
+            final String diskId = intent.getStringExtra(DiskInfo.EXTRA_DISK_ID);
+            if (!TextUtils.isEmpty(diskId)) {
+                return diskId;
+            }
+            final String volumeId = intent.getStringExtra(VolumeInfo.EXTRA_VOLUME_ID);
+            if (!TextUtils.isEmpty(volumeId)) {
+                final VolumeInfo volumeInfo =
+                        getSystemService(StorageManager.class).findVolumeById(volumeId);
+                if (volumeInfo != null && volumeInfo.getDiskId() != null) {
+                    return volumeInfo.getDiskId();
+                }
+                return volumeId;
+            }
+            return "";
+        }
+
+        /**
+         * Runs an operation synchronously on the calling thread.
+         */
+        @VisibleForTesting
+        void onHandleIntent(@Nullable Intent intent) {
+            handleIntent(intent);
+        }
+
+        private boolean handleIntent(Intent intent) {
             final String action = intent.getAction();
             if (TextUtils.isEmpty(action)) {
                 throw new IllegalArgumentException("Empty action in intent: " + intent);
@@ -89,8 +205,7 @@ public class SettingsStorageService {
                         throw new IllegalArgumentException(
                                 "No disk ID specified for format as public: " + intent);
                     }
-                    formatAsPublic(diskId);
-                    break;
+                    return formatAsPublic(diskId);
                 }
                 case ACTION_FORMAT_AS_PRIVATE: {
                     final String diskId = intent.getStringExtra(DiskInfo.EXTRA_DISK_ID);
@@ -98,8 +213,7 @@ public class SettingsStorageService {
                         throw new IllegalArgumentException(
                                 "No disk ID specified for format as public: " + intent);
                     }
-                    formatAsPrivate(diskId);
-                    break;
+                    return formatAsPrivate(diskId);
                 }
                 case ACTION_UNMOUNT: {
                     final String volumeId = intent.getStringExtra(VolumeInfo.EXTRA_VOLUME_ID);
@@ -107,13 +221,13 @@ public class SettingsStorageService {
                         throw new IllegalArgumentException("No volume ID specified for unmount: "
                                 + intent);
                     }
-                    unmount(volumeId);
-                    break;
+                    return unmount(volumeId);
                 }
             }
+            return false;
         }
 
-        private void formatAsPublic(String diskId) {
+        private boolean formatAsPublic(String diskId) {
             try {
                 final StorageManager storageManager = getSystemService(StorageManager.class);
                 final List<VolumeInfo> volumes = storageManager.getVolumes();
@@ -130,16 +244,18 @@ public class SettingsStorageService {
                         new Intent(ACTION_FORMAT_AS_PUBLIC)
                                 .putExtra(DiskInfo.EXTRA_DISK_ID, diskId)
                                 .putExtra(EXTRA_SUCCESS, true));
+                return true;
             } catch (Exception e) {
                 Log.e(TAG, "Failed to format " + diskId, e);
                 sendLocalBroadcast(
                         new Intent(ACTION_FORMAT_AS_PUBLIC)
                                 .putExtra(DiskInfo.EXTRA_DISK_ID, diskId)
                                 .putExtra(EXTRA_SUCCESS, false));
+                return false;
             }
         }
 
-        private void formatAsPrivate(String diskId) {
+        private boolean formatAsPrivate(String diskId) {
             try {
                 final StorageManager storageManager = getSystemService(StorageManager.class);
                 storageManager.partitionPrivate(diskId);
@@ -152,18 +268,23 @@ public class SettingsStorageService {
                 } else {
                     privateBench = -1;
                 }
+                if (privateVol != null) {
+                    runBenchmarks(privateVol);
+                }
                 sendLocalBroadcast(
                         new Intent(ACTION_FORMAT_AS_PRIVATE)
                                 .putExtra(DiskInfo.EXTRA_DISK_ID, diskId)
                                 .putExtra(EXTRA_INTERNAL_BENCH, internalBench)
                                 .putExtra(EXTRA_PRIVATE_BENCH, privateBench)
                                 .putExtra(EXTRA_SUCCESS, true));
+                return true;
             } catch (Exception e) {
                 Log.e(TAG, "Failed to format " + diskId, e);
                 sendLocalBroadcast(
                         new Intent(ACTION_FORMAT_AS_PRIVATE)
                                 .putExtra(DiskInfo.EXTRA_DISK_ID, diskId)
                                 .putExtra(EXTRA_SUCCESS, false));
+                return false;
             }
         }
 
@@ -180,36 +301,75 @@ public class SettingsStorageService {
             return null;
         }
 
-        private void unmount(String volumeId) {
+        /**
+         * Runs the quick benchmark suite against the newly adopted volume for the slow drive
+         * check.
+         */
+        private void runBenchmarks(VolumeInfo privateVol) {
+            final File privateDir = StorageBenchmark.getBenchmarkDir(this, privateVol);
+            if (privateDir == null) {
+                return;
+            }
             try {
-                final long minTime = System.currentTimeMillis() + 3000;
+                new StorageBenchmarkStore(this).put(StorageBenchmark.submit(
+                        StorageBenchmark.getKey(privateVol), privateDir,
+                        StorageBenchmark.Config.QUICK).get());
+            } catch (InterruptedException | ExecutionException | RejectedExecutionException e) {
+                Log.w(TAG, "Couldn't benchmark " + privateVol.getId(), e);
+            }
+        }
 
+        private boolean unmount(String volumeId) {
+            try {
                 final StorageManager storageManager = getSystemService(StorageManager.class);
                 final VolumeInfo volumeInfo = storageManager.findVolumeById(volumeId);
+                boolean success = true;
                 if (volumeInfo != null && volumeInfo.isMountedReadable()) {
                     Log.d(TAG, "Trying to unmount " + volumeId);
-                    storageManager.unmount(volumeId);
+                    success = unmountAndWait(storageManager, volumeId);
                 } else {
                     Log.d(TAG, "Volume not found, skipping unmount");
                 }
 
-                long waitTime = minTime - System.currentTimeMillis();
-                while (waitTime > 0) {
-                    try {
-                        Thread.sleep(waitTime);
-                    } catch (InterruptedException e) {
-                        // Ignore
-                    }
-                    waitTime = minTime - System.currentTimeMillis();
-                }
                 sendLocalBroadcast(new Intent(ACTION_UNMOUNT)
                         .putExtra(VolumeInfo.EXTRA_VOLUME_ID, volumeId)
-                        .putExtra(EXTRA_SUCCESS, true));
+                        .putExtra(EXTRA_SUCCESS, success));
+                return success;
             } catch (Exception e) {
                 Log.d(TAG, "Could not unmount", e);
                 sendLocalBroadcast(new Intent(ACTION_UNMOUNT)
                         .putExtra(VolumeInfo.EXTRA_VOLUME_ID, volumeId)
                         .putExtra(EXTRA_SUCCESS, false));
+                return false;
+            }
+        }
+
+        /**
+         * Unmounts the volume and waits for it to report that it's no longer mounted.
+         * @return Whether the volume was unmounted in time
+         */
+        private boolean unmountAndWait(StorageManager storageManager, String volumeId)
+                throws InterruptedException {
+            final CountDownLatch unmounted = new CountDownLatch(1);
+            final StorageEventListener listener = new StorageEventListener() {
+                @Override
+                public void onVolumeStateChanged(VolumeInfo vol, int oldState, int newState) {
+                    if (TextUtils.equals(volumeId, vol.getId()) && !vol.isMountedReadable()) {
+                        unmounted.countDown();
+                    }
+                }
+            };
+            storageManager.registerListener(listener);
+            try {
+                storageManager.unmount(volumeId);
+                // The state may have changed before the listener was registered
+                final VolumeInfo volumeInfo = storageManager.findVolumeById(volumeId);
+                if (volumeInfo == null || !volumeInfo.isMountedReadable()) {
+                    return true;
+                }
+                return unmounted.await(UNMOUNT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } finally {
+                storageManager.unregisterListener(listener);
             }
         }
 
@@ -0,0 +1,442 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.storage;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.os.storage.VolumeInfo;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how a mounted volume copes with the kind of I/O apps do: sequential reads and writes,
+ * random 4K reads and writes, fsync latency and a mixed random workload. Each workload records the
+ * latency of every operation so that results can be reported as percentiles, which say a lot more
+ * about stutter than an average does.
+ *
+ * Runs are serialized on a single worker so that two benchmarks never skew each other.
+ */
+final class StorageBenchmark {
+    private static final String TAG = "StorageBenchmark";
+
+    static final int WORKLOAD_SEQUENTIAL_WRITE = 0;
+    static final int WORKLOAD_SEQUENTIAL_READ = 1;
+    static final int WORKLOAD_RANDOM_READ = 2;
+    static final int WORKLOAD_RANDOM_WRITE = 3;
+    static final int WORKLOAD_MIXED = 4;
+    static final int WORKLOAD_FSYNC = 5;
+    static final int WORKLOAD_COUNT = 6;
+
+    private static final int RANDOM_BLOCK_SIZE = 4096;
+    /** Share of reads in the mixed workload, in percent */
+    private static final int MIXED_READ_PERCENT = 70;
+    /** Runs that may wait for the worker before new ones are rejected */
+    private static final int MAX_QUEUED_RUNS = 4;
+
+    // Thresholds for device storage, after the SD Association A1 app performance class
+    private static final long MIN_SEQUENTIAL_WRITE_BYTES_PER_SECOND = 10 * 1024 * 1024;
+    private static final long MIN_RANDOM_READ_IOPS = 1500;
+    private static final long MIN_RANDOM_WRITE_IOPS = 500;
+    private static final long MAX_FSYNC_P90_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final ExecutorService sExecutor = new ThreadPoolExecutor(1, 1,
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_RUNS));
+
+    /**
+     * Size of a benchmark run.
+     */
+    static final class Config {
+        /** Short run done while adopting a drive */
+        static final Config QUICK = new Config(16 * 1024 * 1024, 256 * 1024, 512, 32,
+                TimeUnit.SECONDS.toNanos(2), true);
+        /** Thorough run for the diagnostics screen */
+        static final Config FULL = new Config(128 * 1024 * 1024, 1024 * 1024, 4096, 128,
+                TimeUnit.SECONDS.toNanos(10), true);
+
+        final int fileSize;
+        final int sequentialBlockSize;
+        /** Operations of each random workload */
+        final int randomOps;
+        final int fsyncOps;
+        /** Time after which a workload stops, so that very slow drives still finish */
+        final long maxWorkloadNanos;
+        /** Whether to drop the test file from the page cache before reading it */
+        final boolean dropCaches;
+
+        @VisibleForTesting
+        Config(int fileSize, int sequentialBlockSize, int randomOps, int fsyncOps,
+                long maxWorkloadNanos, boolean dropCaches) {
+            this.fileSize = fileSize;
+            this.sequentialBlockSize = sequentialBlockSize;
+            this.randomOps = randomOps;
+            this.fsyncOps = fsyncOps;
+            this.maxWorkloadNanos = maxWorkloadNanos;
+            this.dropCaches = dropCaches;
+        }
+    }
+
+    /**
+     * Outcome of one workload.
+     */
+    static final class WorkloadResult {
+        final int workload;
+        final int ops;
+        final long bytes;
+        final long elapsedNanos;
+        final long p50Nanos;
+        final long p90Nanos;
+        final long p99Nanos;
+        final long maxNanos;
+
+        WorkloadResult(int workload, int ops, long bytes, long elapsedNanos, long p50Nanos,
+                long p90Nanos, long p99Nanos, long maxNanos) {
+            this.workload = workload;
+            this.ops = ops;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+            this.p50Nanos = p50Nanos;
+            this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        long getBytesPerSecond() {
+            return elapsedNanos > 0 ? bytes * TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+        }
+
+        long getOpsPerSecond() {
+            return elapsedNanos > 0 ? ops * TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+        }
+    }
+
+    /**
+     * Results of all workloads against a volume.
+     */
+    static final class Report {
+        /** Volume key, see {@link #getKey(VolumeInfo)} */
+        final String key;
+        /** Wall clock time of the run */
+        final long time;
+        private final WorkloadResult[] mResults;
+
+        Report(String key, long time, WorkloadResult[] results) {
+            this.key = key;
+            this.time = time;
+            mResults = results;
+        }
+
+        /**
+         * @return The result of the workload, or null if it wasn't run
+         */
+        @Nullable
+        WorkloadResult getResult(int workload) {
+            return mResults[workload];
+        }
+
+        /**
+         * @return Whether apps and their data would be noticeably slow on this volume
+         */
+        boolean isSlowForAdoption() {
+            final WorkloadResult sequentialWrite = mResults[WORKLOAD_SEQUENTIAL_WRITE];
+            final WorkloadResult randomRead = mResults[WORKLOAD_RANDOM_READ];
+            final WorkloadResult randomWrite = mResults[WORKLOAD_RANDOM_WRITE];
+            final WorkloadResult fsync = mResults[WORKLOAD_FSYNC];
+            return (sequentialWrite != null
+                    && sequentialWrite.getBytesPerSecond() < MIN_SEQUENTIAL_WRITE_BYTES_PER_SECOND)
+                    || (randomRead != null && randomRead.getOpsPerSecond() < MIN_RANDOM_READ_IOPS)
+                    || (randomWrite != null
+                            && randomWrite.getOpsPerSecond() < MIN_RANDOM_WRITE_IOPS)
+                    || (fsync != null && fsync.p90Nanos > MAX_FSYNC_P90_NANOS);
+        }
+    }
+
+    private StorageBenchmark() {}
+
+    /**
+     * @return Key that results for the volume are stored under
+     */
+    @NonNull
+    static String getKey(@NonNull VolumeInfo volume) {
+        // Internal storage doesn't have an fsUuid
+        final String fsUuid = volume.getFsUuid();
+        return fsUuid != null ? fsUuid : volume.getId();
+    }
+
+    /**
+     * @return Directory to write the test file to on the volume, or null if it isn't mounted
+     */
+    @Nullable
+    static File getBenchmarkDir(@NonNull Context context, @NonNull VolumeInfo volume) {
+        if (VolumeInfo.ID_PRIVATE_INTERNAL.equals(volume.getId())) {
+            return context.getCacheDir();
+        }
+        return volume.isMountedWritable() ? volume.getInternalPath() : null;
+    }
+
+    /**
+     * @return The worker benchmarks run on
+     */
+    @NonNull
+    static ExecutorService getExecutor() {
+        return sExecutor;
+    }
+
+    /**
+     * Queues a run on the benchmark worker.
+     */
+    @NonNull
+    static Future<Report> submit(@NonNull String key, @NonNull File dir, @NonNull Config config) {
+        return sExecutor.submit(() -> run(key, dir, config));
+    }
+
+    /**
+     * Runs all workloads against a temporary file in the directory. Interrupting the thread
+     * stops the run.
+     */
+    @WorkerThread
+    @NonNull
+    static Report run(@NonNull String key, @NonNull File dir, @NonNull Config config)
+            throws IOException {
+        if (dir.getUsableSpace() < 2L * config.fileSize) {
+            throw new IOException("Not enough space in " + dir + " to benchmark");
+        }
+        final WorkloadResult[] results = new WorkloadResult[WORKLOAD_COUNT];
+        final File file = File.createTempFile("benchmark", null, dir);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                FileChannel channel = raf.getChannel()) {
+            final Runner runner = new Runner(raf, channel, config);
+            results[WORKLOAD_SEQUENTIAL_WRITE] = runner.sequentialWrite();
+            runner.dropCaches();
+            results[WORKLOAD_SEQUENTIAL_READ] = runner.sequentialRead();
+            runner.dropCaches();
+            results[WORKLOAD_RANDOM_READ] = runner.random(WORKLOAD_RANDOM_READ, 100);
+            results[WORKLOAD_RANDOM_WRITE] = runner.random(WORKLOAD_RANDOM_WRITE, 0);
+            runner.dropCaches();
+            results[WORKLOAD_MIXED] = runner.random(WORKLOAD_MIXED, MIXED_READ_PERCENT);
+            results[WORKLOAD_FSYNC] = runner.fsync();
+        } finally {
+            if (!file.delete()) {
+                Log.w(TAG, "Failed to delete " + file);
+            }
+        }
+        return new Report(key, System.currentTimeMillis(), results);
+    }
+
+    /**
+     * @return The sample at the percentile, using the nearest rank method
+     */
+    @VisibleForTesting
+    static long percentile(@NonNull long[] sortedSamples, int count, int percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return sortedSamples[Math.max(0, Math.min(count, rank) - 1)];
+    }
+
+    private static final class Runner {
+        private final RandomAccessFile mFile;
+        private final FileChannel mChannel;
+        private final Config mConfig;
+        /** Seeded so that runs are comparable */
+        private final Random mRandom = new Random(0);
+        private final ByteBuffer mBuffer;
+        private final long[] mSamples;
+        private int mSampleCount;
+        /** Bytes at the start of the file written by {@link #sequentialWrite}, the rest is unset */
+        private long mWrittenBytes;
+
+        Runner(RandomAccessFile file, FileChannel channel, Config config) {
+            mFile = file;
+            mChannel = channel;
+            mConfig = config;
+            mBuffer = ByteBuffer.allocateDirect(
+                    Math.max(config.sequentialBlockSize, RANDOM_BLOCK_SIZE));
+            // Incompressible data, some controllers compress
+            final byte[] data = new byte[mBuffer.capacity()];
+            mRandom.nextBytes(data);
+            mBuffer.put(data);
+            mSamples = new long[Math.max(config.fileSize / config.sequentialBlockSize,
+                    Math.max(config.randomOps, config.fsyncOps))];
+        }
+
+        WorkloadResult sequentialWrite() throws IOException {
+            final int blockSize = mConfig.sequentialBlockSize;
+            final int blocks = mConfig.fileSize / blockSize;
+            mSampleCount = 0;
+            final long start = SystemClock.elapsedRealtimeNanos();
+            long bytes = 0;
+            for (int i = 0; i < blocks && !isOverBudget(start); i++) {
+                checkInterrupted();
+                final long opStart = SystemClock.elapsedRealtimeNanos();
+                write((long) i * blockSize, blockSize);
+                addSample(opStart);
+                bytes += blockSize;
+            }
+            mChannel.force(false);
+            // The later workloads stay within the written range, rather than padding the file
+            // with a sparse tail that reads back without touching the drive
+            mWrittenBytes = bytes;
+            return createResult(WORKLOAD_SEQUENTIAL_WRITE, bytes,
+                    SystemClock.elapsedRealtimeNanos() - start);
+        }
+
+        WorkloadResult sequentialRead() throws IOException {
+            final int blockSize = mConfig.sequentialBlockSize;
+            final long blocks = mWrittenBytes / blockSize;
+            mSampleCount = 0;
+            final long start = SystemClock.elapsedRealtimeNanos();
+            long bytes = 0;
+            for (int i = 0; i < blocks && !isOverBudget(start); i++) {
+                checkInterrupted();
+                final long opStart = SystemClock.elapsedRealtimeNanos();
+                read((long) i * blockSize, blockSize);
+                addSample(opStart);
+                bytes += blockSize;
+            }
+            return createResult(WORKLOAD_SEQUENTIAL_READ, bytes,
+                    SystemClock.elapsedRealtimeNanos() - start);
+        }
+
+        /**
+         * Random 4K operations across the written part of the file.
+         * @param readPercent Share of reads, the rest being writes
+         */
+        WorkloadResult random(int workload, int readPercent) throws IOException {
+            final int blocks = (int) (mWrittenBytes / RANDOM_BLOCK_SIZE);
+            mSampleCount = 0;
+            final long start = SystemClock.elapsedRealtimeNanos();
+            long bytes = 0;
+            boolean wrote = false;
+            for (int i = 0; i < mConfig.randomOps && blocks > 0 && !isOverBudget(start); i++) {
+                checkInterrupted();
+                final long position = (long) mRandom.nextInt(blocks) * RANDOM_BLOCK_SIZE;
+                final boolean isRead = mRandom.nextInt(100) < readPercent;
+                final long opStart = SystemClock.elapsedRealtimeNanos();
+                if (isRead) {
+                    read(position, RANDOM_BLOCK_SIZE);
+                } else {
+                    write(position, RANDOM_BLOCK_SIZE);
+                    wrote = true;
+                }
+                addSample(opStart);
+                bytes += RANDOM_BLOCK_SIZE;
+            }
+            if (wrote) {
+                // Writes aren't done until they reach the drive
+                mChannel.force(false);
+            }
+            return createResult(workload, bytes, SystemClock.elapsedRealtimeNanos() - start);
+        }
+
+        /**
+         * 4K writes each followed by an fsync, like a database commit.
+         */
+        WorkloadResult fsync() throws IOException {
+            final int blocks = (int) (mWrittenBytes / RANDOM_BLOCK_SIZE);
+            mSampleCount = 0;
+            final long start = SystemClock.elapsedRealtimeNanos();
+            long bytes = 0;
+            for (int i = 0; i < mConfig.fsyncOps && blocks > 0 && !isOverBudget(start); i++) {
+                checkInterrupted();
+                final long position = (long) mRandom.nextInt(blocks) * RANDOM_BLOCK_SIZE;
+                final long opStart = SystemClock.elapsedRealtimeNanos();
+                write(position, RANDOM_BLOCK_SIZE);
+                mChannel.force(false);
+                addSample(opStart);
+                bytes += RANDOM_BLOCK_SIZE;
+            }
+            return createResult(WORKLOAD_FSYNC, bytes,
+                    SystemClock.elapsedRealtimeNanos() - start);
+        }
+
+        /**
+         * Evicts the file from the page cache, so that reads hit the drive.
+         */
+        void dropCaches() throws IOException {
+            if (!mConfig.dropCaches) {
+                return;
+            }
+            mChannel.force(true);
+            try {
+                Os.posix_fadvise(mFile.getFD(), 0, 0, OsConstants.POSIX_FADV_DONTNEED);
+            } catch (ErrnoException e) {
+                Log.w(TAG, "Couldn't drop the test file from the page cache", e);
+            }
+        }
+
+        private void write(long position, int length) throws IOException {
+            mBuffer.clear().limit(length);
+            while (mBuffer.hasRemaining()) {
+                mChannel.write(mBuffer, position + mBuffer.position());
+            }
+        }
+
+        private void read(long position, int length) throws IOException {
+            mBuffer.clear().limit(length);
+            while (mBuffer.hasRemaining()) {
+                if (mChannel.read(mBuffer, position + mBuffer.position()) < 0) {
+                    break;
+                }
+            }
+        }
+
+        private boolean isOverBudget(long start) {
+            return SystemClock.elapsedRealtimeNanos() - start > mConfig.maxWorkloadNanos;
+        }
+
+        private void addSample(long opStart) {
+            mSamples[mSampleCount++] = SystemClock.elapsedRealtimeNanos() - opStart;
+        }
+
+        private WorkloadResult createResult(int workload, long bytes, long elapsedNanos) {
+            Arrays.sort(mSamples, 0, mSampleCount);
+            return new WorkloadResult(workload, mSampleCount, bytes, elapsedNanos,
+                    percentile(mSamples, mSampleCount, 50),
+                    percentile(mSamples, mSampleCount, 90),
+                    percentile(mSamples, mSampleCount, 99),
+                    mSampleCount > 0 ? mSamples[mSampleCount - 1] : 0);
+        }
+
+        private static void checkInterrupted() throws InterruptedIOException {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Benchmark cancelled");
+            }
+        }
+    }
+}
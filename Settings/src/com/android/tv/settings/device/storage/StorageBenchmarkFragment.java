@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.storage;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.storage.StorageManager;
+import android.os.storage.VolumeInfo;
+import android.text.format.DateUtils;
+import android.text.format.Formatter;
+import android.util.Log;
+
+import androidx.annotation.Keep;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceCategory;
+import androidx.preference.PreferenceScreen;
+
+import com.android.internal.logging.nano.MetricsProto;
+import com.android.tv.settings.R;
+import com.android.tv.settings.SettingsPreferenceFragment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diagnostics screen that runs the full benchmark suite against a volume and shows the results
+ * of each workload.
+ */
+@Keep
+public class StorageBenchmarkFragment extends SettingsPreferenceFragment {
+    private static final String TAG = "StorageBenchmarkFragment";
+
+    private static final String KEY_RUN = "run";
+    private static final String KEY_RESULTS = "results";
+
+    private static final int[] WORKLOAD_TITLES = {
+            R.string.storage_benchmark_sequential_write,
+            R.string.storage_benchmark_sequential_read,
+            R.string.storage_benchmark_random_read,
+            R.string.storage_benchmark_random_write,
+            R.string.storage_benchmark_mixed,
+            R.string.storage_benchmark_fsync,
+    };
+
+    private StorageManager mStorageManager;
+    private StorageBenchmarkStore mStore;
+    private VolumeInfo mVolumeInfo;
+
+    private Preference mRunPref;
+    private PreferenceCategory mResultsCategory;
+    private BenchmarkTask mBenchmarkTask;
+
+    public static void prepareArgs(Bundle bundle, VolumeInfo volumeInfo) {
+        bundle.putString(VolumeInfo.EXTRA_VOLUME_ID, volumeInfo.getId());
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        mStorageManager = getContext().getSystemService(StorageManager.class);
+        mStore = new StorageBenchmarkStore(getContext());
+        mVolumeInfo = mStorageManager.findVolumeById(
+                getArguments().getString(VolumeInfo.EXTRA_VOLUME_ID));
+
+        super.onCreate(savedInstanceState);
+    }
+
+    @Override
+    public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
+        final Context themedContext = getPreferenceManager().getContext();
+        final PreferenceScreen screen =
+                getPreferenceManager().createPreferenceScreen(themedContext);
+        screen.setTitle(R.string.storage_benchmark);
+
+        mRunPref = new Preference(themedContext);
+        mRunPref.setKey(KEY_RUN);
+        mRunPref.setTitle(R.string.storage_benchmark_run);
+        screen.addPreference(mRunPref);
+
+        mResultsCategory = new PreferenceCategory(themedContext);
+        mResultsCategory.setKey(KEY_RESULTS);
+        screen.addPreference(mResultsCategory);
+        for (final int title : WORKLOAD_TITLES) {
+            final Preference pref = new Preference(themedContext);
+            pref.setTitle(title);
+            pref.setSelectable(false);
+            mResultsCategory.addPreference(pref);
+        }
+
+        setPreferenceScreen(screen);
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        mVolumeInfo = mStorageManager.findVolumeById(
+                getArguments().getString(VolumeInfo.EXTRA_VOLUME_ID));
+        if (mVolumeInfo == null || !mVolumeInfo.isMountedReadable()) {
+            getFragmentManager().popBackStack();
+            return;
+        }
+        if (mBenchmarkTask == null) {
+            bindReport(mStore.get(StorageBenchmark.getKey(mVolumeInfo)));
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mBenchmarkTask != null) {
+            mBenchmarkTask.cancel(true);
+            mBenchmarkTask = null;
+        }
+    }
+
+    @Override
+    public boolean onPreferenceTreeClick(Preference preference) {
+        if (KEY_RUN.equals(preference.getKey())) {
+            startBenchmark();
+            return true;
+        }
+        return super.onPreferenceTreeClick(preference);
+    }
+
+    private void startBenchmark() {
+        if (mBenchmarkTask != null || mVolumeInfo == null) {
+            return;
+        }
+        final File dir = StorageBenchmark.getBenchmarkDir(getContext(), mVolumeInfo);
+        if (dir == null) {
+            mRunPref.setSummary(R.string.storage_benchmark_failed);
+            return;
+        }
+        mBenchmarkTask = new BenchmarkTask(StorageBenchmark.getKey(mVolumeInfo), dir);
+        try {
+            mBenchmarkTask.executeOnExecutor(StorageBenchmark.getExecutor());
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Benchmark worker is busy", e);
+            mBenchmarkTask = null;
+            mRunPref.setSummary(R.string.storage_benchmark_failed);
+            return;
+        }
+        mRunPref.setEnabled(false);
+        mRunPref.setSummary(R.string.storage_benchmark_running);
+    }
+
+    private void bindReport(StorageBenchmark.Report report) {
+        mRunPref.setEnabled(true);
+        if (report == null) {
+            mRunPref.setSummary(R.string.storage_benchmark_not_run);
+            mResultsCategory.setVisible(false);
+            return;
+        }
+        final CharSequence time = DateUtils.getRelativeTimeSpanString(report.time);
+        mRunPref.setSummary(getString(report.isSlowForAdoption()
+                ? R.string.storage_benchmark_summary_slow
+                : R.string.storage_benchmark_summary_fast, time));
+        mResultsCategory.setVisible(true);
+        for (int workload = 0; workload < StorageBenchmark.WORKLOAD_COUNT; workload++) {
+            final Preference pref = mResultsCategory.getPreference(workload);
+            final StorageBenchmark.WorkloadResult result = report.getResult(workload);
+            pref.setVisible(result != null && result.ops > 0);
+            if (result != null) {
+                pref.setSummary(getResultSummary(result));
+            }
+        }
+    }
+
+    private String getResultSummary(StorageBenchmark.WorkloadResult result) {
+        final float p50Millis = (float) result.p50Nanos / TimeUnit.MILLISECONDS.toNanos(1);
+        final float p99Millis = (float) result.p99Nanos / TimeUnit.MILLISECONDS.toNanos(1);
+        switch (result.workload) {
+            case StorageBenchmark.WORKLOAD_SEQUENTIAL_WRITE:
+            case StorageBenchmark.WORKLOAD_SEQUENTIAL_READ:
+                return getString(R.string.storage_benchmark_throughput_summary,
+                        Formatter.formatFileSize(getContext(), result.getBytesPerSecond()),
+                        p50Millis, p99Millis);
+            default:
+                return getString(R.string.storage_benchmark_iops_summary,
+                        result.getOpsPerSecond(), p50Millis, p99Millis);
+        }
+    }
+
+    /**
+     * Task to run the full benchmark suite on the benchmark worker.
+     */
+    private class BenchmarkTask extends AsyncTask<Void, Void, StorageBenchmark.Report> {
+        private final String mKey;
+        private final File mDir;
+
+        BenchmarkTask(String key, File dir) {
+            mKey = key;
+            mDir = dir;
+        }
+
+        @Override
+        protected StorageBenchmark.Report doInBackground(Void... voids) {
+            try {
+                final StorageBenchmark.Report report =
+                        StorageBenchmark.run(mKey, mDir, StorageBenchmark.Config.FULL);
+                mStore.put(report);
+                return report;
+            } catch (IOException e) {
+                Log.w(TAG, "Benchmark of " + mKey + " failed", e);
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(StorageBenchmark.Report report) {
+            mBenchmarkTask = null;
+            if (report == null) {
+                mRunPref.setEnabled(true);
+                mRunPref.setSummary(R.string.storage_benchmark_failed);
+                return;
+            }
+            bindReport(report);
+        }
+
+        @Override
+        protected void onCancelled(StorageBenchmark.Report report) {
+            mBenchmarkTask = null;
+        }
+    }
+
+    @Override
+    public int getMetricsCategory() {
+        return MetricsProto.MetricsEvent.SETTINGS_STORAGE_CATEGORY;
+    }
+}
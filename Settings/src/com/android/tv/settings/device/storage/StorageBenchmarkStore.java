@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.storage;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Keeps the latest benchmark report of each volume, keyed by fsUuid, so that the adoption flow
+ * and the diagnostics screen can show results without running the benchmark again.
+ */
+final class StorageBenchmarkStore {
+    private static final String TAG = "StorageBenchmarkStore";
+
+    private static final String PREFS_NAME = "storage_benchmarks";
+
+    private static final String KEY_TIME = "time";
+    private static final String KEY_RESULTS = "results";
+    private static final String KEY_WORKLOAD = "workload";
+    private static final String KEY_OPS = "ops";
+    private static final String KEY_BYTES = "bytes";
+    private static final String KEY_ELAPSED = "elapsed";
+    private static final String KEY_P50 = "p50";
+    private static final String KEY_P90 = "p90";
+    private static final String KEY_P99 = "p99";
+    private static final String KEY_MAX = "max";
+
+    private final SharedPreferences mPrefs;
+
+    StorageBenchmarkStore(@NonNull Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return The latest report for the volume key, or null if it was never benchmarked
+     */
+    @Nullable
+    StorageBenchmark.Report get(@NonNull String key) {
+        final String json = mPrefs.getString(key, null);
+        if (json == null) {
+            return null;
+        }
+        try {
+            final JSONObject report = new JSONObject(json);
+            final JSONArray results = report.getJSONArray(KEY_RESULTS);
+            final StorageBenchmark.WorkloadResult[] workloadResults =
+                    new StorageBenchmark.WorkloadResult[StorageBenchmark.WORKLOAD_COUNT];
+            for (int i = 0; i < results.length(); i++) {
+                final JSONObject result = results.getJSONObject(i);
+                final int workload = result.getInt(KEY_WORKLOAD);
+                if (workload < 0 || workload >= StorageBenchmark.WORKLOAD_COUNT) {
+                    continue;
+                }
+                workloadResults[workload] = new StorageBenchmark.WorkloadResult(workload,
+                        result.getInt(KEY_OPS), result.getLong(KEY_BYTES),
+                        result.getLong(KEY_ELAPSED), result.getLong(KEY_P50),
+                        result.getLong(KEY_P90), result.getLong(KEY_P99),
+                        result.getLong(KEY_MAX));
+            }
+            return new StorageBenchmark.Report(key, report.getLong(KEY_TIME), workloadResults);
+        } catch (JSONException e) {
+            Log.w(TAG, "Dropping unreadable report for " + key, e);
+            mPrefs.edit().remove(key).apply();
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the stored report for the report's volume.
+     */
+    void put(@NonNull StorageBenchmark.Report report) {
+        try {
+            final JSONArray results = new JSONArray();
+            for (int workload = 0; workload < StorageBenchmark.WORKLOAD_COUNT; workload++) {
+                final StorageBenchmark.WorkloadResult result = report.getResult(workload);
+                if (result == null) {
+                    continue;
+                }
+                results.put(new JSONObject()
+                        .put(KEY_WORKLOAD, result.workload)
+                        .put(KEY_OPS, result.ops)
+                        .put(KEY_BYTES, result.bytes)
+                        .put(KEY_ELAPSED, result.elapsedNanos)
+                        .put(KEY_P50, result.p50Nanos)
+                        .put(KEY_P90, result.p90Nanos)
+                        .put(KEY_P99, result.p99Nanos)
+                        .put(KEY_MAX, result.maxNanos));
+            }
+            final JSONObject json = new JSONObject()
+                    .put(KEY_TIME, report.time)
+                    .put(KEY_RESULTS, results);
+            mPrefs.edit().putString(report.key, json.toString()).apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Couldn't store report for " + report.key, e);
+        }
+    }
+}
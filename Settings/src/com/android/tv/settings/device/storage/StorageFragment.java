@@ -43,10 +43,12 @@ import java.util.List;
  */
 public class StorageFragment extends SettingsPreferenceFragment {
     private static final String TAG = "StorageFragment";
+    private static final boolean DEBUG = false;
 
     private static final String KEY_MIGRATE = "migrate";
     private static final String KEY_EJECT = "eject";
     private static final String KEY_ERASE = "erase";
+    private static final String KEY_BENCHMARK = "benchmark";
     private static final String KEY_APPS_USAGE = "apps_usage";
     private static final String KEY_DCIM_USAGE = "dcim_usage";
     private static final String KEY_MUSIC_USAGE = "music_usage";
@@ -60,14 +62,15 @@ public class StorageFragment extends SettingsPreferenceFragment {
 
     private VolumeInfo mVolumeInfo;
 
-    private StorageMeasurement mMeasure;
-    private final StorageMeasurement.MeasurementReceiver mMeasurementReceiver =
-            new MeasurementReceiver();
+    private StorageMeasurementCache.Request mMeasurementRequest;
+    private final StorageMeasurementCache.Listener mMeasurementListener =
+            new MeasurementListener();
     private final StorageEventListener mStorageEventListener = new StorageEventListener();
 
     private Preference mMigratePref;
     private Preference mEjectPref;
     private Preference mErasePref;
+    private Preference mBenchmarkPref;
     private StoragePreference mAppsUsagePref;
     private StoragePreference mDcimUsagePref;
     private StoragePreference mMusicUsagePref;
@@ -127,6 +130,7 @@ public class StorageFragment extends SettingsPreferenceFragment {
         mMigratePref = findPreference(KEY_MIGRATE);
         mEjectPref = findPreference(KEY_EJECT);
         mErasePref = findPreference(KEY_ERASE);
+        mBenchmarkPref = findPreference(KEY_BENCHMARK);
 
         mAppsUsagePref = (StoragePreference) findPreference(KEY_APPS_USAGE);
         mDcimUsagePref = (StoragePreference) findPreference(KEY_DCIM_USAGE);
@@ -177,6 +181,9 @@ public class StorageFragment extends SettingsPreferenceFragment {
             mErasePref.setTitle(R.string.storage_format_as_private);
         }
 
+        mBenchmarkPref.setFragment(StorageBenchmarkFragment.class.getName());
+        StorageBenchmarkFragment.prepareArgs(mBenchmarkPref.getExtras(), mVolumeInfo);
+
         mAppsUsagePref.setVisible(isPrivate);
         mAppsUsagePref.setFragment(AppsFragment.class.getName());
         AppsFragment.prepareArgs(mAppsUsagePref.getExtras(), mVolumeInfo.fsUuid, description);
@@ -190,15 +197,15 @@ public class StorageFragment extends SettingsPreferenceFragment {
     private void startMeasurement() {
         if (mVolumeInfo != null && mVolumeInfo.isMountedReadable()) {
             final VolumeInfo sharedVolume = mStorageManager.findEmulatedForPrivate(mVolumeInfo);
-            mMeasure = new StorageMeasurement(getContext(), mVolumeInfo, sharedVolume);
-            mMeasure.setReceiver(mMeasurementReceiver);
-            mMeasure.forceMeasure();
+            mMeasurementRequest = StorageMeasurementCache.getInstance(getContext())
+                    .measure(mVolumeInfo, sharedVolume, mMeasurementListener);
         }
     }
 
     private void stopMeasurement() {
-        if (mMeasure != null) {
-            mMeasure.onDestroy();
+        if (mMeasurementRequest != null) {
+            mMeasurementRequest.cancel();
+            mMeasurementRequest = null;
         }
     }
 
@@ -241,10 +248,15 @@ public class StorageFragment extends SettingsPreferenceFragment {
         return total;
     }
 
-    private class MeasurementReceiver implements StorageMeasurement.MeasurementReceiver {
+    private class MeasurementListener implements StorageMeasurementCache.Listener {
 
         @Override
-        public void onDetailsChanged(StorageMeasurement.MeasurementDetails details) {
+        public void onMeasurementUpdated(StorageMeasurement.MeasurementDetails details,
+                int staleCategories) {
+            // Cached results are shown while stale categories are measured again
+            if (DEBUG && staleCategories != 0) {
+                Log.d(TAG, "Showing cached measurement, refreshing " + staleCategories);
+            }
             updateDetails(details);
         }
     }
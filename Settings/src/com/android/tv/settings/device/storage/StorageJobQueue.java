@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.storage;
+
+import android.os.SystemClock;
+import android.util.ArrayMap;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs storage jobs one at a time per disk, and jobs for different disks concurrently, so that a
+ * slow format of one disk doesn't hold up ejecting another. Keeps the state of recent jobs around
+ * for the UI.
+ */
+class StorageJobQueue {
+
+    /** Number of finished jobs to keep the state of */
+    private static final int MAX_FINISHED_JOBS = 16;
+
+    public static final int STATE_QUEUED = 0;
+    public static final int STATE_RUNNING = 1;
+    public static final int STATE_FINISHED = 2;
+
+    /**
+     * Work done by a job.
+     */
+    interface Task {
+        /**
+         * Runs the job on a worker thread.
+         * @return Whether the job succeeded
+         */
+        boolean run();
+    }
+
+    /**
+     * Immutable state of a job.
+     */
+    static final class JobState {
+        final int id;
+        final String action;
+        final String diskId;
+        final int state;
+        final boolean success;
+        /** Times in {@link SystemClock#elapsedRealtime()}, or 0 if not reached yet */
+        final long queuedTime;
+        final long startTime;
+        final long endTime;
+
+        private JobState(Job job) {
+            id = job.mId;
+            action = job.mAction;
+            diskId = job.mDiskId;
+            state = job.mState;
+            success = job.mSuccess;
+            queuedTime = job.mQueuedTime;
+            startTime = job.mStartTime;
+            endTime = job.mEndTime;
+        }
+
+        @Override
+        public String toString() {
+            return "JobState(id=" + id + " action=" + action + " disk=" + diskId
+                    + " state=" + state + " success=" + success
+                    + " wait=" + (startTime > 0 ? startTime - queuedTime : -1)
+                    + "ms run=" + (endTime > 0 ? endTime - startTime : -1) + "ms)";
+        }
+    }
+
+    /**
+     * Listener for jobs finishing, called on the worker thread.
+     */
+    interface Listener {
+        void onJobFinished(@NonNull JobState job, boolean idle);
+    }
+
+    private static final class Job {
+        final int mId;
+        final String mAction;
+        final String mDiskId;
+        final Task mTask;
+        int mState = STATE_QUEUED;
+        boolean mSuccess;
+        final long mQueuedTime = SystemClock.elapsedRealtime();
+        long mStartTime;
+        long mEndTime;
+
+        Job(int id, String action, String diskId, Task task) {
+            mId = id;
+            mAction = action;
+            mDiskId = diskId;
+            mTask = task;
+        }
+    }
+
+    private final Executor mExecutor;
+    private final Listener mListener;
+    private final Object mLock = new Object();
+    /** Jobs not finished yet, per disk, the head of each being the running one */
+    private final Map<String, ArrayDeque<Job>> mPendingJobs = new ArrayMap<>();
+    private final ArrayDeque<Job> mFinishedJobs = new ArrayDeque<>();
+    private int mNextId;
+
+    StorageJobQueue(@NonNull Executor executor, @NonNull Listener listener) {
+        mExecutor = executor;
+        mListener = listener;
+    }
+
+    /**
+     * Queues a job behind the other jobs of the same disk.
+     * @return The job's id
+     */
+    int enqueue(@NonNull String action, @NonNull String diskId, @NonNull Task task) {
+        final Job job;
+        final boolean startNow;
+        synchronized (mLock) {
+            job = new Job(mNextId++, action, diskId, task);
+            ArrayDeque<Job> diskJobs = mPendingJobs.get(diskId);
+            if (diskJobs == null) {
+                diskJobs = new ArrayDeque<>();
+                mPendingJobs.put(diskId, diskJobs);
+            }
+            diskJobs.add(job);
+            startNow = diskJobs.size() == 1;
+        }
+        if (startNow) {
+            execute(job);
+        }
+        return job.mId;
+    }
+
+    /**
+     * @return State of the queued, running and recently finished jobs, oldest first
+     */
+    @NonNull
+    List<JobState> getJobs() {
+        synchronized (mLock) {
+            final List<JobState> jobs = new ArrayList<>();
+            for (final Job job : mFinishedJobs) {
+                jobs.add(new JobState(job));
+            }
+            for (final ArrayDeque<Job> diskJobs : mPendingJobs.values()) {
+                for (final Job job : diskJobs) {
+                    jobs.add(new JobState(job));
+                }
+            }
+            jobs.sort((lhs, rhs) -> Integer.compare(lhs.id, rhs.id));
+            return jobs;
+        }
+    }
+
+    /**
+     * @return Whether no job is queued or running
+     */
+    boolean isIdle() {
+        synchronized (mLock) {
+            return mPendingJobs.isEmpty();
+        }
+    }
+
+    private void execute(Job job) {
+        mExecutor.execute(() -> {
+            synchronized (mLock) {
+                job.mState = STATE_RUNNING;
+                job.mStartTime = SystemClock.elapsedRealtime();
+            }
+            boolean success = false;
+            try {
+                success = job.mTask.run();
+            } finally {
+                onJobFinished(job, success);
+            }
+        });
+    }
+
+    private void onJobFinished(Job job, boolean success) {
+        final Job next;
+        final JobState state;
+        final boolean idle;
+        synchronized (mLock) {
+            job.mState = STATE_FINISHED;
+            job.mSuccess = success;
+            job.mEndTime = SystemClock.elapsedRealtime();
+            mFinishedJobs.add(job);
+            while (mFinishedJobs.size() > MAX_FINISHED_JOBS) {
+                mFinishedJobs.remove();
+            }
+            final ArrayDeque<Job> diskJobs = mPendingJobs.get(job.mDiskId);
+            diskJobs.remove(job);
+            next = diskJobs.peek();
+            if (next == null) {
+                mPendingJobs.remove(job.mDiskId);
+            }
+            state = new JobState(job);
+            idle = mPendingJobs.isEmpty();
+        }
+        mListener.onJobFinished(state, idle);
+        if (next != null) {
+            execute(next);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.storage;
+
+import android.content.Context;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageManager;
+import android.os.SystemClock;
+import android.os.storage.VolumeInfo;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settingslib.deviceinfo.StorageMeasurement;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Process wide cache of storage measurements, keyed by volume fsUuid. Measuring a large volume
+ * walks every file on it, so the last result is handed out right away and the volume is only
+ * measured again once something that feeds one of the categories has changed:
+ * <ul>
+ *     <li>apps, when a package was installed, updated or removed</li>
+ *     <li>media, misc and cache, when the used space of the volume drifted</li>
+ *     <li>any category, when the result is older than {@link #MAX_AGE_MILLIS}</li>
+ * </ul>
+ * {@link StorageMeasurement} measures all categories in one pass, so any stale category
+ * causes a full measurement in the background.
+ */
+public final class StorageMeasurementCache {
+    private static final String TAG = "StorageMeasurementCache";
+    private static final boolean DEBUG = false;
+
+    public static final int CATEGORY_APPS = 1;
+    public static final int CATEGORY_MEDIA = 1 << 1;
+    public static final int CATEGORY_MISC = 1 << 2;
+    public static final int CATEGORY_CACHE = 1 << 3;
+    public static final int CATEGORY_ALL =
+            CATEGORY_APPS | CATEGORY_MEDIA | CATEGORY_MISC | CATEGORY_CACHE;
+
+    private static final long MAX_AGE_MILLIS = 15 * 60 * 1000;
+    /** Used space may change by this much before the file categories are considered stale */
+    private static final long MIN_USED_DRIFT_BYTES = 64 * 1024 * 1024;
+    /** ... or by this fraction of the volume size, whichever is larger */
+    private static final long USED_DRIFT_FRACTION = 500;
+
+    /**
+     * Receives measurement results.
+     */
+    public interface Listener {
+        /**
+         * Called on the main thread with cached results first, if there are any, and again with
+         * fresh results once a measurement completes.
+         * @param details Measurement of the volume
+         * @param staleCategories Categories which are being measured again, as a combination of
+         *                        the {@code CATEGORY_} constants, 0 once the results are final
+         */
+        void onMeasurementUpdated(@NonNull StorageMeasurement.MeasurementDetails details,
+                int staleCategories);
+    }
+
+    /**
+     * Creates the measurement of a volume.
+     */
+    @VisibleForTesting
+    interface MeasurementFactory {
+        StorageMeasurement create(Context context, VolumeInfo volume,
+                @Nullable VolumeInfo sharedVolume);
+    }
+
+    /**
+     * Handle to an ongoing measurement. It's the receiver of the measurement itself, since
+     * {@link StorageMeasurement} only keeps a weak reference to its receiver: the caller holding
+     * on to the request keeps it alive until the results are in.
+     */
+    public final class Request implements StorageMeasurement.MeasurementReceiver {
+        private final String mKey;
+        private final Watermark mWatermark;
+        private Listener mListener;
+        private StorageMeasurement mMeasurement;
+
+        private Request(String key, Watermark watermark, Listener listener) {
+            mKey = key;
+            mWatermark = watermark;
+            mListener = listener;
+        }
+
+        /**
+         * Stops delivering results to the listener, and stops measuring.
+         */
+        @MainThread
+        public void cancel() {
+            mListener = null;
+            if (mMeasurement != null) {
+                mMeasurement.onDestroy();
+                mMeasurement = null;
+            }
+        }
+
+        @Override
+        public void onDetailsChanged(StorageMeasurement.MeasurementDetails details) {
+            mEntries.put(mKey, new Entry(details, mWatermark));
+            if (mListener != null) {
+                mListener.onMeasurementUpdated(details, 0);
+            }
+        }
+    }
+
+    /**
+     * Inputs of the categories as of a measurement.
+     */
+    private static final class Watermark {
+        final int packageSequence;
+        final long usedBytes;
+        final long totalBytes;
+        final long time;
+
+        Watermark(int packageSequence, long usedBytes, long totalBytes, long time) {
+            this.packageSequence = packageSequence;
+            this.usedBytes = usedBytes;
+            this.totalBytes = totalBytes;
+            this.time = time;
+        }
+    }
+
+    private static final class Entry {
+        final StorageMeasurement.MeasurementDetails details;
+        final Watermark watermark;
+
+        Entry(StorageMeasurement.MeasurementDetails details, Watermark watermark) {
+            this.details = details;
+            this.watermark = watermark;
+        }
+    }
+
+    private static StorageMeasurementCache sInstance;
+
+    private final Context mContext;
+    private final PackageManager mPackageManager;
+    private final MeasurementFactory mMeasurementFactory;
+    private final Map<String, Entry> mEntries = new ArrayMap<>();
+    /** Latest package change sequence number seen */
+    private int mPackageSequence;
+
+    /**
+     * @return The process wide measurement cache
+     */
+    public static synchronized StorageMeasurementCache getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new StorageMeasurementCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private StorageMeasurementCache(Context context) {
+        this(context, context.getPackageManager(), StorageMeasurement::new);
+    }
+
+    @VisibleForTesting
+    StorageMeasurementCache(Context context, PackageManager packageManager,
+            MeasurementFactory measurementFactory) {
+        mContext = context;
+        mPackageManager = packageManager;
+        mMeasurementFactory = measurementFactory;
+    }
+
+    /**
+     * Delivers the cached measurement of the volume if any, and measures it again in the
+     * background if it's stale.
+     * @param volume Volume to measure, must be mounted
+     * @param sharedVolume Emulated volume backed by the volume, if any
+     * @param listener Listener for the results
+     * @return Handle to cancel the measurement
+     */
+    @MainThread
+    @NonNull
+    public Request measure(@NonNull VolumeInfo volume, @Nullable VolumeInfo sharedVolume,
+            @NonNull Listener listener) {
+        final String key = getKey(volume);
+        final Watermark watermark = getWatermark(volume);
+        final Request request = new Request(key, watermark, listener);
+        final Entry entry = mEntries.get(key);
+        final int staleCategories =
+                entry == null ? CATEGORY_ALL : getStaleCategories(entry.watermark, watermark);
+        if (entry != null) {
+            listener.onMeasurementUpdated(entry.details, staleCategories);
+        }
+        if (staleCategories != 0) {
+            if (DEBUG) {
+                Log.d(TAG, "Measuring " + key + ", stale categories " + staleCategories);
+            }
+            request.mMeasurement = mMeasurementFactory.create(mContext, volume, sharedVolume);
+            request.mMeasurement.setReceiver(request);
+            request.mMeasurement.forceMeasure();
+        }
+        return request;
+    }
+
+    /**
+     * Drops all cached measurements, e.g. after clearing app caches.
+     */
+    @MainThread
+    public void invalidateAll() {
+        mEntries.clear();
+    }
+
+    private static String getKey(VolumeInfo volume) {
+        // Internal storage doesn't have an fsUuid
+        final String fsUuid = volume.getFsUuid();
+        return fsUuid != null ? fsUuid : volume.getId();
+    }
+
+    private Watermark getWatermark(VolumeInfo volume) {
+        final ChangedPackages changedPackages =
+                mPackageManager.getChangedPackages(mPackageSequence);
+        if (changedPackages != null) {
+            mPackageSequence = changedPackages.getSequenceNumber();
+        }
+        final File path = volume.getPath();
+        final long totalBytes = path != null ? path.getTotalSpace() : 0;
+        final long usedBytes = path != null ? totalBytes - path.getFreeSpace() : 0;
+        return new Watermark(mPackageSequence, usedBytes, totalBytes,
+                SystemClock.elapsedRealtime());
+    }
+
+    private static int getStaleCategories(Watermark cached, Watermark current) {
+        if (current.time - cached.time > MAX_AGE_MILLIS
+                || current.totalBytes != cached.totalBytes) {
+            return CATEGORY_ALL;
+        }
+        int staleCategories = 0;
+        if (current.packageSequence != cached.packageSequence) {
+            // App sizes, and the cache they own
+            staleCategories |= CATEGORY_APPS | CATEGORY_CACHE;
+        }
+        final long allowedDrift =
+                Math.max(MIN_USED_DRIFT_BYTES, current.totalBytes / USED_DRIFT_FRACTION);
+        if (Math.abs(current.usedBytes - cached.usedBytes) > allowedDrift) {
+            staleCategories |= CATEGORY_MEDIA | CATEGORY_MISC | CATEGORY_CACHE;
+        }
+        return staleCategories;
+    }
+}
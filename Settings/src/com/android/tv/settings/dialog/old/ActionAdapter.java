@@ -20,6 +20,7 @@ import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.content.Context;
 import android.content.res.Resources;
+import android.database.DataSetObserver;
 import android.graphics.drawable.Drawable;
 import android.media.AudioManager;
 import android.text.TextUtils;
@@ -39,6 +40,7 @@ import android.widget.TextView;
 import com.android.tv.settings.R;
 import com.android.tv.settings.widget.ScrollAdapter;
 import com.android.tv.settings.widget.ScrollAdapterBase;
+import com.android.tv.settings.widget.ScrollAdapterObservable;
 import com.android.tv.settings.widget.ScrollAdapterView;
 import com.android.tv.settings.widget.ScrollAdapterView.OnScrollListener;
 
@@ -119,6 +121,7 @@ public class ActionAdapter extends BaseAdapter implements ScrollAdapter,
     private ScrollAdapterView mScrollAdapterView;
     private final int mAnimationDuration;
     private View mSelectedView = null;
+    private final ScrollAdapterObservable mScrollObservable = new ScrollAdapterObservable();
 
     public ActionAdapter(Context context) {
         super();
@@ -234,9 +237,21 @@ public class ActionAdapter extends BaseAdapter implements ScrollAdapter,
         mOnKeyListener = onKeyListener;
     }
 
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {
+        super.registerDataSetObserver(observer);
+        mScrollObservable.registerObserver(observer);
+    }
+
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+        super.unregisterDataSetObserver(observer);
+        mScrollObservable.unregisterObserver(observer);
+    }
+
     public void addAction(Action action) {
         mActions.add(action);
-        notifyDataSetChanged();
+        mScrollObservable.notifyItemRangeInserted(mActions.size() - 1, 1);
     }
 
     /**
@@ -248,9 +263,27 @@ public class ActionAdapter extends BaseAdapter implements ScrollAdapter,
 
     public void setActions(ArrayList<Action> actions) {
         changeFocus(mSelectedView, false /* hasFocus */, false /* shouldAnimate */);
+        final boolean sameKeys = hasSameKeys(actions);
         mActions.clear();
         mActions.addAll(actions);
-        notifyDataSetChanged();
+        if (sameKeys) {
+            // Typically only the check states changed, rebind the rows in place
+            mScrollObservable.notifyItemRangeChanged(0, mActions.size());
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    private boolean hasSameKeys(List<Action> actions) {
+        if (actions.size() != mActions.size()) {
+            return false;
+        }
+        for (int i = 0, size = actions.size(); i < size; i++) {
+            if (!TextUtils.equals(actions.get(i).getKey(), mActions.get(i).getKey())) {
+                return false;
+            }
+        }
+        return true;
     }
 
     // We want to highlight a view if we've stopped scrolling on it (mainPosition = 0).
@@ -31,17 +31,14 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
 import android.hardware.usb.UsbManager;
 import android.net.wifi.WifiManager;
+import android.os.AsyncTask;
 import android.os.BatteryManager;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.IBinder;
-import android.os.Parcel;
 import android.os.RemoteException;
 import android.os.ServiceManager;
-import android.os.StrictMode;
 import android.os.SystemProperties;
 import android.os.UserManager;
 import android.provider.Settings;
@@ -75,6 +72,8 @@ import com.android.tv.settings.SettingsPreferenceFragment;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Displays preferences for application developers.
@@ -83,6 +82,7 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
         implements Preference.OnPreferenceChangeListener,
         EnableDevelopmentDialog.Callback, OemUnlockDialog.Callback, AdbDialog.Callback {
     private static final String TAG = "DevelopmentSettings";
+    private static final boolean DEBUG = false;
 
     private static final String ENABLE_DEVELOPER = "development_settings_enable";
     private static final String ENABLE_ADB = "enable_adb";
@@ -90,10 +90,8 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
     private static final String ENABLE_TERMINAL = "enable_terminal";
     private static final String KEEP_SCREEN_ON = "keep_screen_on";
     private static final String BT_HCI_SNOOP_LOG = "bt_hci_snoop_log";
-    private static final String BTSNOOP_ENABLE_PROPERTY = "persist.bluetooth.btsnoopenable";
     private static final String ENABLE_OEM_UNLOCK = "oem_unlock_enable";
     private static final String HDCP_CHECKING_KEY = "hdcp_checking";
-    private static final String HDCP_CHECKING_PROPERTY = "persist.sys.hdcp_checking";
     private static final String LOCAL_BACKUP_PASSWORD = "local_backup_password";
     private static final String BUGREPORT = "bugreport";
     private static final String BUGREPORT_IN_POWER_KEY = "bugreport_in_power";
@@ -143,10 +141,6 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
 
     private static final String SHOW_ALL_ANRS_KEY = "show_all_anrs";
 
-    private static final String PACKAGE_MIME_TYPE = "application/vnd.android.package-archive";
-
-    private static final String TERMINAL_APP_PACKAGE = "com.android.terminal";
-
     private static final String KEY_CONVERT_FBE = "convert_to_file_encryption";
 
     private static final int RESULT_DEBUG_APP = 1000;
@@ -168,6 +162,13 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
     private UserManager mUm;
     private WifiManager mWifiManager;
     private ContentResolver mContentResolver;
+    private DevelopmentOptionsLoader mOptionsLoader;
+    /** Bumped on every load, so that only the latest one is bound */
+    private int mOptionsLoadGeneration;
+    /** Whether the next loaded options should be checked for debug settings left enabled */
+    private boolean mCheckDebugSettingsOnLoad;
+    /** Writes queued while resetting options, see {@link #beginWrites()} */
+    private DevelopmentOptionsTransaction mPendingWrites;
 
     private boolean mLastEnabledState;
     private boolean mHaveDebugSettings;
@@ -266,6 +267,8 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
         mWifiManager = (WifiManager) getActivity().getSystemService(Context.WIFI_SERVICE);
 
         mContentResolver = getActivity().getContentResolver();
+        mOptionsLoader = new DevelopmentOptionsLoader(getActivity(), mWindowManager,
+                mBackupManager, mUm, mWifiManager, AsyncTask.THREAD_POOL_EXECUTOR);
 
         super.onCreate(icicle);
     }
@@ -303,7 +306,8 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
         }
         mAllPrefs.add(mClearAdbKeys);
         mEnableTerminal = findAndInitSwitchPref(ENABLE_TERMINAL);
-        if (!isPackageInstalled(getActivity(), TERMINAL_APP_PACKAGE)) {
+        if (!isPackageInstalled(getActivity(),
+                DevelopmentOptionsLoader.TERMINAL_APP_PACKAGE)) {
             if (debugDebuggingCategory != null) {
                 debugDebuggingCategory.removePreference(mEnableTerminal);
             }
@@ -515,19 +519,9 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
 
         mLastEnabledState = DevelopmentSettingsEnabler.isDevelopmentSettingsEnabled(getContext());
         mEnableDeveloper.setChecked(mLastEnabledState);
+        mCheckDebugSettingsOnLoad = true;
         setPrefsEnabledState(mLastEnabledState);
 
-        if (mHaveDebugSettings && !mLastEnabledState) {
-            // Overall debugging is disabled, but there are some debug
-            // settings that are enabled.  This is an invalid state.  Switch
-            // to debug settings being enabled, so the user knows there is
-            // stuff enabled and can turn it all off if they want.
-            DevelopmentSettingsEnabler.setDevelopmentSettingsEnabled(getContext(), true);
-            mLastEnabledState = true;
-            mEnableDeveloper.setChecked(mLastEnabledState);
-            setPrefsEnabledState(mLastEnabledState);
-        }
-
         if (mColorModePreference != null) {
             mColorModePreference.startListening();
             mColorModePreference.updateCurrentAndSupported();
@@ -574,6 +568,8 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
     @Override
     public void onDestroy() {
         super.onDestroy();
+        // Drop any load still in flight
+        mOptionsLoadGeneration++;
         dismissDialogs();
     }
 
@@ -582,65 +578,161 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
         mHaveDebugSettings |= value;
     }
 
+    /**
+     * Reads all options in the background, and binds them in {@link #onOptionsLoaded} once they
+     * are all in. Starting a new load supersedes any load still in flight.
+     */
     private void updateAllOptions() {
-        final Context context = getActivity();
-        final ContentResolver cr = context.getContentResolver();
+        final int generation = ++mOptionsLoadGeneration;
+        mOptionsLoader.load(mEnableTerminal != null, mEnableOemUnlock != null, snapshot -> {
+            if (generation == mOptionsLoadGeneration) {
+                onOptionsLoaded(snapshot);
+            }
+        });
+    }
+
+    private void onOptionsLoaded(DevelopmentOptionsSnapshot snapshot) {
+        if (DEBUG) {
+            logLatencies(snapshot);
+        }
+        bindAllOptions(snapshot);
+
+        if (mCheckDebugSettingsOnLoad) {
+            mCheckDebugSettingsOnLoad = false;
+            if (mHaveDebugSettings && !mLastEnabledState) {
+                // Overall debugging is disabled, but there are some debug
+                // settings that are enabled.  This is an invalid state.  Switch
+                // to debug settings being enabled, so the user knows there is
+                // stuff enabled and can turn it all off if they want.
+                DevelopmentSettingsEnabler.setDevelopmentSettingsEnabled(getContext(), true);
+                mLastEnabledState = true;
+                mEnableDeveloper.setChecked(mLastEnabledState);
+                setPrefsEnabledState(mLastEnabledState);
+            }
+        }
+    }
+
+    private static void logLatencies(DevelopmentOptionsSnapshot snapshot) {
+        final StringBuilder sb = new StringBuilder("Loaded options in ")
+                .append(TimeUnit.NANOSECONDS.toMillis(snapshot.getElapsedNanos())).append("ms:");
+        for (final Map.Entry<String, Long> latency : snapshot.getLatencies().entrySet()) {
+            sb.append(' ').append(latency.getKey()).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMillis(latency.getValue())).append("ms");
+        }
+        Log.d(TAG, sb.toString());
+    }
+
+    private void bindAllOptions(DevelopmentOptionsSnapshot snapshot) {
         mHaveDebugSettings = false;
-        updateSwitchPreference(mEnableAdb, Settings.Global.getInt(cr,
-                Settings.Global.ADB_ENABLED, 0) != 0);
+        updateSwitchPreference(mEnableAdb, snapshot.adbEnabled);
         if (mEnableTerminal != null) {
-            updateSwitchPreference(mEnableTerminal,
-                    context.getPackageManager().getApplicationEnabledSetting(TERMINAL_APP_PACKAGE)
-                            == PackageManager.COMPONENT_ENABLED_STATE_ENABLED);
-        }
-        updateSwitchPreference(mKeepScreenOn, Settings.Global.getInt(cr,
-                Settings.Global.STAY_ON_WHILE_PLUGGED_IN, 0) != 0);
-        updateSwitchPreference(mBtHciSnoopLog,
-                SystemProperties.getBoolean(BTSNOOP_ENABLE_PROPERTY, false));
+            updateSwitchPreference(mEnableTerminal, snapshot.terminalEnabled);
+        }
+        updateSwitchPreference(mKeepScreenOn, snapshot.stayOnWhilePluggedIn);
+        updateSwitchPreference(mBtHciSnoopLog, snapshot.btHciSnoopLog);
         if (mEnableOemUnlock != null) {
-            updateSwitchPreference(mEnableOemUnlock, isOemUnlockEnabled(getActivity()));
-            mEnableOemUnlock.setEnabled(isOemUnlockAllowed());
-        }
-        updateSwitchPreference(mDebugViewAttributes, Settings.Global.getInt(cr,
-                Settings.Global.DEBUG_VIEW_ATTRIBUTES, 0) != 0);
-        updateSwitchPreference(mForceAllowOnExternal, Settings.Global.getInt(cr,
-                Settings.Global.FORCE_ALLOW_ON_EXTERNAL, 0) != 0);
-        updateHdcpValues();
-        updatePasswordSummary();
-        updateDebuggerOptions();
-        updateMockLocation();
-        updateStrictModeVisualOptions();
-        updatePointerLocationOptions();
-        updateShowTouchesOptions();
-        updateFlingerOptions();
-        updateMsaaOptions();
-        updateTrackFrameTimeOptions();
-        updateShowNonRectClipOptions();
-        updateShowHwScreenUpdatesOptions();
-        updateShowHwLayersUpdatesOptions();
-        updateDebugHwOverdrawOptions();
-        updateDebugLayoutOptions();
-        updateAnimationScaleOptions();
-        updateOverlayDisplayDevicesOptions();
-        updateOpenGLTracesOptions();
-        updateImmediatelyDestroyActivitiesOptions();
-        updateAppProcessLimitOptions();
-        updateShowAllANRsOptions();
-        updateVerifyAppsOverUsbOptions();
-        updateBugreportOptions();
-        updateForceRtlOptions();
+            updateSwitchPreference(mEnableOemUnlock, snapshot.oemUnlockEnabled);
+            mEnableOemUnlock.setEnabled(snapshot.oemUnlockAllowed);
+        }
+        updateSwitchPreference(mDebugViewAttributes, snapshot.debugViewAttributes);
+        updateSwitchPreference(mForceAllowOnExternal, snapshot.forceAllowOnExternal);
+        bindHdcpValues(snapshot.hdcpChecking);
+        if (snapshot.hasBackupPassword != null) {
+            bindPasswordSummary(snapshot.hasBackupPassword);
+        }
+        mDebugApp = snapshot.debugApp;
+        bindDebuggerOptions(snapshot.waitForDebugger, snapshot.debugAppLabel);
+        if (snapshot.mockLocationApp != null) {
+            mMockLocationApp = snapshot.mockLocationApp;
+        }
+        bindMockLocation(TextUtils.equals(mMockLocationApp, snapshot.mockLocationApp)
+                ? snapshot.mockLocationAppLabel : mMockLocationApp);
+        updateSwitchPreference(mStrictMode, snapshot.strictModeVisualIndex == 1);
+        updateSwitchPreference(mPointerLocation, snapshot.pointerLocation);
+        updateSwitchPreference(mShowTouches, snapshot.showTouches);
+        if (snapshot.flingerOptions != null) {
+            bindFlingerOptions(snapshot.flingerOptions);
+        }
+        updateSwitchPreference(mForceMsaa, snapshot.forceMsaa);
+        bindListPreference(mTrackFrameTime, snapshot.trackFrameTime);
+        bindListPreference(mShowNonRectClip, snapshot.showNonRectClip);
+        updateSwitchPreference(mShowHwScreenUpdates, snapshot.showHwScreenUpdates);
+        updateSwitchPreference(mShowHwLayersUpdates, snapshot.showHwLayersUpdates);
+        bindListPreference(mDebugHwOverdraw, snapshot.debugHwOverdraw);
+        updateSwitchPreference(mDebugLayout, snapshot.debugLayout);
+        if (snapshot.animationScales != null) {
+            bindAnimationScaleValue(mWindowAnimationScale, snapshot.animationScales[0]);
+            bindAnimationScaleValue(mTransitionAnimationScale, snapshot.animationScales[1]);
+            bindAnimationScaleValue(mAnimatorDurationScale, snapshot.animationScales[2]);
+        }
+        bindListPreference(mOverlayDisplayDevices, snapshot.overlayDisplayDevices);
+        bindListPreference(mOpenGLTraces, snapshot.openGlTraces);
+        updateSwitchPreference(mImmediatelyDestroyActivities, snapshot.alwaysFinishActivities);
+        if (snapshot.processLimit != null) {
+            bindAppProcessLimitOptions(snapshot.processLimit);
+        }
+        updateSwitchPreference(mShowAllANRs, snapshot.showAllAnrs);
+        updateSwitchPreference(mVerifyAppsOverUsb, snapshot.verifyAppsOverUsb);
+        mVerifyAppsOverUsb.setEnabled(snapshot.verifierSettingEnabled);
+        bindBugreportOptions(snapshot.debuggable);
+        updateSwitchPreference(mForceRtlLayout, snapshot.forceRtl);
+        // The logd controllers read their properties themselves, which only hits the in-process
+        // property area rather than a binder or the disk
         mLogdSizeController.updateLogdSizeValues();
         mLogpersistController.updateLogpersistValues();
-        updateWifiDisplayCertificationOptions();
-        updateWifiVerboseLoggingOptions();
-        updateMobileDataAlwaysOnOptions();
-        updateSimulateColorSpace();
-        updateUSBAudioOptions();
-        updateForceResizableOptions();
+        updateSwitchPreference(mWifiDisplayCertification, snapshot.wifiDisplayCertification);
+        updateSwitchPreference(mWifiVerboseLogging, snapshot.wifiVerboseLogging);
+        updateSwitchPreference(mMobileDataAlwaysOn, snapshot.mobileDataAlwaysOn);
+        bindSimulateColorSpace(snapshot.daltonizerEnabled, snapshot.daltonizerMode);
+        updateSwitchPreference(mUSBAudio, snapshot.usbAudioRoutingDisabled);
+        updateSwitchPreference(mForceResizable, snapshot.forceResizable);
+    }
+
+    /**
+     * @return Transaction to queue writes in. While options are being reset this is the batch
+     * that is committed at the end, otherwise a new transaction.
+     */
+    private DevelopmentOptionsTransaction beginWrites() {
+        return mPendingWrites != null
+                ? mPendingWrites : new DevelopmentOptionsTransaction(mContentResolver);
+    }
+
+    /**
+     * Commits writes from {@link #beginWrites()}, unless they are part of the reset batch.
+     * @return Whether the writes were applied, so that the options can be read back
+     */
+    private boolean commitWrites(DevelopmentOptionsTransaction writes) {
+        if (writes == mPendingWrites) {
+            return false;
+        }
+        writes.commit();
+        return true;
+    }
+
+    /**
+     * Selects the entry of a list preference matching the value, or the first entry if none
+     * does.
+     */
+    private static void bindListPreference(ListPreference pref, String value) {
+        if (value == null) {
+            value = "";
+        }
+        CharSequence[] values = pref.getEntryValues();
+        for (int i = 0; i < values.length; i++) {
+            if (value.contentEquals(values[i])) {
+                pref.setValueIndex(i);
+                pref.setSummary(pref.getEntries()[i]);
+                return;
+            }
+        }
+        pref.setValueIndex(0);
+        pref.setSummary(pref.getEntries()[0]);
     }
 
     private void resetDangerousOptions() {
+        // The settingslib controllers poke on their own, so block them until everything is reset
         SystemPropPoker.getInstance().blockPokes();
+        mPendingWrites = new DevelopmentOptionsTransaction(mContentResolver);
         for (final SwitchPreference cb : mResetSwitchPrefs) {
             if (cb.isChecked()) {
                 cb.setChecked(false);
@@ -659,6 +751,9 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
         }
         writeOverlayDisplayDevicesOptions(null);
         writeAppProcessLimitOptions(null);
+        final DevelopmentOptionsTransaction writes = mPendingWrites;
+        mPendingWrites = null;
+        writes.commit();
         mHaveDebugSettings = false;
         updateAllOptions();
         SystemPropPoker.getInstance().unblockPokes();
@@ -666,9 +761,12 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
     }
 
     private void updateHdcpValues() {
+        bindHdcpValues(SystemProperties.get(DevelopmentOptionsLoader.HDCP_CHECKING_PROPERTY));
+    }
+
+    private void bindHdcpValues(String currentValue) {
         ListPreference hdcpChecking = (ListPreference) findPreference(HDCP_CHECKING_KEY);
         if (hdcpChecking != null) {
-            String currentValue = SystemProperties.get(HDCP_CHECKING_PROPERTY);
             String[] values = getResources().getStringArray(R.array.hdcp_checking_values);
             String[] summaries = getResources().getStringArray(R.array.hdcp_checking_summaries);
             int index = 1; // Defaults to drm-only. Needs to match with R.array.hdcp_checking_values
@@ -684,21 +782,17 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
         }
     }
 
-    private void updatePasswordSummary() {
-        try {
-            if (mBackupManager.hasBackupPassword()) {
-                mPassword.setSummary(R.string.local_backup_password_summary_change);
-            } else {
-                mPassword.setSummary(R.string.local_backup_password_summary_none);
-            }
-        } catch (RemoteException e) {
-            // ignore
+    private void bindPasswordSummary(boolean hasBackupPassword) {
+        if (hasBackupPassword) {
+            mPassword.setSummary(R.string.local_backup_password_summary_change);
+        } else {
+            mPassword.setSummary(R.string.local_backup_password_summary_none);
         }
     }
 
     private void writeBtHciSnoopLogOptions() {
         BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
-        SystemProperties.set(BTSNOOP_ENABLE_PROPERTY,
+        SystemProperties.set(DevelopmentOptionsLoader.BTSNOOP_ENABLE_PROPERTY,
                 Boolean.toString(mBtHciSnoopLog.isChecked()));
     }
 
@@ -759,19 +853,17 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
 
     private void updateDebuggerOptions() {
         mDebugApp = Settings.Global.getString(mContentResolver, Settings.Global.DEBUG_APP);
-        updateSwitchPreference(mWaitForDebugger, Settings.Global.getInt(mContentResolver,
-                Settings.Global.WAIT_FOR_DEBUGGER, 0) != 0);
+        bindDebuggerOptions(Settings.Global.getInt(mContentResolver,
+                Settings.Global.WAIT_FOR_DEBUGGER, 0) != 0,
+                TextUtils.isEmpty(mDebugApp) ? null : DevelopmentOptionsLoader.readAppLabel(
+                        getActivity().getPackageManager(), mDebugApp));
+    }
+
+    private void bindDebuggerOptions(boolean waitForDebugger, String debugAppLabel) {
+        updateSwitchPreference(mWaitForDebugger, waitForDebugger);
         if (mDebugApp != null && mDebugApp.length() > 0) {
-            String label;
-            try {
-                ApplicationInfo ai = getActivity().getPackageManager().getApplicationInfo(mDebugApp,
-                        PackageManager.GET_DISABLED_COMPONENTS);
-                CharSequence lab = getActivity().getPackageManager().getApplicationLabel(ai);
-                label = lab != null ? lab.toString() : mDebugApp;
-            } catch (PackageManager.NameNotFoundException e) {
-                label = mDebugApp;
-            }
-            mDebugAppPref.setSummary(getResources().getString(R.string.debug_app_set, label));
+            mDebugAppPref.setSummary(
+                    getResources().getString(R.string.debug_app_set, debugAppLabel));
             mWaitForDebugger.setEnabled(true);
             mHaveDebugSettings = true;
         } else {
@@ -781,33 +873,17 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
     }
 
     private void updateMockLocation() {
-        AppOpsManager appOpsManager =
-                (AppOpsManager) getActivity().getSystemService(Context.APP_OPS_SERVICE);
-
-        List<AppOpsManager.PackageOps> packageOps =
-                appOpsManager.getPackagesForOps(MOCK_LOCATION_APP_OPS);
-        if (packageOps != null) {
-            for (AppOpsManager.PackageOps packageOp : packageOps) {
-                if (packageOp.getOps().get(0).getMode() == AppOpsManager.MODE_ALLOWED) {
-                    mMockLocationApp = packageOps.get(0).getPackageName();
-                    break;
-                }
-            }
+        final String mockLocationApp = DevelopmentOptionsLoader.readMockLocationApp(getActivity());
+        if (mockLocationApp != null) {
+            mMockLocationApp = mockLocationApp;
         }
+        bindMockLocation(TextUtils.isEmpty(mMockLocationApp) ? null
+                : DevelopmentOptionsLoader.readAppLabel(getActivity().getPackageManager(),
+                        mMockLocationApp));
+    }
 
+    private void bindMockLocation(String label) {
         if (!TextUtils.isEmpty(mMockLocationApp)) {
-            String label = mMockLocationApp;
-            try {
-                ApplicationInfo ai = getActivity().getPackageManager().getApplicationInfo(
-                        mMockLocationApp, PackageManager.GET_DISABLED_COMPONENTS);
-                CharSequence appLabel = getActivity().getPackageManager().getApplicationLabel(ai);
-                if (appLabel != null) {
-                    label = appLabel.toString();
-                }
-            } catch (PackageManager.NameNotFoundException e) {
-                /* ignore */
-            }
-
             mMockLocationAppPref.setSummary(getString(R.string.mock_location_app_set, label));
             mHaveDebugSettings = true;
         } else {
@@ -819,7 +895,8 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
         updateSwitchPreference(mVerifyAppsOverUsb,
                 Settings.Global.getInt(mContentResolver,
                 Settings.Global.PACKAGE_VERIFIER_INCLUDE_ADB, 1) != 0);
-        mVerifyAppsOverUsb.setEnabled(enableVerifierSetting());
+        mVerifyAppsOverUsb.setEnabled(
+                DevelopmentOptionsLoader.readVerifierSettingEnabled(getActivity()));
     }
 
     private void writeVerifyAppsOverUsbOptions() {
@@ -827,26 +904,6 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
                 mVerifyAppsOverUsb.isChecked() ? 1 : 0);
     }
 
-    private boolean enableVerifierSetting() {
-        if (Settings.Global.getInt(mContentResolver, Settings.Global.ADB_ENABLED, 0) == 0) {
-            return false;
-        }
-        if (Settings.Global.getInt(mContentResolver,
-                Settings.Global.PACKAGE_VERIFIER_ENABLE, 1) == 0) {
-            return false;
-        } else {
-            final PackageManager pm = getActivity().getPackageManager();
-            final Intent verification = new Intent(Intent.ACTION_PACKAGE_NEEDS_VERIFICATION);
-            verification.setType(PACKAGE_MIME_TYPE);
-            verification.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-            final List<ResolveInfo> receivers = pm.queryBroadcastReceivers(verification, 0);
-            if (receivers.size() == 0) {
-                return false;
-            }
-        }
-        return true;
-    }
-
     private boolean showVerifierSetting() {
         return Settings.Global.getInt(mContentResolver,
                 Settings.Global.PACKAGE_VERIFIER_SETTING_VISIBLE, 1) > 0;
@@ -856,20 +913,17 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
         return !SystemProperties.get(PERSISTENT_DATA_BLOCK_PROP).equals("");
     }
 
-    private boolean isOemUnlockAllowed() {
-        return !mUm.hasUserRestriction(UserManager.DISALLOW_OEM_UNLOCK);
-    }
-
-    private void updateBugreportOptions() {
-        boolean enabled = "1".equals(SystemProperties.get("ro.debuggable"))
-                || mEnableDeveloper.isChecked();
+    private void bindBugreportOptions(boolean debuggable) {
+        boolean enabled = debuggable || mEnableDeveloper.isChecked();
         mBugreport.setEnabled(enabled);
+        final PackageManager pm = getActivity().getPackageManager();
         final ComponentName componentName = new ComponentName("com.android.shell",
                 "com.android.shell.BugreportStorageProvider");
-        getActivity().getPackageManager().setComponentEnabledSetting(componentName,
-                enabled ? PackageManager.COMPONENT_ENABLED_STATE_ENABLED
-                        : PackageManager.COMPONENT_ENABLED_STATE_DEFAULT,
-                0);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() ->
+                pm.setComponentEnabledSetting(componentName,
+                        enabled ? PackageManager.COMPONENT_ENABLED_STATE_ENABLED
+                                : PackageManager.COMPONENT_ENABLED_STATE_DEFAULT,
+                        0));
     }
 
     private void captureBugReport() {
@@ -882,19 +936,6 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
         }
     }
 
-    // Returns the current state of the system property that controls
-    // strictmode flashes.  One of:
-    //    0: not explicitly set one way or another
-    //    1: on
-    //    2: off
-    private static int currentStrictModeActiveIndex() {
-        if (TextUtils.isEmpty(SystemProperties.get(StrictMode.VISUAL_PROPERTY))) {
-            return 0;
-        }
-        boolean enabled = SystemProperties.getBoolean(StrictMode.VISUAL_PROPERTY, false);
-        return enabled ? 1 : 2;
-    }
-
     private void writeStrictModeVisualOptions() {
         try {
             mWindowManager.setStrictModeVisualIndicatorPreference(mStrictMode.isChecked()
@@ -904,217 +945,118 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
         }
     }
 
-    private void updateStrictModeVisualOptions() {
-        updateSwitchPreference(mStrictMode, currentStrictModeActiveIndex() == 1);
-    }
-
     private void writePointerLocationOptions() {
         Settings.System.putInt(mContentResolver,
                 Settings.System.POINTER_LOCATION, mPointerLocation.isChecked() ? 1 : 0);
     }
 
-    private void updatePointerLocationOptions() {
-        updateSwitchPreference(mPointerLocation,
-                Settings.System.getInt(mContentResolver, Settings.System.POINTER_LOCATION, 0) != 0);
-    }
-
     private void writeShowTouchesOptions() {
         Settings.System.putInt(mContentResolver,
                 Settings.System.SHOW_TOUCHES, mShowTouches.isChecked() ? 1 : 0);
     }
 
-    private void updateShowTouchesOptions() {
-        updateSwitchPreference(mShowTouches,
-                Settings.System.getInt(mContentResolver, Settings.System.SHOW_TOUCHES, 0) != 0);
-    }
-
     private void updateFlingerOptions() {
-        // magic communication with surface flinger.
         try {
-            IBinder flinger = ServiceManager.getService("SurfaceFlinger");
-            if (flinger != null) {
-                Parcel data = Parcel.obtain();
-                Parcel reply = Parcel.obtain();
-                data.writeInterfaceToken("android.ui.ISurfaceComposer");
-                flinger.transact(1010, data, reply, 0);
-                @SuppressWarnings("unused")
-                int showCpu = reply.readInt();
-                @SuppressWarnings("unused")
-                int enableGL = reply.readInt();
-                int showUpdates = reply.readInt();
-                updateSwitchPreference(mShowScreenUpdates, showUpdates != 0);
-                @SuppressWarnings("unused")
-                int showBackground = reply.readInt();
-                int disableOverlays = reply.readInt();
-                updateSwitchPreference(mDisableOverlays, disableOverlays != 0);
-                reply.recycle();
-                data.recycle();
+            final boolean[] options = DevelopmentOptionsLoader.readFlingerOptions();
+            if (options != null) {
+                bindFlingerOptions(options);
             }
         } catch (RemoteException ex) {
             // ignore
         }
     }
 
+    private void bindFlingerOptions(boolean[] options) {
+        updateSwitchPreference(mShowScreenUpdates, options[0]);
+        updateSwitchPreference(mDisableOverlays, options[1]);
+    }
+
     private void writeShowUpdatesOption() {
-        try {
-            IBinder flinger = ServiceManager.getService("SurfaceFlinger");
-            if (flinger != null) {
-                Parcel data = Parcel.obtain();
-                data.writeInterfaceToken("android.ui.ISurfaceComposer");
-                final int showUpdates = mShowScreenUpdates.isChecked() ? 1 : 0;
-                data.writeInt(showUpdates);
-                flinger.transact(1002, data, null, 0);
-                data.recycle();
-
-                updateFlingerOptions();
-            }
-        } catch (RemoteException ex) {
-            // ignore
+        final DevelopmentOptionsTransaction writes = beginWrites().setSurfaceFlingerOption(
+                DevelopmentOptionsTransaction.FLINGER_SHOW_UPDATES,
+                mShowScreenUpdates.isChecked());
+        if (commitWrites(writes)) {
+            updateFlingerOptions();
         }
     }
 
     private void writeDisableOverlaysOption() {
-        try {
-            IBinder flinger = ServiceManager.getService("SurfaceFlinger");
-            if (flinger != null) {
-                Parcel data = Parcel.obtain();
-                data.writeInterfaceToken("android.ui.ISurfaceComposer");
-                final int disableOverlays = mDisableOverlays.isChecked() ? 1 : 0;
-                data.writeInt(disableOverlays);
-                flinger.transact(1008, data, null, 0);
-                data.recycle();
-
-                updateFlingerOptions();
-            }
-        } catch (RemoteException ex) {
-            // ignore
+        final DevelopmentOptionsTransaction writes = beginWrites().setSurfaceFlingerOption(
+                DevelopmentOptionsTransaction.FLINGER_DISABLE_OVERLAYS,
+                mDisableOverlays.isChecked());
+        if (commitWrites(writes)) {
+            updateFlingerOptions();
         }
     }
 
-    private void updateMsaaOptions() {
-        updateSwitchPreference(mForceMsaa, DisplayProperties.debug_force_msaa().orElse(false));
-    }
-
     private void writeMsaaOptions() {
-        DisplayProperties.debug_force_msaa(mForceMsaa.isChecked());
-        SystemPropPoker.getInstance().poke();
+        final boolean forceMsaa = mForceMsaa.isChecked();
+        commitWrites(beginWrites().setSystemProperty(
+                () -> DisplayProperties.debug_force_msaa(forceMsaa)));
     }
 
     private void updateTrackFrameTimeOptions() {
-        String value = SystemProperties.get(ThreadedRenderer.PROFILE_PROPERTY);
-        if (value == null) {
-            value = "";
-        }
-
-        CharSequence[] values = mTrackFrameTime.getEntryValues();
-        for (int i = 0; i < values.length; i++) {
-            if (value.contentEquals(values[i])) {
-                mTrackFrameTime.setValueIndex(i);
-                mTrackFrameTime.setSummary(mTrackFrameTime.getEntries()[i]);
-                return;
-            }
-        }
-        mTrackFrameTime.setValueIndex(0);
-        mTrackFrameTime.setSummary(mTrackFrameTime.getEntries()[0]);
+        bindListPreference(mTrackFrameTime,
+                SystemProperties.get(ThreadedRenderer.PROFILE_PROPERTY));
     }
 
     private void writeTrackFrameTimeOptions(Object newValue) {
-        SystemProperties.set(ThreadedRenderer.PROFILE_PROPERTY,
-                newValue == null ? "" : newValue.toString());
-        SystemPropPoker.getInstance().poke();
-        updateTrackFrameTimeOptions();
+        final DevelopmentOptionsTransaction writes = beginWrites().setSystemProperty(
+                ThreadedRenderer.PROFILE_PROPERTY, newValue == null ? "" : newValue.toString());
+        if (commitWrites(writes)) {
+            updateTrackFrameTimeOptions();
+        }
     }
 
     private void updateShowNonRectClipOptions() {
-        String value = SystemProperties.get(
-                ThreadedRenderer.DEBUG_SHOW_NON_RECTANGULAR_CLIP_PROPERTY);
-        if (value == null) {
-            value = "hide";
-        }
-
-        CharSequence[] values = mShowNonRectClip.getEntryValues();
-        for (int i = 0; i < values.length; i++) {
-            if (value.contentEquals(values[i])) {
-                mShowNonRectClip.setValueIndex(i);
-                mShowNonRectClip.setSummary(mShowNonRectClip.getEntries()[i]);
-                return;
-            }
-        }
-        mShowNonRectClip.setValueIndex(0);
-        mShowNonRectClip.setSummary(mShowNonRectClip.getEntries()[0]);
+        bindListPreference(mShowNonRectClip, SystemProperties.get(
+                ThreadedRenderer.DEBUG_SHOW_NON_RECTANGULAR_CLIP_PROPERTY));
     }
 
     private void writeShowNonRectClipOptions(Object newValue) {
-        SystemProperties.set(ThreadedRenderer.DEBUG_SHOW_NON_RECTANGULAR_CLIP_PROPERTY,
+        final DevelopmentOptionsTransaction writes = beginWrites().setSystemProperty(
+                ThreadedRenderer.DEBUG_SHOW_NON_RECTANGULAR_CLIP_PROPERTY,
                 newValue == null ? "" : newValue.toString());
-        SystemPropPoker.getInstance().poke();
-        updateShowNonRectClipOptions();
-    }
-
-    private void updateShowHwScreenUpdatesOptions() {
-        updateSwitchPreference(mShowHwScreenUpdates,
-                SystemProperties.getBoolean(ThreadedRenderer.DEBUG_DIRTY_REGIONS_PROPERTY, false));
+        if (commitWrites(writes)) {
+            updateShowNonRectClipOptions();
+        }
     }
 
     private void writeShowHwScreenUpdatesOptions() {
-        SystemProperties.set(ThreadedRenderer.DEBUG_DIRTY_REGIONS_PROPERTY,
-                mShowHwScreenUpdates.isChecked() ? "true" : null);
-        SystemPropPoker.getInstance().poke();
-    }
-
-    private void updateShowHwLayersUpdatesOptions() {
-        updateSwitchPreference(mShowHwLayersUpdates, SystemProperties.getBoolean(
-                ThreadedRenderer.DEBUG_SHOW_LAYERS_UPDATES_PROPERTY, false));
+        commitWrites(beginWrites().setSystemProperty(
+                ThreadedRenderer.DEBUG_DIRTY_REGIONS_PROPERTY,
+                mShowHwScreenUpdates.isChecked() ? "true" : null));
     }
 
     private void writeShowHwLayersUpdatesOptions() {
-        SystemProperties.set(ThreadedRenderer.DEBUG_SHOW_LAYERS_UPDATES_PROPERTY,
-                mShowHwLayersUpdates.isChecked() ? "true" : null);
-        SystemPropPoker.getInstance().poke();
+        commitWrites(beginWrites().setSystemProperty(
+                ThreadedRenderer.DEBUG_SHOW_LAYERS_UPDATES_PROPERTY,
+                mShowHwLayersUpdates.isChecked() ? "true" : null));
     }
 
     private void updateDebugHwOverdrawOptions() {
-        String value = SystemProperties.get(ThreadedRenderer.DEBUG_OVERDRAW_PROPERTY);
-        if (value == null) {
-            value = "";
-        }
-
-        CharSequence[] values = mDebugHwOverdraw.getEntryValues();
-        for (int i = 0; i < values.length; i++) {
-            if (value.contentEquals(values[i])) {
-                mDebugHwOverdraw.setValueIndex(i);
-                mDebugHwOverdraw.setSummary(mDebugHwOverdraw.getEntries()[i]);
-                return;
-            }
-        }
-        mDebugHwOverdraw.setValueIndex(0);
-        mDebugHwOverdraw.setSummary(mDebugHwOverdraw.getEntries()[0]);
+        bindListPreference(mDebugHwOverdraw,
+                SystemProperties.get(ThreadedRenderer.DEBUG_OVERDRAW_PROPERTY));
     }
 
     private void writeDebugHwOverdrawOptions(Object newValue) {
-        SystemProperties.set(ThreadedRenderer.DEBUG_OVERDRAW_PROPERTY,
+        final DevelopmentOptionsTransaction writes = beginWrites().setSystemProperty(
+                ThreadedRenderer.DEBUG_OVERDRAW_PROPERTY,
                 newValue == null ? "" : newValue.toString());
-        SystemPropPoker.getInstance().poke();
-        updateDebugHwOverdrawOptions();
-    }
-
-    private void updateDebugLayoutOptions() {
-        updateSwitchPreference(mDebugLayout,
-                DisplayProperties.debug_layout().orElse(false));
+        if (commitWrites(writes)) {
+            updateDebugHwOverdrawOptions();
+        }
     }
 
     private void writeDebugLayoutOptions() {
-        DisplayProperties.debug_layout(mDebugLayout.isChecked());
-        SystemPropPoker.getInstance().poke();
+        final boolean debugLayout = mDebugLayout.isChecked();
+        commitWrites(beginWrites().setSystemProperty(
+                () -> DisplayProperties.debug_layout(debugLayout)));
     }
 
-    private void updateSimulateColorSpace() {
-        final boolean enabled = Settings.Secure.getInt(
-                mContentResolver, Settings.Secure.ACCESSIBILITY_DISPLAY_DALTONIZER_ENABLED, 0) != 0;
+    private void bindSimulateColorSpace(boolean enabled, int daltonizerMode) {
         if (enabled) {
-            final String mode = Integer.toString(Settings.Secure.getInt(
-                    mContentResolver, Settings.Secure.ACCESSIBILITY_DISPLAY_DALTONIZER,
-                    AccessibilityManager.DALTONIZER_DISABLED));
+            final String mode = Integer.toString(daltonizerMode);
             mSimulateColorSpace.setValue(mode);
             final int index = mSimulateColorSpace.findIndexOfValue(mode);
             if (index < 0) {
@@ -1163,35 +1105,18 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
         }
     }
 
-    private void updateUSBAudioOptions() {
-        updateSwitchPreference(mUSBAudio, Settings.Secure.getInt(mContentResolver,
-                Settings.Secure.USB_AUDIO_AUTOMATIC_ROUTING_DISABLED, 0) != 0);
-    }
-
     private void writeUSBAudioOptions() {
         Settings.Secure.putInt(mContentResolver,
                 Settings.Secure.USB_AUDIO_AUTOMATIC_ROUTING_DISABLED,
                 mUSBAudio.isChecked() ? 1 : 0);
     }
 
-    private void updateForceResizableOptions() {
-        updateSwitchPreference(mForceResizable,
-                Settings.Global.getInt(mContentResolver,
-                Settings.Global.DEVELOPMENT_FORCE_RESIZABLE_ACTIVITIES, 0) != 0);
-    }
-
     private void writeForceResizableOptions() {
         Settings.Global.putInt(mContentResolver,
                 Settings.Global.DEVELOPMENT_FORCE_RESIZABLE_ACTIVITIES,
                 mForceResizable.isChecked() ? 1 : 0);
     }
 
-    private void updateForceRtlOptions() {
-        updateSwitchPreference(mForceRtlLayout,
-                Settings.Global.getInt(mContentResolver,
-                        Settings.Global.DEVELOPMENT_FORCE_RTL, 0) != 0);
-    }
-
     private void writeForceRtlOptions() {
         boolean value = mForceRtlLayout.isChecked();
         Settings.Global.putInt(mContentResolver,
@@ -1201,31 +1126,16 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
                 getActivity().getResources().getConfiguration().getLocales().get(0));
     }
 
-    private void updateWifiDisplayCertificationOptions() {
-        updateSwitchPreference(mWifiDisplayCertification, Settings.Global.getInt(
-                mContentResolver, Settings.Global.WIFI_DISPLAY_CERTIFICATION_ON, 0) != 0);
-    }
-
     private void writeWifiDisplayCertificationOptions() {
         Settings.Global.putInt(mContentResolver,
                 Settings.Global.WIFI_DISPLAY_CERTIFICATION_ON,
                 mWifiDisplayCertification.isChecked() ? 1 : 0);
     }
 
-    private void updateWifiVerboseLoggingOptions() {
-        boolean enabled = mWifiManager.getVerboseLoggingLevel() > 0;
-        updateSwitchPreference(mWifiVerboseLogging, enabled);
-    }
-
     private void writeWifiVerboseLoggingOptions() {
         mWifiManager.enableVerboseLogging(mWifiVerboseLogging.isChecked() ? 1 : 0);
     }
 
-    private void updateMobileDataAlwaysOnOptions() {
-        updateSwitchPreference(mMobileDataAlwaysOn, Settings.Global.getInt(mContentResolver,
-                Settings.Global.MOBILE_DATA_ALWAYS_ON, 0) != 0);
-    }
-
     private void writeMobileDataAlwaysOnOptions() {
         Settings.Global.putInt(mContentResolver, Settings.Global.MOBILE_DATA_ALWAYS_ON,
                 mMobileDataAlwaysOn.isChecked() ? 1 : 0);
@@ -1266,117 +1176,88 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
         }
     }
 
-    private void updateImmediatelyDestroyActivitiesOptions() {
-        updateSwitchPreference(mImmediatelyDestroyActivities, Settings.Global.getInt(
-                mContentResolver, Settings.Global.ALWAYS_FINISH_ACTIVITIES, 0) != 0);
-    }
-
     private void updateAnimationScaleValue(int which, ListPreference pref) {
         try {
-            float scale = mWindowManager.getAnimationScale(which);
-            if (scale != 1) {
-                mHaveDebugSettings = true;
-            }
-            CharSequence[] values = pref.getEntryValues();
-            for (int i=0; i<values.length; i++) {
-                float val = Float.parseFloat(values[i].toString());
-                if (scale <= val) {
-                    pref.setValueIndex(i);
-                    pref.setSummary(pref.getEntries()[i]);
-                    return;
-                }
-            }
-            pref.setValueIndex(values.length-1);
-            pref.setSummary(pref.getEntries()[0]);
+            bindAnimationScaleValue(pref, mWindowManager.getAnimationScale(which));
         } catch (RemoteException e) {
             // ignore
         }
     }
 
-    private void updateAnimationScaleOptions() {
-        updateAnimationScaleValue(0, mWindowAnimationScale);
-        updateAnimationScaleValue(1, mTransitionAnimationScale);
-        updateAnimationScaleValue(2, mAnimatorDurationScale);
+    private void bindAnimationScaleValue(ListPreference pref, float scale) {
+        if (scale != 1) {
+            mHaveDebugSettings = true;
+        }
+        CharSequence[] values = pref.getEntryValues();
+        for (int i=0; i<values.length; i++) {
+            float val = Float.parseFloat(values[i].toString());
+            if (scale <= val) {
+                pref.setValueIndex(i);
+                pref.setSummary(pref.getEntries()[i]);
+                return;
+            }
+        }
+        pref.setValueIndex(values.length-1);
+        pref.setSummary(pref.getEntries()[0]);
     }
 
     private void writeAnimationScaleOption(int which, ListPreference pref, Object newValue) {
-        try {
-            float scale = newValue != null ? Float.parseFloat(newValue.toString()) : 1;
-            mWindowManager.setAnimationScale(which, scale);
+        float scale = newValue != null ? Float.parseFloat(newValue.toString()) : 1;
+        if (commitWrites(beginWrites().setAnimationScale(which, scale))) {
             updateAnimationScaleValue(which, pref);
-        } catch (RemoteException e) {
-            // ignore
         }
     }
 
     private void updateOverlayDisplayDevicesOptions() {
-        String value = Settings.Global.getString(mContentResolver,
-                Settings.Global.OVERLAY_DISPLAY_DEVICES);
-        if (value == null) {
-            value = "";
-        }
-
-        CharSequence[] values = mOverlayDisplayDevices.getEntryValues();
-        for (int i = 0; i < values.length; i++) {
-            if (value.contentEquals(values[i])) {
-                mOverlayDisplayDevices.setValueIndex(i);
-                mOverlayDisplayDevices.setSummary(mOverlayDisplayDevices.getEntries()[i]);
-                return;
-            }
-        }
-        mOverlayDisplayDevices.setValueIndex(0);
-        mOverlayDisplayDevices.setSummary(mOverlayDisplayDevices.getEntries()[0]);
+        bindListPreference(mOverlayDisplayDevices, Settings.Global.getString(mContentResolver,
+                Settings.Global.OVERLAY_DISPLAY_DEVICES));
     }
 
     private void writeOverlayDisplayDevicesOptions(Object newValue) {
-        Settings.Global.putString(mContentResolver, Settings.Global.OVERLAY_DISPLAY_DEVICES,
-                (String)newValue);
-        updateOverlayDisplayDevicesOptions();
+        final DevelopmentOptionsTransaction writes = beginWrites().putGlobalString(
+                Settings.Global.OVERLAY_DISPLAY_DEVICES, (String) newValue);
+        if (commitWrites(writes)) {
+            updateOverlayDisplayDevicesOptions();
+        }
     }
 
     private void updateOpenGLTracesOptions() {
-        String value = DisplayProperties.debug_opengl_trace().orElse("");
-
-        CharSequence[] values = mOpenGLTraces.getEntryValues();
-        for (int i = 0; i < values.length; i++) {
-            if (value.contentEquals(values[i])) {
-                mOpenGLTraces.setValueIndex(i);
-                mOpenGLTraces.setSummary(mOpenGLTraces.getEntries()[i]);
-                return;
-            }
-        }
-        mOpenGLTraces.setValueIndex(0);
-        mOpenGLTraces.setSummary(mOpenGLTraces.getEntries()[0]);
+        bindListPreference(mOpenGLTraces, DisplayProperties.debug_opengl_trace().orElse(""));
     }
 
     private void writeOpenGLTracesOptions(Object newValue) {
-        DisplayProperties.debug_opengl_trace(newValue == null ? "" : newValue.toString());
-        SystemPropPoker.getInstance().poke();
-        updateOpenGLTracesOptions();
+        final String trace = newValue == null ? "" : newValue.toString();
+        if (commitWrites(beginWrites().setSystemProperty(
+                () -> DisplayProperties.debug_opengl_trace(trace)))) {
+            updateOpenGLTracesOptions();
+        }
     }
 
     private void updateAppProcessLimitOptions() {
         try {
-            int limit = ActivityManager.getService().getProcessLimit();
-            CharSequence[] values = mAppProcessLimit.getEntryValues();
-            for (int i=0; i<values.length; i++) {
-                int val = Integer.parseInt(values[i].toString());
-                if (val >= limit) {
-                    if (i != 0) {
-                        mHaveDebugSettings = true;
-                    }
-                    mAppProcessLimit.setValueIndex(i);
-                    mAppProcessLimit.setSummary(mAppProcessLimit.getEntries()[i]);
-                    return;
-                }
-            }
-            mAppProcessLimit.setValueIndex(0);
-            mAppProcessLimit.setSummary(mAppProcessLimit.getEntries()[0]);
+            bindAppProcessLimitOptions(ActivityManager.getService().getProcessLimit());
         } catch (RemoteException e) {
             // ignore
         }
     }
 
+    private void bindAppProcessLimitOptions(int limit) {
+        CharSequence[] values = mAppProcessLimit.getEntryValues();
+        for (int i=0; i<values.length; i++) {
+            int val = Integer.parseInt(values[i].toString());
+            if (val >= limit) {
+                if (i != 0) {
+                    mHaveDebugSettings = true;
+                }
+                mAppProcessLimit.setValueIndex(i);
+                mAppProcessLimit.setSummary(mAppProcessLimit.getEntries()[i]);
+                return;
+            }
+        }
+        mAppProcessLimit.setValueIndex(0);
+        mAppProcessLimit.setSummary(mAppProcessLimit.getEntries()[0]);
+    }
+
     private void writeAppProcessLimitOptions(Object newValue) {
         try {
             int limit = newValue != null ? Integer.parseInt(newValue.toString()) : -1;
@@ -1392,11 +1273,6 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
                 mShowAllANRs.isChecked() ? 1 : 0);
     }
 
-    private void updateShowAllANRsOptions() {
-        updateSwitchPreference(mShowAllANRs, Settings.Secure.getInt(
-                mContentResolver, Settings.Secure.ANR_SHOW_BACKGROUND, 0) != 0);
-    }
-
     @Override
     public void onOemUnlockConfirm() {
         mEnableOemUnlock.setChecked(true);
@@ -1471,7 +1347,7 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
             }
         } else if (preference == mEnableTerminal) {
             final PackageManager pm = getActivity().getPackageManager();
-            pm.setApplicationEnabledSetting(TERMINAL_APP_PACKAGE,
+            pm.setApplicationEnabledSetting(DevelopmentOptionsLoader.TERMINAL_APP_PACKAGE,
                     mEnableTerminal.isChecked() ? PackageManager.COMPONENT_ENABLED_STATE_ENABLED
                             : PackageManager.COMPONENT_ENABLED_STATE_DEFAULT, 0);
         } else if (preference == mKeepScreenOn) {
@@ -1553,9 +1429,9 @@ public class DevelopmentFragment extends SettingsPreferenceFragment
     @Override
     public boolean onPreferenceChange(Preference preference, Object newValue) {
         if (HDCP_CHECKING_KEY.equals(preference.getKey())) {
-            SystemProperties.set(HDCP_CHECKING_PROPERTY, newValue.toString());
+            commitWrites(beginWrites().setSystemProperty(
+                    DevelopmentOptionsLoader.HDCP_CHECKING_PROPERTY, newValue.toString()));
             updateHdcpValues();
-            SystemPropPoker.getInstance().poke();
             return true;
         } else if (preference == mUsbConfiguration) {
             writeUsbConfigurationOption(newValue);
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tv.settings.system.development;
+
+import android.app.ActivityManager;
+import android.app.AppOpsManager;
+import android.app.backup.IBackupManager;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.os.ServiceManager;
+import android.os.StrictMode;
+import android.os.SystemClock;
+import android.os.SystemProperties;
+import android.os.UserManager;
+import android.provider.Settings;
+import android.sysprop.DisplayProperties;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.view.IWindowManager;
+import android.view.ThreadedRenderer;
+import android.view.accessibility.AccessibilityManager;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads everything the developer options screen shows into a {@link DevelopmentOptionsSnapshot}.
+ * Each source (a settings table, system properties, a system service) is read as its own task on
+ * the executor, so a slow binder call doesn't hold up the others, and the time each one took is
+ * recorded in the snapshot.
+ */
+class DevelopmentOptionsLoader {
+    private static final String TAG = "DevelopmentOptions";
+
+    static final String SOURCE_GLOBAL_SETTINGS = "global_settings";
+    static final String SOURCE_SYSTEM_SETTINGS = "system_settings";
+    static final String SOURCE_SECURE_SETTINGS = "secure_settings";
+    static final String SOURCE_SYSTEM_PROPERTIES = "system_properties";
+    static final String SOURCE_PACKAGES = "packages";
+    static final String SOURCE_APP_OPS = "app_ops";
+    static final String SOURCE_WINDOW_MANAGER = "window_manager";
+    static final String SOURCE_SURFACE_FLINGER = "surface_flinger";
+    static final String SOURCE_ACTIVITY_MANAGER = "activity_manager";
+    static final String SOURCE_BACKUP_MANAGER = "backup_manager";
+    static final String SOURCE_OEM_UNLOCK = "oem_unlock";
+    static final String SOURCE_WIFI = "wifi";
+
+    static final String BTSNOOP_ENABLE_PROPERTY = "persist.bluetooth.btsnoopenable";
+    static final String HDCP_CHECKING_PROPERTY = "persist.sys.hdcp_checking";
+    static final String TERMINAL_APP_PACKAGE = "com.android.terminal";
+
+    private static final String PACKAGE_MIME_TYPE = "application/vnd.android.package-archive";
+    private static final int[] MOCK_LOCATION_APP_OPS = new int[] {AppOpsManager.OP_MOCK_LOCATION};
+
+    /**
+     * Receives loaded snapshots.
+     */
+    interface Callback {
+        /**
+         * Called on the main thread once all sources have been read.
+         */
+        void onOptionsLoaded(@NonNull DevelopmentOptionsSnapshot snapshot);
+    }
+
+    /**
+     * Reads the values of a single source.
+     */
+    private interface Source {
+        void read(DevelopmentOptionsSnapshot.Builder builder) throws RemoteException;
+    }
+
+    private final Context mContext;
+    private final ContentResolver mContentResolver;
+    private final IWindowManager mWindowManager;
+    private final IBackupManager mBackupManager;
+    private final UserManager mUserManager;
+    private final WifiManager mWifiManager;
+    private final Executor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    DevelopmentOptionsLoader(Context context, IWindowManager windowManager,
+            IBackupManager backupManager, UserManager userManager, WifiManager wifiManager,
+            Executor executor) {
+        mContext = context.getApplicationContext();
+        mContentResolver = mContext.getContentResolver();
+        mWindowManager = windowManager;
+        mBackupManager = backupManager;
+        mUserManager = userManager;
+        mWifiManager = wifiManager;
+        mExecutor = executor;
+    }
+
+    /**
+     * Reads all sources in parallel. A source that fails is logged and left at its defaults.
+     * @param readTerminal Whether the terminal app is installed and its state should be read
+     * @param readOemUnlock Whether the device supports OEM unlock and its state should be read
+     * @param callback Callback for the snapshot
+     */
+    void load(boolean readTerminal, boolean readOemUnlock, @NonNull Callback callback) {
+        final ArrayMap<String, Source> sources = new ArrayMap<>();
+        sources.put(SOURCE_GLOBAL_SETTINGS, this::readGlobalSettings);
+        sources.put(SOURCE_SYSTEM_SETTINGS, this::readSystemSettings);
+        sources.put(SOURCE_SECURE_SETTINGS, this::readSecureSettings);
+        sources.put(SOURCE_SYSTEM_PROPERTIES, DevelopmentOptionsLoader::readSystemProperties);
+        sources.put(SOURCE_PACKAGES, builder -> readPackages(builder, readTerminal));
+        sources.put(SOURCE_APP_OPS, this::readAppOps);
+        sources.put(SOURCE_WINDOW_MANAGER, this::readWindowManager);
+        sources.put(SOURCE_SURFACE_FLINGER,
+                builder -> builder.flingerOptions = readFlingerOptions());
+        sources.put(SOURCE_ACTIVITY_MANAGER,
+                builder -> builder.processLimit = ActivityManager.getService().getProcessLimit());
+        sources.put(SOURCE_BACKUP_MANAGER,
+                builder -> builder.hasBackupPassword = mBackupManager.hasBackupPassword());
+        if (readOemUnlock) {
+            sources.put(SOURCE_OEM_UNLOCK, this::readOemUnlock);
+        }
+        sources.put(SOURCE_WIFI,
+                builder -> builder.wifiVerboseLogging = mWifiManager.getVerboseLoggingLevel() > 0);
+
+        final DevelopmentOptionsSnapshot.Builder builder = new DevelopmentOptionsSnapshot.Builder();
+        final AtomicInteger remaining = new AtomicInteger(sources.size());
+        final long startNanos = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < sources.size(); i++) {
+            final String name = sources.keyAt(i);
+            final Source source = sources.valueAt(i);
+            mExecutor.execute(() -> {
+                final long sourceStartNanos = SystemClock.elapsedRealtimeNanos();
+                try {
+                    source.read(builder);
+                } catch (RemoteException | RuntimeException e) {
+                    Log.w(TAG, "Failed to read " + name, e);
+                } finally {
+                    final long now = SystemClock.elapsedRealtimeNanos();
+                    builder.setLatency(name, now - sourceStartNanos);
+                    if (remaining.decrementAndGet() == 0) {
+                        final DevelopmentOptionsSnapshot snapshot =
+                                builder.build(now - startNanos);
+                        mMainHandler.post(() -> callback.onOptionsLoaded(snapshot));
+                    }
+                }
+            });
+        }
+    }
+
+    private void readGlobalSettings(DevelopmentOptionsSnapshot.Builder builder) {
+        builder.adbEnabled = getGlobalBoolean(Settings.Global.ADB_ENABLED, false);
+        builder.stayOnWhilePluggedIn =
+                getGlobalBoolean(Settings.Global.STAY_ON_WHILE_PLUGGED_IN, false);
+        builder.debugViewAttributes =
+                getGlobalBoolean(Settings.Global.DEBUG_VIEW_ATTRIBUTES, false);
+        builder.forceAllowOnExternal =
+                getGlobalBoolean(Settings.Global.FORCE_ALLOW_ON_EXTERNAL, false);
+        builder.waitForDebugger = getGlobalBoolean(Settings.Global.WAIT_FOR_DEBUGGER, false);
+        builder.verifyAppsOverUsb =
+                getGlobalBoolean(Settings.Global.PACKAGE_VERIFIER_INCLUDE_ADB, true);
+        builder.alwaysFinishActivities =
+                getGlobalBoolean(Settings.Global.ALWAYS_FINISH_ACTIVITIES, false);
+        builder.forceRtl = getGlobalBoolean(Settings.Global.DEVELOPMENT_FORCE_RTL, false);
+        builder.forceResizable =
+                getGlobalBoolean(Settings.Global.DEVELOPMENT_FORCE_RESIZABLE_ACTIVITIES, false);
+        builder.wifiDisplayCertification =
+                getGlobalBoolean(Settings.Global.WIFI_DISPLAY_CERTIFICATION_ON, false);
+        builder.mobileDataAlwaysOn = getGlobalBoolean(Settings.Global.MOBILE_DATA_ALWAYS_ON, false);
+        builder.overlayDisplayDevices = Settings.Global.getString(mContentResolver,
+                Settings.Global.OVERLAY_DISPLAY_DEVICES);
+    }
+
+    private void readSystemSettings(DevelopmentOptionsSnapshot.Builder builder) {
+        builder.pointerLocation =
+                Settings.System.getInt(mContentResolver, Settings.System.POINTER_LOCATION, 0) != 0;
+        builder.showTouches =
+                Settings.System.getInt(mContentResolver, Settings.System.SHOW_TOUCHES, 0) != 0;
+    }
+
+    private void readSecureSettings(DevelopmentOptionsSnapshot.Builder builder) {
+        builder.daltonizerEnabled = Settings.Secure.getInt(mContentResolver,
+                Settings.Secure.ACCESSIBILITY_DISPLAY_DALTONIZER_ENABLED, 0) != 0;
+        builder.daltonizerMode = Settings.Secure.getInt(mContentResolver,
+                Settings.Secure.ACCESSIBILITY_DISPLAY_DALTONIZER,
+                AccessibilityManager.DALTONIZER_DISABLED);
+        builder.usbAudioRoutingDisabled = Settings.Secure.getInt(mContentResolver,
+                Settings.Secure.USB_AUDIO_AUTOMATIC_ROUTING_DISABLED, 0) != 0;
+        builder.showAllAnrs = Settings.Secure.getInt(mContentResolver,
+                Settings.Secure.ANR_SHOW_BACKGROUND, 0) != 0;
+    }
+
+    private static void readSystemProperties(DevelopmentOptionsSnapshot.Builder builder) {
+        builder.btHciSnoopLog = SystemProperties.getBoolean(BTSNOOP_ENABLE_PROPERTY, false);
+        builder.hdcpChecking = SystemProperties.get(HDCP_CHECKING_PROPERTY);
+        builder.strictModeVisualIndex = readStrictModeVisualIndex();
+        builder.forceMsaa = DisplayProperties.debug_force_msaa().orElse(false);
+        builder.trackFrameTime = SystemProperties.get(ThreadedRenderer.PROFILE_PROPERTY);
+        builder.showNonRectClip =
+                SystemProperties.get(ThreadedRenderer.DEBUG_SHOW_NON_RECTANGULAR_CLIP_PROPERTY);
+        builder.showHwScreenUpdates =
+                SystemProperties.getBoolean(ThreadedRenderer.DEBUG_DIRTY_REGIONS_PROPERTY, false);
+        builder.showHwLayersUpdates = SystemProperties.getBoolean(
+                ThreadedRenderer.DEBUG_SHOW_LAYERS_UPDATES_PROPERTY, false);
+        builder.debugHwOverdraw = SystemProperties.get(ThreadedRenderer.DEBUG_OVERDRAW_PROPERTY);
+        builder.debugLayout = DisplayProperties.debug_layout().orElse(false);
+        builder.openGlTraces = DisplayProperties.debug_opengl_trace().orElse("");
+        builder.debuggable = "1".equals(SystemProperties.get("ro.debuggable"));
+    }
+
+    private void readPackages(DevelopmentOptionsSnapshot.Builder builder, boolean readTerminal) {
+        final PackageManager pm = mContext.getPackageManager();
+        if (readTerminal) {
+            builder.terminalEnabled = pm.getApplicationEnabledSetting(TERMINAL_APP_PACKAGE)
+                    == PackageManager.COMPONENT_ENABLED_STATE_ENABLED;
+        }
+        builder.debugApp = Settings.Global.getString(mContentResolver, Settings.Global.DEBUG_APP);
+        if (!TextUtils.isEmpty(builder.debugApp)) {
+            builder.debugAppLabel = readAppLabel(pm, builder.debugApp);
+        }
+        builder.verifierSettingEnabled = readVerifierSettingEnabled(mContext);
+    }
+
+    private void readAppOps(DevelopmentOptionsSnapshot.Builder builder) {
+        builder.mockLocationApp = readMockLocationApp(mContext);
+        if (!TextUtils.isEmpty(builder.mockLocationApp)) {
+            builder.mockLocationAppLabel =
+                    readAppLabel(mContext.getPackageManager(), builder.mockLocationApp);
+        }
+    }
+
+    private void readWindowManager(DevelopmentOptionsSnapshot.Builder builder)
+            throws RemoteException {
+        final float[] scales = new float[3];
+        for (int i = 0; i < scales.length; i++) {
+            scales[i] = mWindowManager.getAnimationScale(i);
+        }
+        builder.animationScales = scales;
+    }
+
+    private void readOemUnlock(DevelopmentOptionsSnapshot.Builder builder) {
+        builder.oemUnlockEnabled = DevelopmentFragment.isOemUnlockEnabled(mContext);
+        builder.oemUnlockAllowed =
+                !mUserManager.hasUserRestriction(UserManager.DISALLOW_OEM_UNLOCK);
+    }
+
+    private boolean getGlobalBoolean(String name, boolean def) {
+        return Settings.Global.getInt(mContentResolver, name, def ? 1 : 0) != 0;
+    }
+
+    /**
+     * @return Label of the app, or the package name if it has none or isn't installed
+     */
+    static String readAppLabel(PackageManager pm, String packageName) {
+        try {
+            final ApplicationInfo ai = pm.getApplicationInfo(packageName,
+                    PackageManager.GET_DISABLED_COMPONENTS);
+            final CharSequence label = pm.getApplicationLabel(ai);
+            return label != null ? label.toString() : packageName;
+        } catch (PackageManager.NameNotFoundException e) {
+            return packageName;
+        }
+    }
+
+    /**
+     * @return Package that is allowed to mock the location, or null if there is none
+     */
+    static String readMockLocationApp(Context context) {
+        final AppOpsManager appOpsManager = context.getSystemService(AppOpsManager.class);
+        final List<AppOpsManager.PackageOps> packageOps =
+                appOpsManager.getPackagesForOps(MOCK_LOCATION_APP_OPS);
+        if (packageOps != null) {
+            for (AppOpsManager.PackageOps packageOp : packageOps) {
+                if (packageOp.getOps().get(0).getMode() == AppOpsManager.MODE_ALLOWED) {
+                    return packageOp.getPackageName();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Whether apps installed over ADB can be verified at all
+     */
+    static boolean readVerifierSettingEnabled(Context context) {
+        final ContentResolver cr = context.getContentResolver();
+        if (Settings.Global.getInt(cr, Settings.Global.ADB_ENABLED, 0) == 0) {
+            return false;
+        }
+        if (Settings.Global.getInt(cr, Settings.Global.PACKAGE_VERIFIER_ENABLE, 1) == 0) {
+            return false;
+        }
+        final Intent verification = new Intent(Intent.ACTION_PACKAGE_NEEDS_VERIFICATION);
+        verification.setType(PACKAGE_MIME_TYPE);
+        verification.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        final List<ResolveInfo> receivers =
+                context.getPackageManager().queryBroadcastReceivers(verification, 0);
+        return receivers.size() != 0;
+    }
+
+    /**
+     * Returns the current state of the system property that controls strictmode flashes. One of:
+     *    0: not explicitly set one way or another
+     *    1: on
+     *    2: off
+     */
+    static int readStrictModeVisualIndex() {
+        if (TextUtils.isEmpty(SystemProperties.get(StrictMode.VISUAL_PROPERTY))) {
+            return 0;
+        }
+        boolean enabled = SystemProperties.getBoolean(StrictMode.VISUAL_PROPERTY, false);
+        return enabled ? 1 : 2;
+    }
+
+    /**
+     * Magic communication with surface flinger.
+     * @return Whether surface updates are shown and whether HW overlays are disabled, or null if
+     * surface flinger isn't available
+     */
+    static boolean[] readFlingerOptions() throws RemoteException {
+        final IBinder flinger = ServiceManager.getService("SurfaceFlinger");
+        if (flinger == null) {
+            return null;
+        }
+        final Parcel data = Parcel.obtain();
+        final Parcel reply = Parcel.obtain();
+        try {
+            data.writeInterfaceToken("android.ui.ISurfaceComposer");
+            flinger.transact(1010, data, reply, 0);
+            @SuppressWarnings("unused")
+            int showCpu = reply.readInt();
+            @SuppressWarnings("unused")
+            int enableGL = reply.readInt();
+            int showUpdates = reply.readInt();
+            @SuppressWarnings("unused")
+            int showBackground = reply.readInt();
+            int disableOverlays = reply.readInt();
+            return new boolean[] {showUpdates != 0, disableOverlays != 0};
+        } finally {
+            reply.recycle();
+            data.recycle();
+        }
+    }
+}
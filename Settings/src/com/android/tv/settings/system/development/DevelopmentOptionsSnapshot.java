@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tv.settings.system.development;
+
+import android.util.ArrayMap;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable copy of the values shown on the developer options screen, built by
+ * {@link DevelopmentOptionsLoader}. Values of a source that couldn't be read are left at their
+ * defaults, or null where the screen has to tell the difference.
+ */
+class DevelopmentOptionsSnapshot {
+
+    // Settings.Global
+    final boolean adbEnabled;
+    final boolean stayOnWhilePluggedIn;
+    final boolean debugViewAttributes;
+    final boolean forceAllowOnExternal;
+    final boolean waitForDebugger;
+    final boolean verifyAppsOverUsb;
+    final boolean alwaysFinishActivities;
+    final boolean forceRtl;
+    final boolean forceResizable;
+    final boolean wifiDisplayCertification;
+    final boolean mobileDataAlwaysOn;
+    final String overlayDisplayDevices;
+
+    // Settings.System
+    final boolean pointerLocation;
+    final boolean showTouches;
+
+    // Settings.Secure
+    final boolean daltonizerEnabled;
+    final int daltonizerMode;
+    final boolean usbAudioRoutingDisabled;
+    final boolean showAllAnrs;
+
+    // System properties
+    final boolean btHciSnoopLog;
+    final String hdcpChecking;
+    final int strictModeVisualIndex;
+    final boolean forceMsaa;
+    final String trackFrameTime;
+    final String showNonRectClip;
+    final boolean showHwScreenUpdates;
+    final boolean showHwLayersUpdates;
+    final String debugHwOverdraw;
+    final boolean debugLayout;
+    final String openGlTraces;
+    final boolean debuggable;
+
+    // Packages and app ops
+    final boolean terminalEnabled;
+    final String debugApp;
+    final String debugAppLabel;
+    final boolean verifierSettingEnabled;
+    final String mockLocationApp;
+    final String mockLocationAppLabel;
+
+    // System services
+    /** Window, transition and animator duration scales, or null if unavailable */
+    final float[] animationScales;
+    /** Show surface updates and disable HW overlays, or null if unavailable */
+    final boolean[] flingerOptions;
+    final Integer processLimit;
+    final Boolean hasBackupPassword;
+    final boolean oemUnlockEnabled;
+    final boolean oemUnlockAllowed;
+    final boolean wifiVerboseLogging;
+
+    /** Read time of each source in nanoseconds, keyed by source name */
+    private final Map<String, Long> mLatencies;
+    private final long mElapsedNanos;
+
+    private DevelopmentOptionsSnapshot(Builder builder) {
+        adbEnabled = builder.adbEnabled;
+        stayOnWhilePluggedIn = builder.stayOnWhilePluggedIn;
+        debugViewAttributes = builder.debugViewAttributes;
+        forceAllowOnExternal = builder.forceAllowOnExternal;
+        waitForDebugger = builder.waitForDebugger;
+        verifyAppsOverUsb = builder.verifyAppsOverUsb;
+        alwaysFinishActivities = builder.alwaysFinishActivities;
+        forceRtl = builder.forceRtl;
+        forceResizable = builder.forceResizable;
+        wifiDisplayCertification = builder.wifiDisplayCertification;
+        mobileDataAlwaysOn = builder.mobileDataAlwaysOn;
+        overlayDisplayDevices = builder.overlayDisplayDevices;
+        pointerLocation = builder.pointerLocation;
+        showTouches = builder.showTouches;
+        daltonizerEnabled = builder.daltonizerEnabled;
+        daltonizerMode = builder.daltonizerMode;
+        usbAudioRoutingDisabled = builder.usbAudioRoutingDisabled;
+        showAllAnrs = builder.showAllAnrs;
+        btHciSnoopLog = builder.btHciSnoopLog;
+        hdcpChecking = builder.hdcpChecking;
+        strictModeVisualIndex = builder.strictModeVisualIndex;
+        forceMsaa = builder.forceMsaa;
+        trackFrameTime = builder.trackFrameTime;
+        showNonRectClip = builder.showNonRectClip;
+        showHwScreenUpdates = builder.showHwScreenUpdates;
+        showHwLayersUpdates = builder.showHwLayersUpdates;
+        debugHwOverdraw = builder.debugHwOverdraw;
+        debugLayout = builder.debugLayout;
+        openGlTraces = builder.openGlTraces;
+        debuggable = builder.debuggable;
+        terminalEnabled = builder.terminalEnabled;
+        debugApp = builder.debugApp;
+        debugAppLabel = builder.debugAppLabel;
+        verifierSettingEnabled = builder.verifierSettingEnabled;
+        mockLocationApp = builder.mockLocationApp;
+        mockLocationAppLabel = builder.mockLocationAppLabel;
+        animationScales = builder.animationScales;
+        flingerOptions = builder.flingerOptions;
+        processLimit = builder.processLimit;
+        hasBackupPassword = builder.hasBackupPassword;
+        oemUnlockEnabled = builder.oemUnlockEnabled;
+        oemUnlockAllowed = builder.oemUnlockAllowed;
+        wifiVerboseLogging = builder.wifiVerboseLogging;
+        mLatencies = Collections.unmodifiableMap(new ArrayMap<>(builder.mLatencies));
+        mElapsedNanos = builder.mElapsedNanos;
+    }
+
+    /**
+     * @return Read time of each source in nanoseconds, keyed by source name
+     */
+    Map<String, Long> getLatencies() {
+        return mLatencies;
+    }
+
+    /**
+     * @return Time from starting the load until the last source was read, in nanoseconds
+     */
+    long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /**
+     * Mutable counterpart of the snapshot. Each source only writes its own fields, so sources can
+     * fill in a builder concurrently as long as {@link #build(long)} happens after all of them.
+     */
+    static class Builder {
+        boolean adbEnabled;
+        boolean stayOnWhilePluggedIn;
+        boolean debugViewAttributes;
+        boolean forceAllowOnExternal;
+        boolean waitForDebugger;
+        boolean verifyAppsOverUsb;
+        boolean alwaysFinishActivities;
+        boolean forceRtl;
+        boolean forceResizable;
+        boolean wifiDisplayCertification;
+        boolean mobileDataAlwaysOn;
+        String overlayDisplayDevices;
+        boolean pointerLocation;
+        boolean showTouches;
+        boolean daltonizerEnabled;
+        int daltonizerMode;
+        boolean usbAudioRoutingDisabled;
+        boolean showAllAnrs;
+        boolean btHciSnoopLog;
+        String hdcpChecking = "";
+        int strictModeVisualIndex;
+        boolean forceMsaa;
+        String trackFrameTime;
+        String showNonRectClip;
+        boolean showHwScreenUpdates;
+        boolean showHwLayersUpdates;
+        String debugHwOverdraw;
+        boolean debugLayout;
+        String openGlTraces;
+        boolean debuggable;
+        boolean terminalEnabled;
+        String debugApp;
+        String debugAppLabel;
+        boolean verifierSettingEnabled;
+        String mockLocationApp;
+        String mockLocationAppLabel;
+        float[] animationScales;
+        boolean[] flingerOptions;
+        Integer processLimit;
+        Boolean hasBackupPassword;
+        boolean oemUnlockEnabled;
+        boolean oemUnlockAllowed;
+        boolean wifiVerboseLogging;
+
+        private final Map<String, Long> mLatencies = new ArrayMap<>();
+        private long mElapsedNanos;
+
+        synchronized void setLatency(String source, long nanos) {
+            mLatencies.put(source, nanos);
+        }
+
+        synchronized DevelopmentOptionsSnapshot build(long elapsedNanos) {
+            mElapsedNanos = elapsedNanos;
+            return new DevelopmentOptionsSnapshot(this);
+        }
+    }
+}
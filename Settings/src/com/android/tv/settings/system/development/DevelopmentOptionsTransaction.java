@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tv.settings.system.development;
+
+import android.content.ContentResolver;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.os.ServiceManager;
+import android.os.SystemProperties;
+import android.provider.Settings;
+import android.util.Log;
+import android.view.IWindowManager;
+
+import com.android.settingslib.development.SystemPropPoker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batch of developer option writes. Writes are queued and only applied by {@link #commit()}, in
+ * the order they were queued. System property changes only take effect in running processes once
+ * they are poked, which broadcasts to every process, so a commit pokes once for the whole batch
+ * instead of once per property.
+ */
+class DevelopmentOptionsTransaction {
+    private static final String TAG = "DevelopmentOptions";
+
+    /** SurfaceFlinger transaction code to show surface updates */
+    static final int FLINGER_SHOW_UPDATES = 1002;
+    /** SurfaceFlinger transaction code to disable HW overlays */
+    static final int FLINGER_DISABLE_OVERLAYS = 1008;
+
+    /**
+     * A single queued write.
+     */
+    private interface Write {
+        void apply() throws RemoteException;
+    }
+
+    private final ContentResolver mContentResolver;
+    private final List<Write> mWrites = new ArrayList<>();
+    private IWindowManager mWindowManager;
+    private boolean mPropertiesChanged;
+    private boolean mCommitted;
+
+    DevelopmentOptionsTransaction(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+    }
+
+    /**
+     * Queues a system property write.
+     * @param value New value, or null to clear the property
+     */
+    DevelopmentOptionsTransaction setSystemProperty(String key, String value) {
+        return setSystemProperty(() -> SystemProperties.set(key, value));
+    }
+
+    /**
+     * Queues a system property write done through a typed sysprop API.
+     */
+    DevelopmentOptionsTransaction setSystemProperty(Runnable write) {
+        mPropertiesChanged = true;
+        mWrites.add(write::run);
+        return this;
+    }
+
+    DevelopmentOptionsTransaction putGlobalString(String name, String value) {
+        mWrites.add(() -> Settings.Global.putString(mContentResolver, name, value));
+        return this;
+    }
+
+    DevelopmentOptionsTransaction putSystemString(String name, String value) {
+        mWrites.add(() -> Settings.System.putString(mContentResolver, name, value));
+        return this;
+    }
+
+    DevelopmentOptionsTransaction putSecureString(String name, String value) {
+        mWrites.add(() -> Settings.Secure.putString(mContentResolver, name, value));
+        return this;
+    }
+
+    /**
+     * Queues a SurfaceFlinger debug option write.
+     * @param code {@link #FLINGER_SHOW_UPDATES} or {@link #FLINGER_DISABLE_OVERLAYS}
+     */
+    DevelopmentOptionsTransaction setSurfaceFlingerOption(int code, boolean enabled) {
+        mWrites.add(() -> {
+            final IBinder flinger = ServiceManager.getService("SurfaceFlinger");
+            if (flinger != null) {
+                final Parcel data = Parcel.obtain();
+                try {
+                    data.writeInterfaceToken("android.ui.ISurfaceComposer");
+                    data.writeInt(enabled ? 1 : 0);
+                    flinger.transact(code, data, null, 0);
+                } finally {
+                    data.recycle();
+                }
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Queues an animation scale write.
+     * @param which 0 for windows, 1 for transitions, 2 for animator durations
+     */
+    DevelopmentOptionsTransaction setAnimationScale(int which, float scale) {
+        mWrites.add(() -> getWindowManager().setAnimationScale(which, scale));
+        return this;
+    }
+
+    /**
+     * Applies the queued writes, then pokes running processes if any system property changed.
+     * A write that fails is logged and doesn't stop the rest. Can only be called once.
+     */
+    void commit() {
+        if (mCommitted) {
+            throw new IllegalStateException("Transaction was already committed");
+        }
+        mCommitted = true;
+        for (final Write write : mWrites) {
+            try {
+                write.apply();
+            } catch (RemoteException | RuntimeException e) {
+                Log.w(TAG, "Failed to write developer option", e);
+            }
+        }
+        if (mPropertiesChanged) {
+            SystemPropPoker.getInstance().poke();
+        }
+    }
+
+    private IWindowManager getWindowManager() {
+        if (mWindowManager == null) {
+            mWindowManager = IWindowManager.Stub.asInterface(ServiceManager.getService("window"));
+        }
+        return mWindowManager;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tv.settings.system.development;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.RemoteException;
+import android.os.SystemProperties;
+import android.provider.Settings;
+import android.util.Log;
+import android.view.IWindowManager;
+import android.view.ThreadedRenderer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Developer options profile, used to set up lab devices in one shot. A profile is a JSON object
+ * holding the system properties, settings, animation scales and SurfaceFlinger options of the
+ * developer options screen that make sense to copy between devices. Importing only touches the
+ * options listed here, whatever else the profile contains.
+ */
+class DevelopmentProfile {
+    private static final String TAG = "DevelopmentProfile";
+
+    static final int VERSION = 1;
+
+    static final String KEY_VERSION = "version";
+    static final String KEY_PROPERTIES = "properties";
+    static final String KEY_GLOBAL = "global";
+    static final String KEY_SYSTEM = "system";
+    static final String KEY_SECURE = "secure";
+    static final String KEY_ANIMATION_SCALES = "animation_scales";
+    static final String KEY_SURFACE_FLINGER = "surface_flinger";
+    static final String KEY_SHOW_UPDATES = "show_updates";
+    static final String KEY_DISABLE_OVERLAYS = "disable_overlays";
+
+    private static final List<String> PROPERTIES = Arrays.asList(
+            DevelopmentOptionsLoader.BTSNOOP_ENABLE_PROPERTY,
+            DevelopmentOptionsLoader.HDCP_CHECKING_PROPERTY,
+            ThreadedRenderer.PROFILE_PROPERTY,
+            ThreadedRenderer.DEBUG_SHOW_NON_RECTANGULAR_CLIP_PROPERTY,
+            ThreadedRenderer.DEBUG_DIRTY_REGIONS_PROPERTY,
+            ThreadedRenderer.DEBUG_SHOW_LAYERS_UPDATES_PROPERTY,
+            ThreadedRenderer.DEBUG_OVERDRAW_PROPERTY,
+            // Backing properties of DisplayProperties.debug_force_msaa, debug_layout and
+            // debug_opengl_trace
+            "debug.egl.force_msaa",
+            "debug.layout",
+            "debug.egl.trace");
+
+    private static final List<String> GLOBAL_SETTINGS = Arrays.asList(
+            Settings.Global.STAY_ON_WHILE_PLUGGED_IN,
+            Settings.Global.DEBUG_VIEW_ATTRIBUTES,
+            Settings.Global.FORCE_ALLOW_ON_EXTERNAL,
+            Settings.Global.PACKAGE_VERIFIER_INCLUDE_ADB,
+            Settings.Global.ALWAYS_FINISH_ACTIVITIES,
+            Settings.Global.DEVELOPMENT_FORCE_RTL,
+            Settings.Global.DEVELOPMENT_FORCE_RESIZABLE_ACTIVITIES,
+            Settings.Global.WIFI_DISPLAY_CERTIFICATION_ON,
+            Settings.Global.MOBILE_DATA_ALWAYS_ON,
+            Settings.Global.OVERLAY_DISPLAY_DEVICES);
+
+    private static final List<String> SYSTEM_SETTINGS = Arrays.asList(
+            Settings.System.POINTER_LOCATION,
+            Settings.System.SHOW_TOUCHES);
+
+    private static final List<String> SECURE_SETTINGS = Arrays.asList(
+            Settings.Secure.ANR_SHOW_BACKGROUND,
+            Settings.Secure.USB_AUDIO_AUTOMATIC_ROUTING_DISABLED);
+
+    private static final int ANIMATION_SCALE_COUNT = 3;
+
+    private DevelopmentProfile() {}
+
+    /**
+     * Reads the current options into a profile. Options that are unset are left out.
+     */
+    static JSONObject export(Context context, IWindowManager windowManager)
+            throws JSONException {
+        final ContentResolver cr = context.getContentResolver();
+        final JSONObject profile = new JSONObject();
+        profile.put(KEY_VERSION, VERSION);
+
+        final JSONObject properties = new JSONObject();
+        for (final String key : PROPERTIES) {
+            final String value = SystemProperties.get(key);
+            if (!value.isEmpty()) {
+                properties.put(key, value);
+            }
+        }
+        profile.put(KEY_PROPERTIES, properties);
+
+        final JSONObject global = new JSONObject();
+        for (final String name : GLOBAL_SETTINGS) {
+            global.putOpt(name, Settings.Global.getString(cr, name));
+        }
+        profile.put(KEY_GLOBAL, global);
+
+        final JSONObject system = new JSONObject();
+        for (final String name : SYSTEM_SETTINGS) {
+            system.putOpt(name, Settings.System.getString(cr, name));
+        }
+        profile.put(KEY_SYSTEM, system);
+
+        final JSONObject secure = new JSONObject();
+        for (final String name : SECURE_SETTINGS) {
+            secure.putOpt(name, Settings.Secure.getString(cr, name));
+        }
+        profile.put(KEY_SECURE, secure);
+
+        try {
+            final JSONArray scales = new JSONArray();
+            for (int i = 0; i < ANIMATION_SCALE_COUNT; i++) {
+                scales.put(windowManager.getAnimationScale(i));
+            }
+            profile.put(KEY_ANIMATION_SCALES, scales);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Failed to read animation scales", e);
+        }
+
+        try {
+            final boolean[] flingerOptions = DevelopmentOptionsLoader.readFlingerOptions();
+            if (flingerOptions != null) {
+                final JSONObject flinger = new JSONObject();
+                flinger.put(KEY_SHOW_UPDATES, flingerOptions[0]);
+                flinger.put(KEY_DISABLE_OVERLAYS, flingerOptions[1]);
+                profile.put(KEY_SURFACE_FLINGER, flinger);
+            }
+        } catch (RemoteException e) {
+            Log.w(TAG, "Failed to read SurfaceFlinger options", e);
+        }
+        return profile;
+    }
+
+    /**
+     * Queues the writes to apply a profile. Nothing is queued if the profile is malformed.
+     * @throws JSONException If the profile is malformed or of a newer version
+     */
+    static void apply(JSONObject profile, DevelopmentOptionsTransaction transaction)
+            throws JSONException {
+        final int version = profile.getInt(KEY_VERSION);
+        if (version > VERSION) {
+            throw new JSONException("Unsupported profile version " + version);
+        }
+        // Parse everything before queueing anything, so that a bad profile isn't half applied
+        final JSONObject properties = profile.optJSONObject(KEY_PROPERTIES);
+        final JSONObject global = profile.optJSONObject(KEY_GLOBAL);
+        final JSONObject system = profile.optJSONObject(KEY_SYSTEM);
+        final JSONObject secure = profile.optJSONObject(KEY_SECURE);
+        final JSONArray scales = profile.optJSONArray(KEY_ANIMATION_SCALES);
+        final JSONObject flinger = profile.optJSONObject(KEY_SURFACE_FLINGER);
+        final float[] animationScales = new float[scales != null ? scales.length() : 0];
+        if (animationScales.length > ANIMATION_SCALE_COUNT) {
+            throw new JSONException("Too many animation scales");
+        }
+        for (int i = 0; i < animationScales.length; i++) {
+            animationScales[i] = (float) scales.getDouble(i);
+        }
+        final Boolean showUpdates = flinger != null && flinger.has(KEY_SHOW_UPDATES)
+                ? flinger.getBoolean(KEY_SHOW_UPDATES) : null;
+        final Boolean disableOverlays = flinger != null && flinger.has(KEY_DISABLE_OVERLAYS)
+                ? flinger.getBoolean(KEY_DISABLE_OVERLAYS) : null;
+
+        if (properties != null) {
+            for (final Iterator<String> it = properties.keys(); it.hasNext(); ) {
+                final String key = it.next();
+                if (checkKnown(PROPERTIES, key)) {
+                    transaction.setSystemProperty(key, properties.getString(key));
+                }
+            }
+        }
+        if (global != null) {
+            for (final Iterator<String> it = global.keys(); it.hasNext(); ) {
+                final String name = it.next();
+                if (checkKnown(GLOBAL_SETTINGS, name)) {
+                    transaction.putGlobalString(name, global.getString(name));
+                }
+            }
+        }
+        if (system != null) {
+            for (final Iterator<String> it = system.keys(); it.hasNext(); ) {
+                final String name = it.next();
+                if (checkKnown(SYSTEM_SETTINGS, name)) {
+                    transaction.putSystemString(name, system.getString(name));
+                }
+            }
+        }
+        if (secure != null) {
+            for (final Iterator<String> it = secure.keys(); it.hasNext(); ) {
+                final String name = it.next();
+                if (checkKnown(SECURE_SETTINGS, name)) {
+                    transaction.putSecureString(name, secure.getString(name));
+                }
+            }
+        }
+        for (int i = 0; i < animationScales.length; i++) {
+            transaction.setAnimationScale(i, animationScales[i]);
+        }
+        if (showUpdates != null) {
+            transaction.setSurfaceFlingerOption(
+                    DevelopmentOptionsTransaction.FLINGER_SHOW_UPDATES, showUpdates);
+        }
+        if (disableOverlays != null) {
+            transaction.setSurfaceFlingerOption(
+                    DevelopmentOptionsTransaction.FLINGER_DISABLE_OVERLAYS, disableOverlays);
+        }
+    }
+
+    private static boolean checkKnown(List<String> known, String key) {
+        if (known.contains(key)) {
+            return true;
+        }
+        Log.w(TAG, "Ignoring unknown option " + key);
+        return false;
+    }
+}
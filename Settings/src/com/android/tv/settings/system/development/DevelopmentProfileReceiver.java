@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tv.settings.system.development;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.AsyncTask;
+import android.os.ServiceManager;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.IWindowManager;
+
+import com.android.settingslib.development.DevelopmentSettingsEnabler;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Exports and imports developer options profiles, to set up lab devices from the shell:
+ * <pre>
+ * adb shell am broadcast -a com.android.tv.settings.action.EXPORT_DEVELOPMENT_PROFILE
+ * adb shell am broadcast -a com.android.tv.settings.action.IMPORT_DEVELOPMENT_PROFILE \
+ *         --es profile '{"version":1,...}'
+ * </pre>
+ * The exported profile is returned as the result data. Developer options must be enabled.
+ */
+public class DevelopmentProfileReceiver extends BroadcastReceiver {
+    private static final String TAG = "DevelopmentProfile";
+
+    static final String ACTION_EXPORT =
+            "com.android.tv.settings.action.EXPORT_DEVELOPMENT_PROFILE";
+    static final String ACTION_IMPORT =
+            "com.android.tv.settings.action.IMPORT_DEVELOPMENT_PROFILE";
+    static final String EXTRA_PROFILE = "profile";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!DevelopmentSettingsEnabler.isDevelopmentSettingsEnabled(context)) {
+            Log.w(TAG, "Ignoring profile request: developer options are disabled");
+            setResult(Activity.RESULT_CANCELED, "Developer options are disabled", null);
+            return;
+        }
+        final String action = intent.getAction();
+        if (!TextUtils.equals(action, ACTION_EXPORT) && !TextUtils.equals(action, ACTION_IMPORT)) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        final String profile = intent.getStringExtra(EXTRA_PROFILE);
+        final PendingResult result = goAsync();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            try {
+                if (TextUtils.equals(action, ACTION_EXPORT)) {
+                    final IWindowManager windowManager =
+                            IWindowManager.Stub.asInterface(ServiceManager.getService("window"));
+                    result.setResult(Activity.RESULT_OK,
+                            DevelopmentProfile.export(appContext, windowManager).toString(), null);
+                } else {
+                    if (profile == null) {
+                        throw new JSONException("Missing " + EXTRA_PROFILE + " extra");
+                    }
+                    final DevelopmentOptionsTransaction transaction =
+                            new DevelopmentOptionsTransaction(appContext.getContentResolver());
+                    DevelopmentProfile.apply(new JSONObject(profile), transaction);
+                    transaction.commit();
+                    result.setResult(Activity.RESULT_OK, null, null);
+                }
+            } catch (JSONException e) {
+                Log.w(TAG, "Bad profile", e);
+                result.setResult(Activity.RESULT_CANCELED, e.getMessage(), null);
+            } finally {
+                result.finish();
+            }
+        });
+    }
+}
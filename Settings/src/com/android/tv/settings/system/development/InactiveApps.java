@@ -28,6 +28,7 @@ import androidx.preference.Preference;
 import androidx.preference.PreferenceScreen;
 
 import com.android.internal.logging.nano.MetricsProto;
+import com.android.tv.settings.AppIconPreference;
 import com.android.tv.settings.R;
 import com.android.tv.settings.SettingsPreferenceFragment;
 
@@ -72,9 +73,9 @@ public class InactiveApps extends SettingsPreferenceFragment implements
         List<ResolveInfo> apps = pm.queryIntentActivities(launcherIntent, 0);
         for (ResolveInfo app : apps) {
             String packageName = app.activityInfo.applicationInfo.packageName;
-            Preference p = new Preference(themedContext);
+            AppIconPreference p = new AppIconPreference(themedContext);
             p.setTitle(app.loadLabel(pm));
-            p.setIcon(app.loadIcon(pm));
+            p.setAppIcon(app.activityInfo.applicationInfo);
             p.setKey(packageName);
             updateSummary(p);
             p.setOnPreferenceClickListener(this);
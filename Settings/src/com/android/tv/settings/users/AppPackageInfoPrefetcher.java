@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tv.settings.users;
+
+import android.content.pm.IPackageManager;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.Signature;
+import android.os.RemoteException;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves the package info and platform signature check of a batch of apps, spreading the
+ * binder calls over a bounded number of parallel workers, so that the restrictions screen never
+ * has to make them on the main thread.
+ */
+class AppPackageInfoPrefetcher {
+    private static final String TAG = "AppPackageInfoPrefetch";
+
+    private static final String PLATFORM_PACKAGE = "android";
+
+    /**
+     * Package info of an app, along with whether it's signed with the platform key.
+     */
+    static class Result {
+        final PackageInfo packageInfo;
+        final boolean platformSigned;
+
+        Result(PackageInfo packageInfo, boolean platformSigned) {
+            this.packageInfo = packageInfo;
+            this.platformSigned = platformSigned;
+        }
+    }
+
+    private final IPackageManager mIPm;
+    private final Executor mExecutor;
+    private final int mParallelism;
+
+    /**
+     * @param ipm Package manager to query
+     * @param executor Executor to run the workers on, it must be able to run
+     *                 {@code parallelism} tasks at once for them to actually run in parallel
+     * @param parallelism Maximum number of workers querying the package manager at once
+     */
+    AppPackageInfoPrefetcher(@NonNull IPackageManager ipm, @NonNull Executor executor,
+            int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        mIPm = ipm;
+        mExecutor = executor;
+        mParallelism = parallelism;
+    }
+
+    /**
+     * Fetches the package info of the given packages, blocking until all of them are resolved.
+     * @return Results keyed by package name. Packages that couldn't be resolved are left out.
+     */
+    @WorkerThread
+    @NonNull
+    Map<String, Result> prefetch(@NonNull List<String> packageNames, int userId)
+            throws InterruptedException {
+        final Signature platformSignature = getPlatformSignature();
+        final int count = packageNames.size();
+        final Result[] results = new Result[count];
+        final AtomicInteger nextIndex = new AtomicInteger();
+        final int workers = Math.min(mParallelism, count);
+        final CountDownLatch done = new CountDownLatch(workers);
+        for (int i = 0; i < workers; i++) {
+            mExecutor.execute(() -> {
+                try {
+                    // Each worker pulls the next package, so a slow query doesn't hold up a
+                    // whole slice of the batch
+                    int index;
+                    while ((index = nextIndex.getAndIncrement()) < count) {
+                        results[index] = fetch(packageNames.get(index), userId, platformSignature);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+
+        final Map<String, Result> resultMap = new ArrayMap<>(count);
+        for (int i = 0; i < count; i++) {
+            if (results[i] != null) {
+                resultMap.put(packageNames.get(i), results[i]);
+            }
+        }
+        return resultMap;
+    }
+
+    private Signature getPlatformSignature() {
+        final PackageInfo pi = getPackageInfo(PLATFORM_PACKAGE, PackageManager.GET_SIGNATURES,
+                UserHandle.myUserId());
+        if (pi == null || pi.signatures == null || pi.signatures.length == 0) {
+            Log.e(TAG, "Could not find system package signatures");
+            return null;
+        }
+        return pi.signatures[0];
+    }
+
+    private Result fetch(String packageName, int userId, Signature platformSignature) {
+        final PackageInfo pi = getPackageInfo(packageName,
+                PackageManager.MATCH_ANY_USER | PackageManager.GET_SIGNATURES, userId);
+        if (pi == null) {
+            return null;
+        }
+        final boolean platformSigned = platformSignature != null && pi.signatures != null
+                && pi.signatures.length > 0 && platformSignature.equals(pi.signatures[0]);
+        return new Result(pi, platformSigned);
+    }
+
+    private PackageInfo getPackageInfo(String packageName, int flags, int userId) {
+        try {
+            return mIPm.getPackageInfo(packageName, flags, userId);
+        } catch (RemoteException | RuntimeException e) {
+            Log.w(TAG, "Failed to get package info for " + packageName, e);
+            return null;
+        }
+    }
+}
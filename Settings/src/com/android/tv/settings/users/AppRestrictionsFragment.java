@@ -37,7 +37,8 @@ import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
 import android.os.Bundle;
-import android.os.RemoteException;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.text.TextUtils;
@@ -70,6 +71,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -93,7 +97,6 @@ public class AppRestrictionsFragment extends SettingsPreferenceFragment implemen
     private UserManager mUserManager;
     private IPackageManager mIPm;
     private UserHandle mUser;
-    private PackageInfo mSysPackageInfo;
 
     private AppRestrictionsHelper mHelper;
 
@@ -101,6 +104,14 @@ public class AppRestrictionsFragment extends SettingsPreferenceFragment implemen
 
     private static final int MAX_APP_RESTRICTIONS = 100;
 
+    /** Number of package manager queries made at once while loading the apps */
+    private static final int PREFETCH_PARALLELISM = 4;
+    /** Number of restrictions queries outstanding at once, and the minimum delay between them */
+    private static final int MAX_RESTRICTIONS_QUERIES_IN_FLIGHT = 3;
+    private static final long RESTRICTIONS_QUERY_INTERVAL_MS = 50;
+
+    private static ThreadPoolExecutor sPrefetchExecutor;
+
     private static final String DELIMITER = ";";
 
     /** Key for extra passed in from calling fragment for the userId of the user being edited */
@@ -122,6 +133,9 @@ public class AppRestrictionsFragment extends SettingsPreferenceFragment implemen
     private Map<Integer, String> mCustomRequestMap = new ArrayMap<>();
 
     private AsyncTask mAppLoadingTask;
+    private final RestrictionsQueryQueue mRestrictionsQueue = new RestrictionsQueryQueue(
+            new Handler(Looper.getMainLooper()), MAX_RESTRICTIONS_QUERIES_IN_FLIGHT,
+            RESTRICTIONS_QUERY_INTERVAL_MS);
 
     private BroadcastReceiver mUserBackgrounding = new BroadcastReceiver() {
         @Override
@@ -279,12 +293,6 @@ public class AppRestrictionsFragment extends SettingsPreferenceFragment implemen
         mIPm = AppGlobals.getPackageManager();
         mUserManager = (UserManager) getActivity().getSystemService(Context.USER_SERVICE);
         mRestrictedProfile = mUserManager.getUserInfo(mUser.getIdentifier()).isRestricted();
-        try {
-            mSysPackageInfo = mPackageManager.getPackageInfo("android",
-                    PackageManager.GET_SIGNATURES);
-        } catch (PackageManager.NameNotFoundException nnfe) {
-            Log.e(TAG, "Could not find system package signatures", nnfe);
-        }
         mAppList = getAppPreferenceGroup();
         mAppList.setOrderingAsAdded(false);
     }
@@ -358,6 +366,15 @@ public class AppRestrictionsFragment extends SettingsPreferenceFragment implemen
         }
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mAppLoadingTask != null) {
+            mAppLoadingTask.cancel(false);
+        }
+        mRestrictionsQueue.cancel();
+    }
+
     private PreferenceGroup getAppPreferenceGroup() {
         return getPreferenceScreen();
     }
@@ -371,23 +388,64 @@ public class AppRestrictionsFragment extends SettingsPreferenceFragment implemen
         }
     }
 
-    private class AppLoadingTask extends AsyncTask<Void, Void, Void> {
+    /**
+     * Everything populateApps needs from the package manager, fetched in the background.
+     */
+    private static class PrefetchedApps {
+        final Map<String, AppPackageInfoPrefetcher.Result> packageInfos;
+        final Set<String> packagesWithRestrictions;
+
+        PrefetchedApps(Map<String, AppPackageInfoPrefetcher.Result> packageInfos,
+                Set<String> packagesWithRestrictions) {
+            this.packageInfos = packageInfos;
+            this.packagesWithRestrictions = packagesWithRestrictions;
+        }
+    }
+
+    private class AppLoadingTask extends AsyncTask<Void, Void, PrefetchedApps> {
 
         @Override
-        protected Void doInBackground(Void... params) {
+        protected PrefetchedApps doInBackground(Void... params) {
             mHelper.fetchAndMergeApps();
-            return null;
+            final List<String> packageNames = new ArrayList<>();
+            for (AppRestrictionsHelper.SelectableAppInfo app : mHelper.getVisibleApps()) {
+                if (app.packageName != null) {
+                    packageNames.add(app.packageName);
+                }
+            }
+            final Set<String> packagesWithRestrictions = new HashSet<>();
+            final List<ResolveInfo> receivers = mPackageManager.queryBroadcastReceivers(
+                    new Intent(Intent.ACTION_GET_RESTRICTION_ENTRIES), 0);
+            for (ResolveInfo info : receivers) {
+                packagesWithRestrictions.add(info.activityInfo.packageName);
+            }
+            final AppPackageInfoPrefetcher prefetcher = new AppPackageInfoPrefetcher(mIPm,
+                    getPrefetchExecutor(), PREFETCH_PARALLELISM);
+            try {
+                return new PrefetchedApps(prefetcher.prefetch(packageNames, mUser.getIdentifier()),
+                        packagesWithRestrictions);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted while loading apps", e);
+                return null;
+            }
         }
 
         @Override
-        protected void onPostExecute(Void result) {
-            populateApps();
+        protected void onPostExecute(PrefetchedApps result) {
+            if (result != null) {
+                populateApps(result);
+            }
         }
     }
 
-    private boolean isPlatformSigned(PackageInfo pi) {
-        return (pi != null && pi.signatures != null &&
-                mSysPackageInfo.signatures[0].equals(pi.signatures[0]));
+    private static synchronized ThreadPoolExecutor getPrefetchExecutor() {
+        if (sPrefetchExecutor == null) {
+            sPrefetchExecutor = new ThreadPoolExecutor(PREFETCH_PARALLELISM, PREFETCH_PARALLELISM,
+                    1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> new Thread(runnable, TAG));
+            sPrefetchExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sPrefetchExecutor;
     }
 
     private boolean isAppEnabledForUser(PackageInfo pi) {
@@ -399,43 +457,36 @@ public class AppRestrictionsFragment extends SettingsPreferenceFragment implemen
                 && (privateFlags&ApplicationInfo.PRIVATE_FLAG_HIDDEN) == 0);
     }
 
-    private void populateApps() {
+    private void populateApps(PrefetchedApps prefetched) {
         final Context context = getActivity();
         if (context == null) return;
-        final PackageManager pm = mPackageManager;
-        final int userId = mUser.getIdentifier();
 
         // Check if the user was removed in the meantime.
         if (getExistingUser(mUserManager, mUser) == null) {
             return;
         }
+        // Answers to queries for the old preferences aren't wanted anymore
+        mRestrictionsQueue.cancel();
         mAppList.removeAll();
         addLocationAppRestrictionsPreference();
-        Intent restrictionsIntent = new Intent(Intent.ACTION_GET_RESTRICTION_ENTRIES);
-        final List<ResolveInfo> receivers = pm.queryBroadcastReceivers(restrictionsIntent, 0);
         for (AppRestrictionsHelper.SelectableAppInfo app : mHelper.getVisibleApps()) {
             String packageName = app.packageName;
             if (packageName == null) continue;
             final boolean isSettingsApp = packageName.equals(context.getPackageName());
             AppRestrictionsPreference p =
                     new AppRestrictionsPreference(getPreferenceManager().getContext());
-            final boolean hasSettings = resolveInfoListHasPackage(receivers, packageName);
+            final boolean hasSettings =
+                    prefetched.packagesWithRestrictions.contains(packageName);
             if (isSettingsApp) {
                 // Settings app should be available to restricted user
                 mHelper.setPackageSelected(packageName, true);
                 continue;
             }
-            PackageInfo pi = null;
-            try {
-                pi = mIPm.getPackageInfo(packageName,
-                        PackageManager.MATCH_ANY_USER
-                                | PackageManager.GET_SIGNATURES, userId);
-            } catch (RemoteException e) {
-                // Ignore
-            }
-            if (pi == null) {
+            final AppPackageInfoPrefetcher.Result info = prefetched.packageInfos.get(packageName);
+            if (info == null) {
                 continue;
             }
+            final PackageInfo pi = info.packageInfo;
             if (mRestrictedProfile && isAppUnsupportedInRestrictedProfile(pi)) {
                 continue;
             }
@@ -446,7 +497,7 @@ public class AppRestrictionsFragment extends SettingsPreferenceFragment implemen
             p.setPersistent(false);
             p.setOnPreferenceChangeListener(this);
             p.setSummary(getPackageSummary(pi, app));
-            if (pi.requiredForAllUsers || isPlatformSigned(pi)) {
+            if (pi.requiredForAllUsers || info.platformSigned) {
                 p.setChecked(true);
                 p.setImmutable(true);
                 // If the app is required and has no restrictions, skip showing it
@@ -455,7 +506,9 @@ public class AppRestrictionsFragment extends SettingsPreferenceFragment implemen
                 p.setChecked(true);
             }
             if (app.masterEntry == null && hasSettings) {
-                requestRestrictionsForApp(packageName, p);
+                // Answers stream in and expand the preference as each app replies
+                mRestrictionsQueue.enqueue(
+                        onComplete -> requestRestrictionsForApp(packageName, p, onComplete));
             }
             if (app.masterEntry != null) {
                 p.setImmutable(true);
@@ -533,15 +586,6 @@ public class AppRestrictionsFragment extends SettingsPreferenceFragment implemen
         }
     }
 
-    private boolean resolveInfoListHasPackage(List<ResolveInfo> receivers, String packageName) {
-        for (ResolveInfo info : receivers) {
-            if (info.activityInfo.packageName.equals(packageName)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     private void updateAllEntries(String prefKey, boolean checked) {
         for (int i = 0; i < mAppList.getPreferenceCount(); i++) {
             Preference pref = mAppList.getPreference(i);
@@ -659,17 +703,23 @@ public class AppRestrictionsFragment extends SettingsPreferenceFragment implemen
      * Send a broadcast to the app to query its restrictions
      * @param packageName package name of the app with restrictions
      * @param preference the preference item for the app toggle
+     * @param onComplete run once the app has answered
      */
     private void requestRestrictionsForApp(String packageName,
-            AppRestrictionsPreference preference) {
+            AppRestrictionsPreference preference, Runnable onComplete) {
+        final Activity activity = getActivity();
+        if (activity == null) {
+            onComplete.run();
+            return;
+        }
         Bundle oldEntries =
                 mUserManager.getApplicationRestrictions(packageName, mUser);
         Intent intent = new Intent(Intent.ACTION_GET_RESTRICTION_ENTRIES);
         intent.setPackage(packageName);
         intent.putExtra(Intent.EXTRA_RESTRICTIONS_BUNDLE, oldEntries);
         intent.addFlags(Intent.FLAG_INCLUDE_STOPPED_PACKAGES);
-        getActivity().sendOrderedBroadcast(intent, null,
-                new RestrictionsResultReceiver(packageName, preference),
+        activity.sendOrderedBroadcast(intent, null,
+                new RestrictionsResultReceiver(packageName, preference, onComplete),
                 null, Activity.RESULT_OK, null, null);
     }
 
@@ -678,15 +728,26 @@ public class AppRestrictionsFragment extends SettingsPreferenceFragment implemen
         private static final String CUSTOM_RESTRICTIONS_INTENT = Intent.EXTRA_RESTRICTIONS_INTENT;
         private final String mPackageName;
         private final AppRestrictionsPreference mPreference;
+        private final Runnable mOnComplete;
 
-        RestrictionsResultReceiver(String packageName, AppRestrictionsPreference preference) {
+        RestrictionsResultReceiver(String packageName, AppRestrictionsPreference preference,
+                Runnable onComplete) {
             super();
             mPackageName = packageName;
             mPreference = preference;
+            mOnComplete = onComplete;
         }
 
         @Override
         public void onReceive(Context context, Intent intent) {
+            try {
+                onRestrictionsResult();
+            } finally {
+                mOnComplete.run();
+            }
+        }
+
+        private void onRestrictionsResult() {
             Bundle results = getResultExtras(true);
             final ArrayList<RestrictionEntry> restrictions = results != null
                     ? results.getParcelableArrayList(Intent.EXTRA_RESTRICTIONS_LIST) : null;
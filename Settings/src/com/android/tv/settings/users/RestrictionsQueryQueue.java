@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tv.settings.users;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+
+/**
+ * Runs restriction queries a few at a time. Each query is an ordered broadcast that may have to
+ * start the app's process, so firing one per app at once would contend with the UI for the whole
+ * device. Instead at most {@code maxInFlight} queries are outstanding, and consecutive queries
+ * are started at least {@code minIntervalMs} apart. All calls must be made on the handler's
+ * thread.
+ */
+class RestrictionsQueryQueue {
+
+    /**
+     * A single query.
+     */
+    interface Query {
+        /**
+         * Starts the query.
+         * @param onComplete To be run on the handler's thread once the query is done, whatever
+         *                   its outcome
+         */
+        void start(@NonNull Runnable onComplete);
+    }
+
+    private final Handler mHandler;
+    private final int mMaxInFlight;
+    private final long mMinIntervalMs;
+    private final ArrayDeque<Query> mPending = new ArrayDeque<>();
+    private final Runnable mDispatchRunnable = this::dispatch;
+
+    private int mInFlight;
+    private long mNextStartTime;
+    /** Bumped on cancel, so that completions of cancelled queries are ignored */
+    private int mGeneration;
+
+    RestrictionsQueryQueue(@NonNull Handler handler, int maxInFlight, long minIntervalMs) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        mHandler = handler;
+        mMaxInFlight = maxInFlight;
+        mMinIntervalMs = minIntervalMs;
+    }
+
+    /**
+     * Queues a query, starting it right away if the limits allow it.
+     */
+    @MainThread
+    void enqueue(@NonNull Query query) {
+        mPending.add(query);
+        dispatch();
+    }
+
+    /**
+     * Drops all the queries that haven't started yet, and stops counting the ones that have.
+     */
+    @MainThread
+    void cancel() {
+        mGeneration++;
+        mPending.clear();
+        mInFlight = 0;
+        mHandler.removeCallbacks(mDispatchRunnable);
+    }
+
+    /**
+     * @return Number of queries started but not completed yet
+     */
+    int getInFlightCount() {
+        return mInFlight;
+    }
+
+    /**
+     * @return Number of queries waiting to be started
+     */
+    int getPendingCount() {
+        return mPending.size();
+    }
+
+    private void dispatch() {
+        mHandler.removeCallbacks(mDispatchRunnable);
+        while (!mPending.isEmpty() && mInFlight < mMaxInFlight) {
+            final long now = SystemClock.uptimeMillis();
+            if (now < mNextStartTime) {
+                mHandler.postAtTime(mDispatchRunnable, mNextStartTime);
+                return;
+            }
+            mNextStartTime = now + mMinIntervalMs;
+            mInFlight++;
+            mPending.poll().start(new Completion(mGeneration));
+        }
+    }
+
+    private class Completion implements Runnable {
+        private final int mQueryGeneration;
+        private boolean mCompleted;
+
+        Completion(int generation) {
+            mQueryGeneration = generation;
+        }
+
+        @Override
+        public void run() {
+            // A query reporting twice mustn't free up a second slot
+            if (mCompleted || mQueryGeneration != mGeneration) {
+                return;
+            }
+            mCompleted = true;
+            mInFlight--;
+            dispatch();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tv.settings.util;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.ShapeDrawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArrayMap;
+import android.util.IconDrawableFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.tv.settings.R;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads app icons for the settings app. Icons are decoded on a small background pool and
+ * rendered at exactly the preference icon size, then kept in an LRU cache bounded by bytes, so
+ * screens listing many apps never hold full resolution icons for all of them.
+ */
+public final class AppIconLoader {
+    private static final String TAG = "AppIconLoader";
+
+    private static final int THREAD_COUNT = 2;
+    private static final int MAX_CACHE_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Callback for asynchronously loaded icons.
+     */
+    public interface Callback {
+        /**
+         * Called on the main thread once the icon is available.
+         * @param icon Icon at the preference icon size
+         */
+        void onIconLoaded(@NonNull Drawable icon);
+    }
+
+    private static AppIconLoader sInstance;
+
+    private final Resources mResources;
+    private final IconDrawableFactory mIconDrawableFactory;
+    private final int mIconSize;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+    private final LruCache<String, Bitmap> mCache;
+    /** Callbacks waiting for icons that are being loaded, only accessed on the main thread */
+    private final Map<String, List<Callback>> mPending = new ArrayMap<>();
+
+    /**
+     * @return The process wide icon loader
+     */
+    public static synchronized AppIconLoader getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new AppIconLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private AppIconLoader(Context context) {
+        mResources = context.getResources();
+        mIconDrawableFactory = IconDrawableFactory.newInstance(context);
+        mIconSize = mResources.getDimensionPixelSize(R.dimen.lb_preference_item_icon_size);
+        mExecutor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, TAG));
+        mExecutor.allowCoreThreadTimeOut(true);
+        final int cacheBytes =
+                (int) Math.min(Runtime.getRuntime().maxMemory() / 32, MAX_CACHE_BYTES);
+        mCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * @return Size in pixels of the icons produced by this loader
+     */
+    public int getIconSize() {
+        return mIconSize;
+    }
+
+    /**
+     * @return A transparent drawable of the icon size, to reserve space for an icon being loaded
+     */
+    @NonNull
+    public Drawable createPlaceholder() {
+        final ShapeDrawable placeholder = new ShapeDrawable();
+        placeholder.setIntrinsicWidth(mIconSize);
+        placeholder.setIntrinsicHeight(mIconSize);
+        placeholder.getPaint().setColor(Color.TRANSPARENT);
+        return placeholder;
+    }
+
+    /**
+     * @return The icon of the app if it is in the cache, null otherwise
+     */
+    @Nullable
+    public Drawable getCachedIcon(@NonNull ApplicationInfo info) {
+        final Bitmap bitmap = mCache.get(getKey(info));
+        return bitmap != null ? new BitmapDrawable(mResources, bitmap) : null;
+    }
+
+    /**
+     * Loads the icon of an app in the background, unless it's already cached in which case the
+     * callback is called immediately.
+     * @param info App to load the icon of
+     * @param callback Callback to receive the icon on the main thread
+     */
+    @MainThread
+    public void loadIcon(@NonNull ApplicationInfo info, @NonNull Callback callback) {
+        final String key = getKey(info);
+        final Bitmap cached = mCache.get(key);
+        if (cached != null) {
+            callback.onIconLoaded(new BitmapDrawable(mResources, cached));
+            return;
+        }
+        List<Callback> callbacks = mPending.get(key);
+        if (callbacks != null) {
+            // Already loading
+            callbacks.add(callback);
+            return;
+        }
+        callbacks = new ArrayList<>(1);
+        callbacks.add(callback);
+        mPending.put(key, callbacks);
+        mExecutor.execute(() -> {
+            final Bitmap bitmap = renderIcon(info);
+            mMainHandler.post(() -> {
+                final List<Callback> waiting = mPending.remove(key);
+                if (bitmap == null || waiting == null) {
+                    return;
+                }
+                mCache.put(key, bitmap);
+                for (final Callback waitingCallback : waiting) {
+                    waitingCallback.onIconLoaded(new BitmapDrawable(mResources, bitmap));
+                }
+            });
+        });
+    }
+
+    private Bitmap renderIcon(ApplicationInfo info) {
+        final Drawable drawable;
+        try {
+            drawable = mIconDrawableFactory.getBadgedIcon(info);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to load icon for " + info.packageName, e);
+            return null;
+        }
+        if (drawable == null) {
+            return null;
+        }
+        final Bitmap bitmap = Bitmap.createBitmap(mIconSize, mIconSize, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, mIconSize, mIconSize);
+        drawable.draw(canvas);
+        return bitmap;
+    }
+
+    private static String getKey(ApplicationInfo info) {
+        // The source dir changes when the app is updated, which may come with a new icon
+        return info.packageName + ':' + info.uid + ':' + info.sourceDir;
+    }
+}
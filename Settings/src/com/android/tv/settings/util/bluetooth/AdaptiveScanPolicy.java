@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.util.bluetooth;
+
+/**
+ * Scan policy that backs off exponentially while the set of visible devices is stable, and goes
+ * back to the shortest delay as soon as a device shows up or goes missing. Inquiry shares the radio with Wi-Fi
+ * on combo chips, so scanning less when nothing changes keeps streaming smooth. The shortest delay
+ * is never below {@link #MIN_DELAY}, so that a room full of advertisers doesn't make discovery
+ * run more often than it used to with a fixed delay.
+ */
+public class AdaptiveScanPolicy implements ScanPolicy {
+
+    /** Shortest delay in milliseconds allowed between discoveries */
+    public static final long MIN_DELAY = 4000;
+
+    /**
+     * Number of discoveries a device can be missing from before it's considered gone. Since a
+     * missing device resets the delay, this takes about as long as it did with a fixed delay.
+     */
+    private static final int MISSED_SCANS_BEFORE_REMOVAL = 4;
+
+    private final long mMinDelay;
+    private final long mMaxDelay;
+    private long mDelay;
+
+    /**
+     * @return A policy for when the user is actively looking for devices
+     */
+    public static AdaptiveScanPolicy createAggressive() {
+        return new AdaptiveScanPolicy(MIN_DELAY, 16 * 1000);
+    }
+
+    /**
+     * @return A policy for when the scan results aren't on screen, or pairing is in progress
+     */
+    public static AdaptiveScanPolicy createPassive() {
+        return new AdaptiveScanPolicy(2 * MIN_DELAY, 30 * 1000);
+    }
+
+    /**
+     * @param minDelay Delay in milliseconds between discoveries while new devices show up, at
+     *                 least {@link #MIN_DELAY}
+     * @param maxDelay Longest delay in milliseconds to back off to
+     */
+    public AdaptiveScanPolicy(long minDelay, long maxDelay) {
+        if (minDelay < MIN_DELAY || maxDelay < minDelay) {
+            throw new IllegalArgumentException("Invalid delays " + minDelay + ", " + maxDelay);
+        }
+        mMinDelay = minDelay;
+        mMaxDelay = maxDelay;
+        mDelay = minDelay;
+    }
+
+    @Override
+    public void reset() {
+        mDelay = mMinDelay;
+    }
+
+    @Override
+    public long getNextScanDelay(boolean devicesChanged) {
+        if (devicesChanged) {
+            mDelay = mMinDelay;
+        } else {
+            mDelay = Math.min(mDelay * 2, mMaxDelay);
+        }
+        return mDelay;
+    }
+
+    @Override
+    public int getMissedScansBeforeRemoval() {
+        return MISSED_SCANS_BEFORE_REMOVAL;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveScanPolicy(min=" + mMinDelay + " max=" + mMaxDelay
+                + " delay=" + mDelay + ")";
+    }
+}
@@ -19,6 +19,12 @@ package com.android.tv.settings.util.bluetooth;
 import android.bluetooth.BluetoothClass;
 import android.bluetooth.BluetoothDevice;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -28,6 +34,12 @@ import java.util.regex.Pattern;
  * For example, does the device MAC address match the expected pattern and
  * does the device provide the types of services (audio, video, input, etc) that
  * are needed.
+ *
+ * Address patterns that only list OUI prefixes, like {@link #GOOGLE_MAC_PATTERN}, are compiled
+ * into a prefix table instead of being run through the regex engine. The verdict for each device
+ * address is kept in a hash map until {@link #clearVerdicts()} or {@link #forgetDevice(String)},
+ * which must be called when the name or class of the device changes. Devices whose class isn't
+ * known yet are evaluated again each time, since they can't match until it is.
  */
 public class BluetoothDeviceCriteria {
 
@@ -35,14 +47,55 @@ public class BluetoothDeviceCriteria {
 
     public static final String GOOGLE_MAC_PATTERN = "^(00:1A:11|F8:8F:CA).*";
 
+    private static final String MATCH_ALL_PATTERN = ".*";
+    /** Matches patterns of the form ^(AA:BB:CC|DD:EE:FF).* */
+    private static final Pattern PREFIX_LIST_PATTERN =
+            Pattern.compile("\\^?\\(((?:[0-9A-Fa-f]{2}:)*[0-9A-Fa-f]{2}:?"
+                    + "(?:\\|(?:[0-9A-Fa-f]{2}:)*[0-9A-Fa-f]{2}:?)*)\\)\\.\\*\\$?");
+
     private final Pattern mAddressPattern;
+    /** Upper case address prefixes, or null if the pattern isn't a plain prefix list */
+    private final Set<String> mAddressPrefixes;
+    private final int mAddressPrefixLength;
+    private final boolean mMatchesAllAddresses;
+    private final Map<String, Boolean> mVerdicts = new HashMap<>();
 
     public BluetoothDeviceCriteria() {
-        this(".*");
+        this(MATCH_ALL_PATTERN);
     }
 
     public BluetoothDeviceCriteria(String macAddressPattern) {
-        mAddressPattern = Pattern.compile(macAddressPattern, Pattern.CASE_INSENSITIVE);
+        mMatchesAllAddresses = MATCH_ALL_PATTERN.equals(macAddressPattern);
+        mAddressPrefixes = compilePrefixes(macAddressPattern);
+        if (mMatchesAllAddresses || mAddressPrefixes != null) {
+            mAddressPattern = null;
+            mAddressPrefixLength = mAddressPrefixes != null
+                    ? mAddressPrefixes.iterator().next().length() : 0;
+        } else {
+            mAddressPattern = Pattern.compile(macAddressPattern, Pattern.CASE_INSENSITIVE);
+            mAddressPrefixLength = 0;
+        }
+    }
+
+    /**
+     * @return The prefixes listed by the pattern, or null if the pattern is anything else or
+     * the prefixes have different lengths
+     */
+    private static Set<String> compilePrefixes(String macAddressPattern) {
+        final Matcher matcher = PREFIX_LIST_PATTERN.matcher(macAddressPattern);
+        if (!matcher.matches()) {
+            return null;
+        }
+        final Set<String> prefixes = new HashSet<>();
+        int length = -1;
+        for (String prefix : matcher.group(1).split("\\|")) {
+            if (length != -1 && prefix.length() != length) {
+                return null;
+            }
+            length = prefix.length();
+            prefixes.add(prefix.toUpperCase(Locale.US));
+        }
+        return prefixes;
     }
 
     public final boolean isMatchingDevice(BluetoothDevice device) {
@@ -50,22 +103,63 @@ public class BluetoothDeviceCriteria {
             return false;
         }
 
-        if (device.getAddress() == null || !isMatchingMacAddress(device.getAddress())) {
+        final String address = device.getAddress();
+        if (address == null) {
             return false;
         }
 
-        if (!isMatchingMajorDeviceClass(device.getBluetoothClass().getMajorDeviceClass())) {
+        Boolean verdict = mVerdicts.get(address);
+        if (verdict == null) {
+            final BluetoothClass bluetoothClass = device.getBluetoothClass();
+            if (bluetoothClass == null) {
+                // Not known yet, so don't remember the verdict
+                return false;
+            }
+            verdict = evaluate(address, bluetoothClass);
+            mVerdicts.put(address, verdict);
+        }
+        return verdict;
+    }
+
+    private boolean evaluate(String address, BluetoothClass bluetoothClass) {
+        if (!isMatchingMacAddress(address)) {
+            return false;
+        }
+
+        if (!isMatchingMajorDeviceClass(bluetoothClass.getMajorDeviceClass())) {
             return false;
         }
 
-        if (!isMatchingDeviceClass(device.getBluetoothClass().getDeviceClass())) {
+        if (!isMatchingDeviceClass(bluetoothClass.getDeviceClass())) {
             return false;
         }
 
         return true;
     }
 
+    /**
+     * Forgets the verdicts for all devices, e.g. when a new scan session starts.
+     */
+    public void clearVerdicts() {
+        mVerdicts.clear();
+    }
+
+    /**
+     * Forgets the verdict for a single device, e.g. when it's no longer visible or its name or
+     * class changed.
+     */
+    public void forgetDevice(String address) {
+        mVerdicts.remove(address);
+    }
+
     public boolean isMatchingMacAddress(String mac) {
+        if (mMatchesAllAddresses) {
+            return true;
+        }
+        if (mAddressPrefixes != null) {
+            return mac.length() >= mAddressPrefixLength && mAddressPrefixes.contains(
+                    mac.substring(0, mAddressPrefixLength).toUpperCase(Locale.US));
+        }
         return mAddressPattern.matcher(mac).matches();
     }
 
@@ -84,4 +178,31 @@ public class BluetoothDeviceCriteria {
     public boolean isMatchingDeviceClass(int majorMinorClass) {
         return true;
     }
+
+    /**
+     * @return A mask with the bit of the minor class of each of the given device classes set,
+     * for a cheap lookup in {@link #isMinorClassInMask(long, int)}
+     * @param majorMinorClasses constants from {@link BluetoothClass.Device}
+     */
+    protected static long createMinorClassMask(int... majorMinorClasses) {
+        long mask = 0;
+        for (int majorMinorClass : majorMinorClasses) {
+            mask |= 1L << getMinorClassIndex(majorMinorClass);
+        }
+        return mask;
+    }
+
+    /**
+     * @return Whether the minor class of the device class is one of those in the mask
+     * @param mask Mask built by {@link #createMinorClassMask(int...)}
+     * @param majorMinorClass constant from {@link BluetoothClass.Device}
+     */
+    protected static boolean isMinorClassInMask(long mask, int majorMinorClass) {
+        return (mask & (1L << getMinorClassIndex(majorMinorClass))) != 0;
+    }
+
+    private static int getMinorClassIndex(int majorMinorClass) {
+        // Minor device class is 6 bits wide, just above the 2 format bits
+        return (majorMinorClass & 0xFC) >> 2;
+    }
 }
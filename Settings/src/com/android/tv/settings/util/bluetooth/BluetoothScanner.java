@@ -23,9 +23,14 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
+
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 /**
@@ -37,9 +42,6 @@ public class BluetoothScanner {
     private static final boolean DEBUG = false;
 
     private static final int FOUND_ON_SCAN = -1;
-    private static final int CONSECUTIVE_MISS_THRESHOLD = 4;
-    private static final int FAILED_SETTING_NAME = CONSECUTIVE_MISS_THRESHOLD + 1;
-    private static final int SCAN_DELAY = 4000;
 
     private static Receiver sReceiver;
 
@@ -105,6 +107,35 @@ public class BluetoothScanner {
         }
     }
 
+    /**
+     * Snapshot of how much of the time the radio has spent in discovery since the current scan
+     * session started.
+     */
+    public static class ScanMetrics {
+        public final int discoveryCount;
+        public final long discoveringTime;
+        public final long elapsedTime;
+
+        ScanMetrics(int discoveryCount, long discoveringTime, long elapsedTime) {
+            this.discoveryCount = discoveryCount;
+            this.discoveringTime = discoveringTime;
+            this.elapsedTime = elapsedTime;
+        }
+
+        /**
+         * @return Fraction of the elapsed time spent discovering, between 0 and 1
+         */
+        public float getDutyCycle() {
+            return elapsedTime > 0 ? Math.min(1f, (float) discoveringTime / elapsedTime) : 0f;
+        }
+
+        @Override
+        public String toString() {
+            return "ScanMetrics(discoveries=" + discoveryCount + " discovering="
+                    + discoveringTime + "ms elapsed=" + elapsedTime + "ms)";
+        }
+    }
+
     private BluetoothScanner() {
         throw new RuntimeException("do not instantiate");
     }
@@ -144,6 +175,27 @@ public class BluetoothScanner {
         }
     }
 
+    /**
+     * Sets the policy deciding how often discovery runs. The policy stays in effect until
+     * replaced, and the default is {@link AdaptiveScanPolicy#createAggressive()}.
+     */
+    public static void setScanPolicy(Context context, ScanPolicy policy) {
+        if (sReceiver == null) {
+            sReceiver = new Receiver(context.getApplicationContext());
+        }
+        sReceiver.setScanPolicy(policy);
+    }
+
+    /**
+     * @return Discovery metrics for the current scan session, or null if nothing ever scanned
+     */
+    public static ScanMetrics getScanMetrics() {
+        if (sReceiver != null) {
+            return sReceiver.getScanMetrics();
+        }
+        return null;
+    }
+
     public static void stopNow() {
         if (sReceiver != null) {
             sReceiver.stopNow();
@@ -162,27 +214,65 @@ public class BluetoothScanner {
 
     private static class ClientRecord {
         public final Listener listener;
-        public final ArrayList<Device> devices;
+        /** Devices matching this client, keyed by address, in the order they were found */
+        public final LinkedHashMap<String, Device> devices;
         public final List<BluetoothDeviceCriteria> matchers;
 
         public ClientRecord(Listener listener, List<BluetoothDeviceCriteria> matchers) {
             this.listener = listener;
-            devices = new ArrayList<>();
+            devices = new LinkedHashMap<>();
             this.matchers = matchers;
+            for (BluetoothDeviceCriteria matcher : matchers) {
+                matcher.clearVerdicts();
+            }
+        }
+
+        public void forgetDevice(String address) {
+            devices.remove(address);
+            forgetVerdicts(address);
+        }
+
+        /**
+         * Drops the verdicts remembered for a device whose name or class changed.
+         */
+        public void forgetVerdicts(String address) {
+            for (BluetoothDeviceCriteria matcher : matchers) {
+                matcher.forgetDevice(address);
+            }
+        }
+
+        public boolean addIfMatching(Device device) {
+            for (BluetoothDeviceCriteria matcher : matchers) {
+                if (matcher.isMatchingDevice(device.btDevice)) {
+                    devices.put(device.address, device);
+                    return true;
+                }
+            }
+            return false;
         }
     }
 
-    private static class Receiver extends BroadcastReceiver {
+    @VisibleForTesting
+    static class Receiver extends BroadcastReceiver {
         private final Handler mHandler = new Handler();
         // TODO mListenerLock should probably now protect mClients
         private final ArrayList<ClientRecord> mClients = new ArrayList<>();
-        private final ArrayList<Device> mPresentDevices = new ArrayList<>();
+        /** Devices found by recent scans, keyed by address, in the order they were found */
+        private final LinkedHashMap<String, Device> mPresentDevices = new LinkedHashMap<>();
         private final Context mContext;
         private final BluetoothAdapter mBtAdapter;
         private static boolean mKeepScanning;
         private boolean mRegistered = false;
         private final Object mListenerLock = new Object();
 
+        private ScanPolicy mScanPolicy = AdaptiveScanPolicy.createAggressive();
+        /** Whether the current discovery found devices that weren't present before */
+        private boolean mFoundNewDevices;
+        private long mSessionStartTime;
+        private long mDiscoveryStartTime = -1;
+        private long mDiscoveringTime;
+        private int mDiscoveryCount;
+
         public Receiver(Context context) {
             mContext = context;
 
@@ -194,9 +284,9 @@ public class BluetoothScanner {
          * @param listener
          * @param matchers Pattern matchers to determine whether this listener
          * will be notified about changes in status of a discovered device. Note
-         * that the matcher is only run against the device when the device is
-         * first discovered, not each time it appears in scan results. Device
-         * properties are assumed to be stable.
+         * that the verdict of the matcher is remembered per device, not worked
+         * out each time it appears in scan results, until the name or class of
+         * the device changes.
          */
         public void startListening(Listener listener, List<BluetoothDeviceCriteria> matchers) {
             int size = 0;
@@ -217,8 +307,14 @@ public class BluetoothScanner {
             // and broadcasts when discovery has finished
             if (size == 1) {
                 mPresentDevices.clear();
+                mScanPolicy.reset();
+                mSessionStartTime = SystemClock.elapsedRealtime();
+                mDiscoveryStartTime = -1;
+                mDiscoveringTime = 0;
+                mDiscoveryCount = 0;
                 IntentFilter filter = new IntentFilter(BluetoothDevice.ACTION_FOUND);
                 filter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
+                filter.addAction(BluetoothDevice.ACTION_CLASS_CHANGED);
                 mContext.registerReceiver(this, filter);
                 mRegistered = true;
             }
@@ -227,15 +323,9 @@ public class BluetoothScanner {
             mKeepScanning = true;
 
             // Call back with the ones we have already
-            final int N = mPresentDevices.size();
-            for (int i=0; i<N; i++) {
-                Device target = mPresentDevices.get(i);
-                for (BluetoothDeviceCriteria matcher : newClient.matchers) {
-                    if (matcher.isMatchingDevice(target.btDevice)) {
-                        newClient.devices.add(target);
-                        newClient.listener.onDeviceAdded(target);
-                        break;
-                    }
+            for (Device target : mPresentDevices.values()) {
+                if (newClient.addIfMatching(target)) {
+                    newClient.listener.onDeviceAdded(target);
                 }
             }
 
@@ -271,15 +361,49 @@ public class BluetoothScanner {
         }
 
         public void scanNow() {
+            mHandler.removeCallbacks(mScanTask);
+            mScanPolicy.reset();
+
             // If we're already discovering, stop it.
             if (mBtAdapter.isDiscovering()) {
                 mBtAdapter.cancelDiscovery();
+                onDiscoveryStopped();
             }
 
+            startDiscovery();
+        }
+
+        private void startDiscovery() {
             sendScanningStarted();
 
             // Request discover from BluetoothAdapter
-            mBtAdapter.startDiscovery();
+            mFoundNewDevices = false;
+            if (mBtAdapter.startDiscovery()) {
+                mDiscoveryStartTime = SystemClock.elapsedRealtime();
+                mDiscoveryCount++;
+            }
+        }
+
+        public void setScanPolicy(ScanPolicy policy) {
+            if (DEBUG) {
+                Log.d(TAG, "setScanPolicy " + policy);
+            }
+            mScanPolicy = policy;
+            policy.reset();
+            if (mKeepScanning && !mBtAdapter.isDiscovering()) {
+                // Reschedule the pending scan according to the new policy
+                mHandler.removeCallbacks(mScanTask);
+                mHandler.postDelayed(mScanTask, policy.getNextScanDelay(false));
+            }
+        }
+
+        public ScanMetrics getScanMetrics() {
+            final long now = SystemClock.elapsedRealtime();
+            long discoveringTime = mDiscoveringTime;
+            if (mDiscoveryStartTime >= 0) {
+                discoveringTime += now - mDiscoveryStartTime;
+            }
+            return new ScanMetrics(mDiscoveryCount, discoveringTime, now - mSessionStartTime);
         }
 
         public void stopNow() {
@@ -300,6 +424,7 @@ public class BluetoothScanner {
                 if (mBtAdapter != null) {
                     mBtAdapter.cancelDiscovery();
                 }
+                onDiscoveryStopped();
 
                 // shut down discovery and prevent it from restarting
                 mKeepScanning = false;
@@ -314,27 +439,18 @@ public class BluetoothScanner {
         }
 
         public void removeDevice(String btAddress) {
-            int count = mPresentDevices.size();
-            for (int i = 0; i < count; i++) {
-                Device d = mPresentDevices.get(i);
-                if (btAddress.equals(d.address)) {
-                    mPresentDevices.remove(d);
-                    break;
-                }
-            }
+            mPresentDevices.remove(btAddress);
 
             for (int ptr = mClients.size() - 1; ptr > -1; ptr--) {
-                ClientRecord client = mClients.get(ptr);
-                for (int devPtr = client.devices.size() - 1; devPtr > -1; devPtr--) {
-                    Device d = client.devices.get(devPtr);
-                    if (btAddress.equals(d.address)) {
-                        client.devices.remove(devPtr);
-                        break;
-                    }
-                }
+                mClients.get(ptr).forgetDevice(btAddress);
             }
         }
 
+        @VisibleForTesting
+        int getPresentDeviceCount() {
+            return mPresentDevices.size();
+        }
+
         private final Runnable mStopTask = new Runnable() {
             @Override
             public void run() {
@@ -354,10 +470,20 @@ public class BluetoothScanner {
                 // If there is a pending scan request, cancel it
                 mHandler.removeCallbacks(mScanTask);
 
-                scanNow();
+                // Unlike an explicit scanNow(), a scheduled scan keeps the policy's back off
+                if (!mBtAdapter.isDiscovering()) {
+                    startDiscovery();
+                }
             }
         };
 
+        private void onDiscoveryStopped() {
+            if (mDiscoveryStartTime >= 0) {
+                mDiscoveringTime += SystemClock.elapsedRealtime() - mDiscoveryStartTime;
+                mDiscoveryStartTime = -1;
+            }
+        }
+
         @Override
         public void onReceive(Context context, Intent intent) {
             final String action = intent.getAction();
@@ -385,15 +511,7 @@ public class BluetoothScanner {
                 }
 
                 // See if this is a device we already know about
-                Device device = null;
-                final int N = mPresentDevices.size();
-                for (int i=0; i<N; i++) {
-                    final Device d = mPresentDevices.get(i);
-                    if (address.equals(d.address)) {
-                        device = d;
-                        break;
-                    }
-                }
+                Device device = mPresentDevices.get(address);
 
                 if (device == null) {
                     if (DEBUG) {
@@ -403,11 +521,12 @@ public class BluetoothScanner {
                     device = new Device();
                     device.btDevice = btDevice;
                     device.address = address;
-                    device.consecutiveMisses = -1;
+                    device.consecutiveMisses = FOUND_ON_SCAN;
+                    mFoundNewDevices = true;
 
                     device.setNameString(name);
                     // Save it
-                    mPresentDevices.add(device);
+                    mPresentDevices.put(address, device);
 
                     // Tell the listeners
                     sendDeviceAdded(device);
@@ -417,36 +536,50 @@ public class BluetoothScanner {
                     }
                     // Existing device: update miss count.
                     device.consecutiveMisses = FOUND_ON_SCAN;
+                    device.btDevice = btDevice;
                     if (device.btName == name
                             || (device.btName != null && device.btName.equals(name))) {
-                        // Name hasn't changed
+                        // Name hasn't changed, but clients that couldn't match it before its
+                        // class was known may match it now
+                        sendDeviceAdded(device);
                         return;
                     } else {
                         device.setNameString(name);
-                        sendDeviceChanged(device);
+                        sendDeviceReevaluated(device);
                         // If we can't parse it properly, treat it as a delete
                         // when we iterate through them again.
                     }
                 }
+            } else if (BluetoothDevice.ACTION_CLASS_CHANGED.equals(action)) {
+                final BluetoothDevice btDevice =
+                        intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+                final Device device = btDevice != null
+                        ? mPresentDevices.get(btDevice.getAddress()) : null;
+                if (device != null) {
+                    device.btDevice = btDevice;
+                    sendDeviceReevaluated(device);
+                }
             } else if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(action)) {
-                // Clear any devices that have disappeared since the last scan completed
-                final int N = mPresentDevices.size();
-                for (int i=N-1; i>=0; i--) {
-                    Device device = mPresentDevices.get(i);
+                onDiscoveryStopped();
+
+                // Clear any devices that have been missing from too many scans. A missing device
+                // also means the visible set changed, so the policy shouldn't back off.
+                final int missThreshold = mScanPolicy.getMissedScansBeforeRemoval();
+                boolean missedDevices = false;
+                final Iterator<Device> iterator = mPresentDevices.values().iterator();
+                while (iterator.hasNext()) {
+                    Device device = iterator.next();
                     if (device.consecutiveMisses < 0) {
                         // -1 means found on this scan, raise to 0 for next time
-                        if (DEBUG) Log.d(TAG, device.address + " -- Found");
                         device.consecutiveMisses = 0;
-
-                    } else if (device.consecutiveMisses >= CONSECUTIVE_MISS_THRESHOLD) {
-                        // Too many failures
+                    } else if (device.consecutiveMisses >= missThreshold) {
                         if (DEBUG) Log.d(TAG, device.address + " -- Removing");
-                        mPresentDevices.remove(i);
+                        iterator.remove();
                         sendDeviceRemoved(device);
-
+                        missedDevices = true;
                     } else {
-                        // Didn't see it this time, but not ready to delete it yet
                         device.consecutiveMisses++;
+                        missedDevices = true;
                         if (DEBUG) {
                             Log.d(TAG, device.address + " -- Missed consecutiveMisses="
                                     + device.consecutiveMisses);
@@ -458,8 +591,12 @@ public class BluetoothScanner {
                 sendScanningStopped();
 
                 if (mKeepScanning) {
-                    // Try again in SCAN_DELAY ms.
-                    mHandler.postDelayed(mScanTask, SCAN_DELAY);
+                    final long delay =
+                            mScanPolicy.getNextScanDelay(mFoundNewDevices || missedDevices);
+                    if (DEBUG) {
+                        Log.d(TAG, "Next scan in " + delay + "ms, " + getScanMetrics());
+                    }
+                    mHandler.postDelayed(mScanTask, delay);
                 }
             }
         }
@@ -480,7 +617,7 @@ public class BluetoothScanner {
                 // remove its listener in this callback.
                 for (int i = N - 1; i >= 0; --i) {
                     ClientRecord client = mClients.get(i);
-                    client.listener.onScanningStopped(client.devices);
+                    client.listener.onScanningStopped(new ArrayList<>(client.devices.values()));
                 }
             }
         }
@@ -489,28 +626,33 @@ public class BluetoothScanner {
             synchronized (mListenerLock) {
                 for (int ptr = mClients.size() - 1; ptr > -1; ptr--) {
                     ClientRecord client = mClients.get(ptr);
-                    for (BluetoothDeviceCriteria matcher : client.matchers) {
-                        if (matcher.isMatchingDevice(device.btDevice)) {
-                            client.devices.add(device);
-                            client.listener.onDeviceAdded(device);
-                            break;
-                        }
+                    if (!client.devices.containsKey(device.address)
+                            && client.addIfMatching(device)) {
+                        client.listener.onDeviceAdded(device);
                     }
                 }
             }
         }
 
-        private void sendDeviceChanged(Device device) {
+        /**
+         * Runs the criteria of every client against a device whose name or class changed, and
+         * reports it as added, changed or removed accordingly.
+         */
+        private void sendDeviceReevaluated(Device device) {
             synchronized (mListenerLock) {
-                final int N = mClients.size();
-                for (int i = 0; i < N; i++) {
-                    ClientRecord client = mClients.get(i);
-                    for (int ptr = client.devices.size() - 1; ptr > -1; ptr--) {
-                        Device d = client.devices.get(ptr);
-                        if (d.btDevice.getAddress().equals(device.btDevice.getAddress())) {
+                for (int ptr = mClients.size() - 1; ptr > -1; ptr--) {
+                    ClientRecord client = mClients.get(ptr);
+                    final boolean wasMatching = client.devices.containsKey(device.address);
+                    client.forgetVerdicts(device.address);
+                    if (client.addIfMatching(device)) {
+                        if (wasMatching) {
                             client.listener.onDeviceChanged(device);
-                            break;
+                        } else {
+                            client.listener.onDeviceAdded(device);
                         }
+                    } else if (wasMatching) {
+                        client.forgetDevice(device.address);
+                        client.listener.onDeviceRemoved(device);
                     }
                 }
             }
@@ -520,13 +662,10 @@ public class BluetoothScanner {
             synchronized (mListenerLock) {
                 for (int ptr = mClients.size() - 1; ptr > -1; ptr--) {
                     ClientRecord client = mClients.get(ptr);
-                    for (int devPtr = client.devices.size() - 1; devPtr > -1; devPtr--) {
-                        Device d = client.devices.get(devPtr);
-                        if (d.btDevice.getAddress().equals(device.btDevice.getAddress())) {
-                            client.devices.remove(devPtr);
-                            client.listener.onDeviceRemoved(device);
-                            break;
-                        }
+                    final boolean wasMatching = client.devices.containsKey(device.address);
+                    client.forgetDevice(device.address);
+                    if (wasMatching) {
+                        client.listener.onDeviceRemoved(device);
                     }
                 }
             }
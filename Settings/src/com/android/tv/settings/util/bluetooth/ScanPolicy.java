@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.util.bluetooth;
+
+/**
+ * Decides how often {@link BluetoothScanner} runs discovery, and how many discoveries a device may
+ * be missing from before it's considered gone.
+ */
+public interface ScanPolicy {
+
+    /**
+     * Called when the scanner starts a new scan session, or a client explicitly asks for an
+     * immediate scan.
+     */
+    void reset();
+
+    /**
+     * Called when a discovery finishes.
+     * @param devicesChanged Whether the discovery found devices that weren't present before, or
+     *                       missed devices that were
+     * @return Delay in milliseconds before the next discovery starts
+     */
+    long getNextScanDelay(boolean devicesChanged);
+
+    /**
+     * @return Number of consecutive discoveries a device may be missing from before it's removed
+     */
+    int getMissedScansBeforeRemoval();
+}
@@ -18,24 +18,63 @@ package com.android.tv.settings.widget;
 
 /**
  * Lerper model tracks target position by adding (target - source) / divisor to source position
+ * <p>
+ * In {@link #MODE_TIME_BASED} the gap decays exponentially with the time elapsed since the previous
+ * step instead, shrinking by the divisor every {@link #REFERENCE_FRAME_INTERVAL_NANOS}, so that the
+ * chasing speed doesn't change with the frame rate or when frames are dropped. At 60 fps both modes
+ * move the same.
  */
 public final class Lerper {
 
     public static final float DEFAULT_DIVISOR = 2.0f;
 
+    /** Fill the gap by the divisor on every step */
+    public static final int MODE_PER_FRAME = 0;
+
+    /** Fill the gap by the divisor every {@link #REFERENCE_FRAME_INTERVAL_NANOS} */
+    public static final int MODE_TIME_BASED = 1;
+
+    public static final int DEFAULT_MODE = MODE_TIME_BASED;
+
+    /** Step interval the divisor applies to in {@link #MODE_TIME_BASED} */
+    public static final long REFERENCE_FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
     private float mDivisor = DEFAULT_DIVISOR;
     private float mMinDelta = 1 / DEFAULT_DIVISOR;
+    private int mMode = DEFAULT_MODE;
+    /** Time for the gap to shrink by a factor of e in {@link #MODE_TIME_BASED}, 0 to jump */
+    private double mTimeConstantNanos = getTimeConstantNanos(DEFAULT_DIVISOR);
 
     public void setDivisor(float divisor) {
         if (divisor < 1f) throw new IllegalArgumentException();
         mDivisor = divisor;
         mMinDelta = 1 / divisor;
+        mTimeConstantNanos = getTimeConstantNanos(divisor);
     }
 
     public float getDivisor() {
         return mDivisor;
     }
 
+    public void setMode(int mode) {
+        if (mode != MODE_PER_FRAME && mode != MODE_TIME_BASED) {
+            throw new IllegalArgumentException();
+        }
+        mMode = mode;
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    private static double getTimeConstantNanos(float divisor) {
+        if (divisor == 1f) {
+            return 0;
+        }
+        // 1 - 1 / divisor of the gap is left after one reference interval
+        return -REFERENCE_FRAME_INTERVAL_NANOS / Math.log(1 - 1 / divisor);
+    }
+
     public float getMinDelta() {
         return mMinDelta;
     }
@@ -91,4 +130,23 @@ public final class Lerper {
         }
         return retValue;
     }
+
+    /**
+     * Steps towards the target according to the mode.
+     * @param elapsedNanos Time since the previous step, only used in {@link #MODE_TIME_BASED}
+     */
+    public float getValue(float currentValue, float targetValue, long elapsedNanos) {
+        if (mMode == MODE_PER_FRAME) {
+            return getValue(currentValue, targetValue);
+        }
+        final float delta = targetValue - currentValue;
+        if (Math.abs(delta) <= mMinDelta || mTimeConstantNanos == 0) {
+            return targetValue;
+        }
+        final float remaining = (float) (delta * Math.exp(-elapsedNanos / mTimeConstantNanos));
+        if (Math.abs(remaining) <= mMinDelta) {
+            return targetValue;
+        }
+        return targetValue - remaining;
+    }
 }
@@ -23,6 +23,12 @@ import android.widget.ListAdapter;
 
 /**
  * The adapter for ScrollAdapterView added more features controlling life cycle.
+ * <p>
+ * {@link ScrollAdapterView} registers a {@link ScrollAdapterObserver}, so an adapter can tell it
+ * exactly which items changed, were inserted, removed or moved through a
+ * {@link ScrollAdapterObservable}. The view then only rebinds or shifts the affected children
+ * and keeps its scroll position, where {@link android.widget.BaseAdapter#notifyDataSetChanged()}
+ * throws away and rebuilds all of them.
  */
 public interface ScrollAdapterBase extends ListAdapter {
 
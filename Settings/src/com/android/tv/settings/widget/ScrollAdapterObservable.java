@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tv.settings.widget;
+
+import android.database.DataSetObserver;
+
+import java.util.ArrayList;
+
+/**
+ * Dispatches fine grained changes of a {@link ScrollAdapterBase} to the registered
+ * {@link ScrollAdapterObserver}s. The adapter forwards its
+ * {@link android.widget.Adapter#registerDataSetObserver(DataSetObserver)} and
+ * {@link android.widget.Adapter#unregisterDataSetObserver(DataSetObserver)} calls here, on top
+ * of its usual observable, then calls the notify methods after changing its data instead of
+ * {@link android.widget.BaseAdapter#notifyDataSetChanged()}. Plain {@link DataSetObserver}s don't
+ * hear about these changes, so this is only suitable for adapters used by
+ * {@link ScrollAdapterView}.
+ */
+public class ScrollAdapterObservable {
+
+    private final ArrayList<ScrollAdapterObserver> mObservers = new ArrayList<>();
+
+    /**
+     * Registers an observer, observers that are not {@link ScrollAdapterObserver}s are ignored.
+     */
+    public void registerObserver(DataSetObserver observer) {
+        if (observer instanceof ScrollAdapterObserver && !mObservers.contains(observer)) {
+            mObservers.add((ScrollAdapterObserver) observer);
+        }
+    }
+
+    public void unregisterObserver(DataSetObserver observer) {
+        mObservers.remove(observer);
+    }
+
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        // Go backwards in case an observer unregisters itself, like DataSetObservable does
+        for (int i = mObservers.size() - 1; i >= 0; i--) {
+            mObservers.get(i).onItemRangeChanged(positionStart, itemCount);
+        }
+    }
+
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        for (int i = mObservers.size() - 1; i >= 0; i--) {
+            mObservers.get(i).onItemRangeInserted(positionStart, itemCount);
+        }
+    }
+
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        for (int i = mObservers.size() - 1; i >= 0; i--) {
+            mObservers.get(i).onItemRangeRemoved(positionStart, itemCount);
+        }
+    }
+
+    public void notifyItemMoved(int fromPosition, int toPosition) {
+        for (int i = mObservers.size() - 1; i >= 0; i--) {
+            mObservers.get(i).onItemMoved(fromPosition, toPosition);
+        }
+    }
+}
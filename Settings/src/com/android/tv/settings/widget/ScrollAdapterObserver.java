@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tv.settings.widget;
+
+import android.database.DataSetObserver;
+
+/**
+ * Observer of a {@link ScrollAdapterBase} that can be told precisely which items changed, see
+ * {@link ScrollAdapterObservable}. Each of the fine grained callbacks falls back to
+ * {@link #onChanged()} unless overridden.
+ */
+public abstract class ScrollAdapterObserver extends DataSetObserver {
+
+    /**
+     * Called when the content of items changed, their positions are unchanged.
+     */
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        onChanged();
+    }
+
+    /**
+     * Called when items were inserted, the items previously at {@code positionStart} and after
+     * are now {@code itemCount} positions further.
+     */
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        onChanged();
+    }
+
+    /**
+     * Called when items were removed, the items previously after the removed range are now
+     * {@code itemCount} positions closer.
+     */
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        onChanged();
+    }
+
+    /**
+     * Called when an item moved from {@code fromPosition} to {@code toPosition}.
+     */
+    public void onItemMoved(int fromPosition, int toPosition) {
+        onChanged();
+    }
+}
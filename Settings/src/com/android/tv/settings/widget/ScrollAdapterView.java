@@ -21,7 +21,6 @@ import android.animation.AnimatorInflater;
 import android.animation.ObjectAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.database.DataSetObserver;
 import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Parcel;
@@ -367,7 +366,7 @@ public final class ScrollAdapterView extends AdapterView<Adapter> {
             viewType = t;
         }
 
-        final int index; // "Adapter index" of the expandable view
+        int index; // "Adapter index" of the expandable view, shifted by item inserts/removes
         final int viewType;
         final View expandedView; // expanded view
         float progress = 0f; // 0 ~ 1, indication if it's expanding or shrinking
@@ -529,6 +528,8 @@ public final class ScrollAdapterView extends AdapterView<Adapter> {
 
         mScroll.lerper().setDivisor(a.getFloat(
                 R.styleable.ScrollAdapterView_lerperDivisor, Lerper.DEFAULT_DIVISOR));
+        mScroll.lerper().setMode(a.getInt(
+                R.styleable.ScrollAdapterView_lerperMode, Lerper.DEFAULT_MODE));
 
         a.recycle();
     }
@@ -690,7 +691,7 @@ public final class ScrollAdapterView extends AdapterView<Adapter> {
         scheduleScrollTask();
     }
 
-    private final DataSetObserver mDataObserver = new DataSetObserver() {
+    private final ScrollAdapterObserver mDataObserver = new ScrollAdapterObserver() {
 
         @Override
         public void onChanged() {
@@ -702,8 +703,282 @@ public final class ScrollAdapterView extends AdapterView<Adapter> {
             fireDataSetChanged();
         }
 
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            applyItemRangeChanged(positionStart, itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            applyItemRangeInserted(positionStart, itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            applyItemRangeRemoved(positionStart, itemCount);
+        }
+
+        @Override
+        public void onItemMoved(int fromPosition, int toPosition) {
+            if (fromPosition != toPosition) {
+                // the adapter already has the final order, so dropping the child of the old
+                // position then binding a new one at the new position gives the same result
+                applyItemRangeRemoved(fromPosition, 1);
+                applyItemRangeInserted(toPosition, 1);
+            }
+        }
     };
 
+    /**
+     * Fine grained changes are applied to the existing children, unless a full
+     * {@link #reset()} is pending anyway or there are no children to update.
+     */
+    private boolean canApplyItemChanges() {
+        return mAdapter != null && !mDataSetChangedFlag && mMeasuredSpec != -1
+                && mLoadingState == null && mPendingSelection < 0
+                && lastExpandableIndex() > firstExpandableIndex();
+    }
+
+    /**
+     * Rebinds the children of changed items in place. Falls back to a full reset if the adapter
+     * returns a different view, or if a child changed size while scrolling.
+     */
+    private void applyItemRangeChanged(int positionStart, int itemCount) {
+        if (!canApplyItemChanges()) {
+            fireDataSetChanged();
+            return;
+        }
+        final View anchor = getSelectedChildInLayout();
+        final int anchorCenter = anchor != null ? getScrollCenter(anchor) : 0;
+        final int start = Math.max(positionStart, mLeftIndex + 1);
+        final int end = Math.min(positionStart + itemCount, mRightIndex);
+        boolean sizeChanged = false;
+        for (int i = start; i < end; i++) {
+            View child = getChildAt(expandableIndexFromAdapterIndex(i));
+            ChildViewHolder h = (ChildViewHolder) child.getTag(R.id.ScrollAdapterViewChild);
+            if (mAdapter.getItemViewType(i) != h.mItemViewType
+                    || mAdapter.getView(i, child, this) != child) {
+                fireDataSetChanged();
+                return;
+            }
+            int oldWidth = child.getMeasuredWidth();
+            int oldHeight = child.getMeasuredHeight();
+            measureChild(child);
+            if (child.getMeasuredWidth() == oldWidth && child.getMeasuredHeight() == oldHeight) {
+                child.layout(child.getLeft(), child.getTop(), child.getRight(), child.getBottom());
+            } else {
+                sizeChanged = true;
+            }
+        }
+        if (mExpandAdapter != null) {
+            for (int j = 0, size = mExpandedViews.size(); j < size; j++) {
+                ExpandedView v = mExpandedViews.get(j);
+                if (v.index >= positionStart && v.index < positionStart + itemCount
+                        && mExpandAdapter.getView(v.index, v.expandedView, this)
+                                != v.expandedView) {
+                    fireDataSetChanged();
+                    return;
+                }
+            }
+        }
+        if (sizeChanged) {
+            if (anchor == null || !mScroll.isFinished()) {
+                fireDataSetChanged();
+                return;
+            }
+            relayoutKeepingAnchor(anchor, anchorCenter);
+        }
+        onItemChangesApplied();
+    }
+
+    /**
+     * Shifts the children for inserted items, binding new children for the items inserted among
+     * them. The selected child keeps its place on screen.
+     */
+    private void applyItemRangeInserted(int positionStart, int itemCount) {
+        if (mAdapter == null || itemCount <= 0) {
+            return;
+        }
+        mExpandableChildStates.insertIds(positionStart, itemCount);
+        mExpandedChildStates.insertIds(positionStart, itemCount);
+        if (!canApplyItemChanges()) {
+            fireDataSetChanged();
+            return;
+        }
+        if (positionStart >= mRightIndex) {
+            // after the children, fillVisibleViewsInLayout() adds them if they are visible. A
+            // grid can only do so if the last row of children is full.
+            if (mRightIndex % mItemsOnOffAxis != 0) {
+                fireDataSetChanged();
+                return;
+            }
+            onItemChangesApplied();
+            return;
+        }
+        final View anchor = getSelectedChildInLayout();
+        if (mItemsOnOffAxis != 1 || !mScroll.isFinished() || anchor == null) {
+            fireDataSetChanged();
+            return;
+        }
+        if (positionStart <= mLeftIndex + 1) {
+            // before the children, they keep their place and fillVisibleViewsInLayout() adds the
+            // new items if they are visible
+            offsetChildIndexes(positionStart, itemCount);
+            onItemChangesApplied();
+            return;
+        }
+        final int anchorCenter = getScrollCenter(anchor);
+        final int viewIndex = expandableIndexFromAdapterIndex(positionStart);
+        offsetChildIndexes(positionStart, itemCount);
+        mRightIndex += itemCount;
+        final View previous = getChildAt(viewIndex - 1);
+        for (int i = 0; i < itemCount; i++) {
+            View child = addAndMeasureExpandableView(positionStart + i, viewIndex + i);
+            if (child == null) {
+                fireDataSetChanged();
+                return;
+            }
+            // temporary position, relayoutKeepingAnchor() moves it next to its previous sibling
+            if (mOrientation == HORIZONTAL) {
+                child.layout(previous.getLeft(), getPaddingTop(),
+                        previous.getLeft() + child.getMeasuredWidth(),
+                        getPaddingTop() + child.getMeasuredHeight());
+            } else {
+                child.layout(getPaddingLeft(), previous.getTop(),
+                        getPaddingLeft() + child.getMeasuredWidth(),
+                        previous.getTop() + child.getMeasuredHeight());
+            }
+            mExpandableChildStates.loadView(child, positionStart + i);
+        }
+        relayoutKeepingAnchor(anchor, anchorCenter);
+        onItemChangesApplied();
+    }
+
+    /**
+     * Drops the children of removed items and shifts the others. The selected child keeps its
+     * place on screen, a full reset picks a new selection if the selected item was removed.
+     */
+    private void applyItemRangeRemoved(int positionStart, int itemCount) {
+        if (mAdapter == null || itemCount <= 0) {
+            return;
+        }
+        mExpandableChildStates.removeIds(positionStart, itemCount);
+        mExpandedChildStates.removeIds(positionStart, itemCount);
+        if (!canApplyItemChanges()) {
+            fireDataSetChanged();
+            return;
+        }
+        if (positionStart >= mRightIndex) {
+            // after the children, only the scroll max may change
+            onItemChangesApplied();
+            return;
+        }
+        final int end = positionStart + itemCount;
+        final View anchor = getSelectedChildInLayout();
+        if (mItemsOnOffAxis != 1 || !mScroll.isFinished() || anchor == null
+                || (mSelectedIndex >= positionStart && mSelectedIndex < end)) {
+            fireDataSetChanged();
+            return;
+        }
+        final int firstVisible = mLeftIndex + 1;
+        if (end <= firstVisible) {
+            // before the children, they keep their place
+            offsetChildIndexes(end, -itemCount);
+            onItemChangesApplied();
+            return;
+        }
+        final int removeStart = Math.max(positionStart, firstVisible);
+        final int removeEnd = Math.min(end, mRightIndex);
+        for (int i = removeStart; i < removeEnd; i++) {
+            if (childHasFocus(expandableIndexFromAdapterIndex(i))) {
+                fireDataSetChanged();
+                return;
+            }
+        }
+        final int anchorCenter = getScrollCenter(anchor);
+        for (int j = mExpandedViews.size() - 1; j >= 0; j--) {
+            ExpandedView v = mExpandedViews.get(j);
+            if (v.index >= positionStart && v.index < end) {
+                v.close();
+                removeViewInLayout(v.expandedView);
+                mRecycleExpandedViews.recycleView(v.expandedView, v.viewType);
+                mExpandedViews.remove(j);
+            }
+        }
+        final int viewIndex = expandableIndexFromAdapterIndex(removeStart);
+        for (int i = removeStart; i < removeEnd; i++) {
+            View child = getChildAt(viewIndex);
+            removeViewInLayout(child);
+            recycleExpandableView(child);
+        }
+        final int removedBefore = Math.max(0, firstVisible - positionStart);
+        mLeftIndex -= removedBefore;
+        mRightIndex -= removedBefore + (removeEnd - removeStart);
+        if (mSelectedIndex >= end) {
+            mSelectedIndex -= itemCount;
+        }
+        for (int j = 0, size = mExpandedViews.size(); j < size; j++) {
+            ExpandedView v = mExpandedViews.get(j);
+            if (v.index >= end) {
+                v.index -= itemCount;
+            }
+        }
+        relayoutKeepingAnchor(anchor, anchorCenter);
+        onItemChangesApplied();
+    }
+
+    /**
+     * @return The selected expandable child, or null if it isn't laid out
+     */
+    private View getSelectedChildInLayout() {
+        return mSelectedIndex > mLeftIndex && mSelectedIndex < mRightIndex
+                ? getSelectedView() : null;
+    }
+
+    /**
+     * Moves the adapter indexes of the children and expanded views at or after
+     * {@code positionStart} by {@code delta}.
+     */
+    private void offsetChildIndexes(int positionStart, int delta) {
+        if (positionStart <= mLeftIndex + 1) {
+            mLeftIndex += delta;
+            mRightIndex += delta;
+        }
+        if (mSelectedIndex >= positionStart) {
+            mSelectedIndex += delta;
+        }
+        for (int j = 0, size = mExpandedViews.size(); j < size; j++) {
+            ExpandedView v = mExpandedViews.get(j);
+            if (v.index >= positionStart) {
+                v.index += delta;
+            }
+        }
+    }
+
+    /**
+     * Lays out the children again after some were added, removed or resized, moving the scroll
+     * center by as much as the anchor moved so that it stays at the same place on screen.
+     */
+    private void relayoutKeepingAnchor(View anchor, int anchorCenter) {
+        updateViewsLocations(true);
+        int delta = getScrollCenter(anchor) - anchorCenter;
+        if (delta != 0) {
+            // fillVisibleViewsInLayout() finds the new min and max
+            mScroll.mainAxis().invalidateScrollMin();
+            mScroll.mainAxis().invalidateScrollMax();
+            mScroll.setScrollCenterByMain(mScroll.mainAxis().getScrollCenter() + delta,
+                    mScroll.secondAxis().getScrollCenter());
+            adjustSystemScrollPos();
+        }
+    }
+
+    private void onItemChangesApplied() {
+        // make fireScrollChange() notify listeners again, the adapter may have rebound the
+        // view that they last decorated
+        mCurScroll.clear();
+        scheduleScrollTask();
+    }
+
     @Override
     public Adapter getAdapter() {
         return mAdapter;
@@ -2759,6 +3034,19 @@ public final class ScrollAdapterView extends AdapterView<Adapter> {
         mExpandableChildStates.setLimitNumber(saveExpandableChildNumber);
     }
 
+    /**
+     * Returns the limited size in bytes of expandable children states that will be saved when
+     * {@link #getSaveExpandableViewsPolicy()} is {@link ViewsStateBundle#SAVE_LIMITED_CHILD}
+     */
+    public int getSaveExpandableViewsLimitBytes() {
+        return mExpandableChildStates.getLimitBytes();
+    }
+
+    /** See explanation in {@link #getSaveExpandableViewsLimitBytes()} */
+    public void setSaveExpandableViewsLimitBytes(int saveExpandableChildBytes) {
+        mExpandableChildStates.setLimitBytes(saveExpandableChildBytes);
+    }
+
     /**
      * Returns expanded children states policy, returns one of
      * {@link ViewsStateBundle#SAVE_NO_CHILD} {@link ViewsStateBundle#SAVE_VISIBLE_CHILD}
@@ -2786,6 +3074,19 @@ public final class ScrollAdapterView extends AdapterView<Adapter> {
         mExpandedChildStates.setLimitNumber(mSaveExpandedNumber);
     }
 
+    /**
+     * Returns the limited size in bytes of expanded children states that will be saved when
+     * {@link #getSaveExpandedViewsPolicy()} is {@link ViewsStateBundle#SAVE_LIMITED_CHILD}
+     */
+    public int getSaveExpandedViewsLimitBytes() {
+        return mExpandedChildStates.getLimitBytes();
+    }
+
+    /** See explanation in {@link #getSaveExpandedViewsLimitBytes()} */
+    public void setSaveExpandedViewsLimitBytes(int saveExpandedChildBytes) {
+        mExpandedChildStates.setLimitBytes(saveExpandedChildBytes);
+    }
+
     public ArrayList<OnItemChangeListener> getOnItemChangeListeners() {
         return mOnItemChangeListeners;
     }
@@ -17,6 +17,7 @@
 package com.android.tv.settings.widget;
 
 import android.content.Context;
+import android.database.DataSetObserver;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -28,6 +29,7 @@ import java.util.List;
 public class ScrollArrayAdapter<T> extends ArrayAdapter<T> implements ScrollAdapter {
 
     private int mLayoutResource = -1;
+    private final ScrollAdapterObservable mScrollObservable = new ScrollAdapterObservable();
 
     public ScrollArrayAdapter(Context context, int textViewResourceId) {
         super(context, textViewResourceId);
@@ -77,6 +79,41 @@ public class ScrollArrayAdapter<T> extends ArrayAdapter<T> implements ScrollAdap
     public void viewRemoved(View view) {
     }
 
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {
+        super.registerDataSetObserver(observer);
+        mScrollObservable.registerObserver(observer);
+    }
+
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+        super.unregisterDataSetObserver(observer);
+        mScrollObservable.unregisterObserver(observer);
+    }
+
+    /**
+     * Notifies that items changed, to be used after changing them in place.
+     */
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        mScrollObservable.notifyItemRangeChanged(positionStart, itemCount);
+    }
+
+    /**
+     * Notifies that items were inserted, to be used after inserting them with
+     * {@link #setNotifyOnChange(boolean)} off.
+     */
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        mScrollObservable.notifyItemRangeInserted(positionStart, itemCount);
+    }
+
+    /**
+     * Notifies that items were removed, to be used after removing them with
+     * {@link #setNotifyOnChange(boolean)} off.
+     */
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        mScrollObservable.notifyItemRangeRemoved(positionStart, itemCount);
+    }
+
     @Override
     public ScrollAdapterBase getExpandAdapter() {
         return null;
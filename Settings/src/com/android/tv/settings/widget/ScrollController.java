@@ -19,6 +19,7 @@ package com.android.tv.settings.widget;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.view.View;
+import android.view.animation.AnimationUtils;
 import android.view.animation.DecelerateInterpolator;
 import android.view.animation.LinearInterpolator;
 import android.widget.Scroller;
@@ -110,6 +111,11 @@ public class ScrollController {
     // millisecond per pixel
     private static final float SCROLL_DURATION_MS_PER_PIX = 0.25f;
 
+    private static final long NANOS_PER_MS = 1000000L;
+
+    /** no lerper step taken since the scroll center last settled */
+    private static final long NO_FRAME_TIME = Long.MIN_VALUE;
+
     /**
      * Maintains scroll information in one direction
      */
@@ -263,6 +269,9 @@ public class ScrollController {
 
         private final Lerper mLerper;
 
+        /** time of the last lerper step, used to scale the next one in time based mode */
+        private long mLastFrameTimeNanos = NO_FRAME_TIME;
+
         private final String mName; // for debugging
 
         public Axis(Lerper lerper, String name) {
@@ -385,6 +394,11 @@ public class ScrollController {
         }
 
         private boolean updateScrollCenter(float scrollTarget, boolean lerper) {
+            return updateScrollCenter(scrollTarget, lerper, NO_FRAME_TIME);
+        }
+
+        private boolean updateScrollCenter(float scrollTarget, boolean lerper,
+                long frameTimeNanos) {
             mDragOffset = 0;
             int scrollMin = scrollMin();
             int scrollMax = scrollMax();
@@ -400,9 +414,17 @@ public class ScrollController {
                 overScroll = true;
             }
             if (lerper) {
-                mScrollCenter = mLerper.getValue(mScrollCenter, scrollTarget);
+                // the first step after settling has no previous frame, assume a regular one
+                final long elapsedNanos =
+                        mLastFrameTimeNanos == NO_FRAME_TIME || frameTimeNanos == NO_FRAME_TIME
+                                ? Lerper.REFERENCE_FRAME_INTERVAL_NANOS
+                                : Math.max(0, frameTimeNanos - mLastFrameTimeNanos);
+                mScrollCenter = mLerper.getValue(mScrollCenter, scrollTarget, elapsedNanos);
+                mLastFrameTimeNanos = mScrollCenter == scrollTarget ? NO_FRAME_TIME
+                        : frameTimeNanos;
             } else {
                 mScrollCenter = scrollTarget;
+                mLastFrameTimeNanos = NO_FRAME_TIME;
             }
             return overScroll;
         }
@@ -425,6 +447,7 @@ public class ScrollController {
             mTouchScrollMax = Integer.MAX_VALUE;
             mExpandedSize = 0;
             mDragOffset = 0;
+            mLastFrameTimeNanos = NO_FRAME_TIME;
         }
 
         final public boolean isMinUnknown() {
@@ -656,6 +679,13 @@ public class ScrollController {
         mLerper.setDivisor(divisor);
     }
 
+    /**
+     * @param mode {@link Lerper#MODE_PER_FRAME} or {@link Lerper#MODE_TIME_BASED}
+     */
+    final public void setLerperMode(int mode) {
+        mLerper.setMode(mode);
+    }
+
     public ScrollController(Context context) {
         mContext = context;
         // Quint easeOut
@@ -965,6 +995,9 @@ public class ScrollController {
      * scroller object,  or lerper, or can be caused by a dragBy()
      */
     final public void computeAndSetScrollPosition() {
+        // while a frame is drawn the animation clock is locked to the Choreographer frame time,
+        // which is also what the scrollers are driven by
+        final long frameTimeNanos = AnimationUtils.currentAnimationTimeMillis() * NANOS_PER_MS;
         Scroller scroller;
         if (mState == STATE_FLING) {
             scroller = mFlingScroller;
@@ -981,8 +1014,8 @@ public class ScrollController {
         }
         if (!isFinished()) {
             scroller.computeScrollOffset();
-            horizontal.updateScrollCenter(scroller.getCurrX(), true);
-            vertical.updateScrollCenter(scroller.getCurrY(), true);
+            horizontal.updateScrollCenter(scroller.getCurrX(), true, frameTimeNanos);
+            vertical.updateScrollCenter(scroller.getCurrY(), true, frameTimeNanos);
         }
     }
 
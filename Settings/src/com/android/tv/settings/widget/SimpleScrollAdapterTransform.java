@@ -18,6 +18,8 @@ package com.android.tv.settings.widget;
 
 import android.animation.Animator;
 import android.animation.AnimatorSet;
+import android.animation.ObjectAnimator;
+import android.animation.PropertyValuesHolder;
 import android.animation.ValueAnimator;
 import android.content.Context;
 import android.util.DisplayMetrics;
@@ -25,25 +27,75 @@ import android.util.TypedValue;
 import android.view.View;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * SimpleScrollAdapterTransform is the default implementation of {@link ScrollAdapterTransform} used
  * by ScrollAdapterView. It uses two Animator objects to transform views.
+ * <p>
+ * By default the animators are baked when they are set: the curve of each animated property is
+ * sampled into a lookup table, and views are transformed by interpolating in the tables rather
+ * than seeking every animator for every view on every frame. Only object animators of alpha,
+ * scale and translation can be baked, and their update listeners are ignored. Animators with
+ * anything else are always run as is.
  */
 public class SimpleScrollAdapterTransform implements ScrollAdapterTransform {
 
+    /** Number of samples taken of each animated property */
+    static final int TABLE_SIZE = 256;
+
+    private static final int PROPERTY_ALPHA = 0;
+    private static final int PROPERTY_SCALE_X = 1;
+    private static final int PROPERTY_SCALE_Y = 2;
+    private static final int PROPERTY_TRANSLATION_X = 3;
+    private static final int PROPERTY_TRANSLATION_Y = 4;
+
+    /**
+     * Sampled curve of one property, over the duration of the animator that animates it.
+     */
+    private static class Track {
+        final int property;
+        final long duration;
+        final float[] values;
+
+        Track(int property, long duration, float[] values) {
+            this.property = property;
+            this.duration = duration;
+            this.values = values;
+        }
+    }
+
     /** Animator for transform views on the right/down side of mScrollCenter */
     private Animator mHighItemTransform;
 
     /** for transform views on the left/up side of mScrollCenter */
     private Animator mLowItemTransform;
 
+    /** Baked {@link #mHighItemTransform} in the order it applies properties, or null */
+    private Track[] mHighItemTracks;
+
+    /** Baked {@link #mLowItemTransform} in the order it applies properties, or null */
+    private Track[] mLowItemTracks;
+
+    private boolean mLookupTablesEnabled = true;
+
+    private final Context mContext;
+
     private final DisplayMetrics mDisplayMetrics;
 
     public SimpleScrollAdapterTransform(Context context) {
+        mContext = context;
         mDisplayMetrics = context.getResources().getDisplayMetrics();
     }
 
+    /**
+     * Sets whether baked animators are applied from their lookup tables, true by default.
+     * Otherwise the animators are run for every view, which is slower but exact.
+     */
+    public void setLookupTablesEnabled(boolean enabled) {
+        mLookupTablesEnabled = enabled;
+    }
+
     @Override
     public void transform(View child, int distanceFromCenter, int distanceFromCenter2ndAxis) {
         if (mLowItemTransform == null && mHighItemTransform == null) {
@@ -51,12 +103,34 @@ public class SimpleScrollAdapterTransform implements ScrollAdapterTransform {
         }
         int absDistance = Math.abs(distanceFromCenter) + Math.abs(distanceFromCenter2ndAxis);
         if (distanceFromCenter < 0) {
-            applyTransformationRecursive(absDistance, mLowItemTransform, child);
+            applyTransformation(absDistance, mLowItemTransform, mLowItemTracks, child);
         } else {
-            applyTransformationRecursive(absDistance, mHighItemTransform, child);
+            applyTransformation(absDistance, mHighItemTransform, mHighItemTracks, child);
         }
     }
 
+    private void applyTransformation(int distanceFromCenter, Animator animator, Track[] tracks,
+            View child) {
+        if (mLookupTablesEnabled && tracks != null) {
+            for (Track track : tracks) {
+                setProperty(child, track.property, getValue(track, distanceFromCenter));
+            }
+        } else {
+            applyTransformationRecursive(distanceFromCenter, animator, child);
+        }
+    }
+
+    private static float getValue(Track track, int distanceFromCenter) {
+        final float[] values = track.values;
+        if (distanceFromCenter >= track.duration) {
+            return values[TABLE_SIZE - 1];
+        }
+        final float position = (float) distanceFromCenter * (TABLE_SIZE - 1) / track.duration;
+        final int index = (int) position;
+        final float fraction = position - index;
+        return values[index] + (values[index + 1] - values[index]) * fraction;
+    }
+
     private void applyTransformationRecursive(
             int distanceFromCenter, Animator animator, View child) {
         if (animator instanceof AnimatorSet) {
@@ -94,6 +168,125 @@ public class SimpleScrollAdapterTransform implements ScrollAdapterTransform {
         }
     }
 
+    /**
+     * Samples the animated properties of the animator, in the order
+     * {@link #applyTransformationRecursive} applies them.
+     * @return The samples, or null if the animator can't be baked
+     */
+    private Track[] bake(Animator animator) {
+        if (animator == null) {
+            return null;
+        }
+        final List<Track> tracks = new ArrayList<>();
+        if (!bakeRecursive(animator, tracks)) {
+            return null;
+        }
+        return tracks.toArray(new Track[tracks.size()]);
+    }
+
+    private boolean bakeRecursive(Animator animator, List<Track> tracks) {
+        if (animator instanceof AnimatorSet) {
+            ArrayList<Animator> children = ((AnimatorSet) animator).getChildAnimations();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                if (!bakeRecursive(children.get(i), tracks)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (animator instanceof ObjectAnimator) {
+            final PropertyValuesHolder[] values = ((ObjectAnimator) animator).getValues();
+            if (values == null) {
+                return false;
+            }
+            final int[] properties = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                properties[i] = findProperty(values[i].getPropertyName());
+                if (properties[i] < 0) {
+                    return false;
+                }
+            }
+            // Run a copy against a throwaway view, so that the real views and listeners are left
+            // alone, and values missing from the animator start from the view defaults
+            final ObjectAnimator sampler = ((ObjectAnimator) animator).clone();
+            sampler.removeAllListeners();
+            sampler.removeAllUpdateListeners();
+            final View sampleView = new View(mContext);
+            sampler.setTarget(sampleView);
+            final float[][] samples = new float[values.length][TABLE_SIZE];
+            for (int i = 0; i < TABLE_SIZE; i++) {
+                sampler.setCurrentFraction((float) i / (TABLE_SIZE - 1));
+                for (int j = 0; j < values.length; j++) {
+                    samples[j][i] = getProperty(sampleView, properties[j]);
+                }
+            }
+            for (int j = 0; j < values.length; j++) {
+                tracks.add(new Track(properties[j], animator.getDuration(), samples[j]));
+            }
+            return true;
+        }
+        // Other animators only act through their listeners
+        return false;
+    }
+
+    private static int findProperty(String name) {
+        if (name == null) {
+            return -1;
+        }
+        switch (name) {
+            case "alpha":
+                return PROPERTY_ALPHA;
+            case "scaleX":
+                return PROPERTY_SCALE_X;
+            case "scaleY":
+                return PROPERTY_SCALE_Y;
+            case "translationX":
+                return PROPERTY_TRANSLATION_X;
+            case "translationY":
+                return PROPERTY_TRANSLATION_Y;
+            default:
+                return -1;
+        }
+    }
+
+    private static float getProperty(View view, int property) {
+        switch (property) {
+            case PROPERTY_ALPHA:
+                return view.getAlpha();
+            case PROPERTY_SCALE_X:
+                return view.getScaleX();
+            case PROPERTY_SCALE_Y:
+                return view.getScaleY();
+            case PROPERTY_TRANSLATION_X:
+                return view.getTranslationX();
+            case PROPERTY_TRANSLATION_Y:
+                return view.getTranslationY();
+            default:
+                throw new IllegalArgumentException("Unknown property " + property);
+        }
+    }
+
+    private static void setProperty(View view, int property, float value) {
+        switch (property) {
+            case PROPERTY_ALPHA:
+                view.setAlpha(value);
+                break;
+            case PROPERTY_SCALE_X:
+                view.setScaleX(value);
+                break;
+            case PROPERTY_SCALE_Y:
+                view.setScaleY(value);
+                break;
+            case PROPERTY_TRANSLATION_X:
+                view.setTranslationX(value);
+                break;
+            case PROPERTY_TRANSLATION_Y:
+                view.setTranslationY(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown property " + property);
+        }
+    }
+
     public Animator getHighItemTransform() {
         return mHighItemTransform;
     }
@@ -101,6 +294,7 @@ public class SimpleScrollAdapterTransform implements ScrollAdapterTransform {
     public void setHighItemTransform(Animator highItemTransform) {
         mHighItemTransform = highItemTransform;
         initializeTransformationRecursive(mHighItemTransform, 0);
+        mHighItemTracks = bake(mHighItemTransform);
     }
 
     public Animator getLowItemTransform() {
@@ -110,6 +304,7 @@ public class SimpleScrollAdapterTransform implements ScrollAdapterTransform {
     public void setLowItemTransform(Animator lowItemTransform) {
         mLowItemTransform = lowItemTransform;
         initializeTransformationRecursive(mLowItemTransform, 0);
+        mLowItemTracks = bake(mLowItemTransform);
     }
 
 }
@@ -17,10 +17,15 @@
 package com.android.tv.settings.widget;
 
 import android.os.Bundle;
+import android.os.Parcel;
 import android.os.Parcelable;
 import android.util.SparseArray;
 import android.view.View;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Maintains a bundle of states for a group of views. Each view must have a unique id to identify
  * it. There are four different strategies {@link #SAVE_NO_CHILD} {@link #SAVE_VISIBLE_CHILD}
@@ -42,7 +47,11 @@ public abstract class ViewsStateBundle {
     public static final int SAVE_NO_CHILD = 0;
     /** only save visible child views, the states are lost when they are gone */
     public static final int SAVE_VISIBLE_CHILD = 1;
-    /** save visible views plus save removed child views states up to {@link #getLimitNumber()} */
+    /**
+     * save visible views plus save removed child views states up to {@link #getLimitNumber()}
+     * views and {@link #getLimitBytes()} bytes, the states of least recently saved or loaded
+     * views are dropped first
+     */
     public static final int SAVE_LIMITED_CHILD = 2;
     /**
      * save visible views plus save removed child views without any limitation. This might cause out
@@ -52,19 +61,41 @@ public abstract class ViewsStateBundle {
 
     public static final int SAVE_LIMITED_CHILD_DEFAULT_VALUE = 100;
 
+    /**
+     * Default byte budget for {@link #SAVE_LIMITED_CHILD}, well under the binder transaction
+     * limit that the saved instance state of the whole activity has to fit in.
+     */
+    public static final int SAVE_LIMITED_CHILD_DEFAULT_BYTES = 128 * 1024;
+
     private int savePolicy;
     private int limitNumber;
+    private int limitBytes;
 
     private final Bundle childStates;
 
+    /**
+     * Estimated parceled size of the state saved for each id, least recently saved or loaded
+     * first. Only kept under {@link #SAVE_LIMITED_CHILD}, the other policies have no budget.
+     */
+    private final LinkedHashMap<Integer, Integer> stateSizes =
+            new LinkedHashMap<>(16, 0.75f, true /* accessOrder */);
+    private int savedBytes;
+
     public ViewsStateBundle(int policy, int limit) {
+        this(policy, limit, SAVE_LIMITED_CHILD_DEFAULT_BYTES);
+    }
+
+    public ViewsStateBundle(int policy, int limit, int limitBytes) {
         savePolicy = policy;
         limitNumber = limit;
+        this.limitBytes = limitBytes;
         childStates = new Bundle();
     }
 
     public void clear() {
         childStates.clear();
+        stateSizes.clear();
+        savedBytes = 0;
     }
 
     /**
@@ -94,7 +125,21 @@ public abstract class ViewsStateBundle {
      * @see ViewsStateBundle#getSavePolicy()
      */
     public final void setSavePolicy(int savePolicy) {
+        if (savePolicy == this.savePolicy) {
+            return;
+        }
         this.savePolicy = savePolicy;
+        stateSizes.clear();
+        savedBytes = 0;
+        if (savePolicy == SAVE_LIMITED_CHILD) {
+            // states saved under the previous policy count against the budget from now on
+            for (String key : childStates.keySet()) {
+                final int size = estimateSize(key, childStates.getSparseParcelableArray(key));
+                stateSizes.put(Integer.parseInt(key), size);
+                savedBytes += size;
+            }
+            prune();
+        }
     }
 
     /**
@@ -104,6 +149,29 @@ public abstract class ViewsStateBundle {
         this.limitNumber = limitNumber;
     }
 
+    /**
+     * @return the limitBytes, only works when {@link #getSavePolicy()} is
+     *         {@link #SAVE_LIMITED_CHILD}
+     */
+    public final int getLimitBytes() {
+        return limitBytes;
+    }
+
+    /**
+     * @see ViewsStateBundle#getLimitBytes()
+     */
+    public final void setLimitBytes(int limitBytes) {
+        this.limitBytes = limitBytes;
+    }
+
+    /**
+     * @return the estimated parceled size of the saved states in bytes, only tracked when
+     *         {@link #getSavePolicy()} is {@link #SAVE_LIMITED_CHILD}
+     */
+    public final int getSavedBytes() {
+        return savedBytes;
+    }
+
     /**
      * Load view from states, it's none operation if the there is no state associated with the id.
      *
@@ -114,6 +182,8 @@ public abstract class ViewsStateBundle {
         String key = getSaveStatesKey(id);
         SparseArray<Parcelable> container = childStates.getSparseParcelableArray(key);
         if (container != null) {
+            // mark the state as recently used
+            stateSizes.get(id);
             view.restoreHierarchyState(container);
         }
     }
@@ -129,6 +199,11 @@ public abstract class ViewsStateBundle {
         SparseArray<Parcelable> container = new SparseArray<Parcelable>();
         view.saveHierarchyState(container);
         childStates.putSparseParcelableArray(key, container);
+        if (savePolicy == SAVE_LIMITED_CHILD) {
+            final int size = estimateSize(key, container);
+            final Integer oldSize = stateSizes.put(id, size);
+            savedBytes += size - (oldSize != null ? oldSize : 0);
+        }
     }
 
     /**
@@ -149,6 +224,10 @@ public abstract class ViewsStateBundle {
     public final void saveVisibleViews() {
         if (savePolicy != SAVE_NO_CHILD) {
             saveVisibleViewsUnchecked();
+            if (savePolicy == SAVE_LIMITED_CHILD) {
+                // the visible views are saved last, so older invisible ones make room for them
+                prune();
+            }
         }
     }
 
@@ -167,10 +246,9 @@ public abstract class ViewsStateBundle {
     public final void saveInvisibleView(View view, int id) {
         switch (savePolicy) {
             case SAVE_LIMITED_CHILD:
-                if (childStates.size() > limitNumber) {
-                    // TODO prune the Bundle to be under limit
-                }
-                // slip through next case section to save view
+                saveViewUnchecked(view, id);
+                prune();
+                break;
             case SAVE_ALL_CHILD:
                 saveViewUnchecked(view, id);
                 break;
@@ -179,6 +257,85 @@ public abstract class ViewsStateBundle {
         }
     }
 
+    /**
+     * Shifts the states after inserting ids, for ids that are positions in an adapter.
+     *
+     * @param start first inserted id, states of this id and higher move up by {@code count}
+     * @param count number of inserted ids
+     */
+    public final void insertIds(int start, int count) {
+        offsetIds(start, count);
+    }
+
+    /**
+     * Drops the states of removed ids and shifts the following ones, for ids that are positions
+     * in an adapter.
+     *
+     * @param start first removed id
+     * @param count number of removed ids
+     */
+    public final void removeIds(int start, int count) {
+        for (int id = start; id < start + count; id++) {
+            childStates.remove(getSaveStatesKey(id));
+            final Integer size = stateSizes.remove(id);
+            if (size != null) {
+                savedBytes -= size;
+            }
+        }
+        offsetIds(start + count, -count);
+    }
+
+    /**
+     * Drops the least recently used states until both limits are met.
+     */
+    private void prune() {
+        final Iterator<Map.Entry<Integer, Integer>> eldest = stateSizes.entrySet().iterator();
+        while (eldest.hasNext() && (stateSizes.size() > limitNumber || savedBytes > limitBytes)) {
+            final Map.Entry<Integer, Integer> entry = eldest.next();
+            childStates.remove(getSaveStatesKey(entry.getKey()));
+            savedBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    private void offsetIds(int start, int delta) {
+        if (childStates.isEmpty() || delta == 0) {
+            return;
+        }
+        final Bundle shifted = new Bundle();
+        for (String key : childStates.keySet()) {
+            final int id = Integer.parseInt(key);
+            final String newKey = id >= start ? getSaveStatesKey(id + delta) : key;
+            shifted.putSparseParcelableArray(newKey, childStates.getSparseParcelableArray(key));
+        }
+        childStates.clear();
+        childStates.putAll(shifted);
+
+        // iterating doesn't count as access, so the shifted map keeps the same order
+        final LinkedHashMap<Integer, Integer> shiftedSizes = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Integer> entry : stateSizes.entrySet()) {
+            final int id = entry.getKey();
+            shiftedSizes.put(id >= start ? id + delta : id, entry.getValue());
+        }
+        stateSizes.clear();
+        stateSizes.putAll(shiftedSizes);
+    }
+
+    /**
+     * Estimates how much a state adds to the parceled bundle, by parceling it with its key.
+     */
+    @SuppressWarnings("unchecked")
+    private static int estimateSize(String key, SparseArray<Parcelable> container) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeString(key);
+            parcel.writeSparseArray((SparseArray<Object>) (SparseArray<?>) container);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
     static String getSaveStatesKey(int id) {
         return Integer.toString(id);
     }
@@ -19,7 +19,6 @@ package com.android.tv.settings;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -131,31 +130,31 @@ public class MainFragmentTest {
         doReturn(false).when(listener).isEthernetConnected();
         doReturn(true).when(listener).isWifiEnabledOrEnabling();
         doReturn(true).when(listener).isWifiConnected();
-        doReturn(0).when(listener).getWifiSignalStrength(anyInt());
+        doReturn(0).when(listener).getWifiSignalStrength();
 
         mMainFragment.updateWifi();
 
         verify(networkPref, atLeastOnce()).setIcon(R.drawable.ic_wifi_signal_0_white);
 
-        doReturn(1).when(listener).getWifiSignalStrength(anyInt());
+        doReturn(1).when(listener).getWifiSignalStrength();
 
         mMainFragment.updateWifi();
 
         verify(networkPref, atLeastOnce()).setIcon(R.drawable.ic_wifi_signal_1_white);
 
-        doReturn(2).when(listener).getWifiSignalStrength(anyInt());
+        doReturn(2).when(listener).getWifiSignalStrength();
 
         mMainFragment.updateWifi();
 
         verify(networkPref, atLeastOnce()).setIcon(R.drawable.ic_wifi_signal_2_white);
 
-        doReturn(3).when(listener).getWifiSignalStrength(anyInt());
+        doReturn(3).when(listener).getWifiSignalStrength();
 
         mMainFragment.updateWifi();
 
         verify(networkPref, atLeastOnce()).setIcon(R.drawable.ic_wifi_signal_3_white);
 
-        doReturn(4).when(listener).getWifiSignalStrength(anyInt());
+        doReturn(4).when(listener).getWifiSignalStrength();
 
         mMainFragment.updateWifi();
 
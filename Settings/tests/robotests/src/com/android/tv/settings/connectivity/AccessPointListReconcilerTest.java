@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.connectivity;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import android.content.Context;
+import android.content.Intent;
+
+import androidx.preference.Preference;
+import androidx.preference.PreferenceManager;
+import androidx.preference.PreferenceScreen;
+
+import com.android.settingslib.wifi.AccessPoint;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class AccessPointListReconcilerTest {
+
+    private Context mContext;
+    private PreferenceScreen mGroup;
+    private AccessPointListReconciler mReconciler;
+    private int mRefreshCount;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mGroup = new PreferenceManager(mContext).createPreferenceScreen(mContext);
+        mReconciler = new AccessPointListReconciler(mContext, mGroup,
+                new AccessPointListReconciler.Binder() {
+                    @Override
+                    public Preference createPreference(AccessPoint accessPoint) {
+                        final Preference preference = new Preference(mContext);
+                        preference.setKey(accessPoint.getSsidStr());
+                        return preference;
+                    }
+
+                    @Override
+                    public void refreshPreference(Preference preference) {
+                        mRefreshCount++;
+                    }
+                });
+    }
+
+    @Test
+    public void reconcile_unchangedScanMutatesNothing() {
+        final List<AccessPoint> accessPoints = createAccessPoints("a", "b", "c");
+        assertThat(mReconciler.reconcile(accessPoints).added).isEqualTo(3);
+        final Intent intent = mGroup.findPreference("b").getIntent();
+
+        final AccessPointListReconciler.UpdateStats stats = mReconciler.reconcile(accessPoints);
+
+        assertThat(stats.getMutationCount()).isEqualTo(0);
+        assertThat(mRefreshCount).isEqualTo(0);
+        // The connect intent is reused
+        assertThat(mGroup.findPreference("b").getIntent()).isSameAs(intent);
+    }
+
+    @Test
+    public void reconcile_levelChangeRebindsOnlyThatRow() {
+        final List<AccessPoint> accessPoints = createAccessPoints("a", "b", "c");
+        mReconciler.reconcile(accessPoints);
+
+        doReturn(4).when(accessPoints.get(1)).getLevel();
+        final AccessPointListReconciler.UpdateStats stats = mReconciler.reconcile(accessPoints);
+
+        assertThat(stats.rebound).isEqualTo(1);
+        assertThat(stats.getMutationCount()).isEqualTo(1);
+        assertThat(mRefreshCount).isEqualTo(1);
+    }
+
+    @Test
+    public void reconcile_activeNetworkOpensDetails() {
+        final List<AccessPoint> accessPoints = createAccessPoints("a", "b");
+        mReconciler.reconcile(accessPoints);
+
+        doReturn(true).when(accessPoints.get(1)).isActive();
+        mReconciler.reconcile(accessPoints);
+
+        final Preference preference = mGroup.findPreference("b");
+        assertThat(preference.getFragment()).isEqualTo(WifiDetailsFragment.class.getName());
+        assertThat(preference.getIntent()).isNull();
+    }
+
+    @Test
+    public void reconcile_reorderIsRateLimited() {
+        final List<AccessPoint> accessPoints = createAccessPoints("a", "b", "c");
+        mReconciler.reconcile(accessPoints);
+
+        // The first reorder goes through
+        accessPoints.add(0, accessPoints.remove(2));
+        AccessPointListReconciler.UpdateStats stats = mReconciler.reconcile(accessPoints);
+        assertThat(stats.reorderDeferred).isFalse();
+        assertThat(getKeysInOrder()).containsExactly("c", "a", "b").inOrder();
+
+        // The next one has to wait
+        accessPoints.add(0, accessPoints.remove(2));
+        stats = mReconciler.reconcile(accessPoints);
+        assertThat(stats.reorderDeferred).isTrue();
+        assertThat(stats.moved).isEqualTo(0);
+        assertThat(mReconciler.getReorderDelay()).isGreaterThan(0L);
+
+        ShadowSystemClock.sleep(AccessPointListReconciler.MIN_REORDER_INTERVAL_MS);
+        stats = mReconciler.reconcile(accessPoints);
+        assertThat(stats.reorderDeferred).isFalse();
+        assertThat(getKeysInOrder()).containsExactly("b", "c", "a").inOrder();
+    }
+
+    @Test
+    public void reconcile_removesMissingNetworks() {
+        final List<AccessPoint> accessPoints = createAccessPoints("a", "b", "c");
+        mReconciler.reconcile(accessPoints);
+
+        accessPoints.remove(1);
+        final AccessPointListReconciler.UpdateStats stats = mReconciler.reconcile(accessPoints);
+
+        assertThat(stats.removed).isEqualTo(1);
+        assertThat(mGroup.findPreference("b")).isNull();
+        assertThat(mGroup.getPreferenceCount()).isEqualTo(2);
+    }
+
+    private List<String> getKeysInOrder() {
+        final List<Preference> preferences = new ArrayList<>();
+        for (int i = 0; i < mGroup.getPreferenceCount(); i++) {
+            preferences.add(mGroup.getPreference(i));
+        }
+        preferences.sort((lhs, rhs) -> Integer.compare(lhs.getOrder(), rhs.getOrder()));
+        final List<String> keys = new ArrayList<>(preferences.size());
+        for (final Preference preference : preferences) {
+            keys.add(preference.getKey());
+        }
+        return keys;
+    }
+
+    private static List<AccessPoint> createAccessPoints(String... ssids) {
+        final List<AccessPoint> accessPoints = new ArrayList<>(ssids.length);
+        for (final String ssid : Arrays.asList(ssids)) {
+            final AccessPoint accessPoint = mock(AccessPoint.class);
+            doReturn(ssid).when(accessPoint).getKey();
+            doReturn(ssid).when(accessPoint).getSsidStr();
+            doReturn(AccessPoint.SECURITY_PSK).when(accessPoint).getSecurity();
+            doReturn(2).when(accessPoint).getLevel();
+            accessPoints.add(accessPoint);
+        }
+        return accessPoints;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.connectivity;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.doReturn;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.EthernetManager;
+import android.net.NetworkInfo;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+
+import com.android.settingslib.wifi.WifiTracker;
+import com.android.tv.settings.R;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConnectivityListenerTest {
+
+    @Mock
+    private ConnectivityManager mConnectivityManager;
+    @Mock
+    private WifiManager mWifiManager;
+    @Mock
+    private EthernetManager mEthernetManager;
+    @Mock
+    private WifiTracker mWifiTracker;
+    @Mock
+    private NetworkInfo mNetworkInfo;
+    @Mock
+    private WifiInfo mWifiInfo;
+
+    private Context mContext;
+    private ConnectivityListener mListener;
+    private int mChangeCount;
+    /** Snapshots the listener was called with, in order */
+    private List<ConnectivitySnapshot> mSnapshots;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        mSnapshots = new ArrayList<>();
+
+        doReturn(mNetworkInfo).when(mConnectivityManager).getActiveNetworkInfo();
+        doReturn(ConnectivityManager.TYPE_WIFI).when(mNetworkInfo).getType();
+        doReturn(true).when(mNetworkInfo).isConnected();
+        doReturn(mWifiInfo).when(mWifiManager).getConnectionInfo();
+        doReturn(WifiManager.WIFI_STATE_ENABLED).when(mWifiManager).getWifiState();
+        doReturn("\"home\"").when(mWifiInfo).getSSID();
+        doReturn(-50).when(mWifiInfo).getRssi();
+        doReturn(new String[0]).when(mEthernetManager).getAvailableInterfaces();
+
+        mListener = new ConnectivityListener(mContext, () -> {
+            mChangeCount++;
+            mSnapshots.add(mListener.getSnapshot());
+        }, mConnectivityManager, mWifiManager, mEthernetManager, mWifiTracker, Runnable::run);
+        mListener.onStart();
+        ShadowLooper.idleMainLooper();
+    }
+
+    @After
+    public void tearDown() {
+        mListener.onStop();
+    }
+
+    @Test
+    public void testStart_deliversFirstSnapshot() {
+        assertThat(mChangeCount).isEqualTo(1);
+        final ConnectivitySnapshot snapshot = mListener.getSnapshot();
+        assertThat(snapshot.networkType).isEqualTo(ConnectivityManager.TYPE_WIFI);
+        assertThat(snapshot.connected).isTrue();
+        assertThat(snapshot.ssid).isEqualTo("home");
+        assertThat(snapshot.signalLevel).isEqualTo(ConnectivityListener.WIFI_SIGNAL_LEVELS - 1);
+        assertThat(snapshot.wifiEnabled).isTrue();
+        assertThat(mListener.isWifiConnected()).isTrue();
+    }
+
+    @Test
+    public void testRssiStorm_callbacksBoundedByLevelChanges() {
+        mChangeCount = 0;
+        final int detailsLevels = getWifiDetailsSignalLevels();
+        int levelChanges = 0;
+        int lastLevel = mListener.getSnapshot().signalLevel;
+        int lastDetailsLevel = mListener.getSnapshot().wifiDetailsSignalLevel;
+        // Sweep down and back up a few times, one dBm at a time
+        for (int pass = 0; pass < 4; pass++) {
+            for (int i = 0; i <= 60; i++) {
+                final int rssi = pass % 2 == 0 ? -40 - i : -100 + i;
+                final int level = WifiManager.calculateSignalLevel(rssi,
+                        ConnectivityListener.WIFI_SIGNAL_LEVELS);
+                final int detailsLevel = WifiManager.calculateSignalLevel(rssi, detailsLevels);
+                if (level != lastLevel || detailsLevel != lastDetailsLevel) {
+                    levelChanges++;
+                    lastLevel = level;
+                    lastDetailsLevel = detailsLevel;
+                }
+                doReturn(rssi).when(mWifiInfo).getRssi();
+                sendRssiChanged(rssi);
+                ShadowLooper.idleMainLooper();
+            }
+        }
+
+        assertThat(levelChanges).isGreaterThan(0);
+        assertThat(mChangeCount).isAtMost(levelChanges);
+        assertThat(mListener.getSnapshot().signalLevel).isEqualTo(lastLevel);
+        assertThat(mListener.getSnapshot().wifiDetailsSignalLevel).isEqualTo(lastDetailsLevel);
+        // Every callback carried a visible change
+        for (int i = 1; i < mSnapshots.size(); i++) {
+            assertThat(mSnapshots.get(i)).isNotEqualTo(mSnapshots.get(i - 1));
+        }
+    }
+
+    @Test
+    public void testWifiSignalStrength_readsSnapshot() {
+        assertThat(mListener.getWifiSignalStrength())
+                .isEqualTo(mListener.getSnapshot().signalLevel);
+        assertThat(mListener.getWifiDetailsSignalStrength())
+                .isEqualTo(mListener.getSnapshot().wifiDetailsSignalLevel);
+
+        // A change that hasn't been delivered yet isn't visible
+        doReturn(-100).when(mWifiInfo).getRssi();
+        assertThat(mListener.getWifiSignalStrength())
+                .isEqualTo(ConnectivityListener.WIFI_SIGNAL_LEVELS - 1);
+        assertThat(mListener.getWifiDetailsSignalStrength())
+                .isEqualTo(getWifiDetailsSignalLevels() - 1);
+
+        sendRssiChanged(-100);
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mListener.getWifiSignalStrength()).isEqualTo(0);
+        assertThat(mListener.getWifiDetailsSignalStrength()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRssiStorm_sameLevelCallsNothing() {
+        mChangeCount = 0;
+        for (int i = 0; i < 200; i++) {
+            // Jitter within the top level
+            final int rssi = -45 - i % 5;
+            doReturn(rssi).when(mWifiInfo).getRssi();
+            sendRssiChanged(rssi);
+        }
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mChangeCount).isEqualTo(0);
+    }
+
+    @Test
+    public void testVisibleChange_callsListener() {
+        mChangeCount = 0;
+        doReturn("\"guest\"").when(mWifiInfo).getSSID();
+
+        sendRssiChanged(-50);
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mChangeCount).isEqualTo(1);
+        assertThat(mListener.getSnapshot().ssid).isEqualTo("guest");
+    }
+
+    @Test
+    public void testDetailsSignalLevelChange_callsListener() {
+        final int detailsLevels = getWifiDetailsSignalLevels();
+        // Find a reading that moves the details screen's level but not the main screen's
+        int rssi = -50;
+        while (rssi > -100 && (WifiManager.calculateSignalLevel(rssi, detailsLevels)
+                == WifiManager.calculateSignalLevel(rssi - 1, detailsLevels)
+                || WifiManager.calculateSignalLevel(rssi, ConnectivityListener.WIFI_SIGNAL_LEVELS)
+                != WifiManager.calculateSignalLevel(rssi - 1,
+                        ConnectivityListener.WIFI_SIGNAL_LEVELS))) {
+            rssi--;
+        }
+        doReturn(rssi).when(mWifiInfo).getRssi();
+        sendRssiChanged(rssi);
+        ShadowLooper.idleMainLooper();
+        mChangeCount = 0;
+
+        doReturn(rssi - 1).when(mWifiInfo).getRssi();
+        sendRssiChanged(rssi - 1);
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mChangeCount).isEqualTo(1);
+        assertThat(mListener.getSnapshot().wifiDetailsSignalLevel)
+                .isEqualTo(WifiManager.calculateSignalLevel(rssi - 1, detailsLevels));
+    }
+
+    @Test
+    public void testWifiAddressChange_callsListener() {
+        mChangeCount = 0;
+        // 192.168.1.2, in network byte order
+        doReturn(0x0201a8c0).when(mWifiInfo).getIpAddress();
+
+        mListener.onConnectedChanged();
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mChangeCount).isEqualTo(1);
+        assertThat(mListener.getWifiIpAddress()).isEqualTo("192.168.1.2");
+
+        doReturn("02:00:00:00:00:01").when(mWifiInfo).getMacAddress();
+        mListener.onConnectedChanged();
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mChangeCount).isEqualTo(2);
+        assertThat(mListener.getWifiMacAddress()).isEqualTo("02:00:00:00:00:01");
+    }
+
+    @Test
+    public void testStop_dropsLateChanges() {
+        mChangeCount = 0;
+        mListener.onStop();
+        doReturn(ConnectivityManager.TYPE_ETHERNET).when(mNetworkInfo).getType();
+
+        mListener.onConnectedChanged();
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mChangeCount).isEqualTo(0);
+        assertThat(mListener.isWifiConnected()).isTrue();
+        mListener.onStart();
+    }
+
+    @Test
+    public void testSnapshotEquality() {
+        final ConnectivitySnapshot.Builder builder = new ConnectivitySnapshot.Builder();
+        builder.networkType = ConnectivityManager.TYPE_ETHERNET;
+        builder.connected = true;
+        builder.ethernetAvailable = true;
+        builder.ethernetIpAddress = "192.168.1.2";
+        final ConnectivitySnapshot first = builder.build();
+        final ConnectivitySnapshot second = builder.build();
+
+        assertThat(first).isEqualTo(second);
+        assertThat(first.hashCode()).isEqualTo(second.hashCode());
+
+        builder.ethernetIpAddress = "192.168.1.3";
+        assertThat(builder.build()).isNotEqualTo(first);
+        assertThat(ConnectivitySnapshot.EMPTY).isNotEqualTo(first);
+    }
+
+    private int getWifiDetailsSignalLevels() {
+        return mContext.getResources().getStringArray(R.array.wifi_signal_strength).length;
+    }
+
+    private void sendRssiChanged(int rssi) {
+        final Intent intent = new Intent(WifiManager.RSSI_CHANGED_ACTION);
+        intent.putExtra(WifiManager.EXTRA_NEW_RSSI, rssi);
+        mContext.sendBroadcast(intent);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.connectivity;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Compares looking up the ethernet address by querying every network with reading it from
+ * {@link EthernetLinkPropertiesCache}. The connectivity manager is a mock, so the number of calls
+ * made to it stands in for the binder transactions a real lookup would make.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EthernetLinkPropertiesCacheBenchmarkTest {
+
+    static final int NET_ID = 100;
+
+    private static final int[] NETWORK_COUNTS = {1, 4, 16};
+    private static final int ITERATIONS = 100;
+
+    @Test
+    public void testScanVersusCachedRead_connectivityCalls() {
+        for (int networkCount : NETWORK_COUNTS) {
+            final ConnectivityManager connectivityManager = createConnectivityManager(networkCount);
+            final EthernetLinkPropertiesCache cache = new EthernetLinkPropertiesCache(() -> {});
+            cache.register(connectivityManager, new Handler(Looper.getMainLooper()));
+            final Network ethernet = new Network(NET_ID + networkCount - 1);
+            cache.onLinkPropertiesChanged(ethernet,
+                    connectivityManager.getLinkProperties(ethernet));
+            final String expected = cache.getIpAddress();
+            assertThat(expected).isNotNull();
+
+            clearInvocations(connectivityManager);
+            repeat(() -> EthernetLinkPropertiesCache.scanIpAddress(connectivityManager),
+                    expected);
+            final int scanCalls = mockingDetails(connectivityManager).getInvocations().size()
+                    / ITERATIONS;
+
+            clearInvocations(connectivityManager);
+            repeat(cache::getIpAddress, expected);
+            final int cachedCalls = mockingDetails(connectivityManager).getInvocations().size();
+
+            // getAllNetworks, then getNetworkInfo for each network and getLinkProperties for the
+            // ethernet one, which is listed last
+            assertThat(scanCalls).isEqualTo(networkCount + 2);
+            assertThat(cachedCalls).isEqualTo(0);
+        }
+    }
+
+    private interface Lookup {
+        String get();
+    }
+
+    private static void repeat(Lookup lookup, String expected) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertThat(lookup.get()).isEqualTo(expected);
+        }
+    }
+
+    /**
+     * Creates a connectivity manager with {@code networkCount} networks, of which only the last
+     * one is an ethernet network.
+     */
+    static ConnectivityManager createConnectivityManager(int networkCount) {
+        final ConnectivityManager connectivityManager = mock(ConnectivityManager.class);
+        final Network[] networks = new Network[networkCount];
+        for (int i = 0; i < networkCount; i++) {
+            networks[i] = new Network(NET_ID + i);
+            final boolean isEthernet = i == networkCount - 1;
+            final NetworkInfo networkInfo = mock(NetworkInfo.class);
+            doReturn(isEthernet ? ConnectivityManager.TYPE_ETHERNET : ConnectivityManager.TYPE_WIFI)
+                    .when(networkInfo).getType();
+            doReturn(networkInfo).when(connectivityManager).getNetworkInfo(networks[i]);
+            doReturn(EthernetLinkPropertiesCacheTest.createLinkProperties("192.168.1." + (i + 2)))
+                    .when(connectivityManager).getLinkProperties(networks[i]);
+        }
+        doReturn(networks).when(connectivityManager).getAllNetworks();
+        return connectivityManager;
+    }
+}
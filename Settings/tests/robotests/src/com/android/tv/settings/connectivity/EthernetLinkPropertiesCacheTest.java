@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.connectivity;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import android.net.ConnectivityManager;
+import android.net.LinkAddress;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkRequest;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class EthernetLinkPropertiesCacheTest {
+
+    @Mock
+    private ConnectivityManager mConnectivityManager;
+
+    private EthernetLinkPropertiesCache mCache;
+    private int mChangeCount;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mCache = new EthernetLinkPropertiesCache(() -> mChangeCount++);
+        mCache.register(mConnectivityManager, new Handler(Looper.getMainLooper()));
+    }
+
+    @Test
+    public void testRegister_registersCallback() {
+        verify(mConnectivityManager).registerNetworkCallback(any(NetworkRequest.class), eq(mCache),
+                any(Handler.class));
+        assertThat(mCache.isRegistered()).isTrue();
+        assertThat(mCache.getIpAddress()).isNull();
+    }
+
+    @Test
+    public void testLinkPropertiesChanged_updatesAddress() {
+        final Network network = new Network(100);
+
+        mCache.onLinkPropertiesChanged(network, createLinkProperties("192.168.1.2"));
+        assertThat(mCache.getIpAddress()).isEqualTo("192.168.1.2");
+
+        mCache.onLinkPropertiesChanged(network,
+                createLinkProperties("192.168.1.3", "fe80::1"));
+        assertThat(mCache.getIpAddress()).isEqualTo("192.168.1.3\nfe80::1");
+        assertThat(mChangeCount).isEqualTo(2);
+    }
+
+    @Test
+    public void testLinkPropertiesChanged_sameAddressNotReported() {
+        final Network network = new Network(100);
+        mCache.onLinkPropertiesChanged(network, createLinkProperties("192.168.1.2"));
+
+        mCache.onLinkPropertiesChanged(network, createLinkProperties("192.168.1.2"));
+
+        assertThat(mChangeCount).isEqualTo(1);
+    }
+
+    @Test
+    public void testLost_fallsBackToNextNetwork() {
+        final Network first = new Network(100);
+        final Network second = new Network(101);
+        mCache.onLinkPropertiesChanged(first, createLinkProperties("192.168.1.2"));
+        mCache.onLinkPropertiesChanged(second, createLinkProperties("10.0.0.2"));
+        // An update to the first network keeps it first
+        mCache.onLinkPropertiesChanged(first, createLinkProperties("192.168.1.4"));
+        assertThat(mCache.getIpAddress()).isEqualTo("192.168.1.4");
+
+        mCache.onLost(first);
+        assertThat(mCache.getIpAddress()).isEqualTo("10.0.0.2");
+
+        mCache.onLost(second);
+        assertThat(mCache.getIpAddress()).isNull();
+    }
+
+    @Test
+    public void testNoAddresses_isNull() {
+        mCache.onLinkPropertiesChanged(new Network(100), new LinkProperties());
+
+        assertThat(mCache.getIpAddress()).isNull();
+        assertThat(mChangeCount).isEqualTo(0);
+    }
+
+    @Test
+    public void testUnregister_forgetsNetworks() {
+        mCache.onLinkPropertiesChanged(new Network(100), createLinkProperties("192.168.1.2"));
+
+        mCache.unregister(mConnectivityManager);
+
+        verify(mConnectivityManager).unregisterNetworkCallback(mCache);
+        assertThat(mCache.isRegistered()).isFalse();
+        assertThat(mCache.getIpAddress()).isNull();
+
+        // Callbacks still in flight are ignored
+        mCache.onLinkPropertiesChanged(new Network(100), createLinkProperties("192.168.1.2"));
+        assertThat(mCache.getIpAddress()).isNull();
+    }
+
+    @Test
+    public void testScan_matchesCache() {
+        final ConnectivityManager connectivityManager =
+                EthernetLinkPropertiesCacheBenchmarkTest.createConnectivityManager(4);
+        final Network ethernet = new Network(EthernetLinkPropertiesCacheBenchmarkTest.NET_ID + 3);
+        mCache.onLinkPropertiesChanged(ethernet,
+                connectivityManager.getLinkProperties(ethernet));
+
+        assertThat(EthernetLinkPropertiesCache.scanIpAddress(connectivityManager))
+                .isEqualTo(mCache.getIpAddress());
+        assertThat(EthernetLinkPropertiesCache.scanIpAddress(mock(ConnectivityManager.class)))
+                .isNull();
+    }
+
+    static LinkProperties createLinkProperties(String... addresses) {
+        final LinkProperties linkProperties = new LinkProperties();
+        for (String address : addresses) {
+            final int prefixLength = address.contains(":") ? 64 : 24;
+            linkProperties.addLinkAddress(new LinkAddress(address + "/" + prefixLength));
+        }
+        return linkProperties;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.AsyncTask;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+@RunWith(RobolectricTestRunner.class)
+public class StorageSummaryFragmentTest {
+
+    private StorageSummaryFragment mFragment;
+
+    @Before
+    public void setUp() {
+        // Keep the loads in flight
+        Robolectric.getBackgroundThreadScheduler().pause();
+        mFragment = new StorageSummaryFragment();
+    }
+
+    @Test
+    public void testLoadSnapshot_onlyOneInFlight() {
+        mFragment.loadSnapshot();
+        final AsyncTask<?, ?, ?> loader = mFragment.getSnapshotLoader();
+
+        mFragment.loadSnapshot();
+
+        assertThat(loader).isNotNull();
+        assertThat(mFragment.getSnapshotLoader()).isSameAs(loader);
+    }
+
+    @Test
+    public void testCancelledLoader_doesNotClearNewerLoader() {
+        mFragment.loadSnapshot();
+        final AsyncTask<?, ?, ?> cancelledLoader = mFragment.getSnapshotLoader();
+        mFragment.cancelSnapshotLoad();
+        mFragment.loadSnapshot();
+        final AsyncTask<?, ?, ?> newerLoader = mFragment.getSnapshotLoader();
+
+        // Delivers onCancelled to the first loader
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(cancelledLoader.isCancelled()).isTrue();
+        assertThat(newerLoader).isNotSameAs(cancelledLoader);
+        assertThat(mFragment.getSnapshotLoader()).isSameAs(newerLoader);
+
+        // So the newer one can still be cancelled when the fragment goes away
+        mFragment.cancelSnapshotLoad();
+        assertThat(newerLoader.isCancelled()).isTrue();
+        assertThat(mFragment.getSnapshotLoader()).isNull();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.apps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class AllAppsFragmentTest {
+
+    @Test
+    public void testGetUpdateDelayMs_firstUpdateIsImmediate() {
+        assertThat(AllAppsFragment.getUpdateDelayMs(-1)).isEqualTo(0);
+    }
+
+    @Test
+    public void testGetUpdateDelayMs_cheapUpdatesStillCoalesce() {
+        assertThat(AllAppsFragment.getUpdateDelayMs(0))
+                .isEqualTo(AllAppsFragment.MIN_UPDATE_DELAY_MS);
+        assertThat(AllAppsFragment.getUpdateDelayMs(1))
+                .isAtLeast(AllAppsFragment.MIN_UPDATE_DELAY_MS);
+    }
+
+    @Test
+    public void testGetUpdateDelayMs_expensiveUpdatesBackOff() {
+        final long cost = 50;
+        assertThat(AllAppsFragment.getUpdateDelayMs(cost)).isEqualTo(
+                AllAppsFragment.MIN_UPDATE_DELAY_MS
+                        + cost * AllAppsFragment.UPDATE_COST_MULTIPLIER);
+        assertThat(AllAppsFragment.getUpdateDelayMs(cost * 2))
+                .isGreaterThan(AllAppsFragment.getUpdateDelayMs(cost));
+    }
+
+    @Test
+    public void testGetUpdateDelayMs_capped() {
+        assertThat(AllAppsFragment.getUpdateDelayMs(Integer.MAX_VALUE))
+                .isEqualTo(AllAppsFragment.MAX_UPDATE_DELAY_MS);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.apps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.graphics.drawable.ColorDrawable;
+
+import androidx.annotation.NonNull;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceManager;
+import androidx.preference.PreferenceScreen;
+
+import com.android.settingslib.applications.ApplicationsState;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppListReconcilerTest {
+
+    private Context mContext;
+    private PreferenceScreen mGroup;
+    private AppListReconciler.Binder mBinder;
+    private AppListReconciler mReconciler;
+    private int mBindCount;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mGroup = new PreferenceManager(mContext).createPreferenceScreen(mContext);
+        mBinder = new AppListReconciler.Binder() {
+            @NonNull
+            @Override
+            public Preference createAppPreference() {
+                return new Preference(mContext);
+            }
+
+            @NonNull
+            @Override
+            public Preference bindPreference(@NonNull Preference preference,
+                    ApplicationsState.AppEntry entry) {
+                mBindCount++;
+                preference.setKey(entry.info.packageName);
+                preference.setTitle(entry.label);
+                preference.setSummary(entry.sizeStr);
+                return preference;
+            }
+        };
+        mReconciler = new AppListReconciler(mGroup, mBinder);
+    }
+
+    @Test
+    public void reconcile_initialListAddsEveryRow() {
+        final List<ApplicationsState.AppEntry> entries = createEntries("a", "b", "c");
+
+        assertThat(mReconciler.reconcile(entries)).isEqualTo(3);
+        assertThat(getKeysInOrder()).containsExactly("a", "b", "c").inOrder();
+    }
+
+    @Test
+    public void reconcile_unchangedListTouchesNothing() {
+        final List<ApplicationsState.AppEntry> entries = createEntries("a", "b", "c");
+        mReconciler.reconcile(entries);
+        mBindCount = 0;
+
+        assertThat(mReconciler.reconcile(entries)).isEqualTo(0);
+        assertThat(mBindCount).isEqualTo(0);
+    }
+
+    @Test
+    public void reconcile_insertAtFrontOnlyTouchesNewRow() {
+        final List<ApplicationsState.AppEntry> entries = createEntries("b", "c", "d");
+        mReconciler.reconcile(entries);
+
+        entries.add(0, createEntry("a"));
+
+        assertThat(mReconciler.reconcile(entries)).isEqualTo(1);
+        assertThat(getKeysInOrder()).containsExactly("a", "b", "c", "d").inOrder();
+    }
+
+    @Test
+    public void reconcile_removeAndMove() {
+        final List<ApplicationsState.AppEntry> entries = createEntries("a", "b", "c", "d");
+        mReconciler.reconcile(entries);
+
+        final ApplicationsState.AppEntry a = entries.remove(0);
+        final ApplicationsState.AppEntry d = entries.remove(2);
+        entries.add(0, d);
+
+        // "a" removed, "d" moved
+        assertThat(mReconciler.reconcile(entries)).isEqualTo(2);
+        assertThat(getKeysInOrder()).containsExactly("d", "b", "c").inOrder();
+        assertThat(mGroup.findPreference(a.info.packageName)).isNull();
+    }
+
+    @Test
+    public void reconcile_changedSizeRebindsOnlyThatRow() {
+        final List<ApplicationsState.AppEntry> entries = createEntries("a", "b", "c");
+        mReconciler.reconcile(entries);
+        mBindCount = 0;
+
+        entries.get(1).sizeStr = "42 MB";
+
+        assertThat(mReconciler.reconcile(entries)).isEqualTo(1);
+        assertThat(mBindCount).isEqualTo(1);
+        assertThat(mGroup.findPreference("b").getSummary()).isEqualTo("42 MB");
+    }
+
+    @Test
+    public void refreshRow_rebindsStaleRow() {
+        final List<ApplicationsState.AppEntry> entries = createEntries("a", "b");
+        mReconciler.reconcile(entries);
+        mBindCount = 0;
+
+        assertThat(mReconciler.refreshRow("a")).isTrue();
+        assertThat(mBindCount).isEqualTo(0);
+
+        entries.get(0).sizeStr = "1 MB";
+        assertThat(mReconciler.refreshRow("a")).isTrue();
+        assertThat(mBindCount).isEqualTo(1);
+
+        assertThat(mReconciler.refreshRow("z")).isFalse();
+    }
+
+    @Test
+    public void refreshIcons_rebindsRowsWithNewIcons() {
+        final List<ApplicationsState.AppEntry> entries = createEntries("a", "b");
+        mReconciler.reconcile(entries);
+        mBindCount = 0;
+
+        entries.get(1).icon = new ColorDrawable();
+        mReconciler.refreshIcons();
+
+        assertThat(mBindCount).isEqualTo(1);
+    }
+
+    @Test
+    public void refreshIcons_ignoredWhenIconsNotBound() {
+        mReconciler = new AppListReconciler(mGroup, mBinder, 0, false /* bindsIcons */);
+        final List<ApplicationsState.AppEntry> entries = createEntries("a", "b");
+        mReconciler.reconcile(entries);
+        mBindCount = 0;
+
+        entries.get(1).icon = new ColorDrawable();
+        mReconciler.refreshIcons();
+
+        assertThat(mBindCount).isEqualTo(0);
+        assertThat(mReconciler.reconcile(entries)).isEqualTo(0);
+    }
+
+    private List<String> getKeysInOrder() {
+        final List<Preference> preferences = new ArrayList<>();
+        for (int i = 0; i < mGroup.getPreferenceCount(); i++) {
+            preferences.add(mGroup.getPreference(i));
+        }
+        preferences.sort((lhs, rhs) -> Integer.compare(lhs.getOrder(), rhs.getOrder()));
+        final List<String> keys = new ArrayList<>(preferences.size());
+        for (final Preference preference : preferences) {
+            keys.add(preference.getKey());
+        }
+        return keys;
+    }
+
+    private static List<ApplicationsState.AppEntry> createEntries(String... packageNames) {
+        final List<ApplicationsState.AppEntry> entries = new ArrayList<>(packageNames.length);
+        for (final String packageName : Arrays.asList(packageNames)) {
+            entries.add(createEntry(packageName));
+        }
+        return entries;
+    }
+
+    private static ApplicationsState.AppEntry createEntry(String packageName) {
+        final ApplicationsState.AppEntry entry = mock(ApplicationsState.AppEntry.class);
+        entry.info = new ApplicationInfo();
+        entry.info.packageName = packageName;
+        entry.label = packageName;
+        return entry;
+    }
+}
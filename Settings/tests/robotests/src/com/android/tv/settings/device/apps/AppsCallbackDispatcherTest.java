@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.apps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+
+import com.android.settingslib.applications.ApplicationsState;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.util.ArrayList;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppsCallbackDispatcherTest {
+
+    private AppsCallbackDispatcher.Target mTarget;
+    private AppsCallbackDispatcher mDispatcher;
+
+    @Before
+    public void setUp() {
+        mTarget = mock(AppsCallbackDispatcher.Target.class);
+        mDispatcher = new AppsCallbackDispatcher(mTarget);
+    }
+
+    @Test
+    public void sizeChanges_updateRowsWithoutRebuild() {
+        when(mTarget.updatePackage(anyString())).thenReturn(true);
+
+        for (int i = 0; i < 100; i++) {
+            mDispatcher.onPackageSizeChanged("com.example.app" + i);
+        }
+
+        verify(mTarget, never()).rebuild();
+        assertThat(mDispatcher.getRowUpdates()).isEqualTo(100);
+        assertThat(mDispatcher.getRebuildsRequested()).isEqualTo(0);
+    }
+
+    @Test
+    public void unhandledSizeChange_fallsBackToRebuild() {
+        when(mTarget.updatePackage(anyString())).thenReturn(false);
+
+        mDispatcher.onPackageSizeChanged("com.example.app");
+
+        verify(mTarget).rebuild();
+        assertThat(mDispatcher.getRebuildsExecuted()).isEqualTo(1);
+    }
+
+    @Test
+    public void rebuildStorm_collapsesToOneInFlightAndOnePending() {
+        when(mTarget.rebuild()).thenReturn(true);
+
+        for (int i = 0; i < 50; i++) {
+            mDispatcher.onPackageListChanged();
+        }
+        verify(mTarget, times(1)).rebuild();
+
+        mDispatcher.onRebuildComplete(new ArrayList<ApplicationsState.AppEntry>());
+        verify(mTarget, times(2)).rebuild();
+
+        mDispatcher.onRebuildComplete(new ArrayList<ApplicationsState.AppEntry>());
+        verify(mTarget, times(2)).rebuild();
+
+        assertThat(mDispatcher.getRebuildsRequested()).isEqualTo(50);
+        assertThat(mDispatcher.getRebuildsExecuted()).isEqualTo(2);
+    }
+
+    @Test
+    public void synchronousRebuild_isNotLeftInFlight() {
+        when(mTarget.rebuild()).thenReturn(false);
+
+        mDispatcher.onLoadEntriesCompleted();
+        mDispatcher.onAllSizesComputed();
+
+        verify(mTarget, times(2)).rebuild();
+    }
+
+    @Test
+    public void slowRebuild_staysInFlightUntilComplete() {
+        when(mTarget.rebuild()).thenReturn(true);
+
+        mDispatcher.onPackageListChanged();
+        // However long the rebuild takes, duplicates are held back until it completes
+        ShadowSystemClock.sleep(60 * 1000);
+        mDispatcher.onPackageListChanged();
+        mDispatcher.onPackageListChanged();
+
+        verify(mTarget, times(1)).rebuild();
+
+        mDispatcher.onRebuildComplete(new ArrayList<ApplicationsState.AppEntry>());
+
+        verify(mTarget, times(2)).rebuild();
+    }
+
+    @Test
+    public void pausedSession_dropsRebuildInFlight() {
+        when(mTarget.rebuild()).thenReturn(true);
+
+        mDispatcher.onPackageListChanged();
+        mDispatcher.onPackageListChanged();
+        mDispatcher.onSessionPaused();
+
+        // The pending rebuild was dropped along with the one in flight
+        verify(mTarget, times(1)).rebuild();
+
+        mDispatcher.onLoadEntriesCompleted();
+
+        verify(mTarget, times(2)).rebuild();
+    }
+
+    @Test
+    public void lifecyclePause_dropsRebuildInFlight() {
+        when(mTarget.rebuild()).thenReturn(true);
+        final LifecycleOwner owner = mock(LifecycleOwner.class);
+        final LifecycleRegistry lifecycle = new LifecycleRegistry(owner);
+        lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_RESUME);
+        final AppsCallbackDispatcher dispatcher = new AppsCallbackDispatcher(mTarget, lifecycle);
+
+        dispatcher.onPackageListChanged();
+        lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_PAUSE);
+        dispatcher.onPackageListChanged();
+
+        verify(mTarget, times(2)).rebuild();
+    }
+}
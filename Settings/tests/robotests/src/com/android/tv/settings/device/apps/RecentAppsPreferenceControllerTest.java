@@ -19,6 +19,7 @@ package com.android.tv.settings.device.apps;
 import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
@@ -33,6 +34,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.app.Application;
+import android.app.Fragment;
 import android.app.usage.UsageStats;
 import android.app.usage.UsageStatsManager;
 import android.content.Context;
@@ -60,9 +62,11 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
 import org.robolectric.util.ReflectionHelpers;
 
 import java.util.ArrayList;
@@ -130,7 +134,7 @@ public class RecentAppsPreferenceControllerTest {
     @Test
     @Config(qualifiers = "mcc999")
     public void display_shouldNotShowRecents_showAllAppsPreference() {
-        mController.displayPreference(mScreen);
+        displayAndLoad(mController);
 
         verify(mCategory, never()).addPreference(any(Preference.class));
     }
@@ -166,7 +170,7 @@ public class RecentAppsPreferenceControllerTest {
             .thenReturn(stats);
         mAppEntry.info = mApplicationInfo;
 
-        mController.displayPreference(mScreen);
+        displayAndLoad(mController);
 
         // Only add stat1. stat2 is skipped because of the package name, stat3 skipped because
         // it's invalid app.
@@ -207,7 +211,7 @@ public class RecentAppsPreferenceControllerTest {
         ReflectionHelpers.setStaticField(AppUtils.class, "sInstantAppDataProvider",
                 (InstantAppDataProvider) (ApplicationInfo info) -> info == stat2Entry.info);
 
-        mController.displayPreference(mScreen);
+        displayAndLoad(mController);
 
         ArgumentCaptor<Preference> prefCaptor = ArgumentCaptor.forClass(Preference.class);
         verify(mCategory, times(2)).addPreference(prefCaptor.capture());
@@ -240,7 +244,7 @@ public class RecentAppsPreferenceControllerTest {
                 .thenReturn(stats);
 
         // We should not crash here.
-        mController.displayPreference(mScreen);
+        displayAndLoad(mController);
     }
 
     @Test
@@ -266,7 +270,7 @@ public class RecentAppsPreferenceControllerTest {
         when(mUsageStatsManager.queryUsageStats(anyInt(), anyLong(), anyLong()))
             .thenReturn(stats);
 
-        mController.displayPreference(mScreen);
+        displayAndLoad(mController);
 
         verify(mCategory, never()).addPreference(any(Preference.class));
     }
@@ -287,11 +291,82 @@ public class RecentAppsPreferenceControllerTest {
             .thenReturn(stats);
         mAppEntry.info = mApplicationInfo;
 
-        mController.displayPreference(mScreen);
+        displayAndLoad(mController);
 
         verify(mCategory).addPreference(argThat(summaryMatches("0 minutes ago")));
     }
 
+    @Test
+    public void reloadData_doesNotLookUpAppEntries() {
+        final UsageStats stat1 = new UsageStats();
+        stat1.mLastTimeUsed = System.currentTimeMillis();
+        stat1.mPackageName = "pkg.class";
+        final List<UsageStats> stats = new ArrayList<>();
+        stats.add(stat1);
+        when(mUsageStatsManager.queryUsageStats(anyInt(), anyLong(), anyLong()))
+                .thenReturn(stats);
+
+        // Runs on the loader's background thread, where ApplicationsState must not be used
+        mController.reloadData();
+
+        verify(mAppState, never()).getEntry(anyString(), anyInt());
+    }
+
+    @Test
+    public void reloadData_keepsOnlyMostRecentCandidates() {
+        final long now = System.currentTimeMillis();
+        final List<UsageStats> stats = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            final UsageStats stat = new UsageStats();
+            // Out of order, so that the heap has to sort them
+            stat.mLastTimeUsed = now - (i * 7 % 30) * 1000;
+            stat.mPackageName = "pkg" + (i * 7 % 30);
+            stats.add(stat);
+        }
+        when(mUsageStatsManager.queryUsageStats(anyInt(), anyLong(), anyLong()))
+                .thenReturn(stats);
+
+        final List<UsageStats> candidates = mController.reloadData().getCandidates();
+
+        final int candidateCount = 5 + RecentAppsPreferenceController.CANDIDATE_MARGIN;
+        assertThat(candidates).hasSize(candidateCount);
+        for (int i = 0; i < candidateCount; i++) {
+            assertThat(candidates.get(i).getPackageName()).isEqualTo("pkg" + i);
+        }
+    }
+
+    @Test
+    public void display_hostDetachedBeforeLoadCompletes_doesNotBind() {
+        final UsageStats stat1 = new UsageStats();
+        stat1.mLastTimeUsed = System.currentTimeMillis();
+        stat1.mPackageName = "pkg.class";
+        final List<UsageStats> stats = new ArrayList<>();
+        stats.add(stat1);
+
+        when(mAppState.getEntry(stat1.mPackageName, UserHandle.myUserId()))
+            .thenReturn(mAppEntry);
+        when(mPackageManager.resolveActivity(any(Intent.class), anyInt()))
+            .thenReturn(new ResolveInfo());
+        when(mUsageStatsManager.queryUsageStats(anyInt(), anyLong(), anyLong()))
+            .thenReturn(stats);
+        mAppEntry.info = mApplicationInfo;
+        final Fragment host = mock(Fragment.class);
+        when(host.isAdded()).thenReturn(false);
+        mController = new RecentAppsPreferenceController(mContext, mAppState, host);
+
+        displayAndLoad(mController);
+
+        verify(mCategory, never()).addPreference(any(Preference.class));
+        verify(mCategory, never()).setVisible(anyBoolean());
+    }
+
+    private void displayAndLoad(RecentAppsPreferenceController controller) {
+        controller.displayPreference(mScreen);
+        // Run the usage stats query, then bind its result on the main thread
+        Robolectric.flushBackgroundThreadScheduler();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
     private static ArgumentMatcher<Preference> summaryMatches(String expected) {
         return preference -> TextUtils.equals(expected, preference.getSummary());
     }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.apps.specialaccess;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.app.AppOpsManager;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.IPackageManager;
+import android.content.pm.PackageManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(RobolectricTestRunner.class)
+public class PermissionStateCacheTest {
+
+    private static final String PERMISSION = "android.permission.TEST";
+    private static final int OP = 42;
+    private static final String PACKAGE = "com.example.app";
+    private static final int UID = 10042;
+
+    @Mock
+    private Context mContext;
+    @Mock
+    private PackageManager mPackageManager;
+    @Mock
+    private IPackageManager mIPackageManager;
+    @Mock
+    private AppOpsManager mAppOpsManager;
+
+    private final List<Runnable> mPrefetchTasks = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        doReturn(mContext).when(mContext).getApplicationContext();
+        doReturn(mPackageManager).when(mContext).getPackageManager();
+        final ApplicationInfo app = new ApplicationInfo();
+        app.packageName = PACKAGE;
+        app.uid = UID;
+        doReturn(Collections.singletonList(app)).when(mPackageManager)
+                .getInstalledApplications(0);
+        doReturn(new String[] {PACKAGE}).when(mIPackageManager)
+                .getAppOpPermissionPackages(PERMISSION);
+        doReturn(PackageManager.PERMISSION_DENIED).when(mIPackageManager)
+                .checkUidPermission(PERMISSION, UID);
+        doReturn(AppOpsManager.MODE_ALLOWED).when(mAppOpsManager)
+                .checkOpNoThrow(OP, UID, PACKAGE);
+    }
+
+    @Test
+    public void testGetAppOpMode_cachedUntilInvalidated() {
+        final PermissionStateCache cache = createCache(null);
+
+        assertThat(cache.getAppOpMode(PACKAGE, UID)).isEqualTo(AppOpsManager.MODE_ALLOWED);
+        assertThat(cache.getAppOpMode(PACKAGE, UID)).isEqualTo(AppOpsManager.MODE_ALLOWED);
+        verify(mAppOpsManager, times(1)).checkOpNoThrow(OP, UID, PACKAGE);
+
+        doReturn(AppOpsManager.MODE_ERRORED).when(mAppOpsManager)
+                .checkOpNoThrow(OP, UID, PACKAGE);
+        cache.invalidate(PACKAGE);
+
+        assertThat(cache.getAppOpMode(PACKAGE, UID)).isEqualTo(AppOpsManager.MODE_ERRORED);
+        verify(mAppOpsManager, times(2)).checkOpNoThrow(OP, UID, PACKAGE);
+    }
+
+    @Test
+    public void testPrefetch_fillsCache() throws Exception {
+        final PermissionStateCache cache = createCache(PERMISSION);
+
+        cache.prefetch();
+        runPrefetchTasks();
+        final ManageAppOp.PermissionState state = cache.getPermissionState(PACKAGE, UID);
+
+        assertThat(state.permissionRequested).isTrue();
+        assertThat(state.permissionGranted).isFalse();
+        assertThat(state.appOpMode).isEqualTo(AppOpsManager.MODE_ALLOWED);
+        verify(mIPackageManager, times(1)).getAppOpPermissionPackages(PERMISSION);
+        verify(mIPackageManager, times(1)).checkUidPermission(PERMISSION, UID);
+        verify(mAppOpsManager, times(1)).checkOpNoThrow(OP, UID, PACKAGE);
+    }
+
+    @Test
+    public void testPrefetch_modeChangedWhileInFlightIsNotCached() {
+        final PermissionStateCache cache = createCache(null);
+        // The mode is toggled while the prefetch is in the middle of reading the old one
+        final AtomicBoolean toggled = new AtomicBoolean();
+        doAnswer(invocation -> {
+            if (toggled.getAndSet(true)) {
+                return AppOpsManager.MODE_ERRORED;
+            }
+            cache.invalidate(PACKAGE);
+            return AppOpsManager.MODE_ALLOWED;
+        }).when(mAppOpsManager).checkOpNoThrow(OP, UID, PACKAGE);
+
+        cache.prefetch();
+        runPrefetchTasks();
+
+        assertThat(cache.getAppOpMode(PACKAGE, UID)).isEqualTo(AppOpsManager.MODE_ERRORED);
+    }
+
+    @Test
+    public void testPrefetch_permissionStateChangedWhileInFlightIsNotCached() {
+        final PermissionStateCache cache = createCache(PERMISSION);
+        final AtomicBoolean toggled = new AtomicBoolean();
+        doAnswer(invocation -> {
+            if (toggled.getAndSet(true)) {
+                return AppOpsManager.MODE_ERRORED;
+            }
+            cache.invalidate(PACKAGE);
+            return AppOpsManager.MODE_ALLOWED;
+        }).when(mAppOpsManager).checkOpNoThrow(OP, UID, PACKAGE);
+
+        cache.prefetch();
+        runPrefetchTasks();
+
+        assertThat(cache.getPermissionState(PACKAGE, UID).appOpMode)
+                .isEqualTo(AppOpsManager.MODE_ERRORED);
+    }
+
+    @Test
+    public void testPrefetch_permissionPackagesChangedWhileInFlightAreNotCached()
+            throws Exception {
+        final PermissionStateCache cache = createCache(PERMISSION);
+        // A package update invalidates everything while the old package set is being read
+        final AtomicBoolean updated = new AtomicBoolean();
+        doAnswer(invocation -> {
+            if (updated.getAndSet(true)) {
+                return new String[0];
+            }
+            cache.invalidateAll();
+            return new String[] {PACKAGE};
+        }).when(mIPackageManager).getAppOpPermissionPackages(PERMISSION);
+
+        cache.prefetch();
+        runPrefetchTasks();
+
+        assertThat(cache.getPermissionState(PACKAGE, UID).permissionRequested).isFalse();
+    }
+
+    @Test
+    public void testInvalidateAll_dropsEverything() throws Exception {
+        final PermissionStateCache cache = createCache(PERMISSION);
+        cache.getPermissionState(PACKAGE, UID);
+
+        cache.invalidateAll();
+        cache.getPermissionState(PACKAGE, UID);
+
+        verify(mIPackageManager, times(2)).getAppOpPermissionPackages(anyString());
+        verify(mIPackageManager, times(2)).checkUidPermission(anyString(), anyInt());
+        verify(mAppOpsManager, times(2)).checkOpNoThrow(OP, UID, PACKAGE);
+    }
+
+    private PermissionStateCache createCache(String permission) {
+        return new PermissionStateCache(mContext, mIPackageManager, mAppOpsManager, permission,
+                OP, null, mPrefetchTasks::add);
+    }
+
+    private void runPrefetchTasks() {
+        for (final Runnable task : mPrefetchTasks) {
+            task.run();
+        }
+        mPrefetchTasks.clear();
+    }
+}
@@ -26,6 +26,7 @@ import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import android.content.Intent;
 import android.os.storage.DiskInfo;
@@ -210,6 +211,80 @@ public class SettingsStorageServiceTest {
                 }));
     }
 
+    @Test
+    public void testUnmount_success_whenVolumeReportsUnmounted() {
+        final VolumeInfo volumeInfo = mock(VolumeInfo.class);
+        doReturn("jkl;").when(volumeInfo).getId();
+        // Mounted when looked up, then unmounted once the unmount call returns
+        when(volumeInfo.isMountedReadable()).thenReturn(true, false);
+        doReturn(volumeInfo).when(mMockStorageManager).findVolumeById("jkl;");
+
+        final Intent unmountIntent = new Intent(SettingsStorageService.ACTION_UNMOUNT);
+        unmountIntent.putExtra(VolumeInfo.EXTRA_VOLUME_ID, "jkl;");
+
+        mSettingsStorageServiceImplSpy.onHandleIntent(unmountIntent);
+
+        verify(mMockStorageManager).unmount("jkl;");
+        verify(mMockStorageManager).unregisterListener(any());
+        verify(mSettingsStorageServiceImplSpy).sendLocalBroadcast(argThat(
+                new IntentMatcher(new Intent(SettingsStorageService.ACTION_UNMOUNT)){
+                    @Override
+                    public boolean matches(Intent argument) {
+                        return super.matches(argument)
+                                && TextUtils.equals(
+                                        argument.getStringExtra(VolumeInfo.EXTRA_VOLUME_ID),
+                                        "jkl;")
+                                && argument.getBooleanExtra(SettingsStorageService.EXTRA_SUCCESS,
+                                false);
+                    }
+                }));
+    }
+
+    @Test
+    public void testUnmount_success_whenVolumeNotFound() {
+        final Intent unmountIntent = new Intent(SettingsStorageService.ACTION_UNMOUNT);
+        unmountIntent.putExtra(VolumeInfo.EXTRA_VOLUME_ID, "jkl;");
+
+        mSettingsStorageServiceImplSpy.onHandleIntent(unmountIntent);
+
+        verify(mMockStorageManager, never()).unmount(anyString());
+        verify(mSettingsStorageServiceImplSpy).sendLocalBroadcast(argThat(
+                new IntentMatcher(new Intent(SettingsStorageService.ACTION_UNMOUNT)){
+                    @Override
+                    public boolean matches(Intent argument) {
+                        return super.matches(argument)
+                                && argument.getBooleanExtra(SettingsStorageService.EXTRA_SUCCESS,
+                                false);
+                    }
+                }));
+    }
+
+    @Test
+    public void testUnmount_failure() {
+        final VolumeInfo volumeInfo = mock(VolumeInfo.class);
+        doReturn("jkl;").when(volumeInfo).getId();
+        doReturn(true).when(volumeInfo).isMountedReadable();
+        doReturn(volumeInfo).when(mMockStorageManager).findVolumeById("jkl;");
+        doThrow(new RuntimeException("Expected failure")).when(mMockStorageManager)
+                .unmount(anyString());
+
+        final Intent unmountIntent = new Intent(SettingsStorageService.ACTION_UNMOUNT);
+        unmountIntent.putExtra(VolumeInfo.EXTRA_VOLUME_ID, "jkl;");
+
+        mSettingsStorageServiceImplSpy.onHandleIntent(unmountIntent);
+
+        verify(mMockStorageManager).unregisterListener(any());
+        verify(mSettingsStorageServiceImplSpy).sendLocalBroadcast(argThat(
+                new IntentMatcher(new Intent(SettingsStorageService.ACTION_UNMOUNT)){
+                    @Override
+                    public boolean matches(Intent argument) {
+                        return super.matches(argument)
+                                && !argument.getBooleanExtra(SettingsStorageService.EXTRA_SUCCESS,
+                                true);
+                    }
+                }));
+    }
+
     private static class IntentMatcher implements ArgumentMatcher<Intent> {
 
         private final Intent mIntent;
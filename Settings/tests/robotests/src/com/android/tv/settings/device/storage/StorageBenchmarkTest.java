@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.storage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class StorageBenchmarkTest {
+
+    private static final StorageBenchmark.Config TEST_CONFIG = new StorageBenchmark.Config(
+            1024 * 1024, 64 * 1024, 64, 8, TimeUnit.SECONDS.toNanos(5), false);
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testPercentile_nearestRank() {
+        final long[] samples = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 0, 0};
+
+        assertThat(StorageBenchmark.percentile(samples, 10, 50)).isEqualTo(5);
+        assertThat(StorageBenchmark.percentile(samples, 10, 90)).isEqualTo(9);
+        assertThat(StorageBenchmark.percentile(samples, 10, 99)).isEqualTo(10);
+        assertThat(StorageBenchmark.percentile(samples, 1, 99)).isEqualTo(1);
+        assertThat(StorageBenchmark.percentile(samples, 0, 50)).isEqualTo(0);
+    }
+
+    @Test
+    public void testRun_coversAllWorkloads() throws Exception {
+        final File dir = mFolder.newFolder();
+
+        final StorageBenchmark.Report report = StorageBenchmark.run("uuid", dir, TEST_CONFIG);
+
+        assertThat(report.key).isEqualTo("uuid");
+        for (int workload = 0; workload < StorageBenchmark.WORKLOAD_COUNT; workload++) {
+            final StorageBenchmark.WorkloadResult result = report.getResult(workload);
+            assertThat(result).isNotNull();
+            assertThat(result.workload).isEqualTo(workload);
+            assertThat(result.ops).isGreaterThan(0);
+            assertThat(result.p50Nanos).isAtMost(result.p90Nanos);
+            assertThat(result.p90Nanos).isAtMost(result.p99Nanos);
+            assertThat(result.p99Nanos).isAtMost(result.maxNanos);
+        }
+        assertThat(report.getResult(StorageBenchmark.WORKLOAD_SEQUENTIAL_WRITE).bytes)
+                .isEqualTo(TEST_CONFIG.fileSize);
+        assertThat(report.getResult(StorageBenchmark.WORKLOAD_SEQUENTIAL_READ).bytes)
+                .isEqualTo(TEST_CONFIG.fileSize);
+        // The test file is cleaned up
+        assertThat(dir.list()).isEmpty();
+    }
+
+    @Test
+    public void testRun_stopsWorkloadsOverBudget() throws Exception {
+        final StorageBenchmark.Config noBudget = new StorageBenchmark.Config(
+                TEST_CONFIG.fileSize, TEST_CONFIG.sequentialBlockSize, TEST_CONFIG.randomOps,
+                TEST_CONFIG.fsyncOps, -1, false);
+
+        final StorageBenchmark.Report report =
+                StorageBenchmark.run("uuid", mFolder.newFolder(), noBudget);
+
+        for (int workload = 0; workload < StorageBenchmark.WORKLOAD_COUNT; workload++) {
+            assertThat(report.getResult(workload).ops).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testIsSlowForAdoption() {
+        final StorageBenchmark.WorkloadResult[] fast =
+                new StorageBenchmark.WorkloadResult[StorageBenchmark.WORKLOAD_COUNT];
+        // 100 MB/s, 2000 IOPS and 1 ms syncs
+        fast[StorageBenchmark.WORKLOAD_SEQUENTIAL_WRITE] = createResult(
+                StorageBenchmark.WORKLOAD_SEQUENTIAL_WRITE, 100, 100 * 1024 * 1024, 1);
+        fast[StorageBenchmark.WORKLOAD_RANDOM_READ] = createResult(
+                StorageBenchmark.WORKLOAD_RANDOM_READ, 2000, 2000 * 4096, 1);
+        fast[StorageBenchmark.WORKLOAD_RANDOM_WRITE] = createResult(
+                StorageBenchmark.WORKLOAD_RANDOM_WRITE, 2000, 2000 * 4096, 1);
+        fast[StorageBenchmark.WORKLOAD_FSYNC] = createResult(
+                StorageBenchmark.WORKLOAD_FSYNC, 1000, 1000 * 4096, 1);
+        assertThat(new StorageBenchmark.Report("uuid", 0, fast).isSlowForAdoption()).isFalse();
+
+        final StorageBenchmark.WorkloadResult[] slowWrites = fast.clone();
+        slowWrites[StorageBenchmark.WORKLOAD_RANDOM_WRITE] = createResult(
+                StorageBenchmark.WORKLOAD_RANDOM_WRITE, 50, 50 * 4096, 1);
+        assertThat(new StorageBenchmark.Report("uuid", 0, slowWrites).isSlowForAdoption())
+                .isTrue();
+    }
+
+    @Test
+    public void testStore_roundTrip() throws Exception {
+        final StorageBenchmarkStore store =
+                new StorageBenchmarkStore(RuntimeEnvironment.application);
+        final StorageBenchmark.Report report =
+                StorageBenchmark.run("uuid", mFolder.newFolder(), TEST_CONFIG);
+
+        store.put(report);
+        final StorageBenchmark.Report stored = store.get("uuid");
+
+        assertThat(store.get("other")).isNull();
+        assertThat(stored).isNotNull();
+        assertThat(stored.time).isEqualTo(report.time);
+        for (int workload = 0; workload < StorageBenchmark.WORKLOAD_COUNT; workload++) {
+            final StorageBenchmark.WorkloadResult expected = report.getResult(workload);
+            final StorageBenchmark.WorkloadResult actual = stored.getResult(workload);
+            assertThat(actual.ops).isEqualTo(expected.ops);
+            assertThat(actual.bytes).isEqualTo(expected.bytes);
+            assertThat(actual.elapsedNanos).isEqualTo(expected.elapsedNanos);
+            assertThat(actual.p50Nanos).isEqualTo(expected.p50Nanos);
+            assertThat(actual.p99Nanos).isEqualTo(expected.p99Nanos);
+        }
+    }
+
+    /**
+     * @return A result of the given ops and bytes done in the given number of seconds, with
+     * 1 ms latencies
+     */
+    private static StorageBenchmark.WorkloadResult createResult(int workload, int ops,
+            long bytes, int seconds) {
+        final long millis = TimeUnit.MILLISECONDS.toNanos(1);
+        return new StorageBenchmark.WorkloadResult(workload, ops, bytes,
+                TimeUnit.SECONDS.toNanos(seconds), millis, millis, millis, millis);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.storage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class StorageJobQueueTest {
+
+    /** Executor that runs the tasks when the test says so */
+    private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+    private final List<StorageJobQueue.JobState> mFinishedJobs = new ArrayList<>();
+    private final List<String> mRunOrder = new ArrayList<>();
+    private boolean mLastIdle;
+    private StorageJobQueue mQueue;
+
+    @Before
+    public void setUp() {
+        mQueue = new StorageJobQueue(mTasks::add, (job, idle) -> {
+            mFinishedJobs.add(job);
+            mLastIdle = idle;
+        });
+    }
+
+    private StorageJobQueue.Task recordingTask(String name, boolean success) {
+        return () -> {
+            mRunOrder.add(name);
+            return success;
+        };
+    }
+
+    @Test
+    public void testSameDisk_runsInOrder() {
+        mQueue.enqueue("format", "disk1", recordingTask("first", true));
+        mQueue.enqueue("unmount", "disk1", recordingTask("second", true));
+
+        // The second job waits for the first one
+        assertThat(mTasks).hasSize(1);
+        assertThat(mQueue.getJobs().get(1).state).isEqualTo(StorageJobQueue.STATE_QUEUED);
+
+        mTasks.remove().run();
+        assertThat(mTasks).hasSize(1);
+        assertThat(mLastIdle).isFalse();
+
+        mTasks.remove().run();
+        assertThat(mRunOrder).containsExactly("first", "second").inOrder();
+        assertThat(mLastIdle).isTrue();
+        assertThat(mQueue.isIdle()).isTrue();
+    }
+
+    @Test
+    public void testDifferentDisks_runConcurrently() {
+        mQueue.enqueue("format", "disk1", recordingTask("first", true));
+        mQueue.enqueue("format", "disk2", recordingTask("second", true));
+
+        assertThat(mTasks).hasSize(2);
+    }
+
+    @Test
+    public void testJobState() {
+        final int id = mQueue.enqueue("format", "disk1", recordingTask("first", false));
+
+        List<StorageJobQueue.JobState> jobs = mQueue.getJobs();
+        assertThat(jobs).hasSize(1);
+        assertThat(jobs.get(0).id).isEqualTo(id);
+        assertThat(jobs.get(0).state).isEqualTo(StorageJobQueue.STATE_QUEUED);
+        assertThat(mQueue.isIdle()).isFalse();
+
+        mTasks.remove().run();
+
+        jobs = mQueue.getJobs();
+        assertThat(jobs).hasSize(1);
+        assertThat(jobs.get(0).state).isEqualTo(StorageJobQueue.STATE_FINISHED);
+        assertThat(jobs.get(0).success).isFalse();
+        assertThat(jobs.get(0).endTime).isAtLeast(jobs.get(0).startTime);
+        assertThat(mFinishedJobs).hasSize(1);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.device.storage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageManager;
+import android.os.storage.VolumeInfo;
+
+import com.android.settingslib.deviceinfo.StorageMeasurement;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class StorageMeasurementCacheTest {
+
+    @Rule
+    public final TemporaryFolder mVolumePath = new TemporaryFolder();
+
+    @Mock
+    private PackageManager mPackageManager;
+    @Mock
+    private VolumeInfo mVolume;
+    @Mock
+    private StorageMeasurementCache.Listener mListener;
+
+    /** Receivers of the measurements created, held weakly like StorageMeasurement does */
+    private final List<WeakReference<StorageMeasurement.MeasurementReceiver>> mReceivers =
+            new ArrayList<>();
+    private final List<StorageMeasurement> mMeasurements = new ArrayList<>();
+    /** Requests made, held like a fragment holds its request */
+    private final List<StorageMeasurementCache.Request> mRequests = new ArrayList<>();
+    private StorageMeasurementCache mCache;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        doReturn("1234-5678").when(mVolume).getFsUuid();
+        doReturn(mVolumePath.getRoot()).when(mVolume).getPath();
+        mCache = new StorageMeasurementCache(RuntimeEnvironment.application, mPackageManager,
+                (context, volume, sharedVolume) -> {
+                    final StorageMeasurement measurement = mock(StorageMeasurement.class);
+                    doAnswer(invocation -> {
+                        mReceivers.add(new WeakReference<>(invocation.getArgument(0)));
+                        return null;
+                    }).when(measurement).setReceiver(any());
+                    mMeasurements.add(measurement);
+                    return measurement;
+                });
+    }
+
+    @Test
+    public void testMeasure_firstTimeMeasuresEverything() {
+        final StorageMeasurementCache.Request request = measure(mListener);
+
+        assertThat(mMeasurements).hasSize(1);
+        verify(mMeasurements.get(0)).forceMeasure();
+        verify(mListener, never()).onMeasurementUpdated(any(), anyInt());
+
+        final StorageMeasurement.MeasurementDetails details = deliver(0);
+
+        verify(mListener).onMeasurementUpdated(details, 0);
+        request.cancel();
+    }
+
+    @Test
+    public void testMeasure_freshResultIsServedFromCache() {
+        measure(mock(StorageMeasurementCache.Listener.class));
+        final StorageMeasurement.MeasurementDetails details = deliver(0);
+
+        measure(mListener);
+
+        verify(mListener).onMeasurementUpdated(details, 0);
+        assertThat(mMeasurements).hasSize(1);
+    }
+
+    @Test
+    public void testMeasure_packageChangeMarksAppsStale() {
+        measure(mock(StorageMeasurementCache.Listener.class));
+        final StorageMeasurement.MeasurementDetails details = deliver(0);
+        doReturn(new ChangedPackages(1, Collections.singletonList("com.example.app")))
+                .when(mPackageManager).getChangedPackages(anyInt());
+
+        measure(mListener);
+
+        verify(mListener).onMeasurementUpdated(details,
+                StorageMeasurementCache.CATEGORY_APPS | StorageMeasurementCache.CATEGORY_CACHE);
+        assertThat(mMeasurements).hasSize(2);
+    }
+
+    @Test
+    public void testMeasure_oldResultIsStale() {
+        measure(mock(StorageMeasurementCache.Listener.class));
+        final StorageMeasurement.MeasurementDetails details = deliver(0);
+
+        ShadowSystemClock.sleep(60 * 60 * 1000);
+        measure(mListener);
+
+        verify(mListener).onMeasurementUpdated(details, StorageMeasurementCache.CATEGORY_ALL);
+        assertThat(mMeasurements).hasSize(2);
+    }
+
+    @Test
+    public void testInvalidateAll_dropsCachedResults() {
+        measure(mock(StorageMeasurementCache.Listener.class));
+        deliver(0);
+
+        mCache.invalidateAll();
+        measure(mListener);
+
+        verify(mListener, never()).onMeasurementUpdated(any(), anyInt());
+        assertThat(mMeasurements).hasSize(2);
+    }
+
+    @Test
+    public void testCancel_stopsMeasuringAndDelivering() {
+        final StorageMeasurementCache.Request request = measure(mListener);
+
+        request.cancel();
+        deliver(0);
+
+        verify(mMeasurements.get(0)).onDestroy();
+        verify(mListener, never()).onMeasurementUpdated(any(), anyInt());
+    }
+
+    @Test
+    public void testReceiver_survivesGarbageCollection() {
+        final StorageMeasurementCache.Request request = measure(mListener);
+
+        // The measurement only holds its receiver weakly, so it must be the request itself
+        // rather than an object only the measurement refers to
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        final StorageMeasurement.MeasurementDetails details = deliver(0);
+
+        verify(mListener, times(1)).onMeasurementUpdated(details, 0);
+        request.cancel();
+    }
+
+    private StorageMeasurementCache.Request measure(StorageMeasurementCache.Listener listener) {
+        final StorageMeasurementCache.Request request = mCache.measure(mVolume, null, listener);
+        mRequests.add(request);
+        return request;
+    }
+
+    /**
+     * Completes a measurement through the receiver it was given.
+     */
+    private StorageMeasurement.MeasurementDetails deliver(int index) {
+        final StorageMeasurement.MeasurementReceiver receiver = mReceivers.get(index).get();
+        assertThat(receiver).isNotNull();
+        final StorageMeasurement.MeasurementDetails details =
+                new StorageMeasurement.MeasurementDetails();
+        receiver.onDetailsChanged(details);
+        return details;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.system.development;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+
+import android.app.backup.IBackupManager;
+import android.content.ContentResolver;
+import android.net.wifi.WifiManager;
+import android.os.RemoteException;
+import android.os.UserManager;
+import android.provider.Settings;
+import android.view.IWindowManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class DevelopmentOptionsLoaderTest {
+
+    @Mock
+    private IWindowManager mWindowManager;
+    @Mock
+    private IBackupManager mBackupManager;
+    @Mock
+    private WifiManager mWifiManager;
+
+    /** Executor that runs the tasks when the test says so */
+    private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+    private final List<DevelopmentOptionsSnapshot> mSnapshots = new ArrayList<>();
+    private DevelopmentOptionsLoader mLoader;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        doReturn(0.5f).when(mWindowManager).getAnimationScale(0);
+        doReturn(1f).when(mWindowManager).getAnimationScale(1);
+        doReturn(2f).when(mWindowManager).getAnimationScale(2);
+        doReturn(true).when(mBackupManager).hasBackupPassword();
+        doReturn(1).when(mWifiManager).getVerboseLoggingLevel();
+
+        mLoader = new DevelopmentOptionsLoader(RuntimeEnvironment.application, mWindowManager,
+                mBackupManager, RuntimeEnvironment.application.getSystemService(UserManager.class),
+                mWifiManager, mTasks::add);
+    }
+
+    @Test
+    public void testLoad_readsSourcesInParallel() {
+        mLoader.load(false, false, mSnapshots::add);
+
+        // Every source is its own task, and nothing is delivered until they all ran
+        final int sourceCount = mTasks.size();
+        assertThat(sourceCount).isGreaterThan(1);
+        while (mTasks.size() > 1) {
+            mTasks.remove().run();
+        }
+        ShadowLooper.idleMainLooper();
+        assertThat(mSnapshots).isEmpty();
+
+        mTasks.remove().run();
+        ShadowLooper.idleMainLooper();
+        assertThat(mSnapshots).hasSize(1);
+        assertThat(mSnapshots.get(0).getLatencies()).hasSize(sourceCount);
+    }
+
+    @Test
+    public void testLoad_snapshotHasValues() {
+        final ContentResolver cr = RuntimeEnvironment.application.getContentResolver();
+        Settings.Global.putInt(cr, Settings.Global.ADB_ENABLED, 1);
+        Settings.Global.putInt(cr, Settings.Global.DEVELOPMENT_FORCE_RTL, 1);
+        Settings.System.putInt(cr, Settings.System.SHOW_TOUCHES, 1);
+        Settings.Secure.putInt(cr, Settings.Secure.ANR_SHOW_BACKGROUND, 1);
+
+        final DevelopmentOptionsSnapshot snapshot = loadAll();
+
+        assertThat(snapshot.adbEnabled).isTrue();
+        assertThat(snapshot.forceRtl).isTrue();
+        assertThat(snapshot.stayOnWhilePluggedIn).isFalse();
+        assertThat(snapshot.showTouches).isTrue();
+        assertThat(snapshot.pointerLocation).isFalse();
+        assertThat(snapshot.showAllAnrs).isTrue();
+        assertThat(snapshot.animationScales).isEqualTo(new float[] {0.5f, 1f, 2f});
+        assertThat(snapshot.hasBackupPassword).isTrue();
+        assertThat(snapshot.wifiVerboseLogging).isTrue();
+        assertThat(snapshot.getLatencies()).containsKey(
+                DevelopmentOptionsLoader.SOURCE_GLOBAL_SETTINGS);
+        assertThat(snapshot.getLatencies()).containsKey(
+                DevelopmentOptionsLoader.SOURCE_WINDOW_MANAGER);
+        assertThat(snapshot.getLatencies())
+                .doesNotContainKey(DevelopmentOptionsLoader.SOURCE_OEM_UNLOCK);
+    }
+
+    @Test
+    public void testLoad_failedSourceDoesNotBlockOthers() throws Exception {
+        doThrow(new RemoteException()).when(mWindowManager).getAnimationScale(anyInt());
+        doThrow(new RemoteException()).when(mBackupManager).hasBackupPassword();
+
+        final DevelopmentOptionsSnapshot snapshot = loadAll();
+
+        assertThat(snapshot.animationScales).isNull();
+        assertThat(snapshot.hasBackupPassword).isNull();
+        assertThat(snapshot.wifiVerboseLogging).isTrue();
+    }
+
+    private DevelopmentOptionsSnapshot loadAll() {
+        mLoader.load(false, false, mSnapshots::add);
+        while (!mTasks.isEmpty()) {
+            mTasks.remove().run();
+        }
+        ShadowLooper.idleMainLooper();
+        assertThat(mSnapshots).hasSize(1);
+        return mSnapshots.get(0);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.system.development;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.doReturn;
+
+import android.content.ContentResolver;
+import android.provider.Settings;
+import android.view.IWindowManager;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class DevelopmentProfileTest {
+
+    @Mock
+    private IWindowManager mWindowManager;
+
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        doReturn(0.5f).when(mWindowManager).getAnimationScale(ArgumentMatchers.anyInt());
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void testExport_includesSettings() throws Exception {
+        Settings.Global.putInt(mContentResolver, Settings.Global.STAY_ON_WHILE_PLUGGED_IN, 3);
+        Settings.System.putInt(mContentResolver, Settings.System.SHOW_TOUCHES, 1);
+
+        final JSONObject profile =
+                DevelopmentProfile.export(RuntimeEnvironment.application, mWindowManager);
+
+        assertThat(profile.getInt(DevelopmentProfile.KEY_VERSION))
+                .isEqualTo(DevelopmentProfile.VERSION);
+        assertThat(profile.getJSONObject(DevelopmentProfile.KEY_GLOBAL)
+                .getString(Settings.Global.STAY_ON_WHILE_PLUGGED_IN)).isEqualTo("3");
+        assertThat(profile.getJSONObject(DevelopmentProfile.KEY_SYSTEM)
+                .getString(Settings.System.SHOW_TOUCHES)).isEqualTo("1");
+        assertThat(profile.getJSONArray(DevelopmentProfile.KEY_ANIMATION_SCALES).length())
+                .isEqualTo(3);
+    }
+
+    @Test
+    public void testApply_writesKnownOptionsOnCommit() throws Exception {
+        final JSONObject profile = new JSONObject()
+                .put(DevelopmentProfile.KEY_VERSION, DevelopmentProfile.VERSION)
+                .put(DevelopmentProfile.KEY_GLOBAL, new JSONObject()
+                        .put(Settings.Global.DEVELOPMENT_FORCE_RTL, "1")
+                        .put(Settings.Global.ADB_ENABLED, "1"))
+                .put(DevelopmentProfile.KEY_SECURE, new JSONObject()
+                        .put(Settings.Secure.ANR_SHOW_BACKGROUND, "1"));
+        final DevelopmentOptionsTransaction transaction =
+                new DevelopmentOptionsTransaction(mContentResolver);
+
+        DevelopmentProfile.apply(profile, transaction);
+
+        // Nothing is written until the transaction is committed
+        assertThat(Settings.Global.getInt(mContentResolver,
+                Settings.Global.DEVELOPMENT_FORCE_RTL, 0)).isEqualTo(0);
+
+        transaction.commit();
+
+        assertThat(Settings.Global.getInt(mContentResolver,
+                Settings.Global.DEVELOPMENT_FORCE_RTL, 0)).isEqualTo(1);
+        assertThat(Settings.Secure.getInt(mContentResolver,
+                Settings.Secure.ANR_SHOW_BACKGROUND, 0)).isEqualTo(1);
+        // Options that aren't part of a profile are left alone
+        assertThat(Settings.Global.getInt(mContentResolver,
+                Settings.Global.ADB_ENABLED, 0)).isEqualTo(0);
+    }
+
+    @Test
+    public void testApply_malformedProfileQueuesNothing() throws Exception {
+        final JSONObject profile = new JSONObject()
+                .put(DevelopmentProfile.KEY_VERSION, DevelopmentProfile.VERSION)
+                .put(DevelopmentProfile.KEY_GLOBAL, new JSONObject()
+                        .put(Settings.Global.DEVELOPMENT_FORCE_RTL, "1"))
+                .put(DevelopmentProfile.KEY_SURFACE_FLINGER, new JSONObject()
+                        .put(DevelopmentProfile.KEY_SHOW_UPDATES, "maybe"));
+        final DevelopmentOptionsTransaction transaction =
+                new DevelopmentOptionsTransaction(mContentResolver);
+
+        boolean rejected = false;
+        try {
+            DevelopmentProfile.apply(profile, transaction);
+        } catch (JSONException e) {
+            rejected = true;
+        }
+        transaction.commit();
+
+        assertThat(rejected).isTrue();
+        assertThat(Settings.Global.getInt(mContentResolver,
+                Settings.Global.DEVELOPMENT_FORCE_RTL, 0)).isEqualTo(0);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testApply_rejectsNewerVersion() throws Exception {
+        final JSONObject profile = new JSONObject()
+                .put(DevelopmentProfile.KEY_VERSION, DevelopmentProfile.VERSION + 1);
+
+        DevelopmentProfile.apply(profile, new DevelopmentOptionsTransaction(mContentResolver));
+    }
+}
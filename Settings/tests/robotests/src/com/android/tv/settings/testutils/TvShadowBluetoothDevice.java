@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.tv.settings.testutils;
+
+import android.bluetooth.BluetoothClass;
+import android.bluetooth.BluetoothDevice;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowBluetoothDevice;
+
+@Implements(value = BluetoothDevice.class)
+public class TvShadowBluetoothDevice extends ShadowBluetoothDevice {
+
+    private String mDeviceName;
+    private BluetoothClass mDeviceClass;
+
+    public void setDeviceName(String name) {
+        mDeviceName = name;
+    }
+
+    public void setDeviceClass(BluetoothClass bluetoothClass) {
+        mDeviceClass = bluetoothClass;
+    }
+
+    @Implementation
+    public String getName() {
+        return mDeviceName;
+    }
+
+    @Implementation
+    public BluetoothClass getBluetoothClass() {
+        return mDeviceClass;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.users;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import android.content.pm.IPackageManager;
+import android.content.pm.PackageInfo;
+import android.content.pm.Signature;
+import android.os.RemoteException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppPackageInfoPrefetcherTest {
+
+    private static final int USER_ID = 10;
+    private static final Signature PLATFORM_SIGNATURE = new Signature(new byte[] {1});
+    private static final Signature OTHER_SIGNATURE = new Signature(new byte[] {2});
+
+    @Mock private IPackageManager mIPm;
+
+    /** Tasks handed to the executor, run inline */
+    private final List<Runnable> mExecuted = new ArrayList<>();
+    private final Executor mExecutor = runnable -> {
+        mExecuted.add(runnable);
+        runnable.run();
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        addPackage("android", PLATFORM_SIGNATURE);
+    }
+
+    @Test
+    public void testPrefetch_resolvesPackagesAndSignatures() throws Exception {
+        addPackage("com.example.platform", PLATFORM_SIGNATURE);
+        addPackage("com.example.app", OTHER_SIGNATURE);
+
+        final Map<String, AppPackageInfoPrefetcher.Result> results =
+                new AppPackageInfoPrefetcher(mIPm, mExecutor, 4).prefetch(
+                        Arrays.asList("com.example.platform", "com.example.app"), USER_ID);
+
+        assertThat(results).hasSize(2);
+        assertThat(results.get("com.example.platform").platformSigned).isTrue();
+        assertThat(results.get("com.example.app").platformSigned).isFalse();
+        assertThat(results.get("com.example.app").packageInfo.packageName)
+                .isEqualTo("com.example.app");
+    }
+
+    @Test
+    public void testPrefetch_leavesOutFailedPackages() throws Exception {
+        addPackage("com.example.app", OTHER_SIGNATURE);
+        when(mIPm.getPackageInfo(eq("com.example.dead"), anyInt(), anyInt()))
+                .thenThrow(new RemoteException());
+
+        final Map<String, AppPackageInfoPrefetcher.Result> results =
+                new AppPackageInfoPrefetcher(mIPm, mExecutor, 4).prefetch(
+                        Arrays.asList("com.example.app", "com.example.dead",
+                                "com.example.missing"), USER_ID);
+
+        assertThat(results.keySet()).containsExactly("com.example.app");
+    }
+
+    @Test
+    public void testPrefetch_boundsWorkers() throws Exception {
+        final List<String> packageNames = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final String packageName = "com.example.app" + i;
+            addPackage(packageName, OTHER_SIGNATURE);
+            packageNames.add(packageName);
+        }
+
+        final Map<String, AppPackageInfoPrefetcher.Result> results =
+                new AppPackageInfoPrefetcher(mIPm, mExecutor, 4).prefetch(packageNames, USER_ID);
+
+        assertThat(results).hasSize(200);
+        assertThat(mExecuted).hasSize(4);
+    }
+
+    @Test
+    public void testPrefetch_missingPlatformPackage() throws Exception {
+        when(mIPm.getPackageInfo(eq("android"), anyInt(), anyInt())).thenReturn(null);
+        addPackage("com.example.app", OTHER_SIGNATURE);
+
+        final Map<String, AppPackageInfoPrefetcher.Result> results =
+                new AppPackageInfoPrefetcher(mIPm, mExecutor, 4).prefetch(
+                        Arrays.asList("com.example.app"), USER_ID);
+
+        assertThat(results.get("com.example.app").platformSigned).isFalse();
+    }
+
+    private void addPackage(String packageName, Signature signature) throws RemoteException {
+        final PackageInfo pi = new PackageInfo();
+        pi.packageName = packageName;
+        pi.signatures = new Signature[] {signature};
+        when(mIPm.getPackageInfo(eq(packageName), anyInt(), anyInt())).thenReturn(pi);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.users;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class RestrictionsQueryQueueTest {
+
+    private static final int MAX_IN_FLIGHT = 3;
+    private static final long INTERVAL_MS = 50;
+
+    private RestrictionsQueryQueue mQueue;
+    /** Completion callbacks of the queries started so far, in start order */
+    private final List<Runnable> mStarted = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mQueue = new RestrictionsQueryQueue(new Handler(Looper.getMainLooper()), MAX_IN_FLIGHT,
+                INTERVAL_MS);
+    }
+
+    @Test
+    public void testEnqueue_startsAreSpacedByInterval() {
+        enqueue(2);
+
+        assertThat(mStarted).hasSize(1);
+        ShadowLooper.idleMainLooper(INTERVAL_MS - 1, TimeUnit.MILLISECONDS);
+        assertThat(mStarted).hasSize(1);
+        ShadowLooper.idleMainLooper(1, TimeUnit.MILLISECONDS);
+        assertThat(mStarted).hasSize(2);
+    }
+
+    @Test
+    public void testEnqueue_limitsQueriesInFlight() {
+        enqueue(200);
+        ShadowLooper.idleMainLooper(INTERVAL_MS * 200, TimeUnit.MILLISECONDS);
+
+        assertThat(mStarted).hasSize(MAX_IN_FLIGHT);
+        assertThat(mQueue.getInFlightCount()).isEqualTo(MAX_IN_FLIGHT);
+        assertThat(mQueue.getPendingCount()).isEqualTo(200 - MAX_IN_FLIGHT);
+    }
+
+    @Test
+    public void testCompletion_startsNextQuery() {
+        enqueue(10);
+        ShadowLooper.idleMainLooper(INTERVAL_MS * 10, TimeUnit.MILLISECONDS);
+
+        mStarted.get(0).run();
+
+        assertThat(mStarted).hasSize(MAX_IN_FLIGHT + 1);
+        assertThat(mQueue.getInFlightCount()).isEqualTo(MAX_IN_FLIGHT);
+    }
+
+    @Test
+    public void testCompletion_twiceOnlyFreesOneSlot() {
+        enqueue(10);
+        ShadowLooper.idleMainLooper(INTERVAL_MS * 10, TimeUnit.MILLISECONDS);
+
+        mStarted.get(0).run();
+        ShadowLooper.idleMainLooper(INTERVAL_MS, TimeUnit.MILLISECONDS);
+        mStarted.get(0).run();
+        ShadowLooper.idleMainLooper(INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        assertThat(mStarted).hasSize(MAX_IN_FLIGHT + 1);
+    }
+
+    @Test
+    public void testAllQueriesComplete() {
+        enqueue(20);
+        for (int completed = 0; completed < 20; completed++) {
+            ShadowLooper.idleMainLooper(INTERVAL_MS, TimeUnit.MILLISECONDS);
+            mStarted.get(completed).run();
+        }
+        ShadowLooper.idleMainLooper(INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        assertThat(mStarted).hasSize(20);
+        assertThat(mQueue.getInFlightCount()).isEqualTo(0);
+        assertThat(mQueue.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testCancel_dropsPendingAndIgnoresStaleCompletions() {
+        enqueue(10);
+        ShadowLooper.idleMainLooper(INTERVAL_MS * 10, TimeUnit.MILLISECONDS);
+        final Runnable staleCompletion = mStarted.get(0);
+
+        mQueue.cancel();
+        mStarted.clear();
+        enqueue(MAX_IN_FLIGHT);
+        ShadowLooper.idleMainLooper(INTERVAL_MS * MAX_IN_FLIGHT, TimeUnit.MILLISECONDS);
+        staleCompletion.run();
+        ShadowLooper.idleMainLooper(INTERVAL_MS * 10, TimeUnit.MILLISECONDS);
+
+        assertThat(mStarted).hasSize(MAX_IN_FLIGHT);
+        assertThat(mQueue.getInFlightCount()).isEqualTo(MAX_IN_FLIGHT);
+        assertThat(mQueue.getPendingCount()).isEqualTo(0);
+    }
+
+    private void enqueue(int count) {
+        for (int i = 0; i < count; i++) {
+            mQueue.enqueue(mStarted::add);
+        }
+    }
+}
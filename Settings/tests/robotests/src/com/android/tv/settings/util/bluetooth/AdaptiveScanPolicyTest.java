@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.util.bluetooth;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class AdaptiveScanPolicyTest {
+
+    @Test
+    public void getNextScanDelay_backsOffWhileStable() {
+        final AdaptiveScanPolicy policy = new AdaptiveScanPolicy(4000, 20000);
+
+        assertThat(policy.getNextScanDelay(false)).isEqualTo(8000);
+        assertThat(policy.getNextScanDelay(false)).isEqualTo(16000);
+        assertThat(policy.getNextScanDelay(false)).isEqualTo(20000);
+        assertThat(policy.getNextScanDelay(false)).isEqualTo(20000);
+    }
+
+    @Test
+    public void getNextScanDelay_newDevicesSpeedUp() {
+        final AdaptiveScanPolicy policy = new AdaptiveScanPolicy(4000, 20000);
+        policy.getNextScanDelay(false);
+        policy.getNextScanDelay(false);
+
+        assertThat(policy.getNextScanDelay(true)).isEqualTo(4000);
+        assertThat(policy.getNextScanDelay(false)).isEqualTo(8000);
+    }
+
+    @Test
+    public void reset_goesBackToMinimumDelay() {
+        final AdaptiveScanPolicy policy = new AdaptiveScanPolicy(4000, 20000);
+        policy.getNextScanDelay(false);
+        policy.getNextScanDelay(false);
+
+        policy.reset();
+
+        assertThat(policy.getNextScanDelay(false)).isEqualTo(8000);
+    }
+
+    @Test
+    public void getNextScanDelay_crowdedRoomNeverBelowMinimum() {
+        for (AdaptiveScanPolicy policy : new AdaptiveScanPolicy[] {
+                AdaptiveScanPolicy.createAggressive(), AdaptiveScanPolicy.createPassive()}) {
+            // New advertisers show up on every scan
+            for (int i = 0; i < 10; i++) {
+                assertThat(policy.getNextScanDelay(true))
+                        .isAtLeast(AdaptiveScanPolicy.MIN_DELAY);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsDelayBelowMinimum() {
+        new AdaptiveScanPolicy(AdaptiveScanPolicy.MIN_DELAY - 1, 20000);
+    }
+}
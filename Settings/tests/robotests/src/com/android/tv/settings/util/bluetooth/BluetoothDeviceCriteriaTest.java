@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.util.bluetooth;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothClass;
+import android.bluetooth.BluetoothDevice;
+
+import com.android.tv.settings.accessories.A2dpDeviceCriteria;
+import com.android.tv.settings.accessories.InputDeviceCriteria;
+import com.android.tv.settings.testutils.TvShadowBluetoothDevice;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadow.api.Shadow;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = TvShadowBluetoothDevice.class)
+public class BluetoothDeviceCriteriaTest {
+
+    @Test
+    public void isMatchingMacAddress_prefixList() {
+        final BluetoothDeviceCriteria criteria =
+                new BluetoothDeviceCriteria(BluetoothDeviceCriteria.GOOGLE_MAC_PATTERN);
+
+        assertThat(criteria.isMatchingMacAddress("00:1A:11:22:33:44")).isTrue();
+        assertThat(criteria.isMatchingMacAddress("f8:8f:ca:22:33:44")).isTrue();
+        assertThat(criteria.isMatchingMacAddress("00:1A:12:22:33:44")).isFalse();
+        assertThat(criteria.isMatchingMacAddress("00:1A")).isFalse();
+    }
+
+    @Test
+    public void isMatchingMacAddress_regexFallback() {
+        final BluetoothDeviceCriteria criteria = new BluetoothDeviceCriteria("^00:1[AB].*");
+
+        assertThat(criteria.isMatchingMacAddress("00:1B:11:22:33:44")).isTrue();
+        assertThat(criteria.isMatchingMacAddress("00:1C:11:22:33:44")).isFalse();
+    }
+
+    @Test
+    public void isMatchingDeviceClass_masks() {
+        final InputDeviceCriteria input = new InputDeviceCriteria();
+        final A2dpDeviceCriteria a2dp = new A2dpDeviceCriteria();
+
+        assertThat(input.isMatchingDeviceClass(BluetoothClass.Device.PERIPHERAL_KEYBOARD))
+                .isTrue();
+        assertThat(input.isMatchingDeviceClass(
+                BluetoothClass.Device.PERIPHERAL_NON_KEYBOARD_NON_POINTING)).isFalse();
+        assertThat(a2dp.isMatchingDeviceClass(BluetoothClass.Device.AUDIO_VIDEO_HEADPHONES))
+                .isTrue();
+        assertThat(a2dp.isMatchingDeviceClass(BluetoothClass.Device.AUDIO_VIDEO_UNCATEGORIZED))
+                .isTrue();
+        assertThat(a2dp.isMatchingDeviceClass(BluetoothClass.Device.AUDIO_VIDEO_MICROPHONE))
+                .isFalse();
+    }
+
+    @Test
+    public void isMatchingDevice_verdictRememberedUntilCleared() {
+        final InputDeviceCriteria criteria = new InputDeviceCriteria();
+        final BluetoothDevice device =
+                BluetoothAdapter.getDefaultAdapter().getRemoteDevice("00:1A:11:00:00:01");
+        final TvShadowBluetoothDevice shadow = Shadow.extract(device);
+        shadow.setDeviceClass(new BluetoothClass(BluetoothClass.Device.PERIPHERAL_KEYBOARD));
+
+        assertThat(criteria.isMatchingDevice(device)).isTrue();
+
+        shadow.setDeviceClass(new BluetoothClass(BluetoothClass.Device.AUDIO_VIDEO_HEADPHONES));
+        assertThat(criteria.isMatchingDevice(device)).isTrue();
+
+        criteria.forgetDevice(device.getAddress());
+        assertThat(criteria.isMatchingDevice(device)).isFalse();
+    }
+
+    @Test
+    public void isMatchingDevice_noClass() {
+        final BluetoothDevice device =
+                BluetoothAdapter.getDefaultAdapter().getRemoteDevice("00:1A:11:00:00:02");
+
+        assertThat(new BluetoothDeviceCriteria().isMatchingDevice(device)).isFalse();
+    }
+
+    @Test
+    public void isMatchingDevice_noClassVerdictNotRemembered() {
+        final InputDeviceCriteria criteria = new InputDeviceCriteria();
+        final BluetoothDevice device =
+                BluetoothAdapter.getDefaultAdapter().getRemoteDevice("00:1A:11:00:00:03");
+        final TvShadowBluetoothDevice shadow = Shadow.extract(device);
+
+        assertThat(criteria.isMatchingDevice(device)).isFalse();
+
+        // The class becomes known later on, e.g. after the SDP query completes
+        shadow.setDeviceClass(new BluetoothClass(BluetoothClass.Device.PERIPHERAL_KEYBOARD));
+        assertThat(criteria.isMatchingDevice(device)).isTrue();
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.util.bluetooth;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothClass;
+import android.bluetooth.BluetoothDevice;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.tv.settings.testutils.TvShadowBluetoothDevice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadow.api.Shadow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Replays a synthetic discovery stream through {@link BluetoothScanner.Receiver}, as seen in a
+ * crowded room.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = TvShadowBluetoothDevice.class)
+public class BluetoothScannerTest {
+    private static final String TAG = "BluetoothScannerTest";
+
+    private static final int DEVICE_COUNT = 1000;
+
+    private BluetoothScanner.Receiver mReceiver;
+    private CountingListener mListener;
+    private List<Intent> mFoundIntents;
+
+    @Before
+    public void setUp() {
+        mReceiver = new BluetoothScanner.Receiver(RuntimeEnvironment.application);
+        mListener = new CountingListener();
+        mReceiver.startListening(mListener,
+                Collections.singletonList(new BluetoothDeviceCriteria()));
+        mFoundIntents = new ArrayList<>(DEVICE_COUNT);
+        for (int i = 0; i < DEVICE_COUNT; i++) {
+            mFoundIntents.add(createFoundIntent(createDevice(i, "Remote " + i)));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mReceiver.stopListening(mListener);
+    }
+
+    @Test
+    public void replay_addsEachDeviceOnce() {
+        replay(mFoundIntents);
+        replay(mFoundIntents);
+
+        assertThat(mListener.mAdded).isEqualTo(DEVICE_COUNT);
+        assertThat(mListener.mChanged).isEqualTo(0);
+        assertThat(mReceiver.getPresentDeviceCount()).isEqualTo(DEVICE_COUNT);
+    }
+
+    @Test
+    public void replay_renamedDeviceIsChanged() {
+        replay(mFoundIntents);
+
+        mReceiver.onReceive(RuntimeEnvironment.application,
+                createFoundIntent(createDevice(DEVICE_COUNT / 2, "Renamed")));
+
+        assertThat(mListener.mAdded).isEqualTo(DEVICE_COUNT);
+        assertThat(mListener.mChanged).isEqualTo(1);
+    }
+
+    @Test
+    public void discoveryFinished_removesDevicesMissingFromTooManyScans() {
+        final int missThreshold =
+                AdaptiveScanPolicy.createAggressive().getMissedScansBeforeRemoval();
+        final Intent finished = new Intent(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
+        replay(mFoundIntents);
+        mReceiver.onReceive(RuntimeEnvironment.application, finished);
+
+        // Keep finding the first half only
+        for (int i = 0; i < missThreshold; i++) {
+            replay(mFoundIntents.subList(0, DEVICE_COUNT / 2));
+            mReceiver.onReceive(RuntimeEnvironment.application, finished);
+            assertThat(mListener.mRemoved).isEqualTo(0);
+        }
+
+        replay(mFoundIntents.subList(0, DEVICE_COUNT / 2));
+        mReceiver.onReceive(RuntimeEnvironment.application, finished);
+
+        assertThat(mListener.mRemoved).isEqualTo(DEVICE_COUNT / 2);
+        assertThat(mReceiver.getPresentDeviceCount()).isEqualTo(DEVICE_COUNT / 2);
+    }
+
+    @Test
+    public void discoveryFinished_missingDeviceCountsAsChange() {
+        final RecordingScanPolicy policy = new RecordingScanPolicy();
+        mReceiver.setScanPolicy(policy);
+        policy.mDevicesChanged.clear();
+        final Intent finished = new Intent(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
+        replay(mFoundIntents);
+        mReceiver.onReceive(RuntimeEnvironment.application, finished);
+        mReceiver.scanNow();
+        replay(mFoundIntents);
+        mReceiver.onReceive(RuntimeEnvironment.application, finished);
+        mReceiver.scanNow();
+        replay(mFoundIntents.subList(1, DEVICE_COUNT));
+        mReceiver.onReceive(RuntimeEnvironment.application, finished);
+
+        // New devices, then the same set, then one device missing
+        assertThat(policy.mDevicesChanged).containsExactly(true, false, true).inOrder();
+    }
+
+    @Test
+    public void removeDevice_forgetsDevice() {
+        replay(mFoundIntents);
+
+        mReceiver.removeDevice(getAddress(0));
+        mReceiver.onReceive(RuntimeEnvironment.application, mFoundIntents.get(0));
+
+        assertThat(mListener.mAdded).isEqualTo(DEVICE_COUNT + 1);
+        assertThat(mReceiver.getPresentDeviceCount()).isEqualTo(DEVICE_COUNT);
+    }
+
+    @Test
+    public void replay_deviceWithoutClassIsAddedOnceClassIsKnown() {
+        final BluetoothDevice device = createDevice(DEVICE_COUNT, "No class yet");
+        final TvShadowBluetoothDevice shadow = Shadow.extract(device);
+        shadow.setDeviceClass(null);
+        mReceiver.onReceive(RuntimeEnvironment.application, createFoundIntent(device));
+        assertThat(mListener.mAdded).isEqualTo(0);
+
+        shadow.setDeviceClass(new BluetoothClass(BluetoothClass.Device.PERIPHERAL_KEYBOARD));
+        mReceiver.onReceive(RuntimeEnvironment.application, createFoundIntent(device));
+        mReceiver.onReceive(RuntimeEnvironment.application, createFoundIntent(device));
+
+        assertThat(mListener.mAdded).isEqualTo(1);
+    }
+
+    @Test
+    public void classChanged_reevaluatesDevice() {
+        mReceiver.stopListening(mListener);
+        mReceiver.startListening(mListener,
+                Collections.singletonList(new BluetoothDeviceCriteria() {
+                    @Override
+                    public boolean isMatchingMajorDeviceClass(int majorDeviceClass) {
+                        return majorDeviceClass == BluetoothClass.Device.Major.PERIPHERAL;
+                    }
+                }));
+        final BluetoothDevice device = createDevice(0, "Remote");
+        final TvShadowBluetoothDevice shadow = Shadow.extract(device);
+        mReceiver.onReceive(RuntimeEnvironment.application, createFoundIntent(device));
+        assertThat(mListener.mAdded).isEqualTo(1);
+
+        shadow.setDeviceClass(new BluetoothClass(BluetoothClass.Device.AUDIO_VIDEO_HEADPHONES));
+        mReceiver.onReceive(RuntimeEnvironment.application, createClassChangedIntent(device));
+        assertThat(mListener.mRemoved).isEqualTo(1);
+
+        shadow.setDeviceClass(new BluetoothClass(BluetoothClass.Device.PERIPHERAL_KEYBOARD));
+        mReceiver.onReceive(RuntimeEnvironment.application, createClassChangedIntent(device));
+        assertThat(mListener.mAdded).isEqualTo(2);
+    }
+
+    @Test
+    public void scanNow_restartsDiscoveryInProgress() {
+        final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        adapter.startDiscovery();
+        final int discoveries = mReceiver.getScanMetrics().discoveryCount;
+
+        mReceiver.scanNow();
+
+        assertThat(mReceiver.getScanMetrics().discoveryCount).isEqualTo(discoveries + 1);
+        assertThat(adapter.isDiscovering()).isTrue();
+    }
+
+    private void replay(List<Intent> intents) {
+        final long start = SystemClock.elapsedRealtimeNanos();
+        for (final Intent intent : intents) {
+            mReceiver.onReceive(RuntimeEnvironment.application, intent);
+        }
+        final long elapsedUs = (SystemClock.elapsedRealtimeNanos() - start) / 1000;
+        Log.d(TAG, "Replayed " + intents.size() + " ACTION_FOUND in " + elapsedUs + "us");
+    }
+
+    private static String getAddress(int index) {
+        return String.format("00:00:00:00:%02X:%02X", (index >> 8) & 0xff, index & 0xff);
+    }
+
+    private static BluetoothDevice createDevice(int index, String name) {
+        final BluetoothDevice device =
+                BluetoothAdapter.getDefaultAdapter().getRemoteDevice(getAddress(index));
+        final TvShadowBluetoothDevice shadow = Shadow.extract(device);
+        shadow.setDeviceName(name);
+        shadow.setDeviceClass(new BluetoothClass(BluetoothClass.Device.PERIPHERAL_KEYBOARD));
+        return device;
+    }
+
+    private static Intent createFoundIntent(BluetoothDevice device) {
+        return new Intent(BluetoothDevice.ACTION_FOUND)
+                .putExtra(BluetoothDevice.EXTRA_DEVICE, device);
+    }
+
+    private static Intent createClassChangedIntent(BluetoothDevice device) {
+        return new Intent(BluetoothDevice.ACTION_CLASS_CHANGED)
+                .putExtra(BluetoothDevice.EXTRA_DEVICE, device)
+                .putExtra(BluetoothDevice.EXTRA_CLASS, device.getBluetoothClass());
+    }
+
+    private static class CountingListener extends BluetoothScanner.Listener {
+        private int mAdded;
+        private int mChanged;
+        private int mRemoved;
+
+        @Override
+        public void onDeviceAdded(BluetoothScanner.Device device) {
+            mAdded++;
+        }
+
+        @Override
+        public void onDeviceChanged(BluetoothScanner.Device device) {
+            mChanged++;
+        }
+
+        @Override
+        public void onDeviceRemoved(BluetoothScanner.Device device) {
+            mRemoved++;
+        }
+    }
+
+    private static class RecordingScanPolicy implements ScanPolicy {
+        final List<Boolean> mDevicesChanged = new ArrayList<>();
+
+        @Override
+        public void reset() {}
+
+        @Override
+        public long getNextScanDelay(boolean devicesChanged) {
+            mDevicesChanged.add(devicesChanged);
+            return AdaptiveScanPolicy.MIN_DELAY;
+        }
+
+        @Override
+        public int getMissedScansBeforeRemoval() {
+            return 4;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.widget;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.Activity;
+import android.database.DataSetObserver;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class ScrollAdapterViewTest {
+
+    private static final int WIDTH = 400;
+    private static final int ITEM_SIZE = 100;
+    private static final int HEIGHT = 5 * ITEM_SIZE;
+    private static final int ITEM_COUNT = 50;
+    private static final int SELECTION = 20;
+
+    private ScrollAdapterView mView;
+    private TestAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        // Keeps scroll tasks queued until settle() runs them
+        ShadowLooper.pauseMainLooper();
+        final Activity activity = Robolectric.setupActivity(Activity.class);
+        mView = new ScrollAdapterView(activity,
+                Robolectric.buildAttributeSet().build());
+        mView.setOrientation(ScrollAdapterView.VERTICAL);
+        activity.setContentView(mView, new FrameLayout.LayoutParams(WIDTH, HEIGHT));
+        mAdapter = new TestAdapter();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            mAdapter.mItems.add("item" + i);
+        }
+        mView.setAdapter(mAdapter);
+        settle();
+        mView.setSelection(SELECTION);
+        settle();
+
+        assertThat(mView.getSelectedItemPosition()).isEqualTo(SELECTION);
+        assertThat(mView.getFirstVisiblePosition()).isAtMost(SELECTION);
+        assertThat(mView.getLastVisiblePosition()).isLessThan(ITEM_COUNT - 5);
+    }
+
+    @Test
+    public void rangeChanged_beforeChildren_leavesChildrenAlone() {
+        final List<View> children = getChildren();
+        final int scrollY = mView.getScrollY();
+
+        mAdapter.notifyItemRangeChanged(0, 2);
+
+        assertThat(mAdapter.mGetViewCount).isEqualTo(0);
+        settle();
+        assertThat(getChildren()).containsExactlyElementsIn(children).inOrder();
+        assertThat(mView.getSelectedItemPosition()).isEqualTo(SELECTION);
+        assertThat(mView.getScrollY()).isEqualTo(scrollY);
+    }
+
+    @Test
+    public void rangeChanged_amongChildren_rebindsInPlace() {
+        final List<View> children = getChildren();
+        final int scrollY = mView.getScrollY();
+        final TextView selected = (TextView) mView.getSelectedView();
+
+        mAdapter.mItems.set(SELECTION, "changed");
+        mAdapter.notifyItemRangeChanged(SELECTION, 1);
+
+        // The existing child is handed back to the adapter, nothing is created
+        assertThat(mAdapter.mGetViewCount).isEqualTo(1);
+        assertThat(mAdapter.mCreateCount).isEqualTo(0);
+        settle();
+        assertThat(getChildren()).containsExactlyElementsIn(children).inOrder();
+        assertThat(mView.getSelectedView()).isSameAs(selected);
+        assertThat(selected.getText().toString()).isEqualTo("changed");
+        assertThat(mView.getSelectedItemPosition()).isEqualTo(SELECTION);
+        assertThat(mView.getScrollY()).isEqualTo(scrollY);
+    }
+
+    @Test
+    public void rangeChanged_afterChildren_leavesChildrenAlone() {
+        final List<View> children = getChildren();
+        final int scrollY = mView.getScrollY();
+
+        mAdapter.notifyItemRangeChanged(ITEM_COUNT - 2, 2);
+
+        assertThat(mAdapter.mGetViewCount).isEqualTo(0);
+        settle();
+        assertThat(getChildren()).containsExactlyElementsIn(children).inOrder();
+        assertThat(mView.getSelectedItemPosition()).isEqualTo(SELECTION);
+        assertThat(mView.getScrollY()).isEqualTo(scrollY);
+    }
+
+    @Test
+    public void rangeInserted_beforeChildren_shiftsIndexes() {
+        final List<View> children = getChildren();
+        final int first = mView.getFirstVisiblePosition();
+        final int scrollY = mView.getScrollY();
+
+        mAdapter.insert(0, 2);
+
+        assertThat(mAdapter.mGetViewCount).isEqualTo(0);
+        assertThat(mView.getSelectedItemPosition()).isEqualTo(SELECTION + 2);
+        assertThat(mView.getFirstVisiblePosition()).isEqualTo(first + 2);
+        settle();
+        assertThat(getChildren()).containsExactlyElementsIn(children).inOrder();
+        assertThat(mView.getScrollY()).isEqualTo(scrollY);
+    }
+
+    @Test
+    public void rangeInserted_amongChildren_keepsSelectionOnScreen() {
+        final List<View> children = getChildren();
+        final View selected = mView.getSelectedView();
+        final int selectedTop = getScreenTop(selected);
+        final int first = mView.getFirstVisiblePosition();
+        assertThat(first).isLessThan(SELECTION);
+
+        // At the selected item, so it moves down by the inserted items
+        mAdapter.insert(SELECTION, 2);
+
+        // Only the inserted items are bound
+        assertThat(mAdapter.mGetViewCount).isEqualTo(2);
+        assertThat(mView.getSelectedItemPosition()).isEqualTo(SELECTION + 2);
+        assertThat(mView.getSelectedView()).isSameAs(selected);
+        assertThat(getScreenTop(selected)).isEqualTo(selectedTop);
+        settle();
+        assertThat(mView.getSelectedView()).isSameAs(selected);
+        assertThat(getScreenTop(selected)).isEqualTo(selectedTop);
+        assertThat(mView.getItemView(SELECTION + 3)).isSameAs(
+                children.get(SELECTION + 1 - first));
+    }
+
+    @Test
+    public void rangeInserted_afterChildren_leavesChildrenAlone() {
+        final List<View> children = getChildren();
+        final int scrollY = mView.getScrollY();
+
+        mAdapter.insert(ITEM_COUNT, 2);
+
+        assertThat(mAdapter.mGetViewCount).isEqualTo(0);
+        settle();
+        assertThat(getChildren()).containsExactlyElementsIn(children).inOrder();
+        assertThat(mView.getSelectedItemPosition()).isEqualTo(SELECTION);
+        assertThat(mView.getScrollY()).isEqualTo(scrollY);
+    }
+
+    @Test
+    public void rangeRemoved_beforeChildren_shiftsIndexes() {
+        final List<View> children = getChildren();
+        final int first = mView.getFirstVisiblePosition();
+        final int scrollY = mView.getScrollY();
+
+        mAdapter.remove(0, 2);
+
+        assertThat(mAdapter.mGetViewCount).isEqualTo(0);
+        assertThat(mView.getSelectedItemPosition()).isEqualTo(SELECTION - 2);
+        assertThat(mView.getFirstVisiblePosition()).isEqualTo(first - 2);
+        settle();
+        assertThat(getChildren()).containsExactlyElementsIn(children).inOrder();
+        assertThat(mView.getScrollY()).isEqualTo(scrollY);
+    }
+
+    @Test
+    public void rangeRemoved_amongChildren_keepsSelectionOnScreen() {
+        final List<View> children = getChildren();
+        final View selected = mView.getSelectedView();
+        final int selectedTop = getScreenTop(selected);
+        final int first = mView.getFirstVisiblePosition();
+        final View removed = mView.getItemView(SELECTION + 1);
+
+        mAdapter.remove(SELECTION + 1, 1);
+
+        assertThat(mAdapter.mGetViewCount).isEqualTo(0);
+        assertThat(removed.getParent()).isNull();
+        assertThat(mView.getSelectedItemPosition()).isEqualTo(SELECTION);
+        assertThat(mView.getSelectedView()).isSameAs(selected);
+        assertThat(getScreenTop(selected)).isEqualTo(selectedTop);
+        settle();
+        assertThat(mView.getSelectedView()).isSameAs(selected);
+        assertThat(getScreenTop(selected)).isEqualTo(selectedTop);
+        assertThat(mView.getItemView(first)).isSameAs(children.get(0));
+        assertThat(mView.getItemView(SELECTION + 1)).isSameAs(
+                children.get(SELECTION + 2 - first));
+    }
+
+    @Test
+    public void rangeRemoved_afterChildren_leavesChildrenAlone() {
+        final List<View> children = getChildren();
+        final int scrollY = mView.getScrollY();
+
+        mAdapter.remove(ITEM_COUNT - 2, 2);
+
+        assertThat(mAdapter.mGetViewCount).isEqualTo(0);
+        settle();
+        assertThat(getChildren()).containsExactlyElementsIn(children).inOrder();
+        assertThat(mView.getSelectedItemPosition()).isEqualTo(SELECTION);
+        assertThat(mView.getScrollY()).isEqualTo(scrollY);
+    }
+
+    /**
+     * Lays out the view and runs its pending scroll tasks, then forgets about the adapter calls
+     * this made.
+     */
+    private void settle() {
+        mView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mView.layout(0, 0, WIDTH, HEIGHT);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        mAdapter.mGetViewCount = 0;
+        mAdapter.mCreateCount = 0;
+    }
+
+    /**
+     * @return The children of the visible items, in adapter order
+     */
+    private List<View> getChildren() {
+        final List<View> children = new ArrayList<>();
+        for (int i = mView.getFirstVisiblePosition(); i <= mView.getLastVisiblePosition(); i++) {
+            children.add(mView.getItemView(i));
+        }
+        return children;
+    }
+
+    private int getScreenTop(View child) {
+        return child.getTop() - mView.getScrollY();
+    }
+
+    private static class TestAdapter extends BaseAdapter implements ScrollAdapter {
+        final List<String> mItems = new ArrayList<>();
+        private final ScrollAdapterObservable mScrollObservable = new ScrollAdapterObservable();
+        /** Calls to {@link #getView}, and how many of them created a view */
+        int mGetViewCount;
+        int mCreateCount;
+
+        void insert(int position, int count) {
+            for (int i = 0; i < count; i++) {
+                mItems.add(position + i, "new" + i);
+            }
+            mScrollObservable.notifyItemRangeInserted(position, count);
+        }
+
+        void remove(int position, int count) {
+            mItems.subList(position, position + count).clear();
+            mScrollObservable.notifyItemRangeRemoved(position, count);
+        }
+
+        void notifyItemRangeChanged(int position, int count) {
+            mScrollObservable.notifyItemRangeChanged(position, count);
+        }
+
+        @Override
+        public int getCount() {
+            return mItems.size();
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return mItems.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            mGetViewCount++;
+            TextView view = (TextView) convertView;
+            if (view == null) {
+                mCreateCount++;
+                view = createView(parent);
+            }
+            view.setText(mItems.get(position));
+            return view;
+        }
+
+        @Override
+        public View getScrapView(ViewGroup parent) {
+            return createView(parent);
+        }
+
+        @Override
+        public void viewRemoved(View view) {
+        }
+
+        @Override
+        public ScrollAdapterBase getExpandAdapter() {
+            return null;
+        }
+
+        @Override
+        public void registerDataSetObserver(DataSetObserver observer) {
+            super.registerDataSetObserver(observer);
+            mScrollObservable.registerObserver(observer);
+        }
+
+        @Override
+        public void unregisterDataSetObserver(DataSetObserver observer) {
+            super.unregisterDataSetObserver(observer);
+            mScrollObservable.unregisterObserver(observer);
+        }
+
+        private static TextView createView(ViewGroup parent) {
+            final TextView view = new TextView(parent.getContext());
+            view.setLayoutParams(new ViewGroup.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ITEM_SIZE));
+            return view;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.widget;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class ScrollControllerTest {
+
+    private static final int SCROLL_DISTANCE = 1000;
+    private static final int SCROLL_DURATION_MS = 300;
+    /** A larger divisor than the default, so that the lerper lags visibly behind the scroll */
+    private static final float DIVISOR = 4f;
+    private static final long TIMEOUT_MS = 5000;
+    /** Allowed settle time difference between frame schedules, about two slow frames */
+    private static final long SETTLE_TOLERANCE_MS = 40;
+
+    private interface FrameSchedule {
+        /** @return Interval before the given frame in milliseconds */
+        int getInterval(int frame);
+    }
+
+    private static final FrameSchedule FRAMES_60_FPS = frame -> 16;
+    private static final FrameSchedule FRAMES_30_FPS = frame -> 33;
+
+    private ScrollController mScroll;
+    private FrameSchedule mJitteryFrames;
+
+    @Before
+    public void setUp() {
+        mScroll = new ScrollController(RuntimeEnvironment.application);
+        mScroll.setLerperDivisor(DIVISOR);
+        mScroll.horizontal.updateScrollMin(0, 0);
+        mScroll.horizontal.updateScrollMax(SCROLL_DISTANCE * 10, SCROLL_DISTANCE * 10);
+
+        final Random random = new Random(42);
+        final int[] intervals = new int[1000];
+        for (int i = 0; i < intervals.length; i++) {
+            intervals[i] = 8 + random.nextInt(33);
+        }
+        mJitteryFrames = frame -> intervals[frame % intervals.length];
+    }
+
+    @Test
+    public void testTimeBased_settlesTheSameAtAnyFrameRate() {
+        mScroll.setLerperMode(Lerper.MODE_TIME_BASED);
+
+        final long settle60 = runScroll(FRAMES_60_FPS);
+        assertThat(mScroll.horizontal.getScrollCenter()).isEqualTo(SCROLL_DISTANCE);
+        final long settle30 = runScroll(FRAMES_30_FPS);
+        assertThat(mScroll.horizontal.getScrollCenter()).isEqualTo(SCROLL_DISTANCE);
+        final long settleJittery = runScroll(mJitteryFrames);
+        assertThat(mScroll.horizontal.getScrollCenter()).isEqualTo(SCROLL_DISTANCE);
+
+        assertThat(settle60).isGreaterThan((long) SCROLL_DURATION_MS);
+        assertThat(Math.abs(settle30 - settle60)).isAtMost(SETTLE_TOLERANCE_MS);
+        assertThat(Math.abs(settleJittery - settle60)).isAtMost(SETTLE_TOLERANCE_MS);
+    }
+
+    @Test
+    public void testPerFrame_settleFollowsFrameRate() {
+        mScroll.setLerperMode(Lerper.MODE_PER_FRAME);
+
+        final long settle60 = runScroll(FRAMES_60_FPS);
+        assertThat(mScroll.horizontal.getScrollCenter()).isEqualTo(SCROLL_DISTANCE);
+        final long settle30 = runScroll(FRAMES_30_FPS);
+        assertThat(mScroll.horizontal.getScrollCenter()).isEqualTo(SCROLL_DISTANCE);
+
+        // The lerper takes about the same number of frames, so twice as long at 30 fps
+        assertThat(settle30 - settle60).isGreaterThan(SETTLE_TOLERANCE_MS);
+    }
+
+    @Test
+    public void testLerper_timeBasedMatchesPerFrameAtReferenceInterval() {
+        final Lerper perFrame = new Lerper();
+        perFrame.setDivisor(DIVISOR);
+        perFrame.setMode(Lerper.MODE_PER_FRAME);
+        final Lerper timeBased = new Lerper();
+        timeBased.setDivisor(DIVISOR);
+        timeBased.setMode(Lerper.MODE_TIME_BASED);
+
+        float expected = 0;
+        float actual = 0;
+        for (int frame = 0; frame < 10; frame++) {
+            expected = perFrame.getValue(expected, 500f, Lerper.REFERENCE_FRAME_INTERVAL_NANOS);
+            actual = timeBased.getValue(actual, 500f, Lerper.REFERENCE_FRAME_INTERVAL_NANOS);
+            assertThat(actual).isWithin(0.01f).of(expected);
+        }
+        // Two half frames cover the same distance as a whole one
+        final float half = timeBased.getValue(0f, 500f, Lerper.REFERENCE_FRAME_INTERVAL_NANOS / 2);
+        assertThat(timeBased.getValue(half, 500f, Lerper.REFERENCE_FRAME_INTERVAL_NANOS / 2))
+                .isWithin(0.01f).of(500f / DIVISOR);
+    }
+
+    @Test
+    public void testLerper_divisorOfOneJumps() {
+        final Lerper lerper = new Lerper();
+        lerper.setDivisor(1f);
+
+        assertThat(lerper.getValue(0f, 500f, 1)).isEqualTo(500f);
+    }
+
+    /**
+     * Scrolls from 0 by {@link #SCROLL_DISTANCE}, stepping the controller on the given frame
+     * schedule until it's finished.
+     * @return Time it took to settle in milliseconds
+     */
+    private long runScroll(FrameSchedule schedule) {
+        mScroll.setScrollCenter(0, 0);
+        mScroll.startScroll(SCROLL_DISTANCE, 0, false, SCROLL_DURATION_MS, false);
+        final long start = SystemClock.uptimeMillis();
+        int frame = 0;
+        while (!mScroll.isFinished()) {
+            assertThat(SystemClock.uptimeMillis() - start).isLessThan(TIMEOUT_MS);
+            ShadowLooper.idleMainLooper(schedule.getInterval(frame++), TimeUnit.MILLISECONDS);
+            mScroll.computeAndSetScrollPosition();
+        }
+        return SystemClock.uptimeMillis() - start;
+    }
+}
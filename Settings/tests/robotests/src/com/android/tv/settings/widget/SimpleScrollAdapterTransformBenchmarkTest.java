@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.widget;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.animation.AnimatorSet;
+import android.animation.ObjectAnimator;
+import android.animation.PropertyValuesHolder;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Compares the per frame cost of transforming a list's children by running the animators with
+ * applying the baked lookup tables. Cost is counted in animator seeks rather than timed, so that
+ * the comparison is the same on every machine.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SimpleScrollAdapterTransformBenchmarkTest {
+
+    private static final int[] CHILD_COUNTS = {10, 50, 200};
+    private static final int FRAMES = 100;
+    /** Spacing between the children's centers */
+    private static final int CHILD_SIZE = 60;
+    /** Scroll distance per frame */
+    private static final int SCROLL_STEP = 11;
+    private static final long DURATION = 400;
+
+    @Test
+    public void testBenchmark_animatorsVersusLookupTables() {
+        for (int childCount : CHILD_COUNTS) {
+            final SeekCounter animatedSeeks = new SeekCounter();
+            final SeekCounter bakedSeeks = new SeekCounter();
+            final View[] animatedChildren = createChildren(childCount);
+            final View[] bakedChildren = createChildren(childCount);
+            final SimpleScrollAdapterTransform animated = SimpleScrollAdapterTransformTest
+                    .createTransform(createFadeAndSlide(animatedSeeks), false);
+            final SimpleScrollAdapterTransform baked = SimpleScrollAdapterTransformTest
+                    .createTransform(createFadeAndSlide(bakedSeeks), true);
+
+            for (int frame = 0; frame < FRAMES; frame++) {
+                transformChildren(animated, animatedChildren, frame);
+                transformChildren(baked, bakedChildren, frame);
+            }
+
+            // Animators seek each of the three leaf animators for every child on every frame,
+            // while lookup tables never touch them
+            assertThat(animatedSeeks.mCount).isEqualTo(FRAMES * 3 * childCount);
+            assertThat(bakedSeeks.mCount).isEqualTo(0);
+            // Both modes end up in the same place
+            for (int i = 0; i < childCount; i++) {
+                assertThat(bakedChildren[i].getAlpha())
+                        .isWithin(0.01f).of(animatedChildren[i].getAlpha());
+                assertThat(bakedChildren[i].getTranslationY())
+                        .isWithin(0.5f).of(animatedChildren[i].getTranslationY());
+            }
+        }
+    }
+
+    private static View[] createChildren(int count) {
+        final View[] children = new View[count];
+        for (int i = 0; i < count; i++) {
+            children[i] = new View(RuntimeEnvironment.application);
+        }
+        return children;
+    }
+
+    /**
+     * Scrolls the children past the center, transforming all of them.
+     */
+    private static void transformChildren(SimpleScrollAdapterTransform transform,
+            View[] children, int frame) {
+        final int scrollCenter = frame * SCROLL_STEP;
+        for (int i = 0; i < children.length; i++) {
+            transform.transform(children[i], i * CHILD_SIZE - scrollCenter, 0);
+        }
+    }
+
+    /**
+     * @return The transform of {@link SimpleScrollAdapterTransformTest}, with its seeks counted
+     */
+    private static AnimatorSet createFadeAndSlide(SeekCounter counter) {
+        final AnimatorSet set = new AnimatorSet();
+        set.playTogether(
+                new CountingAnimator(counter, PropertyValuesHolder.ofFloat("alpha", 1f, 0.2f)),
+                new CountingAnimator(counter, PropertyValuesHolder.ofFloat("scaleX", 1f, 0.5f),
+                        PropertyValuesHolder.ofFloat("scaleY", 1f, 0.5f)),
+                new CountingAnimator(counter,
+                        PropertyValuesHolder.ofFloat("translationY", 0f, 120f)));
+        return set;
+    }
+
+    private static class SeekCounter {
+        int mCount;
+    }
+
+    /**
+     * Counts {@link #setCurrentPlayTime} calls, which is how animators are run for each view.
+     * Clones share the counter.
+     */
+    private static class CountingAnimator extends ObjectAnimator {
+        private final SeekCounter mCounter;
+
+        CountingAnimator(SeekCounter counter, PropertyValuesHolder... values) {
+            mCounter = counter;
+            setValues(values);
+            setDuration(DURATION);
+        }
+
+        @Override
+        public void setCurrentPlayTime(long playTime) {
+            mCounter.mCount++;
+            super.setCurrentPlayTime(playTime);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.widget;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.animation.Animator;
+import android.animation.AnimatorSet;
+import android.animation.ObjectAnimator;
+import android.animation.PropertyValuesHolder;
+import android.content.Context;
+import android.view.View;
+import android.view.animation.DecelerateInterpolator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class SimpleScrollAdapterTransformTest {
+
+    private static final long DURATION = 400;
+    private static final int CHILD_COUNT = 50;
+    private static final int FRAMES = 100;
+    /** Spacing between the children's centers */
+    private static final int CHILD_SIZE = 60;
+    /** Scroll distance per frame */
+    private static final int SCROLL_STEP = 11;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void testBaked_matchesAnimators() {
+        final SimpleScrollAdapterTransform baked = createTransform(createFadeAndSlide(), true);
+        final SimpleScrollAdapterTransform animated = createTransform(createFadeAndSlide(), false);
+        final View bakedView = new View(mContext);
+        final View animatedView = new View(mContext);
+
+        for (int distance = -600; distance <= 600; distance += 7) {
+            baked.transform(bakedView, distance, 0);
+            animated.transform(animatedView, distance, 0);
+
+            assertThat(bakedView.getAlpha()).isWithin(0.01f).of(animatedView.getAlpha());
+            assertThat(bakedView.getScaleX()).isWithin(0.01f).of(animatedView.getScaleX());
+            assertThat(bakedView.getScaleY()).isWithin(0.01f).of(animatedView.getScaleY());
+            assertThat(bakedView.getTranslationY())
+                    .isWithin(0.5f).of(animatedView.getTranslationY());
+        }
+    }
+
+    @Test
+    public void testBaked_matchesAnimatorsWhileScrolling() {
+        final View[] bakedChildren = createChildren(CHILD_COUNT);
+        final View[] animatedChildren = createChildren(CHILD_COUNT);
+        final SimpleScrollAdapterTransform baked = createTransform(createFadeAndSlide(), true);
+        final SimpleScrollAdapterTransform animated = createTransform(createFadeAndSlide(), false);
+
+        // Scrolls the children past the center, transforming all of them on every frame
+        for (int frame = 0; frame < FRAMES; frame++) {
+            final int scrollCenter = frame * SCROLL_STEP;
+            for (int i = 0; i < CHILD_COUNT; i++) {
+                baked.transform(bakedChildren[i], i * CHILD_SIZE - scrollCenter, 0);
+                animated.transform(animatedChildren[i], i * CHILD_SIZE - scrollCenter, 0);
+            }
+        }
+
+        for (int i = 0; i < CHILD_COUNT; i++) {
+            assertThat(bakedChildren[i].getAlpha())
+                    .isWithin(0.01f).of(animatedChildren[i].getAlpha());
+            assertThat(bakedChildren[i].getTranslationY())
+                    .isWithin(0.5f).of(animatedChildren[i].getTranslationY());
+        }
+    }
+
+    @Test
+    public void testBaked_clampsPastDuration() {
+        final SimpleScrollAdapterTransform transform = createTransform(createFadeAndSlide(), true);
+        final View view = new View(mContext);
+
+        transform.transform(view, 0, 0);
+        assertThat(view.getAlpha()).isEqualTo(1f);
+        // Durations are in dips, so this is past the end at any density
+        transform.transform(view, (int) DURATION * 10, 0);
+        assertThat(view.getAlpha()).isWithin(0.0001f).of(0.2f);
+        assertThat(view.getScaleX()).isWithin(0.0001f).of(0.5f);
+    }
+
+    @Test
+    public void testBaked_firstChildWinsOnSameProperty() {
+        // Children are applied last to first, so the first one sets the final value
+        final AnimatorSet set = new AnimatorSet();
+        set.playTogether(createAnimator("alpha", 1f, 0f), createAnimator("alpha", 1f, 0.5f));
+        final SimpleScrollAdapterTransform baked = createTransform(set, true);
+        final View view = new View(mContext);
+
+        baked.transform(view, 10000, 0);
+
+        assertThat(view.getAlpha()).isWithin(0.0001f).of(0f);
+    }
+
+    @Test
+    public void testUnsupportedProperty_usesAnimators() {
+        final AnimatorSet set = new AnimatorSet();
+        set.playTogether(createAnimator("alpha", 1f, 0f), createAnimator("rotation", 0f, 90f));
+        final SimpleScrollAdapterTransform transform = createTransform(set, true);
+        final View view = new View(mContext);
+
+        transform.transform(view, 10000, 0);
+
+        assertThat(view.getRotation()).isWithin(0.0001f).of(90f);
+        assertThat(view.getAlpha()).isWithin(0.0001f).of(0f);
+    }
+
+    private View[] createChildren(int count) {
+        final View[] children = new View[count];
+        for (int i = 0; i < count; i++) {
+            children[i] = new View(mContext);
+        }
+        return children;
+    }
+
+    static SimpleScrollAdapterTransform createTransform(Animator animator, boolean baked) {
+        final SimpleScrollAdapterTransform transform =
+                new SimpleScrollAdapterTransform(RuntimeEnvironment.application);
+        transform.setHighItemTransform(animator);
+        transform.setLowItemTransform(animator.clone());
+        transform.setLookupTablesEnabled(baked);
+        return transform;
+    }
+
+    /**
+     * @return A transform like the ones settings lists use: fading, shrinking and sliding away
+     */
+    private static Animator createFadeAndSlide() {
+        final ObjectAnimator fade = new ObjectAnimator();
+        fade.setValues(PropertyValuesHolder.ofFloat("alpha", 1f, 0.2f));
+        fade.setInterpolator(new DecelerateInterpolator());
+        fade.setDuration(DURATION);
+        final ObjectAnimator shrink = new ObjectAnimator();
+        shrink.setValues(PropertyValuesHolder.ofFloat("scaleX", 1f, 0.5f),
+                PropertyValuesHolder.ofFloat("scaleY", 1f, 0.5f));
+        shrink.setDuration(DURATION);
+        final ObjectAnimator slide = createAnimator("translationY", 0f, 120f);
+        final AnimatorSet set = new AnimatorSet();
+        set.playTogether(fade, shrink, slide);
+        return set;
+    }
+
+    private static ObjectAnimator createAnimator(String property, float from, float to) {
+        final ObjectAnimator animator = new ObjectAnimator();
+        animator.setValues(PropertyValuesHolder.ofFloat(property, from, to));
+        animator.setDuration(DURATION);
+        return animator;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tv.settings.widget;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.view.View;
+import android.widget.EditText;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class ViewsStateBundleTest {
+
+    private static final int ITEM_COUNT = 10000;
+    private static final int LIMIT = 50;
+
+    private ViewsStateBundle mBundle;
+
+    @Before
+    public void setUp() {
+        mBundle = new ViewsStateBundle(ViewsStateBundle.SAVE_ALL_CHILD, 0) {
+            @Override
+            protected void saveVisibleViewsUnchecked() {
+            }
+        };
+    }
+
+    @Test
+    public void testInsertIds_shiftsFollowingStates() {
+        for (int id = 0; id < 4; id++) {
+            mBundle.saveInvisibleView(createView("item" + id), id);
+        }
+
+        mBundle.insertIds(2, 3);
+
+        assertThat(loadText(0)).isEqualTo("item0");
+        assertThat(loadText(1)).isEqualTo("item1");
+        assertThat(loadText(2)).isEmpty();
+        assertThat(loadText(5)).isEqualTo("item2");
+        assertThat(loadText(6)).isEqualTo("item3");
+        assertThat(mBundle.getChildStates().size()).isEqualTo(4);
+    }
+
+    @Test
+    public void testRemoveIds_dropsRemovedStates() {
+        for (int id = 0; id < 6; id++) {
+            mBundle.saveInvisibleView(createView("item" + id), id);
+        }
+
+        mBundle.removeIds(1, 2);
+
+        assertThat(loadText(0)).isEqualTo("item0");
+        assertThat(loadText(1)).isEqualTo("item3");
+        assertThat(loadText(2)).isEqualTo("item4");
+        assertThat(loadText(3)).isEqualTo("item5");
+        assertThat(mBundle.getChildStates().size()).isEqualTo(4);
+    }
+
+    @Test
+    public void testLimited_scrollKeepsRecentStatesWithinLimit() {
+        final ViewsStateBundle bundle = createLimitedBundle(LIMIT, Integer.MAX_VALUE);
+        final EditText view = (EditText) createView("");
+        final View focused = createView("");
+
+        for (int id = 0; id < ITEM_COUNT; id++) {
+            view.setText("item" + id);
+            bundle.saveInvisibleView(view, id);
+            // Focus keeps coming back to the first item, which loads its state each time
+            if (id % (LIMIT / 2) == 0) {
+                bundle.loadView(focused, 0);
+            }
+            assertThat(bundle.getChildStates().size()).isAtMost(LIMIT);
+        }
+
+        for (int id = ITEM_COUNT - (LIMIT - 1); id < ITEM_COUNT; id++) {
+            assertThat(loadText(bundle, id)).isEqualTo("item" + id);
+        }
+        assertThat(loadText(bundle, 0)).isEqualTo("item0");
+        assertThat(loadText(bundle, ITEM_COUNT / 2)).isEmpty();
+        assertThat(bundle.getChildStates().size()).isEqualTo(LIMIT);
+    }
+
+    @Test
+    public void testLimited_scrollStaysWithinByteBudget() {
+        final EditText view = (EditText) createView("item" + ITEM_COUNT);
+        // The largest state of the scroll, since it has the longest key and text
+        final int limitBytes = getEntryBytes(view, ITEM_COUNT) * LIMIT;
+        final ViewsStateBundle bundle = createLimitedBundle(ITEM_COUNT, limitBytes);
+
+        for (int id = 0; id < ITEM_COUNT; id++) {
+            view.setText("item" + id);
+            bundle.saveInvisibleView(view, id);
+            assertThat(bundle.getSavedBytes()).isAtMost(limitBytes);
+        }
+
+        assertThat(bundle.getChildStates().size()).isAtLeast(LIMIT);
+        assertThat(bundle.getChildStates().size()).isLessThan(ITEM_COUNT);
+        for (int id = ITEM_COUNT - LIMIT; id < ITEM_COUNT; id++) {
+            assertThat(loadText(bundle, id)).isEqualTo("item" + id);
+        }
+
+        final int bytesBeforeRemove = bundle.getSavedBytes();
+        bundle.removeIds(ITEM_COUNT - LIMIT, LIMIT);
+        assertThat(bundle.getSavedBytes()).isLessThan(bytesBeforeRemove);
+        assertThat(loadText(bundle, ITEM_COUNT - 1)).isEmpty();
+        bundle.clear();
+        assertThat(bundle.getSavedBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void testLimited_visibleViewsStayWithinByteBudget() {
+        final EditText view = (EditText) createView("item" + LIMIT);
+        final int limitBytes = getEntryBytes(view, LIMIT) * (LIMIT / 2);
+        final ViewsStateBundle bundle = new ViewsStateBundle(ViewsStateBundle.SAVE_LIMITED_CHILD,
+                ITEM_COUNT, limitBytes) {
+            @Override
+            protected void saveVisibleViewsUnchecked() {
+                for (int id = 0; id < LIMIT; id++) {
+                    view.setText("item" + id);
+                    saveViewUnchecked(view, id);
+                }
+            }
+        };
+
+        bundle.saveVisibleViews();
+
+        assertThat(bundle.getSavedBytes()).isAtMost(limitBytes);
+        assertThat(bundle.getChildStates().size()).isLessThan(LIMIT);
+        // The last saved views are kept
+        assertThat(loadText(bundle, LIMIT - 1)).isEqualTo("item" + (LIMIT - 1));
+        assertThat(loadText(bundle, 0)).isEmpty();
+    }
+
+    @Test
+    public void testAll_doesNotTrackSizes() {
+        for (int id = 0; id < LIMIT; id++) {
+            mBundle.saveInvisibleView(createView("item" + id), id);
+        }
+
+        assertThat(mBundle.getChildStates().size()).isEqualTo(LIMIT);
+        assertThat(mBundle.getSavedBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSetSavePolicy_limitedPrunesExistingStates() {
+        for (int id = 0; id < LIMIT; id++) {
+            mBundle.saveInvisibleView(createView("item" + id), id);
+        }
+        mBundle.setLimitNumber(LIMIT / 2);
+        mBundle.setLimitBytes(Integer.MAX_VALUE);
+
+        mBundle.setSavePolicy(ViewsStateBundle.SAVE_LIMITED_CHILD);
+
+        assertThat(mBundle.getChildStates().size()).isEqualTo(LIMIT / 2);
+        assertThat(mBundle.getSavedBytes()).isGreaterThan(0);
+
+        mBundle.setSavePolicy(ViewsStateBundle.SAVE_ALL_CHILD);
+
+        assertThat(mBundle.getChildStates().size()).isEqualTo(LIMIT / 2);
+        assertThat(mBundle.getSavedBytes()).isEqualTo(0);
+    }
+
+    /**
+     * @return The estimated size of the view's state when saved under the id
+     */
+    private static int getEntryBytes(View view, int id) {
+        final ViewsStateBundle probe = createLimitedBundle(ITEM_COUNT, Integer.MAX_VALUE);
+        probe.saveInvisibleView(view, id);
+        final int entryBytes = probe.getSavedBytes();
+        assertThat(entryBytes).isGreaterThan(0);
+        return entryBytes;
+    }
+
+    private static ViewsStateBundle createLimitedBundle(int limit, int limitBytes) {
+        return new ViewsStateBundle(ViewsStateBundle.SAVE_LIMITED_CHILD, limit, limitBytes) {
+            @Override
+            protected void saveVisibleViewsUnchecked() {
+            }
+        };
+    }
+
+    private static View createView(String text) {
+        final EditText view = new EditText(RuntimeEnvironment.application);
+        view.setId(android.R.id.text1);
+        view.setSaveEnabled(true);
+        view.setFreezesText(true);
+        view.setText(text);
+        return view;
+    }
+
+    private String loadText(int id) {
+        return loadText(mBundle, id);
+    }
+
+    private static String loadText(ViewsStateBundle bundle, int id) {
+        final EditText view = (EditText) createView("");
+        bundle.loadView(view, id);
+        return view.getText().toString();
+    }
+}